@@ -1,13 +1,18 @@
 package io.dockstore.metricsaggregator;
 
 import static io.dockstore.metricsaggregator.helper.AthenaClientHelper.createAthenaClient;
+import static io.dockstore.utils.ConcurrencyUtils.putUninterruptibly;
 import static io.dockstore.utils.DockstoreApiClientUtils.setupApiClient;
+import static io.dockstore.utils.ExceptionHandler.GENERIC_ERROR;
+import static io.dockstore.utils.ExceptionHandler.exceptionMessage;
 
 import io.dockstore.common.Partner;
+import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.EntryS3Directories;
 import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.EntryS3DirectoryInfo;
 import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.VersionS3DirectoryInfo;
 import io.dockstore.metricsaggregator.helper.AthenaAggregator;
 import io.dockstore.metricsaggregator.helper.AthenaClientHelper;
+import io.dockstore.metricsaggregator.helper.DailyRollupTable;
 import io.dockstore.metricsaggregator.helper.ExecutionStatusAthenaAggregator;
 import io.dockstore.metricsaggregator.helper.ValidationStatusAthenaAggregator;
 import io.dockstore.openapi.client.ApiException;
@@ -16,16 +21,21 @@ import io.dockstore.openapi.client.api.MetadataApi;
 import io.dockstore.openapi.client.model.ExecutionStatusMetric;
 import io.dockstore.openapi.client.model.Metrics;
 import io.dockstore.openapi.client.model.ValidationStatusMetric;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 import org.jooq.Field;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +53,10 @@ import software.amazon.awssdk.services.athena.paginators.GetQueryResultsIterable
  */
 public class MetricsAggregatorAthenaClient {
     private static final Logger LOG = LoggerFactory.getLogger(MetricsAggregatorAthenaClient.class);
+    private static final int WORK_QUEUE_CAPACITY_PER_THREAD = 2;
+    private static final double MAX_SAMPLE_PERCENTAGE = 100.0;
+    // Marks the end of the work queue
+    private static final EntryS3Directories END_OF_WORK = new EntryS3Directories(null, List.of());
 
     private final ExecutionStatusAthenaAggregator executionStatusAggregator;
     private final ValidationStatusAthenaAggregator validationStatusAggregator;
@@ -52,6 +66,11 @@ public class MetricsAggregatorAthenaClient {
     private final String tableName;
     private final AthenaClient athenaClient;
     private final MetadataApi metadataApi;
+    private final DailyRollupTable dailyRollupTable;
+    private final Long approximationThresholdBytes;
+    // Returns the size of an S3 directory in bytes. Used to decide whether to approximate the metrics of the directory
+    private ToLongFunction<String> directorySizeFunction;
+    private Consumer<VersionS3DirectoryInfo> versionSubmittedListener = versionDirectory -> { };
 
     public MetricsAggregatorAthenaClient(MetricsAggregatorConfig config) {
         this.metricsBucketName = config.getS3Config().bucket();
@@ -64,116 +83,167 @@ public class MetricsAggregatorAthenaClient {
         this.metadataApi = new MetadataApi(setupApiClient(config.getDockstoreConfig().serverUrl())); // Anonymous client
         this.executionStatusAggregator = new ExecutionStatusAthenaAggregator(this, tableName);
         this.validationStatusAggregator = new ValidationStatusAthenaAggregator(this, tableName);
+        final String rollupLocation = config.getAthenaConfig().rollupLocation();
+        if (rollupLocation == null) {
+            this.dailyRollupTable = null;
+        } else {
+            this.dailyRollupTable = new DailyRollupTable(this, underscoredMetricsBucketName + "_daily_rollup_table", rollupLocation, Instant.now());
+            this.executionStatusAggregator.setDailyRollupTable(dailyRollupTable);
+        }
+        this.approximationThresholdBytes = config.getAthenaConfig().approximationThresholdBytes();
+        if (approximationThresholdBytes != null && dailyRollupTable != null) {
+            LOG.warn("Approximate aggregation is disabled because the daily rollup table is configured");
+        }
+    }
+
+    /**
+     * Set the function used to calculate the size of an S3 directory in bytes.
+     * If an approximation threshold is configured, the metrics of directories larger than the threshold are approximated from a sample of the executions.
+     * @param directorySizeFunction
+     */
+    public void setDirectorySizeFunction(ToLongFunction<String> directorySizeFunction) {
+        this.directorySizeFunction = directorySizeFunction;
+    }
+
+    /**
+     * Set the listener that's called, from the aggregation threads, after the aggregated metrics of a version are posted to Dockstore.
+     * @param versionSubmittedListener
+     */
+    public void setVersionSubmittedListener(Consumer<VersionS3DirectoryInfo> versionSubmittedListener) {
+        this.versionSubmittedListener = versionSubmittedListener;
     }
 
     /**
-     * Aggregate metrics using AWS Athena for the list of version S3 directories and posts them to Dockstore.
+     * Aggregate metrics using AWS Athena for the entry S3 directories passed to the consumer by the producer, and posts them to Dockstore.
+     * Aggregation of an entry starts as soon as the producer passes it to the consumer, so discovery of the directories overlaps with aggregation.
+     * The producer blocks when the bounded work queue is full, so memory stays bounded regardless of the number of entries.
      */
-    public void aggregateMetrics(List<VersionS3DirectoryInfo> versionDirectories, List<EntryS3DirectoryInfo> entryDirectories, ExtendedGa4GhApi extendedGa4GhApi, int threadCount) {
+    public void aggregateMetrics(EntryS3DirectoriesProducer producer, ExtendedGa4GhApi extendedGa4GhApi, int threadCount) {
         AthenaAggregator.createDatabase(databaseName, this);
         AthenaAggregator.createTable(tableName, metricsBucketName, metadataApi, this);
-        // The "last aggregated" time (that's stored in the db when aggregated
-        // version-level metrics are submitted) is used to trigger both
-        // entry and version-level aggregation.  To ensure that any
-        // necessary entry aggregation occurs prior to the "last aggregated"
-        // time being updated, aggregate entries first.
-        aggregateEntryMetrics(entryDirectories, extendedGa4GhApi, threadCount);
-        aggregateVersionMetrics(versionDirectories, extendedGa4GhApi, threadCount);
-    }
+        if (dailyRollupTable != null) {
+            try {
+                dailyRollupTable.createTable();
+            } catch (AwsServiceException | SdkClientException | InterruptedException e) {
+                exceptionMessage(e, "Could not execute query to create Athena daily rollup table", GENERIC_ERROR);
+            }
+        }
 
-    private void aggregateVersionMetrics(List<VersionS3DirectoryInfo> versionDirectories, ExtendedGa4GhApi extendedGa4GhApi, int threadCount) {
-        // Aggregate metrics for each directory
-        AtomicInteger numberProcessed = new AtomicInteger(0);
-        AtomicInteger numberSubmitted = new AtomicInteger(0);
-        AtomicInteger numberSkipped = new AtomicInteger(0);
-
-        LOG.info("Aggregating verson-level metrics using {} threads in parallel", threadCount);
-        List<Runnable> runnables = versionDirectories.stream().<Runnable>map(versionDirectory ->
-            () -> {
-                AthenaTablePartition partition = versionDirectory.athenaTablePartition();
-                List<String> platforms = versionDirectory.platforms();
-                String prefix = versionDirectory.versionS3KeyPrefix();
-                String name = "tool ID %s, version %s".formatted(versionDirectory.toolId(), versionDirectory.versionId());
-                Map<String, Metrics> platformToMetrics = getAggregatedMetricsForPlatforms(partition, platforms, prefix, name);
-                if (platformToMetrics.isEmpty()) {
-                    LOG.error("No metrics were aggregated for {}", name);
-                    numberSkipped.incrementAndGet();
-                    return;
-                }
+        AggregationCounts entryCounts = new AggregationCounts();
+        AggregationCounts versionCounts = new AggregationCounts();
+        BlockingQueue<EntryS3Directories> workQueue = new ArrayBlockingQueue<>(threadCount * WORK_QUEUE_CAPACITY_PER_THREAD);
 
+        LOG.info("Aggregating metrics using {} threads in parallel", threadCount);
+        ExecutorService es = Executors.newFixedThreadPool(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            es.execute(() -> {
                 try {
-                    extendedGa4GhApi.aggregatedMetricsPut(platformToMetrics, versionDirectory.toolId(), versionDirectory.versionId());
-                    LOG.info("Posted aggregated version-level metrics to Dockstore for {}, platform(s): {}", name, platformToMetrics.keySet());
-                    numberSubmitted.incrementAndGet();
-                } catch (ApiException exception) {
-                    // Log error and continue processing for other platforms
-                    LOG.error("Could not post aggregated version-level metrics to Dockstore for {}, platform(s): {}", name, platformToMetrics.keySet(), exception);
-                    numberSkipped.incrementAndGet();
+                    EntryS3Directories entryS3Directories = workQueue.take();
+                    while (entryS3Directories != END_OF_WORK) {
+                        // The "last aggregated" time (that's stored in the db when aggregated
+                        // version-level metrics are submitted) is used to trigger both
+                        // entry and version-level aggregation.  To ensure that any
+                        // necessary entry aggregation occurs prior to the "last aggregated"
+                        // time being updated, aggregate the entry before its versions.
+                        aggregateEntryAndVersionMetrics(entryS3Directories, extendedGa4GhApi, entryCounts, versionCounts);
+                        entryS3Directories = workQueue.take();
+                    }
+                } catch (InterruptedException e) {
+                    LOG.info("InterruptedException while waiting for directories to aggregate");
+                    Thread.currentThread().interrupt();
                 }
-                numberProcessed.incrementAndGet();
-                LOG.info("Processed {} directories", numberProcessed);
-            })
-            .toList();
+            });
+        }
 
-        runAndWaitUntilDone(runnables, threadCount);
+        try {
+            producer.produce(entryS3Directories -> putUninterruptibly(workQueue, entryS3Directories));
+        } finally {
+            // Signal each thread that there's no more work
+            for (int i = 0; i < threadCount; i++) {
+                putUninterruptibly(workQueue, END_OF_WORK);
+            }
+            es.shutdown();
+            try {
+                es.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                LOG.info("InterruptedException while waiting for threads to complete");
+                es.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
 
-        LOG.info("Completed aggregating version-level metrics. Processed {} directories, submitted metrics for {} versions, and skipped metrics for {} versions", numberProcessed, numberSubmitted, numberSkipped);
+        LOG.info("Completed aggregating entry-level metrics. Processed {} directories, submitted metrics for {} entries, and skipped metrics for {} entries", entryCounts.numberProcessed(), entryCounts.numberSubmitted(), entryCounts.numberSkipped());
+        LOG.info("Completed aggregating version-level metrics. Processed {} directories, submitted metrics for {} versions, and skipped metrics for {} versions", versionCounts.numberProcessed(), versionCounts.numberSubmitted(), versionCounts.numberSkipped());
     }
 
-    private void aggregateEntryMetrics(List<EntryS3DirectoryInfo> entryDirectories, ExtendedGa4GhApi extendedGa4GhApi, int threadCount) {
-
-        // Aggregate metrics for each directory
-        AtomicInteger numberProcessed = new AtomicInteger(0);
-        AtomicInteger numberSubmitted = new AtomicInteger(0);
-        AtomicInteger numberSkipped = new AtomicInteger(0);
-
-        LOG.info("Aggregating entry-level metrics using {} threads in parallel", threadCount);
-        List<Runnable> runnables = entryDirectories.stream().<Runnable>map(entryDirectory ->
-            () -> {
-                AthenaTablePartition partition = entryDirectory.athenaTablePartition();
-                List<String> platforms = entryDirectory.platforms();
-                String prefix = entryDirectory.entryS3KeyPrefix();
-                String name = "tool ID %s".formatted(entryDirectory.toolId());
-                Map<String, Metrics> platformToMetrics = getAggregatedMetricsForPlatforms(partition, platforms, prefix, name);
-                if (platformToMetrics.isEmpty()) {
-                    LOG.error("No metrics were aggregated for {}", name);
-                    numberSkipped.incrementAndGet();
-                    return;
-                }
-
-                try {
-                    extendedGa4GhApi.aggregatedMetricsPutEntry(platformToMetrics, entryDirectory.toolId());
-                    LOG.info("Posted aggregated entry-level metrics to Dockstore for {}, platform(s): {}", name, platformToMetrics.keySet());
-                    numberSubmitted.incrementAndGet();
-                } catch (ApiException exception) {
-                    // Log error and continue processing for other platforms
-                    LOG.error("Could not post aggregated entry-level metrics to Dockstore for {}, platform(s): {}", name, platformToMetrics.keySet(), exception);
-                    numberSkipped.incrementAndGet();
-                }
-                numberProcessed.incrementAndGet();
-                LOG.info("Processed {} directories", numberProcessed);
-            })
-            .toList();
+    /**
+     * Aggregates the entry and then its versions. An unexpected exception is logged and counted as a skipped directory, so the thread keeps taking directories from the work queue,
+     * otherwise the producer could block forever on the full queue.
+     */
+    private void aggregateEntryAndVersionMetrics(EntryS3Directories entryS3Directories, ExtendedGa4GhApi extendedGa4GhApi, AggregationCounts entryCounts, AggregationCounts versionCounts) {
+        try {
+            aggregateEntryMetrics(entryS3Directories.entryDirectory(), extendedGa4GhApi, entryCounts);
+        } catch (RuntimeException e) {
+            LOG.error("Could not aggregate entry-level metrics for tool ID {}", entryS3Directories.entryDirectory().toolId(), e);
+            entryCounts.skipped().incrementAndGet();
+        }
+        for (VersionS3DirectoryInfo versionDirectory : entryS3Directories.versionDirectories()) {
+            try {
+                aggregateVersionMetrics(versionDirectory, extendedGa4GhApi, versionCounts);
+            } catch (RuntimeException e) {
+                LOG.error("Could not aggregate version-level metrics for tool ID {}, version {}", versionDirectory.toolId(), versionDirectory.versionId(), e);
+                versionCounts.skipped().incrementAndGet();
+            }
+        }
+    }
 
-        runAndWaitUntilDone(runnables, threadCount);
+    private void aggregateVersionMetrics(VersionS3DirectoryInfo versionDirectory, ExtendedGa4GhApi extendedGa4GhApi, AggregationCounts counts) {
+        AthenaTablePartition partition = versionDirectory.athenaTablePartition();
+        List<String> platforms = versionDirectory.platforms();
+        String prefix = versionDirectory.versionS3KeyPrefix();
+        String name = "tool ID %s, version %s".formatted(versionDirectory.toolId(), versionDirectory.versionId());
+        Map<String, Metrics> platformToMetrics = getAggregatedMetricsForPlatforms(partition, platforms, prefix, name);
+        if (platformToMetrics.isEmpty()) {
+            LOG.error("No metrics were aggregated for {}", name);
+            counts.skipped().incrementAndGet();
+            return;
+        }
 
-        LOG.info("Completed aggregating entry-level metrics. Processed {} directories, submitted metrics for {} entries, and skipped metrics for {} entries", numberProcessed, numberSubmitted, numberSkipped);
+        try {
+            extendedGa4GhApi.aggregatedMetricsPut(platformToMetrics, versionDirectory.toolId(), versionDirectory.versionId());
+            LOG.info("Posted aggregated version-level metrics to Dockstore for {}, platform(s): {}", name, platformToMetrics.keySet());
+            counts.submitted().incrementAndGet();
+            versionSubmittedListener.accept(versionDirectory);
+        } catch (ApiException exception) {
+            // Log error and continue processing for other platforms
+            LOG.error("Could not post aggregated version-level metrics to Dockstore for {}, platform(s): {}", name, platformToMetrics.keySet(), exception);
+            counts.skipped().incrementAndGet();
+        }
+        LOG.info("Processed {} version directories", counts.processed().incrementAndGet());
     }
 
-    private void runAndWaitUntilDone(List<Runnable> runnables, int threadCount) {
-        // Create an executor with the specified number of threads
-        ExecutorService es = Executors.newFixedThreadPool(threadCount);
-        // Submit all of the runnables for execution
-        runnables.forEach(es::execute);
-        // Wait until all of the runnables are done
-        es.shutdown();
+    private void aggregateEntryMetrics(EntryS3DirectoryInfo entryDirectory, ExtendedGa4GhApi extendedGa4GhApi, AggregationCounts counts) {
+        AthenaTablePartition partition = entryDirectory.athenaTablePartition();
+        List<String> platforms = entryDirectory.platforms();
+        String prefix = entryDirectory.entryS3KeyPrefix();
+        String name = "tool ID %s".formatted(entryDirectory.toolId());
+        Map<String, Metrics> platformToMetrics = getAggregatedMetricsForPlatforms(partition, platforms, prefix, name);
+        if (platformToMetrics.isEmpty()) {
+            LOG.error("No metrics were aggregated for {}", name);
+            counts.skipped().incrementAndGet();
+            return;
+        }
+
         try {
-            es.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
-        } catch (InterruptedException e) {
-            LOG.info("InterruptedException while waiting for threads to complete");
-            es.shutdownNow();
-            Thread.currentThread().interrupt();
+            extendedGa4GhApi.aggregatedMetricsPutEntry(platformToMetrics, entryDirectory.toolId());
+            LOG.info("Posted aggregated entry-level metrics to Dockstore for {}, platform(s): {}", name, platformToMetrics.keySet());
+            counts.submitted().incrementAndGet();
+        } catch (ApiException exception) {
+            // Log error and continue processing for other platforms
+            LOG.error("Could not post aggregated entry-level metrics to Dockstore for {}, platform(s): {}", name, platformToMetrics.keySet(), exception);
+            counts.skipped().incrementAndGet();
         }
+        LOG.info("Processed {} entry directories", counts.processed().incrementAndGet());
     }
 
     /**
@@ -222,9 +292,17 @@ public class MetricsAggregatorAthenaClient {
     public Map<String, Metrics> getAggregatedMetricsForPlatforms(AthenaTablePartition athenaTablePartition, List<String> platforms, String prefix, String name) {
         LOG.info("Aggregating metrics for directory: {}", prefix);
         Map<String, Metrics> platformToMetrics = new HashMap<>();
+        if (dailyRollupTable != null) {
+            try {
+                dailyRollupTable.materialize(athenaTablePartition, executionStatusAggregator);
+            } catch (AwsServiceException | SdkClientException | InterruptedException e) {
+                // Log error and continue. Versions that weren't rolled up are aggregated from the raw executions
+                LOG.error("Could not roll up executions for {}", name, e);
+            }
+        }
         try {
             // Calculate metrics for runexecutions
-            Map<String, ExecutionStatusMetric> executionStatusMetricByPlatform = executionStatusAggregator.createMetricByPlatform(athenaTablePartition);
+            Map<String, ExecutionStatusMetric> executionStatusMetricByPlatform = createExecutionStatusMetricByPlatform(athenaTablePartition, prefix, name);
             // Calculate metrics for validationexecutions
             Map<String, ValidationStatusMetric> validationStatusMetricByPlatform = validationStatusAggregator.createMetricByPlatform(athenaTablePartition);
 
@@ -247,11 +325,29 @@ public class MetricsAggregatorAthenaClient {
         return platformToMetrics;
     }
 
-    public void dryRun(List<VersionS3DirectoryInfo> s3DirectoriesToAggregate, List<EntryS3DirectoryInfo> entryDirectories) {
-        LOG.info("These S3 entry directories will be aggregated:");
-        entryDirectories.forEach(s3Directory -> LOG.info("{}", s3Directory.entryS3KeyPrefix()));
-        LOG.info("These S3 version directories will be aggregated:");
-        s3DirectoriesToAggregate.forEach(s3Directory -> LOG.info("{}", s3Directory.versionS3KeyPrefix()));
+    /**
+     * Calculate the execution status metrics for the partition.
+     * If the S3 directory is larger than the approximation threshold, the metrics are approximated from a sample of the executions,
+     * sized so that the sample is roughly as large as the threshold. Otherwise, the metrics are exact.
+     */
+    private Map<String, ExecutionStatusMetric> createExecutionStatusMetricByPlatform(AthenaTablePartition athenaTablePartition, String prefix, String name) {
+        if (approximationThresholdBytes != null && dailyRollupTable == null && directorySizeFunction != null) {
+            final long directorySizeBytes = directorySizeFunction.applyAsLong(prefix);
+            if (directorySizeBytes > approximationThresholdBytes) {
+                final double samplePercentage = MAX_SAMPLE_PERCENTAGE * approximationThresholdBytes / directorySizeBytes;
+                LOG.info("Approximating metrics for {} from a {}% sample because its directory is {} bytes", name, samplePercentage, directorySizeBytes);
+                return executionStatusAggregator.createApproximateMetricByPlatform(athenaTablePartition, samplePercentage, name);
+            }
+        }
+        return executionStatusAggregator.createMetricByPlatform(athenaTablePartition);
+    }
+
+    public void dryRun(EntryS3DirectoriesProducer producer) {
+        LOG.info("These S3 entry directories, and the S3 version directories beneath them, will be aggregated:");
+        producer.produce(entryS3Directories -> {
+            LOG.info("{}", entryS3Directories.entryDirectory().entryS3KeyPrefix());
+            entryS3Directories.versionDirectories().forEach(s3Directory -> LOG.info("    {}", s3Directory.versionS3KeyPrefix()));
+        });
     }
 
     /**
@@ -277,4 +373,33 @@ public class MetricsAggregatorAthenaClient {
 
     public record AthenaTablePartition(Set<String> entity, Set<String> registry, Set<String> org, Set<String> name, Set<String> version) {
     }
+
+    /**
+     * Produces the entry S3 directories to aggregate by passing each one to a consumer.
+     */
+    @FunctionalInterface
+    public interface EntryS3DirectoriesProducer {
+        void produce(Consumer<EntryS3Directories> consumer);
+    }
+
+    /**
+     * Counts of the directories that were processed, submitted, and skipped.
+     */
+    private record AggregationCounts(AtomicInteger processed, AtomicInteger submitted, AtomicInteger skipped) {
+        AggregationCounts() {
+            this(new AtomicInteger(0), new AtomicInteger(0), new AtomicInteger(0));
+        }
+
+        int numberProcessed() {
+            return processed.get();
+        }
+
+        int numberSubmitted() {
+            return submitted.get();
+        }
+
+        int numberSkipped() {
+            return skipped.get();
+        }
+    }
 }
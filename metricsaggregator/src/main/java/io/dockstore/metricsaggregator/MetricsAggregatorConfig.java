@@ -32,8 +32,9 @@ public class MetricsAggregatorConfig {
         SubnodeConfiguration athenaSection = config.getSection("athena");
 
         this.dockstoreConfig = new DockstoreConfig(dockstoreSection.getString("server-url", "http://localhost:8080"), dockstoreSection.getString("token"));
-        this.s3Config = new S3Config(s3Section.getString("bucketName", "local-dockstore-metrics-data"), s3Section.getString("endpointOverride"));
-        this.athenaConfig = new AthenaConfig(athenaSection.getString("workgroup"));
+        this.s3Config = new S3Config(s3Section.getString("bucketName", "local-dockstore-metrics-data"), s3Section.getString("endpointOverride"), s3Section.getString("prefixTriePath"),
+                s3Section.getString("inventoryLocation"), s3Section.getString("snapshotPath"));
+        this.athenaConfig = new AthenaConfig(athenaSection.getString("workgroup"), athenaSection.getString("rollupLocation"), athenaSection.getLong("approximationThresholdBytes", null));
     }
 
     public DockstoreConfig getDockstoreConfig() {
@@ -51,9 +52,23 @@ public class MetricsAggregatorConfig {
     public record DockstoreConfig(String serverUrl, String token) {
     }
 
-    public record S3Config(String bucket, String endpointOverride) {
+    /**
+     * S3 configuration.
+     * @param bucket the S3 bucket containing the metrics data
+     * @param endpointOverride optional S3 endpoint override
+     * @param prefixTriePath optional path of a file that the listing of the bucket is saved to and loaded from, so that later runs only list the versions with new executions
+     * @param inventoryLocation optional S3 URI or local path of an S3 inventory of the bucket, which is read instead of listing the bucket
+     * @param snapshotPath optional path of a file containing the statistics of each aggregated version directory, so that --allS3 only aggregates the version directories that changed
+     */
+    public record S3Config(String bucket, String endpointOverride, String prefixTriePath, String inventoryLocation, String snapshotPath) {
     }
 
-    public record AthenaConfig(String workgroup) {
+    /**
+     * Athena configuration.
+     * @param workgroup the Athena workgroup that queries are executed in
+     * @param rollupLocation optional S3 location of the daily rollup table. If null, metrics are aggregated from every raw execution
+     * @param approximationThresholdBytes optional S3 directory size above which metrics are approximated from a sample of the executions. If null, metrics are always exact
+     */
+    public record AthenaConfig(String workgroup, String rollupLocation, Long approximationThresholdBytes) {
     }
 }
@@ -19,36 +19,86 @@ package io.dockstore.metricsaggregator;
 
 import io.dockstore.common.S3ClientHelper;
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.AthenaTablePartition;
+import io.dockstore.metricsaggregator.S3DirectoryWalker.Throttle;
+import io.dockstore.metricsaggregator.S3PrefixTrie.DirectoryStatistics;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayDeque;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.CommonPrefix;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
-import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
 
-public class MetricsAggregatorS3Client {
+public class MetricsAggregatorS3Client implements AutoCloseable {
 
     private static final Logger LOG = LoggerFactory.getLogger(MetricsAggregatorS3Client.class);
-
-    private final String bucketName;
+    // The number of slash-terminated elements in an entry's S3 key prefix: entity/registry/org/name/
+    private static final int ENTRY_PREFIX_DEPTH = 4;
+    // The number of slash-terminated elements in a version's S3 key prefix: entity/registry/org/name/version/
+    private static final int VERSION_PREFIX_DEPTH = 5;
+    private static final int MAX_CONCURRENT_LIST_REQUESTS = 32;
+    // The walk stops starting listings when this many listed entries are waiting for the consumer, and starts again once the consumer has drained the queue
+    // down to the low-water mark. The listings that are in flight still complete, so the queue can hold up to MAX_CONCURRENT_LIST_REQUESTS more entries
+    private static final int LISTED_ENTRY_QUEUE_HIGH_WATER_MARK = MAX_CONCURRENT_LIST_REQUESTS;
+    private static final int LISTED_ENTRY_QUEUE_LOW_WATER_MARK = LISTED_ENTRY_QUEUE_HIGH_WATER_MARK / 2;
+    // Marks the end of the queue of listed entries. No entry has an empty prefix
+    private static final String END_OF_LISTED_ENTRIES = "";
 
     private final S3Client s3Client;
+    private final S3AsyncClient s3AsyncClient;
+    private final S3DirectoryWalker s3DirectoryWalker;
+    // Every directory query is answered from the prefix trie, which is filled by listing each prefix once
+    private final S3PrefixTrie prefixTrie = new S3PrefixTrie();
+    // The prefixes whose objects were all listed into the prefix trie by this client
+    private final Set<String> listedPrefixes = ConcurrentHashMap.newKeySet();
+    // The entry prefixes that were loaded from a saved prefix trie
+    private final Set<String> loadedEntryPrefixes = ConcurrentHashMap.newKeySet();
+    // Guards the start and end of each listing. It's never held while a listing is awaited or its entries are passed to a consumer
+    private final Object listingLock = new Object();
+    // The root prefixes of the listings in flight, mapped to their listings. Guarded by listingLock
+    private final Map<String, CompletableFuture<Void>> prefixToListing = new HashMap<>();
+    // If true, the prefix trie was loaded from an S3 inventory, which is used instead of listing the whole bucket
+    private boolean inventoryLoaded = false;
 
     public MetricsAggregatorS3Client(String bucketName) {
-        this.bucketName = bucketName;
-        this.s3Client = S3ClientHelper.getS3Client();
+        this(S3ClientHelper.getS3Client(), S3AsyncClient.create(), bucketName);
     }
 
     public MetricsAggregatorS3Client(String bucketName, String s3EndpointOverride) throws URISyntaxException {
-        this.bucketName = bucketName;
-        this.s3Client = S3ClientHelper.createS3Client(s3EndpointOverride);
+        this(S3ClientHelper.createS3Client(s3EndpointOverride), S3AsyncClient.builder().endpointOverride(new URI(s3EndpointOverride)).forcePathStyle(true).build(), bucketName);
+    }
+
+    MetricsAggregatorS3Client(S3Client s3Client, S3AsyncClient s3AsyncClient, String bucketName) {
+        this.s3Client = s3Client;
+        this.s3AsyncClient = s3AsyncClient;
+        this.s3DirectoryWalker = new S3DirectoryWalker(s3AsyncClient, bucketName, MAX_CONCURRENT_LIST_REQUESTS);
     }
 
     public List<VersionS3DirectoryInfo> getVersionDirectoriesForTrsId(String trsId) {
@@ -109,29 +159,432 @@ public class MetricsAggregatorS3Client {
      * @return
      */
     public List<VersionS3DirectoryInfo> getVersionDirectories(String rootPrefix) {
-        Queue<String> prefixesToProcess = new ArrayDeque<>(List.of(rootPrefix));
-        List<VersionS3DirectoryInfo> s3DirectoryInfos = new ArrayList<>();
-        while (!prefixesToProcess.isEmpty()) {
-            String prefix = prefixesToProcess.remove();
-            List<String> subdirectories = retrieveSubdirectories(prefix);
-            boolean isVersionDirectory = !S3ClientHelper.getVersionName(prefix).isEmpty();
-            if (isVersionDirectory) {
-                VersionS3DirectoryInfo info = createVersionS3DirectoryInfo(prefix, subdirectories);
-                s3DirectoryInfos.add(info);
-            } else {
-                prefixesToProcess.addAll(subdirectories);
+        refresh(List.of(rootPrefix));
+        return getVersionDirectoriesFromTrie(rootPrefix);
+    }
+
+    /**
+     * Walks the bucket and passes each entry, along with all of its version directories, to the consumer as soon as all of the entry's objects have been listed.
+     * The entry directories are listed concurrently in the background while the consumer is processing the entries that were already listed.
+     * If an S3 inventory was loaded, the entries are read from the inventory, and from the directories that were refreshed since it was loaded, instead of listing the bucket.
+     * The consumer is called from the calling thread. While the bucket is being walked, a directory that wasn't listed yet can't be queried from another thread
+     * until the walk is done, but the directories of the entries that were passed to the consumer can.
+     * @param consumer
+     */
+    public void walkEntryDirectories(Consumer<EntryS3Directories> consumer) {
+        final boolean walkInventory;
+        synchronized (listingLock) {
+            walkInventory = inventoryLoaded;
+        }
+        if (walkInventory) {
+            LOG.info("Walking all entry directories in the S3 inventory");
+            prefixTrie.getDirectoriesAtDepth("", ENTRY_PREFIX_DEPTH).forEach(entryPrefix -> getEntryS3DirectoriesFromTrie(entryPrefix).ifPresent(consumer));
+            return;
+        }
+        LOG.info("Walking all entry directories");
+        ListedEntryQueue listedEntryPrefixes = new ListedEntryQueue();
+        // Every directory is listed again, so the directories that were listed before are discarded
+        CompletableFuture<Void> walk = startListing(() -> List.of(""), (entryPrefix, subdirectories) -> listedEntryPrefixes.put(entryPrefix), listedEntryPrefixes.getThrottle());
+        if (processListedEntries(walk, listedEntryPrefixes, entryPrefix -> getEntryS3DirectoriesFromTrie(entryPrefix).ifPresent(consumer))) {
+            listedPrefixes.add("");
+        }
+    }
+
+    /**
+     * Returns the entry directory and all of its version directories for the TRS ID, or an empty Optional if there are no version directories for the TRS ID.
+     * @param trsId
+     * @return
+     */
+    public Optional<EntryS3Directories> getEntryS3DirectoriesForTrsId(String trsId) {
+        List<EntryS3Directories> entryS3Directories = new ArrayList<>();
+        listEntryDirectoriesForTrsIds(List.of(trsId), entryS3Directories::add);
+        return entryS3Directories.stream().findFirst();
+    }
+
+    /**
+     * Returns the entry directory for the TRS ID and the version directories for the specified versions, or an empty Optional if there are no version directories for the specified versions.
+     * The entry directory includes all versions of the entry so that entry-level metrics are aggregated across every version.
+     * If the entry was loaded from a saved prefix trie or an S3 inventory, only the specified versions are listed again, and the other versions of the entry are read from the prefix trie.
+     * @param trsId
+     * @param versionNames
+     * @return
+     */
+    public Optional<EntryS3Directories> getEntryS3DirectoriesForTrsIdVersions(String trsId, Collection<String> versionNames) {
+        List<EntryS3Directories> entryS3Directories = new ArrayList<>();
+        listEntryDirectoriesForTrsIdVersions(Map.of(trsId, versionNames), entryS3Directories::add);
+        return entryS3Directories.stream().findFirst();
+    }
+
+    /**
+     * Lists the directories of the entries with the TRS IDs concurrently, and passes each entry, along with all of its version directories, to the consumer as soon as it's listed.
+     * TRS IDs that have the same S3 key prefix are only listed once. The consumer is called from the calling thread.
+     * @param trsIds
+     * @param consumer
+     */
+    public void listEntryDirectoriesForTrsIds(Collection<String> trsIds, Consumer<EntryS3Directories> consumer) {
+        LOG.info("Getting entry directories for {} TRS IDs", trsIds.size());
+        Map<String, Set<String>> entryPrefixToVersionPrefixes = new LinkedHashMap<>();
+        trsIds.forEach(trsId -> entryPrefixToVersionPrefixes.put(getEntryPrefix(trsId), Set.of()));
+        listEntryDirectories(entryPrefixToVersionPrefixes, consumer);
+    }
+
+    /**
+     * Lists the directories of the specified versions of each TRS ID concurrently, and passes each entry, along with the specified version directories, to the consumer as soon as it's listed.
+     * Entries without any of the specified version directories aren't passed to the consumer. The consumer is called from the calling thread.
+     * The entry directory includes all versions of the entry so that entry-level metrics are aggregated across every version.
+     * If an entry was loaded from a saved prefix trie or an S3 inventory, only the specified versions are listed again, and the other versions of the entry are read from the prefix trie.
+     * @param trsIdToVersionNames
+     * @param consumer
+     */
+    public void listEntryDirectoriesForTrsIdVersions(Map<String, ? extends Collection<String>> trsIdToVersionNames, Consumer<EntryS3Directories> consumer) {
+        LOG.info("Getting entry directories for {} versions of {} TRS IDs", trsIdToVersionNames.values().stream().mapToInt(Collection::size).sum(), trsIdToVersionNames.size());
+        listEntryDirectories(getEntryPrefixToVersionPrefixes(trsIdToVersionNames), consumer);
+    }
+
+    /**
+     * Lists the version directories of each TRS ID again, so that the executions that were submitted to them after the prefix trie was loaded are found.
+     * If an entry wasn't loaded from a saved prefix trie or an S3 inventory, the whole entry is listed.
+     * @param trsIdToVersionNames
+     */
+    public void refreshVersionDirectories(Map<String, ? extends Collection<String>> trsIdToVersionNames) {
+        refresh(getEntryPrefixToVersionPrefixes(trsIdToVersionNames).entrySet().stream()
+            .flatMap(entry -> getPrefixesToRefresh(entry.getKey(), entry.getValue()).stream())
+            .toList());
+    }
+
+    /**
+     * Returns the total size, in bytes, of the objects under the S3 key prefix.
+     * @param prefix
+     * @return
+     */
+    public long getDirectorySizeBytes(String prefix) {
+        return getDirectoryStatistics(prefix).map(DirectoryStatistics::sizeBytes).orElse(0L);
+    }
+
+    /**
+     * Returns the statistics of the objects under the S3 key prefix, or an empty Optional if there are no objects under it.
+     * @param prefix
+     * @return
+     */
+    public Optional<DirectoryStatistics> getDirectoryStatistics(String prefix) {
+        ensureListed(prefix);
+        return prefixTrie.getStatistics(prefix);
+    }
+
+    /**
+     * Reads a prefix trie that was saved by a previous run. The entries in the saved trie aren't listed again,
+     * except for the versions that are requested by getEntryS3DirectoriesForTrsIdVersions, which are assumed to have new executions.
+     * @param path
+     * @throws IOException
+     */
+    public void loadPrefixTrie(Path path) throws IOException {
+        synchronized (listingLock) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                prefixTrie.read(reader);
             }
+            loadedEntryPrefixes.addAll(prefixTrie.getDirectoriesAtDepth("", ENTRY_PREFIX_DEPTH));
+            LOG.info("Loaded {} entry directories from the prefix trie at {}", loadedEntryPrefixes.size(), path);
         }
-        return s3DirectoryInfos;
     }
 
-    private List<String> retrieveSubdirectories(String prefix) {
-        List<String> subdirectories = new ArrayList<>();
-        ListObjectsV2Request request = ListObjectsV2Request.builder().bucket(bucketName).prefix(prefix).delimiter("/").build();
-        for (ListObjectsV2Response listObjectsV2Response: s3Client.listObjectsV2Paginator(request)) {
-            subdirectories.addAll(listObjectsV2Response.commonPrefixes().stream().map(CommonPrefix::prefix).toList());
+    /**
+     * Replaces the prefix trie with the objects in an S3 inventory report, so that the bucket doesn't need to be listed.
+     * The entries in the inventory aren't listed again, except for the versions that are refreshed because they have executions that are newer than the inventory.
+     * The bucket can't be listed by modified time, so the objects added after the inventory was created are only found in the versions that are refreshed.
+     * @param inventoryLocation the S3 URI or local path of the inventory manifest, or of the inventory configuration directory containing the reports
+     * @throws IOException
+     */
+    public void loadInventory(String inventoryLocation) throws IOException {
+        synchronized (listingLock) {
+            prefixTrie.removeDirectory("");
+            listedPrefixes.clear();
+            loadedEntryPrefixes.clear();
+            new S3InventoryReader(s3Client).readObjects(inventoryLocation, this::addObjectToTrie);
+            loadedEntryPrefixes.addAll(prefixTrie.getDirectoriesAtDepth("", ENTRY_PREFIX_DEPTH));
+            inventoryLoaded = true;
+            LOG.info("Loaded {} entry directories from the S3 inventory", loadedEntryPrefixes.size());
         }
-        return subdirectories;
+    }
+
+    /**
+     * Saves the prefix trie so that a later run can load it instead of listing every entry again.
+     * @param path
+     * @throws IOException
+     */
+    public void savePrefixTrie(Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            prefixTrie.write(writer);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Saved the prefix trie to {}", path);
+    }
+
+    /**
+     * Lists every object beneath the prefixes into the prefix trie, replacing the objects that the trie held for the prefixes.
+     * Prefixes that were already listed by this client aren't listed again.
+     * Prefixes above the entry level are walked down to the entry directories, and each entry directory is listed with a single non-delimited listing.
+     * @param prefixes
+     */
+    private void refresh(Collection<String> prefixes) {
+        List<String> prefixesToList = new ArrayList<>();
+        CompletableFuture<Void> listing = startListing(() -> {
+            prefixesToList.clear();
+            prefixes.stream().filter(prefix -> !isListed(prefix)).distinct().forEach(prefixesToList::add);
+            return prefixesToList;
+        }, (prefix, subdirectories) -> { }, new Throttle());
+        await(listing);
+        // The listing also records the prefixes when it completes, but that can happen after the wait returns
+        if (!listing.isCompletedExceptionally()) {
+            listedPrefixes.addAll(prefixesToList);
+        }
+    }
+
+    /**
+     * Starts listing every object beneath the prefixes into the prefix trie, replacing the objects that the trie held for the prefixes. If a listing of an overlapping prefix
+     * is in flight, it's awaited first, so that the objects beneath a prefix are never listed into the trie twice. The listing lock is only held while the listing is started,
+     * so the other threads can query and list the directories that don't overlap it while it's in flight.
+     * @param prefixesToList supplies the prefixes to list. It's called while holding the listing lock, again after each wait for an overlapping listing
+     * @param leafConsumer called with each leaf directory after it's listed, from the threads that complete the S3 requests
+     * @param throttle pauses the listing while the consumer of the leaf directories is behind
+     * @return the listing, which completes when every object has been listed
+     */
+    private CompletableFuture<Void> startListing(Supplier<Collection<String>> prefixesToList, BiConsumer<String, List<String>> leafConsumer, Throttle throttle) {
+        List<CompletableFuture<Void>> overlappingListings;
+        do {
+            synchronized (listingLock) {
+                final List<String> prefixes = List.copyOf(prefixesToList.get());
+                overlappingListings = prefixToListing.entrySet().stream()
+                    .filter(entry -> prefixes.stream().anyMatch(prefix -> prefix.startsWith(entry.getKey()) || entry.getKey().startsWith(prefix)))
+                    .map(Map.Entry::getValue)
+                    .distinct()
+                    .toList();
+                if (overlappingListings.isEmpty()) {
+                    return listObjects(prefixes, leafConsumer, throttle);
+                }
+            }
+            try {
+                CompletableFuture.allOf(overlappingListings.toArray(CompletableFuture[]::new)).exceptionally(throwable -> null).get();
+            } catch (InterruptedException e) {
+                LOG.info("InterruptedException while waiting for S3 directories to be listed");
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (ExecutionException e) {
+                // Can't happen, the failures of the overlapping listings are handled by the threads that started them
+                throw new CompletionException(e.getCause());
+            }
+        } while (true);
+    }
+
+    /**
+     * Lists the prefixes, which don't overlap any listing in flight, and records the listing as in flight until it completes. Must be called while holding the listing lock.
+     * @param prefixes
+     * @param leafConsumer
+     * @param throttle
+     * @return
+     */
+    private CompletableFuture<Void> listObjects(List<String> prefixes, BiConsumer<String, List<String>> leafConsumer, Throttle throttle) {
+        if (prefixes.contains("")) {
+            listedPrefixes.clear();
+            loadedEntryPrefixes.clear();
+        }
+        prefixes.forEach(prefixTrie::removeDirectory);
+        CompletableFuture<Void> listing = s3DirectoryWalker.listObjects(prefixes, MetricsAggregatorS3Client::isListedWithoutDelimiter,
+            (prefix, subdirectories) -> {
+                listedPrefixes.add(prefix);
+                leafConsumer.accept(prefix, subdirectories);
+            },
+            this::addObjectToTrie,
+            throttle);
+        prefixes.forEach(prefix -> prefixToListing.put(prefix, listing));
+        listing.whenComplete((result, throwable) -> {
+            synchronized (listingLock) {
+                prefixes.forEach(prefix -> prefixToListing.remove(prefix, listing));
+                if (throwable == null) {
+                    listedPrefixes.addAll(prefixes);
+                }
+            }
+        });
+        return listing;
+    }
+
+    /**
+     * Lists the entries concurrently and passes each one to the consumer, from the calling thread, as soon as all of its prefixes have been listed.
+     * Entries that were already listed are passed to the consumer without listing them again.
+     * While the entries are being listed, a directory beneath them that wasn't listed yet can't be queried from another thread until the listing is done,
+     * but the directories of the entries that were passed to the consumer, and the directories of other entries, can.
+     * @param entryPrefixToVersionPrefixes maps the S3 key prefix of each entry to the S3 key prefixes of the versions to pass to the consumer, or to an empty set to pass every version
+     * @param consumer
+     */
+    private void listEntryDirectories(Map<String, Set<String>> entryPrefixToVersionPrefixes, Consumer<EntryS3Directories> consumer) {
+        Map<String, String> prefixToEntryPrefix = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> entryPrefixToRemainingListings = new ConcurrentHashMap<>();
+        ListedEntryQueue listedEntryPrefixes = new ListedEntryQueue();
+        CompletableFuture<Void> walk = startListing(() -> {
+            prefixToEntryPrefix.clear();
+            entryPrefixToRemainingListings.clear();
+            entryPrefixToVersionPrefixes.forEach((entryPrefix, versionPrefixes) -> getPrefixesToRefresh(entryPrefix, versionPrefixes).stream()
+                .filter(prefix -> !isListed(prefix))
+                .forEach(prefix -> prefixToEntryPrefix.put(prefix, entryPrefix)));
+            prefixToEntryPrefix.values().forEach(entryPrefix -> entryPrefixToRemainingListings.computeIfAbsent(entryPrefix, key -> new AtomicInteger(0)).incrementAndGet());
+            return prefixToEntryPrefix.keySet();
+        }, (prefix, subdirectories) -> {
+            final String entryPrefix = prefixToEntryPrefix.get(prefix);
+            if (entryPrefixToRemainingListings.get(entryPrefix).decrementAndGet() == 0) {
+                listedEntryPrefixes.put(entryPrefix);
+            }
+        }, listedEntryPrefixes.getThrottle());
+        final Consumer<String> entryPrefixConsumer = entryPrefix -> getEntryS3DirectoriesFromTrie(entryPrefix, entryPrefixToVersionPrefixes.get(entryPrefix)).ifPresent(consumer);
+        // The entries that were already listed are passed to the consumer while the other entries are being listed
+        try {
+            entryPrefixToVersionPrefixes.keySet().stream().filter(entryPrefix -> !entryPrefixToRemainingListings.containsKey(entryPrefix)).forEach(entryPrefixConsumer);
+        } catch (RuntimeException e) {
+            walk.cancel(true);
+            listedEntryPrefixes.stop();
+            throw e;
+        }
+        processListedEntries(walk, listedEntryPrefixes, entryPrefixConsumer);
+    }
+
+    /**
+     * Passes the prefixes of the listed entries to the consumer, from the calling thread, until the walk is done and all of the listed entries have been processed.
+     * The walk is paused while too many listed entries are waiting in the queue, so the listing doesn't get ahead of the consumer.
+     * @return true if the walk completed, false if the thread was interrupted
+     */
+    private static boolean processListedEntries(CompletableFuture<Void> walk, ListedEntryQueue listedEntryPrefixes, Consumer<String> entryPrefixConsumer) {
+        // Every entry that the walk listed is queued before the walk is done, so the end marker comes after them
+        walk.whenComplete((result, throwable) -> listedEntryPrefixes.put(END_OF_LISTED_ENTRIES));
+        try {
+            String entryPrefix = listedEntryPrefixes.take();
+            while (!END_OF_LISTED_ENTRIES.equals(entryPrefix)) {
+                entryPrefixConsumer.accept(entryPrefix);
+                entryPrefix = listedEntryPrefixes.take();
+            }
+        } catch (InterruptedException e) {
+            LOG.info("InterruptedException while listing entry directories");
+            walk.cancel(true);
+            listedEntryPrefixes.stop();
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (RuntimeException e) {
+            walk.cancel(true);
+            listedEntryPrefixes.stop();
+            throw e;
+        }
+        await(walk);
+        return true;
+    }
+
+    /**
+     * Returns the prefixes to list to find the new executions of the versions of an entry. Only the versions are listed if the entry was loaded from a saved prefix trie or an S3 inventory.
+     * @param entryPrefix
+     * @param versionPrefixes the prefixes of the versions, or an empty set for every version
+     * @return
+     */
+    private Collection<String> getPrefixesToRefresh(String entryPrefix, Set<String> versionPrefixes) {
+        return versionPrefixes.isEmpty() || !loadedEntryPrefixes.contains(entryPrefix) ? List.of(entryPrefix) : versionPrefixes;
+    }
+
+    private static String getEntryPrefix(String trsId) {
+        return S3ClientHelper.convertToolIdToPartialKey(trsId) + "/";
+    }
+
+    private static Map<String, Set<String>> getEntryPrefixToVersionPrefixes(Map<String, ? extends Collection<String>> trsIdToVersionNames) {
+        // Different TRS IDs can have the same S3 key prefix, so merge their versions
+        Map<String, Set<String>> entryPrefixToVersionPrefixes = new LinkedHashMap<>();
+        trsIdToVersionNames.forEach((trsId, versionNames) -> {
+            final String entryPrefix = getEntryPrefix(trsId);
+            versionNames.forEach(versionName -> entryPrefixToVersionPrefixes.computeIfAbsent(entryPrefix, key -> new HashSet<>()).add(entryPrefix + versionName + "/"));
+        });
+        return entryPrefixToVersionPrefixes;
+    }
+
+    /**
+     * Lists the prefix into the prefix trie if it wasn't listed by this client or loaded from a saved trie.
+     * @param prefix
+     */
+    private void ensureListed(String prefix) {
+        if (!isListed(prefix) && !isLoaded(prefix)) {
+            refresh(List.of(prefix));
+        }
+    }
+
+    private boolean isListed(String prefix) {
+        // The prefix was listed if it or one of its ancestors was listed
+        String ancestor = prefix;
+        while (!listedPrefixes.contains(ancestor)) {
+            if (ancestor.isEmpty()) {
+                return false;
+            }
+            ancestor = ancestor.substring(0, ancestor.lastIndexOf('/', ancestor.length() - 2) + 1);
+        }
+        return true;
+    }
+
+    private boolean isLoaded(String prefix) {
+        String[] elements = prefix.split("/");
+        return elements.length >= ENTRY_PREFIX_DEPTH && loadedEntryPrefixes.contains(String.join("/", Arrays.copyOf(elements, ENTRY_PREFIX_DEPTH)) + "/");
+    }
+
+    private void addObjectToTrie(S3Object s3Object) {
+        prefixTrie.addObject(s3Object.key(), s3Object.size() == null ? 0 : s3Object.size(), s3Object.lastModified());
+    }
+
+    private List<VersionS3DirectoryInfo> getVersionDirectoriesFromTrie(String rootPrefix) {
+        return prefixTrie.getDirectoriesAtDepth(rootPrefix, VERSION_PREFIX_DEPTH).stream()
+            .map(prefix -> createVersionS3DirectoryInfo(prefix, prefixTrie.getSubdirectories(prefix)))
+            .toList();
+    }
+
+    private Optional<EntryS3Directories> getEntryS3DirectoriesFromTrie(String entryPrefix) {
+        return getEntryS3DirectoriesFromTrie(entryPrefix, Set.of());
+    }
+
+    /**
+     * Returns the entry directory and the specified version directories from the prefix trie, or an empty Optional if there are none of the specified version directories.
+     * @param entryPrefix
+     * @param versionPrefixes the prefixes of the versions to return, or an empty set to return every version
+     * @return
+     */
+    private Optional<EntryS3Directories> getEntryS3DirectoriesFromTrie(String entryPrefix, Set<String> versionPrefixes) {
+        List<VersionS3DirectoryInfo> allVersionDirectories = getVersionDirectoriesFromTrie(entryPrefix);
+        List<VersionS3DirectoryInfo> versionDirectories = versionPrefixes.isEmpty() ? allVersionDirectories : allVersionDirectories.stream()
+            .filter(versionDirectory -> versionPrefixes.contains(versionDirectory.versionS3KeyPrefix()))
+            .toList();
+        if (versionDirectories.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new EntryS3Directories(createEntryS3DirectoryInfo(entryPrefix, allVersionDirectories), versionDirectories));
+    }
+
+    private static boolean isListedWithoutDelimiter(String prefix) {
+        // Entry directories, and the directories beneath them, are small enough to be listed without a delimiter
+        return prefix.chars().filter(c -> c == '/').count() >= ENTRY_PREFIX_DEPTH;
+    }
+
+    /**
+     * Waits for the walk to complete. If the walk fails, the exception that caused the failure is thrown.
+     * If the thread is interrupted while waiting, the walk is cancelled.
+     */
+    private static void await(CompletableFuture<Void> walk) {
+        try {
+            walk.get();
+        } catch (InterruptedException e) {
+            LOG.info("InterruptedException while waiting for S3 directories to be listed");
+            walk.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Closes the S3 clients.
+     */
+    @Override
+    public void close() {
+        s3AsyncClient.close();
+        s3Client.close();
     }
 
     @SuppressWarnings("checkstyle:magicnumber")
@@ -155,9 +608,11 @@ public class MetricsAggregatorS3Client {
             .map(versionDirectory -> S3ClientHelper.convertToolIdToPartialKey(versionDirectory.toolId()) + "/")
             .distinct()
             .toList();
-        // For each entry prefix, retrieve all of the corresponding version directory information and convert to entry directory information.
+        // For each entry prefix, retrieve all of the corresponding version directory information from the prefix trie and convert to entry directory information.
+        // The entries were already listed when the version directories were retrieved, so they aren't listed again.
+        entryPrefixes.forEach(this::ensureListed);
         return entryPrefixes.stream()
-            .map(prefix -> createEntryS3DirectoryInfo(prefix, getVersionDirectories(prefix)))
+            .map(prefix -> createEntryS3DirectoryInfo(prefix, getVersionDirectoriesFromTrie(prefix)))
             .toList();
     }
 
@@ -183,4 +638,56 @@ public class MetricsAggregatorS3Client {
 
     public record EntryS3DirectoryInfo(String toolId, List<String> versionIds, List<String> platforms, String entryS3KeyPrefix, AthenaTablePartition athenaTablePartition) {
     }
+
+    /**
+     * An entry directory and the version directories of the entry to aggregate.
+     * @param entryDirectory
+     * @param versionDirectories
+     */
+    public record EntryS3Directories(EntryS3DirectoryInfo entryDirectory, List<VersionS3DirectoryInfo> versionDirectories) {
+    }
+
+    /**
+     * A queue of the prefixes of the listed entries. The listing threads never block on it: instead, the walk is paused while the queue is above its high-water mark,
+     * and resumed by the consumer once it has drained the queue to its low-water mark, so the listing doesn't get ahead of the consumer.
+     * Once the consumer stops, the entries are discarded.
+     */
+    private static final class ListedEntryQueue {
+        private final BlockingQueue<String> entryPrefixes = new LinkedBlockingQueue<>();
+        private final Throttle throttle = new Throttle();
+        private volatile boolean stopped = false;
+
+        private Throttle getThrottle() {
+            return throttle;
+        }
+
+        private void put(String entryPrefix) {
+            if (stopped) {
+                return;
+            }
+            // Pausing and resuming are decided under the same lock, so that the consumer can't resume the walk between a put and its pause
+            synchronized (this) {
+                entryPrefixes.add(entryPrefix);
+                if (entryPrefixes.size() >= LISTED_ENTRY_QUEUE_HIGH_WATER_MARK && !throttle.isPaused()) {
+                    throttle.pause();
+                }
+            }
+        }
+
+        private String take() throws InterruptedException {
+            final String entryPrefix = entryPrefixes.take();
+            synchronized (this) {
+                if (throttle.isPaused() && entryPrefixes.size() <= LISTED_ENTRY_QUEUE_LOW_WATER_MARK) {
+                    // Starts the next listings from this thread. Starting a listing doesn't wait for it
+                    throttle.resume();
+                }
+            }
+            return entryPrefix;
+        }
+
+        private void stop() {
+            stopped = true;
+            entryPrefixes.clear();
+        }
+    }
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Walks the "directories" of an S3 bucket using asynchronous delimiter listings.
+ * Up to a maximum number of prefixes are listed concurrently, and the pages of each listing are requested asynchronously,
+ * so the walk isn't limited by the round-trip time of each listing.
+ * The most recently found directories are listed first, so the walk is depth-first, and the directories that are waiting to be listed
+ * are the subdirectories along the paths being listed rather than a whole level of the bucket.
+ * A walk can be paused with a {@link Throttle}, so that a consumer that can't keep up stops the walk from listing more directories instead of blocking the S3 threads.
+ */
+public class S3DirectoryWalker {
+
+    private final S3AsyncClient s3AsyncClient;
+    private final String bucketName;
+    private final int maxConcurrentRequests;
+
+    public S3DirectoryWalker(S3AsyncClient s3AsyncClient, String bucketName, int maxConcurrentRequests) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.bucketName = bucketName;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Walks the directories beneath the root prefixes. Each directory that satisfies the leaf predicate is listed and passed to the leaf consumer,
+     * along with its subdirectories, as soon as its listing is complete. The subdirectories of leaf directories aren't walked.
+     * The leaf consumer is called concurrently from the threads that complete the S3 requests, so it must be thread-safe and shouldn't block.
+     * Cancelling the returned future stops the walk from listing any more directories.
+     * @param rootPrefixes the prefixes to start walking from
+     * @param isLeafDirectory
+     * @param leafConsumer
+     * @return a future that completes when every directory has been walked, or completes exceptionally if a listing fails
+     */
+    public CompletableFuture<Void> walk(Collection<String> rootPrefixes, Predicate<String> isLeafDirectory, BiConsumer<String, List<String>> leafConsumer) {
+        return walk(rootPrefixes, isLeafDirectory, leafConsumer, new Throttle());
+    }
+
+    /**
+     * Walks the directories beneath the root prefixes like {@link #walk(Collection, Predicate, BiConsumer)}, but doesn't start listing another directory while the throttle is paused.
+     * The listings that are in flight when the throttle is paused still complete.
+     * @param rootPrefixes the prefixes to start walking from
+     * @param isLeafDirectory
+     * @param leafConsumer
+     * @param throttle
+     * @return a future that completes when every directory has been walked, or completes exceptionally if a listing fails
+     */
+    public CompletableFuture<Void> walk(Collection<String> rootPrefixes, Predicate<String> isLeafDirectory, BiConsumer<String, List<String>> leafConsumer, Throttle throttle) {
+        return start(rootPrefixes, new Walk(isLeafDirectory, leafConsumer, null, throttle));
+    }
+
+    /**
+     * Walks the directories beneath the root prefixes until reaching directories that satisfy the leaf predicate, then lists every object beneath each leaf directory
+     * with a single non-delimited listing. Every object that's listed is passed to the object consumer, and each leaf directory is passed to the leaf consumer,
+     * with an empty list of subdirectories, after all of its objects have been passed to the object consumer.
+     * Both consumers are called concurrently from the threads that complete the S3 requests, so they must be thread-safe and shouldn't block.
+     * @param rootPrefixes the prefixes to start walking from
+     * @param isLeafDirectory
+     * @param leafConsumer
+     * @param objectConsumer
+     * @return a future that completes when every object has been listed, or completes exceptionally if a listing fails
+     */
+    public CompletableFuture<Void> listObjects(Collection<String> rootPrefixes, Predicate<String> isLeafDirectory, BiConsumer<String, List<String>> leafConsumer, Consumer<S3Object> objectConsumer) {
+        return listObjects(rootPrefixes, isLeafDirectory, leafConsumer, objectConsumer, new Throttle());
+    }
+
+    /**
+     * Lists every object beneath the leaf directories like {@link #listObjects(Collection, Predicate, BiConsumer, Consumer)}, but doesn't start listing another directory
+     * while the throttle is paused. The listings that are in flight when the throttle is paused still complete.
+     * @param rootPrefixes the prefixes to start walking from
+     * @param isLeafDirectory
+     * @param leafConsumer
+     * @param objectConsumer
+     * @param throttle
+     * @return a future that completes when every object has been listed, or completes exceptionally if a listing fails
+     */
+    public CompletableFuture<Void> listObjects(Collection<String> rootPrefixes, Predicate<String> isLeafDirectory, BiConsumer<String, List<String>> leafConsumer, Consumer<S3Object> objectConsumer,
+            Throttle throttle) {
+        return start(rootPrefixes, new Walk(isLeafDirectory, leafConsumer, objectConsumer, throttle));
+    }
+
+    private static CompletableFuture<Void> start(Collection<String> rootPrefixes, Walk walk) {
+        if (rootPrefixes.isEmpty()) {
+            walk.done.complete(null);
+        }
+        rootPrefixes.forEach(walk::submit);
+        return walk.done;
+    }
+
+    /**
+     * The state of a single walk.
+     */
+    private final class Walk {
+        private final Predicate<String> isLeafDirectory;
+        private final BiConsumer<String, List<String>> leafConsumer;
+        // If not null, leaf directories are listed without a delimiter and every object is passed to this consumer
+        private final Consumer<S3Object> objectConsumer;
+        private final Throttle throttle;
+        // Used as a stack, so the walk is depth-first
+        private final Deque<String> prefixesToList = new ConcurrentLinkedDeque<>();
+        // The number of prefixes that are queued or being listed. The walk is done when it reaches 0
+        private final AtomicInteger outstandingPrefixes = new AtomicInteger(0);
+        private final AtomicInteger inFlightRequests = new AtomicInteger(0);
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Walk(Predicate<String> isLeafDirectory, BiConsumer<String, List<String>> leafConsumer, Consumer<S3Object> objectConsumer, Throttle throttle) {
+            this.isLeafDirectory = isLeafDirectory;
+            this.leafConsumer = leafConsumer;
+            this.objectConsumer = objectConsumer;
+            this.throttle = throttle;
+            throttle.resumeListener = this::startListings;
+        }
+
+        private void submit(String prefix) {
+            outstandingPrefixes.incrementAndGet();
+            prefixesToList.push(prefix);
+            startListings();
+        }
+
+        /**
+         * Starts listing queued prefixes until the maximum number of concurrent requests is reached, the throttle is paused, or the queue is empty.
+         */
+        private void startListings() {
+            while (!done.isDone() && !throttle.paused && !prefixesToList.isEmpty()) {
+                int inFlight = inFlightRequests.get();
+                if (inFlight >= maxConcurrentRequests) {
+                    // A request that's in flight will start the next listing when it completes
+                    return;
+                }
+                if (inFlightRequests.compareAndSet(inFlight, inFlight + 1)) {
+                    String prefix = prefixesToList.pollFirst();
+                    if (prefix == null) {
+                        // Another thread took the last prefix. Release the request and check the queue again,
+                        // in case a prefix was added while this thread held the request
+                        inFlightRequests.decrementAndGet();
+                    } else {
+                        listPage(prefix, null, new ArrayList<>());
+                    }
+                }
+            }
+        }
+
+        private void listPage(String prefix, String continuationToken, List<String> subdirectories) {
+            final boolean isLeaf = isLeafDirectory.test(prefix);
+            final boolean listAllObjects = isLeaf && objectConsumer != null;
+            ListObjectsV2Request request = ListObjectsV2Request.builder().bucket(bucketName).prefix(prefix).delimiter(listAllObjects ? null : "/").continuationToken(continuationToken).build();
+            s3AsyncClient.listObjectsV2(request).whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    done.completeExceptionally(throwable);
+                    return;
+                }
+                subdirectories.addAll(response.commonPrefixes().stream().map(CommonPrefix::prefix).toList());
+                if (objectConsumer != null) {
+                    try {
+                        response.contents().forEach(objectConsumer);
+                    } catch (RuntimeException e) {
+                        done.completeExceptionally(e);
+                        return;
+                    }
+                }
+                if (Boolean.TRUE.equals(response.isTruncated())) {
+                    // Keep the request slot for the next page
+                    listPage(prefix, response.nextContinuationToken(), subdirectories);
+                    return;
+                }
+                inFlightRequests.decrementAndGet();
+                try {
+                    if (isLeaf) {
+                        leafConsumer.accept(prefix, subdirectories);
+                    } else {
+                        // Submit the subdirectories before this prefix is marked as done so that the outstanding count can't reach 0 early
+                        subdirectories.forEach(this::submit);
+                    }
+                } catch (RuntimeException e) {
+                    done.completeExceptionally(e);
+                    return;
+                }
+                if (outstandingPrefixes.decrementAndGet() == 0) {
+                    done.complete(null);
+                } else {
+                    startListings();
+                }
+            });
+        }
+    }
+
+    /**
+     * Pauses and resumes a walk. While it's paused, the walk doesn't start listing any more directories, and when it's resumed, the walk starts listing again
+     * from the thread that resumed it. A throttle can only be used by one walk.
+     */
+    public static final class Throttle {
+        private volatile boolean paused = false;
+        private volatile Runnable resumeListener = () -> { };
+
+        public boolean isPaused() {
+            return paused;
+        }
+
+        public void pause() {
+            paused = true;
+        }
+
+        public void resume() {
+            paused = false;
+            resumeListener.run();
+        }
+    }
+}
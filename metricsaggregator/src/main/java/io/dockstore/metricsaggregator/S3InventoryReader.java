@@ -0,0 +1,221 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Reads the objects listed in an S3 Inventory report, so that the metrics bucket can be discovered with a sequential read of the report instead of listing the bucket.
+ * The report can be read from S3 or, for offline use and tests, from a local copy.
+ * Only CSV reports can be read.
+ */
+public class S3InventoryReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(S3InventoryReader.class);
+    private static final String S3_URI_PREFIX = "s3://";
+    private static final String ARN_PREFIX = "arn:aws:s3:::";
+    private static final String MANIFEST_FILE_NAME = "manifest.json";
+    private static final String CSV_FILE_FORMAT = "CSV";
+    private static final String GZIP_EXTENSION = ".gz";
+    // Each inventory report is delivered to a directory named after the time it was created, like 2026-10-19T01-00Z
+    private static final Pattern REPORT_DIRECTORY_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}-\\d{2}Z");
+    private static final Gson GSON = new Gson();
+
+    private final S3Client s3Client;
+
+    public S3InventoryReader(S3Client s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    /**
+     * Reads the inventory report and passes each current object in it to the object consumer.
+     * The location is an S3 URI, like s3://bucket/prefix, or a local path, of either a manifest.json file or the directory of an inventory configuration,
+     * in which case the latest report in the directory is read. The data files of a local report are read from the directory containing its manifest.
+     * @param location
+     * @param objectConsumer
+     * @return the manifest of the report that was read
+     * @throws IOException
+     */
+    public Manifest readObjects(String location, Consumer<S3Object> objectConsumer) throws IOException {
+        final boolean isS3Location = location.startsWith(S3_URI_PREFIX);
+        final String manifestLocation = isS3Location ? getLatestS3ManifestLocation(location) : getLatestLocalManifestLocation(location);
+        LOG.info("Reading S3 inventory manifest {}", manifestLocation);
+        Manifest manifest;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(manifestLocation), StandardCharsets.UTF_8))) {
+            manifest = GSON.fromJson(reader, Manifest.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid S3 inventory manifest " + manifestLocation, e);
+        }
+        if (!CSV_FILE_FORMAT.equalsIgnoreCase(manifest.fileFormat())) {
+            throw new IOException("Unsupported S3 inventory file format " + manifest.fileFormat() + ", only " + CSV_FILE_FORMAT + " inventories can be read");
+        }
+
+        final List<String> schema = Arrays.stream(manifest.fileSchema().split(",")).map(String::trim).toList();
+        final InventorySchema inventorySchema = new InventorySchema(schema.indexOf("Key"), schema.indexOf("Size"), schema.indexOf("LastModifiedDate"), schema.indexOf("IsLatest"),
+                schema.indexOf("IsDeleteMarker"));
+        if (inventorySchema.keyIndex() < 0) {
+            throw new IOException("The S3 inventory schema " + manifest.fileSchema() + " doesn't contain the Key field");
+        }
+
+        long numberOfObjects = 0;
+        for (ManifestFile file: manifest.files()) {
+            final String fileLocation = isS3Location
+                    ? S3_URI_PREFIX + manifest.destinationBucket().replace(ARN_PREFIX, "") + "/" + file.key()
+                    : Path.of(manifestLocation).resolveSibling(Path.of(file.key()).getFileName()).toString();
+            numberOfObjects += readDataFile(fileLocation, inventorySchema, objectConsumer);
+        }
+        LOG.info("Read {} objects from the S3 inventory of bucket {} created at {}", numberOfObjects, manifest.sourceBucket(), manifest.getCreationTime());
+        return manifest;
+    }
+
+    private long readDataFile(String fileLocation, InventorySchema inventorySchema, Consumer<S3Object> objectConsumer) throws IOException {
+        long numberOfObjects = 0;
+        try (InputStream fileInputStream = open(fileLocation);
+                InputStream inputStream = fileLocation.endsWith(GZIP_EXTENSION) ? new GZIPInputStream(fileInputStream) : fileInputStream;
+                CSVParser parser = CSVFormat.DEFAULT.parse(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)))) {
+            for (CSVRecord csvRecord: parser) {
+                if (isCurrentObject(csvRecord, inventorySchema)) {
+                    objectConsumer.accept(createS3Object(csvRecord, inventorySchema));
+                    numberOfObjects++;
+                }
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IOException("Invalid S3 inventory data file " + fileLocation, e);
+        }
+        return numberOfObjects;
+    }
+
+    private static boolean isCurrentObject(CSVRecord csvRecord, InventorySchema inventorySchema) {
+        // Inventories of versioned buckets also list the noncurrent versions and delete markers of each object
+        return (inventorySchema.isLatestIndex() < 0 || Boolean.parseBoolean(csvRecord.get(inventorySchema.isLatestIndex())))
+                && (inventorySchema.isDeleteMarkerIndex() < 0 || !Boolean.parseBoolean(csvRecord.get(inventorySchema.isDeleteMarkerIndex())));
+    }
+
+    private static S3Object createS3Object(CSVRecord csvRecord, InventorySchema inventorySchema) {
+        // Inventory keys are URL-encoded
+        S3Object.Builder s3Object = S3Object.builder().key(URLDecoder.decode(csvRecord.get(inventorySchema.keyIndex()), StandardCharsets.UTF_8));
+        if (inventorySchema.sizeIndex() >= 0 && !csvRecord.get(inventorySchema.sizeIndex()).isEmpty()) {
+            s3Object.size(Long.parseLong(csvRecord.get(inventorySchema.sizeIndex())));
+        }
+        if (inventorySchema.lastModifiedIndex() >= 0 && !csvRecord.get(inventorySchema.lastModifiedIndex()).isEmpty()) {
+            s3Object.lastModified(Instant.parse(csvRecord.get(inventorySchema.lastModifiedIndex())));
+        }
+        return s3Object.build();
+    }
+
+    private InputStream open(String location) throws IOException {
+        if (location.startsWith(S3_URI_PREFIX)) {
+            S3Location s3Location = S3Location.parse(location);
+            return s3Client.getObject(GetObjectRequest.builder().bucket(s3Location.bucket()).key(s3Location.key()).build());
+        }
+        return Files.newInputStream(Path.of(location));
+    }
+
+    private String getLatestS3ManifestLocation(String location) throws IOException {
+        if (location.endsWith(MANIFEST_FILE_NAME)) {
+            return location;
+        }
+        S3Location s3Location = S3Location.parse(location.endsWith("/") ? location : location + "/");
+        ListObjectsV2Request request = ListObjectsV2Request.builder().bucket(s3Location.bucket()).prefix(s3Location.key()).delimiter("/").build();
+        Optional<String> latestReportPrefix = s3Client.listObjectsV2Paginator(request).commonPrefixes().stream()
+                .map(CommonPrefix::prefix)
+                .filter(prefix -> REPORT_DIRECTORY_PATTERN.matcher(prefix.substring(s3Location.key().length(), prefix.length() - 1)).matches())
+                .max(Comparator.naturalOrder());
+        return S3_URI_PREFIX + s3Location.bucket() + "/" + latestReportPrefix.orElseThrow(() -> new IOException("There are no S3 inventory reports in " + location)) + MANIFEST_FILE_NAME;
+    }
+
+    private static String getLatestLocalManifestLocation(String location) throws IOException {
+        Path path = Path.of(location);
+        if (!Files.isDirectory(path)) {
+            return location;
+        }
+        try (Stream<Path> reportDirectories = Files.list(path)) {
+            return reportDirectories
+                    .filter(reportDirectory -> REPORT_DIRECTORY_PATTERN.matcher(reportDirectory.getFileName().toString()).matches())
+                    .filter(reportDirectory -> Files.exists(reportDirectory.resolve(MANIFEST_FILE_NAME)))
+                    .max(Comparator.naturalOrder())
+                    .map(reportDirectory -> reportDirectory.resolve(MANIFEST_FILE_NAME).toString())
+                    .orElseThrow(() -> new IOException("There are no S3 inventory reports in " + location));
+        }
+    }
+
+    /**
+     * The manifest of an S3 Inventory report. Only the fields that are used are deserialized.
+     * @param sourceBucket the bucket that the inventory lists
+     * @param destinationBucket the ARN of the bucket that the report was delivered to
+     * @param fileFormat CSV, ORC, or Parquet
+     * @param fileSchema the comma-separated names of the fields in the data files
+     * @param creationTimestamp the time, in milliseconds since the epoch, that the inventory was started
+     * @param files the data files of the report
+     */
+    public record Manifest(String sourceBucket, String destinationBucket, String fileFormat, String fileSchema, String creationTimestamp, List<ManifestFile> files) {
+        public Instant getCreationTime() {
+            return Instant.ofEpochMilli(Long.parseLong(creationTimestamp));
+        }
+    }
+
+    /**
+     * A data file of an S3 Inventory report.
+     * @param key the key of the data file in the destination bucket
+     */
+    public record ManifestFile(String key) {
+    }
+
+    /**
+     * The indices of the fields in the inventory data files. An index is -1 if the field isn't in the inventory.
+     */
+    private record InventorySchema(int keyIndex, int sizeIndex, int lastModifiedIndex, int isLatestIndex, int isDeleteMarkerIndex) {
+    }
+
+    private record S3Location(String bucket, String key) {
+        private static S3Location parse(String s3Uri) {
+            String bucketAndKey = s3Uri.substring(S3_URI_PREFIX.length());
+            int keyIndex = bucketAndKey.indexOf('/');
+            return keyIndex < 0 ? new S3Location(bucketAndKey, "") : new S3Location(bucketAndKey.substring(0, keyIndex), bucketAndKey.substring(keyIndex + 1));
+        }
+    }
+}
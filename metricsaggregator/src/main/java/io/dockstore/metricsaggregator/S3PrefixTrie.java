@@ -0,0 +1,240 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory trie of the "directories" of an S3 bucket, built from object listings.
+ * Each node is a directory and holds the number of objects directly in the directory, their total size, and their latest modified time.
+ * Directory prefixes end with a slash, and the root directory is the empty prefix. All methods are thread-safe.
+ */
+public class S3PrefixTrie {
+    private static final String DELIMITER = "/";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final int NUMBER_OF_FIELDS = 4;
+
+    private final Node root = new Node();
+
+    /**
+     * Adds an object to the directory that contains it, creating the directory and its ancestors if they don't exist.
+     * @param key the S3 key of the object
+     * @param sizeBytes
+     * @param lastModified
+     */
+    public synchronized void addObject(String key, long sizeBytes, Instant lastModified) {
+        final int lastDelimiterIndex = key.lastIndexOf(DELIMITER);
+        final String directory = lastDelimiterIndex < 0 ? "" : key.substring(0, lastDelimiterIndex + 1);
+        getOrCreateNode(directory).addObjects(1, sizeBytes, lastModified);
+    }
+
+    /**
+     * Removes the directory and all of its subdirectories. Removing the root directory empties the trie.
+     * @param prefix
+     */
+    public synchronized void removeDirectory(String prefix) {
+        if (prefix.isEmpty()) {
+            root.clear();
+            return;
+        }
+        Node parent = getNode(getParentPrefix(prefix)).orElse(null);
+        if (parent != null) {
+            parent.children.remove(getName(prefix));
+        }
+    }
+
+    public synchronized boolean containsDirectory(String prefix) {
+        return getNode(prefix).isPresent();
+    }
+
+    /**
+     * Returns the prefixes of the immediate subdirectories of the directory, sorted lexicographically.
+     * Returns an empty list if the directory doesn't exist.
+     * @param prefix
+     * @return
+     */
+    public synchronized List<String> getSubdirectories(String prefix) {
+        return getNode(prefix)
+                .map(node -> node.children.keySet().stream().map(name -> prefix + name + DELIMITER).toList())
+                .orElse(List.of());
+    }
+
+    /**
+     * Returns the prefixes of the directories beneath the root prefix that are at the specified depth, where the depth is the number of slashes in a prefix, sorted lexicographically.
+     * If the root prefix itself is at the depth, it's the only directory returned.
+     * @param rootPrefix
+     * @param depth
+     * @return
+     */
+    public synchronized List<String> getDirectoriesAtDepth(String rootPrefix, int depth) {
+        List<String> directories = new ArrayList<>();
+        getNode(rootPrefix).ifPresent(node -> collectDirectoriesAtDepth(rootPrefix, node, depth - getDepth(rootPrefix), directories));
+        return directories;
+    }
+
+    /**
+     * Returns the statistics of all objects in the directory and its subdirectories, or an empty Optional if the directory doesn't exist.
+     * @param prefix
+     * @return
+     */
+    public synchronized Optional<DirectoryStatistics> getStatistics(String prefix) {
+        return getNode(prefix).map(node -> {
+            Node total = new Node();
+            node.forEachNode(descendant -> total.addObjects(descendant.objectCount, descendant.sizeBytes, descendant.lastModified));
+            return new DirectoryStatistics(total.objectCount, total.sizeBytes, total.lastModified);
+        });
+    }
+
+    /**
+     * Writes the trie, one line for each directory that directly contains objects.
+     * @param writer
+     * @throws IOException
+     */
+    public synchronized void write(BufferedWriter writer) throws IOException {
+        List<String> lines = new ArrayList<>();
+        forEachDirectory("", root, (prefix, node) -> {
+            if (node.objectCount > 0) {
+                lines.add(String.join(FIELD_SEPARATOR, prefix, String.valueOf(node.objectCount), String.valueOf(node.sizeBytes),
+                        node.lastModified == null ? "" : String.valueOf(node.lastModified.toEpochMilli())));
+            }
+        });
+        for (String line: lines) {
+            writer.write(line);
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Reads the directories written by write into the trie.
+     * @param reader
+     * @throws IOException
+     */
+    public synchronized void read(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        while (line != null) {
+            String[] fields = line.split(FIELD_SEPARATOR, -1);
+            if (fields.length != NUMBER_OF_FIELDS) {
+                throw new IOException("Invalid S3 prefix trie line: " + line);
+            }
+            try {
+                final String lastModified = fields[NUMBER_OF_FIELDS - 1];
+                getOrCreateNode(fields[0]).addObjects(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        lastModified.isEmpty() ? null : Instant.ofEpochMilli(Long.parseLong(lastModified)));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid S3 prefix trie line: " + line, e);
+            }
+            line = reader.readLine();
+        }
+    }
+
+    private Optional<Node> getNode(String prefix) {
+        Node node = root;
+        for (String name: getNames(prefix)) {
+            node = node.children.get(name);
+            if (node == null) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(node);
+    }
+
+    private Node getOrCreateNode(String prefix) {
+        Node node = root;
+        for (String name: getNames(prefix)) {
+            node = node.children.computeIfAbsent(name, key -> new Node());
+        }
+        return node;
+    }
+
+    private static void collectDirectoriesAtDepth(String prefix, Node node, int remainingDepth, List<String> directories) {
+        if (remainingDepth == 0) {
+            directories.add(prefix);
+        } else if (remainingDepth > 0) {
+            node.children.forEach((name, child) -> collectDirectoriesAtDepth(prefix + name + DELIMITER, child, remainingDepth - 1, directories));
+        }
+    }
+
+    private static void forEachDirectory(String prefix, Node node, BiConsumer<String, Node> consumer) {
+        consumer.accept(prefix, node);
+        node.children.forEach((name, child) -> forEachDirectory(prefix + name + DELIMITER, child, consumer));
+    }
+
+    private static List<String> getNames(String prefix) {
+        return prefix.isEmpty() ? List.of() : List.of(prefix.split(DELIMITER));
+    }
+
+    private static int getDepth(String prefix) {
+        return getNames(prefix).size();
+    }
+
+    private static String getName(String prefix) {
+        List<String> names = getNames(prefix);
+        return names.get(names.size() - 1);
+    }
+
+    private static String getParentPrefix(String prefix) {
+        final int parentEndIndex = prefix.lastIndexOf(DELIMITER, prefix.length() - 2);
+        return parentEndIndex < 0 ? "" : prefix.substring(0, parentEndIndex + 1);
+    }
+
+    /**
+     * Statistics of the objects in a directory.
+     * @param objectCount the number of objects
+     * @param sizeBytes the total size of the objects
+     * @param lastModified the latest modified time of the objects, or null if there are no objects
+     */
+    public record DirectoryStatistics(long objectCount, long sizeBytes, Instant lastModified) {
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new TreeMap<>();
+        private long objectCount;
+        private long sizeBytes;
+        private Instant lastModified;
+
+        private void addObjects(long count, long size, Instant modified) {
+            objectCount += count;
+            sizeBytes += size;
+            if (modified != null && (lastModified == null || modified.isAfter(lastModified))) {
+                lastModified = modified;
+            }
+        }
+
+        private void forEachNode(Consumer<Node> consumer) {
+            consumer.accept(this);
+            children.values().forEach(child -> child.forEachNode(consumer));
+        }
+
+        private void clear() {
+            children.clear();
+            objectCount = 0;
+            sizeBytes = 0;
+            lastModified = null;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator;
+
+import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.EntryS3Directories;
+import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.VersionS3DirectoryInfo;
+import io.dockstore.metricsaggregator.S3PrefixTrie.DirectoryStatistics;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A snapshot of the object count, total size, and latest modified time of each version directory whose metrics were aggregated.
+ * Comparing a fresh listing of the bucket against the snapshot finds the version directories that changed since they were last aggregated.
+ */
+public class VersionDirectorySnapshot {
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final int NUMBER_OF_FIELDS = 4;
+
+    private final Map<String, DirectoryStatistics> prefixToStatistics = new ConcurrentHashMap<>();
+
+    /**
+     * Reads a snapshot written by write.
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static VersionDirectorySnapshot read(Path path) throws IOException {
+        VersionDirectorySnapshot snapshot = new VersionDirectorySnapshot();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null) {
+                String[] fields = line.split(FIELD_SEPARATOR, -1);
+                if (fields.length != NUMBER_OF_FIELDS) {
+                    throw new IOException("Invalid version directory snapshot line: " + line);
+                }
+                try {
+                    final String lastModified = fields[NUMBER_OF_FIELDS - 1];
+                    snapshot.prefixToStatistics.put(fields[0], new DirectoryStatistics(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                            lastModified.isEmpty() ? null : Instant.ofEpochMilli(Long.parseLong(lastModified))));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid version directory snapshot line: " + line, e);
+                }
+                line = reader.readLine();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshot, replacing the file atomically so that an interrupted write doesn't lose the previous snapshot.
+     * @param path
+     * @throws IOException
+     */
+    public void write(Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, DirectoryStatistics> entry: new TreeMap<>(prefixToStatistics).entrySet()) {
+                DirectoryStatistics statistics = entry.getValue();
+                writer.write(String.join(FIELD_SEPARATOR, entry.getKey(), String.valueOf(statistics.objectCount()), String.valueOf(statistics.sizeBytes()),
+                        statistics.lastModified() == null ? "" : String.valueOf(statistics.lastModified().toEpochMilli())));
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Records the statistics of a version directory whose metrics were aggregated.
+     * @param versionPrefix
+     * @param statistics
+     */
+    public void put(String versionPrefix, DirectoryStatistics statistics) {
+        prefixToStatistics.put(versionPrefix, statistics);
+    }
+
+    public int size() {
+        return prefixToStatistics.size();
+    }
+
+    /**
+     * Returns the entry with only the version directories whose statistics differ from the snapshot, or an empty Optional if none of its version directories changed.
+     * The entry directory is returned unchanged, so that the entry-level metrics are aggregated across all of its versions.
+     * @param entryS3Directories
+     * @param statisticsFunction returns the current statistics of a directory
+     * @return
+     */
+    public Optional<EntryS3Directories> getChangedVersionDirectories(EntryS3Directories entryS3Directories, Function<String, Optional<DirectoryStatistics>> statisticsFunction) {
+        List<VersionS3DirectoryInfo> changedVersionDirectories = entryS3Directories.versionDirectories().stream()
+                .filter(versionDirectory -> !Objects.equals(prefixToStatistics.get(versionDirectory.versionS3KeyPrefix()),
+                        statisticsFunction.apply(versionDirectory.versionS3KeyPrefix()).orElse(null)))
+                .toList();
+        if (changedVersionDirectories.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new EntryS3Directories(entryS3Directories.entryDirectory(), changedVersionDirectories));
+    }
+}
@@ -72,6 +72,9 @@ public class CommandLineArgs {
 
     @Parameters(commandNames = { "submit-validation-data" }, commandDescription = "Formats workflow validation data specified in a file then submits it to Dockstore")
     public static class SubmitValidationData extends CommandLineArgs {
+        // Submission threads mostly wait on Dockstore API calls, so there are more of them than CPUs
+        private static final int DEFAULT_THREAD_COUNT = 16;
+
         @Parameter(names = {"-c", "--config"}, description = "The config file path.")
         private File config = new File("./" + MetricsAggregatorClient.CONFIG_FILE_NAME);
 
@@ -90,6 +93,9 @@ public class CommandLineArgs {
         @Parameter(names = {"-id", "--executionId"}, description = "The execution ID to use for each validation execution. Assumes that each validation in the file is performed on unique workflows and workflow versions.")
         private String executionId;
 
+        @Parameter(names = { "--threadCount" }, description = "The number of threads used to submit validation executions to Dockstore")
+        private int threadCount = DEFAULT_THREAD_COUNT;
+
         public File getConfig() {
             return config;
         }
@@ -113,15 +119,28 @@ public class CommandLineArgs {
         public String getExecutionId() {
             return executionId;
         }
+
+        public int getThreadCount() {
+            return threadCount;
+        }
     }
 
     @Parameters(commandNames = { "submit-terra-metrics" }, commandDescription = "Submits workflow metrics provided by Terra via a CSV file to Dockstore")
     public static class SubmitTerraMetrics extends CommandLineArgs {
+        // Submission threads mostly wait on Dockstore API calls, so there are more of them than CPUs
+        private static final int DEFAULT_THREAD_COUNT = 16;
+        private static final int DEFAULT_RESOLUTION_CACHE_TTL_HOURS = 7 * 24;
+        private static final int DEFAULT_NEGATIVE_RESOLUTION_CACHE_TTL_HOURS = 24;
+        private static final int DEFAULT_MAX_EXECUTIONS_PER_VERSION = 10000;
+        private static final int DEFAULT_MAX_BUFFER_SECONDS = 60;
+        private static final long DEFAULT_MAX_REQUEST_BYTES = 5_000_000;
+        private static final long DEFAULT_EXPECTED_EXECUTION_IDS = 10_000_000;
+
         @Parameter(names = {"-c", "--config"}, description = "The config file path.")
         private File config = new File("./" + MetricsAggregatorClient.CONFIG_FILE_NAME);
 
 
-        @Parameter(names = {"-d", "--data"}, description = "The file path to the CSV file containing workflow metrics from Terra. The first line of the file should contain the CSV fields: workflow_id,status,workflow_start,workflow_end,workflow_runtime_minutes,source_url", required = true)
+        @Parameter(names = {"-d", "--data"}, description = "The file path to the CSV file containing workflow metrics from Terra. The first line of the file should contain the CSV fields: workflow_id,status,workflow_start,workflow_end,workflow_runtime_minutes,source_url. Can also be a glob of files, an S3 URI of an object or of a prefix ending with /, or @ followed by the path of a file listing one of these on each line. Files ending with .gz are decompressed", required = true)
         private String dataFilePath;
 
         @Parameter(names = {"-r", "--recordSkipped"}, description = "Record skipped executions and the reason skipped to a CSV file")
@@ -130,6 +149,45 @@ public class CommandLineArgs {
         @Parameter(names = {"-de", "--description"}, description = "Optional description about the metrics to include when submitting metrics to Dockstore")
         private String description;
 
+        @Parameter(names = { "--threadCount" }, description = "The number of threads used to resolve the TRS IDs of source URLs, and the number of threads used to submit executions to Dockstore")
+        private int threadCount = DEFAULT_THREAD_COUNT;
+
+        @Parameter(names = { "--maxExecutionsPerVersion" }, description = "The number of executions of a workflow version to buffer before submitting them in one request")
+        private int maxExecutionsPerVersion = DEFAULT_MAX_EXECUTIONS_PER_VERSION;
+
+        @Parameter(names = { "--maxBufferSeconds" }, description = "The maximum number of seconds that the executions of a workflow version are buffered before they're submitted")
+        private int maxBufferSeconds = DEFAULT_MAX_BUFFER_SECONDS;
+
+        @Parameter(names = { "--maxRequestBytes" }, description = "The maximum estimated size, in bytes, of a request that submits executions to Dockstore. Larger requests are split")
+        private long maxRequestBytes = DEFAULT_MAX_REQUEST_BYTES;
+
+        @Parameter(names = { "--gzipRequests" }, description = "Gzip compress the requests that submit executions to Dockstore. The Dockstore webservice must accept gzip compressed request bodies")
+        private boolean gzipRequests = false;
+
+        @Parameter(names = { "--skipPrefetch" }, description = "Don't fetch the published workflows of all the repositories in each batch of rows before resolving their source URLs. Use when the resolution cache already contains most repositories")
+        private boolean skipPrefetch = false;
+
+        @Parameter(names = { "--resolutionCache" }, description = "The path of a file that caches how source URLs resolve to TRS IDs across runs. The file is created if it doesn't exist")
+        private String resolutionCachePath;
+
+        @Parameter(names = { "--resolutionCacheTtlHours" }, description = "The number of hours that a resolved source URL in the resolution cache is used before it's resolved again")
+        private int resolutionCacheTtlHours = DEFAULT_RESOLUTION_CACHE_TTL_HOURS;
+
+        @Parameter(names = { "--negativeResolutionCacheTtlHours" }, description = "The number of hours that a source URL that couldn't be resolved is skipped before it's resolved again")
+        private int negativeResolutionCacheTtlHours = DEFAULT_NEGATIVE_RESOLUTION_CACHE_TTL_HOURS;
+
+        @Parameter(names = { "--checkpoint" }, description = "The path of a file that the progress of the submission is periodically written to, so that an interrupted submission can be resumed")
+        private String checkpointPath;
+
+        @Parameter(names = { "--submittedExecutionIds" }, description = "The path of a file that keeps the IDs of the executions submitted for each workflow version across runs. Executions that were already submitted are skipped. The file is created if it doesn't exist")
+        private String submittedExecutionIdsPath;
+
+        @Parameter(names = { "--expectedExecutionIds" }, description = "The number of execution IDs that the file of submitted execution IDs is sized for when it's created. If more IDs are added, the file grows by a larger filter each time it fills up")
+        private long expectedExecutionIds = DEFAULT_EXPECTED_EXECUTION_IDS;
+
+        @Parameter(names = { "--resume" }, description = "Resume the submission from the checkpoint file, skipping the rows that were already submitted or skipped. Requires --checkpoint")
+        private boolean resume = false;
+
         public File getConfig() {
             return config;
         }
@@ -146,6 +204,58 @@ public class CommandLineArgs {
             return recordSkippedExecutions;
         }
 
+        public int getThreadCount() {
+            return threadCount;
+        }
+
+        public int getMaxExecutionsPerVersion() {
+            return maxExecutionsPerVersion;
+        }
+
+        public int getMaxBufferSeconds() {
+            return maxBufferSeconds;
+        }
+
+        public long getMaxRequestBytes() {
+            return maxRequestBytes;
+        }
+
+        public boolean isGzipRequests() {
+            return gzipRequests;
+        }
+
+        public boolean isSkipPrefetch() {
+            return skipPrefetch;
+        }
+
+        public String getResolutionCachePath() {
+            return resolutionCachePath;
+        }
+
+        public int getResolutionCacheTtlHours() {
+            return resolutionCacheTtlHours;
+        }
+
+        public int getNegativeResolutionCacheTtlHours() {
+            return negativeResolutionCacheTtlHours;
+        }
+
+        public String getCheckpointPath() {
+            return checkpointPath;
+        }
+
+        public boolean isResume() {
+            return resume;
+        }
+
+        public String getSubmittedExecutionIdsPath() {
+            return submittedExecutionIdsPath;
+        }
+
+        public long getExpectedExecutionIds() {
+            return expectedExecutionIds;
+        }
+
         /**
          * Headers for the input data file
          */
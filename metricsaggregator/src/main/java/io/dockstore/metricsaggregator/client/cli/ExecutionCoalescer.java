@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.ExecutionsToSubmit;
+import io.dockstore.openapi.client.model.RunExecution;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Buffers the executions of each TRS ID and version, so that executions of the same version from different batches of the CSV file are submitted in one request.
+ * A version's executions are passed to the flush consumer when there are maxExecutionsPerVersion of them, or when the oldest of them was buffered maxAge ago.
+ * When more than maxBufferedExecutions executions are buffered in total, the versions that were buffered first are flushed.
+ */
+class ExecutionCoalescer {
+    private final int maxExecutionsPerVersion;
+    private final Duration maxAge;
+    private final int maxBufferedExecutions;
+    private final Consumer<ExecutionsToSubmit> flushConsumer;
+    // Ordered by the time that the first execution of the version was buffered
+    private final Map<TrsVersion, VersionExecutions> trsVersionToExecutions = new LinkedHashMap<>();
+    private int numberOfBufferedExecutions = 0;
+
+    ExecutionCoalescer(int maxExecutionsPerVersion, Duration maxAge, int maxBufferedExecutions, Consumer<ExecutionsToSubmit> flushConsumer) {
+        this.maxExecutionsPerVersion = maxExecutionsPerVersion;
+        this.maxAge = maxAge;
+        this.maxBufferedExecutions = maxBufferedExecutions;
+        this.flushConsumer = flushConsumer;
+    }
+
+    /**
+     * Buffers the executions, flushing the version's executions if there are enough of them. The flush consumer is called on this thread.
+     * @param executionsToSubmit
+     */
+    void add(ExecutionsToSubmit executionsToSubmit) {
+        List<ExecutionsToSubmit> executionsToFlush = new ArrayList<>();
+        synchronized (this) {
+            final TrsVersion trsVersion = new TrsVersion(executionsToSubmit.sourceUrlTrsInfo().trsId(), executionsToSubmit.sourceUrlTrsInfo().version());
+            VersionExecutions versionExecutions = trsVersionToExecutions.computeIfAbsent(trsVersion, key -> new VersionExecutions(executionsToSubmit, Instant.now()));
+            versionExecutions.add(executionsToSubmit);
+            numberOfBufferedExecutions += executionsToSubmit.executions().size();
+            if (versionExecutions.executions.size() >= maxExecutionsPerVersion) {
+                executionsToFlush.add(remove(trsVersion));
+            }
+            Iterator<TrsVersion> oldestTrsVersions = trsVersionToExecutions.keySet().iterator();
+            while (numberOfBufferedExecutions > maxBufferedExecutions && oldestTrsVersions.hasNext()) {
+                final VersionExecutions oldestVersionExecutions = trsVersionToExecutions.get(oldestTrsVersions.next());
+                oldestTrsVersions.remove();
+                numberOfBufferedExecutions -= oldestVersionExecutions.executions.size();
+                executionsToFlush.add(oldestVersionExecutions.toExecutionsToSubmit());
+            }
+        }
+        // Flush outside the lock, because the flush consumer may block until the submission stage catches up
+        executionsToFlush.forEach(flushConsumer);
+    }
+
+    /**
+     * Flushes the executions of the versions whose first execution was buffered at least maxAge before now.
+     * @param now
+     */
+    void flushExpired(Instant now) {
+        List<ExecutionsToSubmit> executionsToFlush = new ArrayList<>();
+        synchronized (this) {
+            Iterator<VersionExecutions> oldestVersionExecutions = trsVersionToExecutions.values().iterator();
+            while (oldestVersionExecutions.hasNext()) {
+                final VersionExecutions versionExecutions = oldestVersionExecutions.next();
+                if (versionExecutions.bufferedAt.plus(maxAge).isAfter(now)) {
+                    // The remaining versions were buffered later
+                    break;
+                }
+                oldestVersionExecutions.remove();
+                numberOfBufferedExecutions -= versionExecutions.executions.size();
+                executionsToFlush.add(versionExecutions.toExecutionsToSubmit());
+            }
+        }
+        executionsToFlush.forEach(flushConsumer);
+    }
+
+    /**
+     * Flushes the executions of all versions.
+     */
+    void flushAll() {
+        List<ExecutionsToSubmit> executionsToFlush;
+        synchronized (this) {
+            executionsToFlush = trsVersionToExecutions.values().stream().map(VersionExecutions::toExecutionsToSubmit).toList();
+            trsVersionToExecutions.clear();
+            numberOfBufferedExecutions = 0;
+        }
+        executionsToFlush.forEach(flushConsumer);
+    }
+
+    private ExecutionsToSubmit remove(TrsVersion trsVersion) {
+        final VersionExecutions versionExecutions = trsVersionToExecutions.remove(trsVersion);
+        numberOfBufferedExecutions -= versionExecutions.executions.size();
+        return versionExecutions.toExecutionsToSubmit();
+    }
+
+    private record TrsVersion(String trsId, String version) {
+    }
+
+    /**
+     * The buffered executions of a version. The source URL TRS info of the first executions is used for all of them.
+     */
+    private static final class VersionExecutions {
+        private final ExecutionsToSubmit firstExecutionsToSubmit;
+        private final Instant bufferedAt;
+        private final List<RunExecution> executions = new ArrayList<>();
+        private final List<CSVRecord> csvRecords = new ArrayList<>();
+
+        private VersionExecutions(ExecutionsToSubmit firstExecutionsToSubmit, Instant bufferedAt) {
+            this.firstExecutionsToSubmit = firstExecutionsToSubmit;
+            this.bufferedAt = bufferedAt;
+        }
+
+        private void add(ExecutionsToSubmit executionsToSubmit) {
+            executions.addAll(executionsToSubmit.executions());
+            csvRecords.addAll(executionsToSubmit.csvRecords());
+        }
+
+        private ExecutionsToSubmit toExecutionsToSubmit() {
+            return new ExecutionsToSubmit(firstExecutionsToSubmit.sourceUrlTrsInfo(), executions, csvRecords);
+        }
+    }
+}
@@ -25,29 +25,28 @@ import static io.dockstore.utils.ExceptionHandler.exceptionMessage;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.MissingCommandException;
 import com.beust.jcommander.ParameterException;
-import io.dockstore.common.Partner;
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient;
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.EntryS3DirectoriesProducer;
 import io.dockstore.metricsaggregator.MetricsAggregatorConfig;
 import io.dockstore.metricsaggregator.MetricsAggregatorS3Client;
-import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.EntryS3DirectoryInfo;
-import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.VersionS3DirectoryInfo;
+import io.dockstore.metricsaggregator.VersionDirectorySnapshot;
 import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.AggregateMetricsCommand;
 import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitTerraMetrics;
 import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitValidationData;
 import io.dockstore.openapi.client.ApiClient;
 import io.dockstore.openapi.client.api.ExtendedGa4GhApi;
 import io.dockstore.openapi.client.model.EntryLiteAndVersionName;
-import io.dockstore.openapi.client.model.ExecutionsRequestBody;
-import io.dockstore.openapi.client.model.ValidationExecution;
-import io.dockstore.openapi.client.model.ValidationExecution.ValidatorToolEnum;
-import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import org.apache.commons.configuration2.INIConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,12 +54,6 @@ import org.slf4j.LoggerFactory;
 public class MetricsAggregatorClient {
 
     public static final String CONFIG_FILE_NAME = "metrics-aggregator.config";
-    // Constants for the data file's CSV fields used by submit-validation-data
-    public static final int TRS_ID_INDEX = 0;
-    public static final int VERSION_NAME_INDEX = 1;
-    public static final int IS_VALID_INDEX = 2;
-    public static final int DATE_EXECUTED_INDEX = 3;
-    public static final List<String> VALIDATION_FILE_CSV_FIELDS = List.of("trsId", "versionName", "isValid", "dateExecuted");
 
     private static final Logger LOG = LoggerFactory.getLogger(MetricsAggregatorClient.class);
 
@@ -119,10 +112,8 @@ public class MetricsAggregatorClient {
 
                 try {
                     final MetricsAggregatorConfig metricsAggregatorConfig = new MetricsAggregatorConfig(config);
-                    metricsAggregatorClient.submitValidationData(metricsAggregatorConfig, submitValidationData.getValidator(),
-                            submitValidationData.getValidatorVersion(), submitValidationData.getDataFilePath(),
-                            submitValidationData.getPlatform(),
-                            submitValidationData.getExecutionId());
+                    final ValidationDataSubmitter validationDataSubmitter = new ValidationDataSubmitter(metricsAggregatorConfig, submitValidationData);
+                    validationDataSubmitter.submitValidationData();
                 } catch (Exception e) {
                     exceptionMessage(e, "Could not submit validation metrics to Dockstore", GENERIC_ERROR);
                 }
@@ -150,107 +141,119 @@ public class MetricsAggregatorClient {
         }
     }
 
-    private void aggregateMetrics(AggregateMetricsCommand aggregateMetricsCommand, MetricsAggregatorConfig config) throws URISyntaxException {
-        final List<String> trsIdsToAggregate = aggregateMetricsCommand.getTrsIds();
-        ApiClient apiClient = setupApiClient(config.getDockstoreConfig().serverUrl(), config.getDockstoreConfig().token());
-        ExtendedGa4GhApi extendedGa4GhApi = new ExtendedGa4GhApi(apiClient);
-
-        MetricsAggregatorS3Client metricsAggregatorS3Client;
+    private void aggregateMetrics(AggregateMetricsCommand aggregateMetricsCommand, MetricsAggregatorConfig config) throws URISyntaxException, IOException {
+        final MetricsAggregatorS3Client metricsAggregatorS3Client;
         if (config.getS3Config().endpointOverride() == null) {
             metricsAggregatorS3Client = new MetricsAggregatorS3Client(config.getS3Config().bucket());
         } else {
             metricsAggregatorS3Client = new MetricsAggregatorS3Client(config.getS3Config().bucket(), config.getS3Config().endpointOverride());
         }
+        try (metricsAggregatorS3Client) {
+            aggregateMetrics(aggregateMetricsCommand, config, metricsAggregatorS3Client);
+        }
+    }
+
+    private void aggregateMetrics(AggregateMetricsCommand aggregateMetricsCommand, MetricsAggregatorConfig config, MetricsAggregatorS3Client metricsAggregatorS3Client) throws IOException {
+        final List<String> trsIdsToAggregate = aggregateMetricsCommand.getTrsIds();
+        ApiClient apiClient = setupApiClient(config.getDockstoreConfig().serverUrl(), config.getDockstoreConfig().token());
+        ExtendedGa4GhApi extendedGa4GhApi = new ExtendedGa4GhApi(apiClient);
+
+        final Path prefixTriePath = config.getS3Config().prefixTriePath() == null ? null : Path.of(config.getS3Config().prefixTriePath());
+        final String inventoryLocation = config.getS3Config().inventoryLocation();
+        if (inventoryLocation != null) {
+            metricsAggregatorS3Client.loadInventory(inventoryLocation);
+        } else if (prefixTriePath != null && Files.exists(prefixTriePath)) {
+            metricsAggregatorS3Client.loadPrefixTrie(prefixTriePath);
+        }
 
         if (aggregateMetricsCommand.isDryRun()) {
             LOG.info("Executing dry run");
         }
 
-        final Instant getDirectoriesStartTime = Instant.now();
-        List<VersionS3DirectoryInfo> s3DirectoriesToAggregate;
+        // With --allS3, only aggregate the version directories that changed since they were recorded in the snapshot
+        final Path snapshotPath = config.getS3Config().snapshotPath() == null ? null : Path.of(config.getS3Config().snapshotPath());
+        final VersionDirectorySnapshot snapshot = aggregateMetricsCommand.isAllS3() && snapshotPath != null ? readSnapshot(snapshotPath) : null;
+
+        // The producer discovers the directories to aggregate while they are being aggregated, so that aggregation doesn't wait for discovery to finish
+        EntryS3DirectoriesProducer producer;
         if (aggregateMetricsCommand.isAllS3()) {
             LOG.info("Aggregating metrics for all entries in S3");
-            s3DirectoriesToAggregate = metricsAggregatorS3Client.getVersionDirectories();
+            if (inventoryLocation != null) {
+                // The inventory doesn't contain the executions submitted after it was created, so list the versions that have new executions.
+                // Only the versions that Dockstore reports are listed, the other objects added since the inventory are found by a later inventory
+                metricsAggregatorS3Client.refreshVersionDirectories(getTrsIdToVersionNamesToAggregate(extendedGa4GhApi));
+            }
+            if (snapshot == null) {
+                producer = metricsAggregatorS3Client::walkEntryDirectories;
+            } else {
+                producer = consumer -> metricsAggregatorS3Client.walkEntryDirectories(entryS3Directories ->
+                        snapshot.getChangedVersionDirectories(entryS3Directories, metricsAggregatorS3Client::getDirectoryStatistics).ifPresent(consumer));
+            }
         } else if (trsIdsToAggregate == null || trsIdsToAggregate.isEmpty()) {
             LOG.info("Aggregating metrics for all entries that have new executions to aggregate");
-            List<EntryLiteAndVersionName> entryVersionsToAggregate = extendedGa4GhApi.getEntryVersionsToAggregate();
-            s3DirectoriesToAggregate = entryVersionsToAggregate.stream()
-                    .map(entryVersion -> metricsAggregatorS3Client.getVersionDirectoriesForTrsIdVersion(entryVersion.getEntryLite().getTrsId(), entryVersion.getVersionName()))
-                    .flatMap(Collection::stream)
-                    .toList();
+            Map<String, List<String>> trsIdToVersionNames = getTrsIdToVersionNamesToAggregate(extendedGa4GhApi);
+            producer = consumer -> metricsAggregatorS3Client.listEntryDirectoriesForTrsIdVersions(trsIdToVersionNames, consumer);
         } else {
             LOG.info("Aggregating metrics for TRS IDs: {}", trsIdsToAggregate);
-            s3DirectoriesToAggregate = trsIdsToAggregate.stream()
-                    .map(metricsAggregatorS3Client::getVersionDirectoriesForTrsId)
-                    .flatMap(Collection::stream)
-                    .toList();
+            producer = consumer -> metricsAggregatorS3Client.listEntryDirectoriesForTrsIds(trsIdsToAggregate, consumer);
         }
-        LOG.info("Aggregating metrics for {} versions", s3DirectoriesToAggregate.size());
-
-        List<EntryS3DirectoryInfo> entryDirectories = metricsAggregatorS3Client.getEntryDirectories(s3DirectoriesToAggregate);
-        LOG.info("Aggregating metrics for {} entries", entryDirectories.size());
 
-        LOG.info("Getting directories to aggregate took {}", Duration.between(getDirectoriesStartTime, Instant.now()));
-        if (s3DirectoriesToAggregate.isEmpty() && entryDirectories.isEmpty()) {
-            LOG.info("No directories found to aggregate metrics");
-            return;
-        }
+        // Count the directories as they're discovered
+        AtomicInteger numberOfEntries = new AtomicInteger(0);
+        AtomicInteger numberOfVersions = new AtomicInteger(0);
+        EntryS3DirectoriesProducer countingProducer = consumer -> producer.produce(entryS3Directories -> {
+            numberOfEntries.incrementAndGet();
+            numberOfVersions.addAndGet(entryS3Directories.versionDirectories().size());
+            consumer.accept(entryS3Directories);
+        });
 
         MetricsAggregatorAthenaClient metricsAggregatorAthenaClient = new MetricsAggregatorAthenaClient(config);
+        metricsAggregatorAthenaClient.setDirectorySizeFunction(metricsAggregatorS3Client::getDirectorySizeBytes);
+        if (snapshot != null) {
+            // Record a version in the snapshot only after its metrics are posted, so that versions that failed to aggregate are aggregated again in the next run
+            metricsAggregatorAthenaClient.setVersionSubmittedListener(versionDirectory -> metricsAggregatorS3Client.getDirectoryStatistics(versionDirectory.versionS3KeyPrefix())
+                    .ifPresent(statistics -> snapshot.put(versionDirectory.versionS3KeyPrefix(), statistics)));
+        }
 
+        final Instant startTime = Instant.now();
         if (aggregateMetricsCommand.isDryRun()) {
-            metricsAggregatorAthenaClient.dryRun(s3DirectoriesToAggregate, entryDirectories);
+            metricsAggregatorAthenaClient.dryRun(countingProducer);
         } else {
-            metricsAggregatorAthenaClient.aggregateMetrics(s3DirectoriesToAggregate, entryDirectories, extendedGa4GhApi, aggregateMetricsCommand.getThreadCount());
+            metricsAggregatorAthenaClient.aggregateMetrics(countingProducer, extendedGa4GhApi, aggregateMetricsCommand.getThreadCount());
+        }
+        LOG.info("Found {} entries and {} versions to aggregate in {}", numberOfEntries, numberOfVersions, Duration.between(startTime, Instant.now()));
+        if (numberOfEntries.get() == 0) {
+            LOG.info("No directories found to aggregate metrics");
+        }
+        if (prefixTriePath != null) {
+            metricsAggregatorS3Client.savePrefixTrie(prefixTriePath);
+        }
+        if (snapshot != null && !aggregateMetricsCommand.isDryRun()) {
+            snapshot.write(snapshotPath);
+            LOG.info("Saved the snapshot of {} version directories to {}", snapshot.size(), snapshotPath);
         }
     }
 
-    private void submitValidationData(MetricsAggregatorConfig config, ValidatorToolEnum validator, String validatorVersion, String dataFilePath, Partner platform, String executionId) throws IOException {
-        ApiClient apiClient = setupApiClient(config.getDockstoreConfig().serverUrl(), config.getDockstoreConfig().token());
-        ExtendedGa4GhApi extendedGa4GhApi = new ExtendedGa4GhApi(apiClient);
-
-        final File dataFile = new File(dataFilePath);
-        List<String> csvLines = Files.readAllLines(dataFile.toPath());
-        // Remove first line containing CSV fields
-        if (csvLines.get(0).contains(String.join(",", VALIDATION_FILE_CSV_FIELDS))) {
-            csvLines.remove(0);
+    private VersionDirectorySnapshot readSnapshot(Path snapshotPath) throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            LOG.info("There is no snapshot of version directories at {}, so every version directory will be aggregated", snapshotPath);
+            return new VersionDirectorySnapshot();
         }
+        VersionDirectorySnapshot snapshot = VersionDirectorySnapshot.read(snapshotPath);
+        LOG.info("Read the snapshot of {} version directories from {}", snapshot.size(), snapshotPath);
+        return snapshot;
+    }
 
-        for (String csvLine : csvLines) {
-            String[] lineComponents = csvLine.split(",");
-            if (lineComponents.length < VALIDATION_FILE_CSV_FIELDS.size()) {
-                LOG.error("Line '{}' does not contain all the required fields, skipping", csvLine);
-                continue;
-            }
-
-            String trsId = lineComponents[TRS_ID_INDEX];
-            String versionName = lineComponents[VERSION_NAME_INDEX];
-
-            // Parse boolean value for isValid column
-            String isValidValue = lineComponents[IS_VALID_INDEX];
-            boolean isValid;
-            if ("true".equalsIgnoreCase(isValidValue) || "false".equalsIgnoreCase(isValidValue)) {
-                isValid = Boolean.parseBoolean(isValidValue);
-            } else {
-                LOG.error("isValid column value '{}' is not a boolean value, skipping line '{}'", isValidValue, csvLine);
-                continue;
-            }
-            String dateExecuted = lineComponents[DATE_EXECUTED_INDEX];
-            ValidationExecution validationExecution = new ValidationExecution().validatorTool(validator)
-                    .validatorToolVersion(validatorVersion).isValid(isValid);
-            validationExecution.setDateExecuted(dateExecuted);
-            validationExecution.setExecutionId(executionId);
-            ExecutionsRequestBody executionsRequestBody = new ExecutionsRequestBody().validationExecutions(List.of(validationExecution));
-
-            try {
-                extendedGa4GhApi.executionMetricsPost(executionsRequestBody, platform.toString(), trsId, versionName,
-                        "Validation executions submitted using dockstore-support metricsaggregator");
-                System.out.printf("Submitted validation metrics for tool ID %s, version %s, %s validated by %s %s on platform %s%n", trsId,
-                        versionName, isValid ? "successfully" : "unsuccessfully", validator, validatorVersion, platform);
-            } catch (Exception e) {
-                // Could end up here if the workflow no longer exists. Log then continue processing
-                LOG.error("Could not submit validation executions to Dockstore for workflow {}", csvLine, e);
-            }
-        }
+    /**
+     * Returns the names of the versions that have new executions to aggregate, grouped by the TRS ID of their entry.
+     * @param extendedGa4GhApi
+     * @return
+     */
+    private Map<String, List<String>> getTrsIdToVersionNamesToAggregate(ExtendedGa4GhApi extendedGa4GhApi) {
+        List<EntryLiteAndVersionName> entryVersionsToAggregate = extendedGa4GhApi.getEntryVersionsToAggregate();
+        Map<String, List<String>> trsIdToVersionNames = entryVersionsToAggregate.stream()
+                .collect(Collectors.groupingBy(entryVersion -> entryVersion.getEntryLite().getTrsId(), LinkedHashMap::new, Collectors.mapping(EntryLiteAndVersionName::getVersionName, Collectors.toList())));
+        LOG.info("Found {} versions of {} entries with new executions to aggregate", entryVersionsToAggregate.size(), trsIdToVersionNames.size());
+        return trsIdToVersionNames;
     }
 }
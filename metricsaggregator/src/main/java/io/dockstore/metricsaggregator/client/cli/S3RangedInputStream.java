@@ -0,0 +1,167 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.http.HttpStatus;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * Reads an S3 object sequentially while fetching the following parts of it with ranged GET requests in parallel,
+ * so that reading a large object isn't limited by the throughput of a single connection.
+ * At most numberOfPartsInFlight parts of partSize bytes are held in memory.
+ * Every part is fetched from the version of the object that was current when the stream was opened, so that the parts can't come from different versions
+ * if the object is overwritten while it's being read: the stream fails instead. Failed requests are retried by the S3 client's retry policy.
+ */
+class S3RangedInputStream extends InputStream {
+    private final S3Client s3Client;
+    private final String bucket;
+    private final String key;
+    private final long objectSize;
+    // The version of the object to read, or null if the bucket isn't versioned, in which case the parts are fetched only if the object's ETag still matches
+    private final String versionId;
+    private final String eTag;
+    private final int partSize;
+    private final ExecutorService executorService;
+    // The parts being fetched, in the order that they're read
+    private final Deque<Future<byte[]>> partFutures = new ArrayDeque<>();
+    private long nextPartOffset = 0;
+    private byte[] part = new byte[0];
+    private int partPosition = 0;
+
+    S3RangedInputStream(S3Client s3Client, String bucket, String key, int partSize, int numberOfPartsInFlight) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        final HeadObjectResponse headObjectResponse = s3Client.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+        this.objectSize = headObjectResponse.contentLength();
+        this.versionId = headObjectResponse.versionId();
+        this.eTag = headObjectResponse.eTag();
+        this.partSize = partSize;
+        this.executorService = Executors.newFixedThreadPool(numberOfPartsInFlight);
+        for (int i = 0; i < numberOfPartsInFlight; i++) {
+            fetchNextPart();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!hasRemainingBytesInPart()) {
+            return -1;
+        }
+        return Byte.toUnsignedInt(part[partPosition++]);
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        if (length == 0) {
+            return 0;
+        }
+        if (!hasRemainingBytesInPart()) {
+            return -1;
+        }
+        final int numberOfBytesRead = Math.min(length, part.length - partPosition);
+        System.arraycopy(part, partPosition, bytes, offset, numberOfBytesRead);
+        partPosition += numberOfBytesRead;
+        return numberOfBytesRead;
+    }
+
+    @Override
+    public void close() {
+        partFutures.forEach(partFuture -> partFuture.cancel(true));
+        partFutures.clear();
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Waits for the next part if the current part was read completely. Returns false if the whole object was read.
+     */
+    private boolean hasRemainingBytesInPart() throws IOException {
+        while (partPosition == part.length) {
+            final Future<byte[]> partFuture = partFutures.poll();
+            if (partFuture == null) {
+                return false;
+            }
+            try {
+                part = partFuture.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading s3://" + bucket + "/" + key);
+            } catch (ExecutionException e) {
+                throw new IOException("Could not read s3://" + bucket + "/" + key, e.getCause());
+            }
+            partPosition = 0;
+            fetchNextPart();
+        }
+        return true;
+    }
+
+    private void fetchNextPart() {
+        if (nextPartOffset >= objectSize) {
+            return;
+        }
+        final long firstByte = nextPartOffset;
+        final long lastByte = Math.min(firstByte + partSize, objectSize) - 1;
+        final GetObjectRequest.Builder requestBuilder = GetObjectRequest.builder().bucket(bucket).key(key).range("bytes=" + firstByte + "-" + lastByte);
+        if (versionId != null) {
+            requestBuilder.versionId(versionId);
+        } else {
+            requestBuilder.ifMatch(eTag);
+        }
+        final GetObjectRequest request = requestBuilder.build();
+        partFutures.add(executorService.submit(() -> getPart(request, Math.toIntExact(lastByte - firstByte + 1))));
+        nextPartOffset = lastByte + 1;
+    }
+
+    /**
+     * Gets a part of the object.
+     * @param request
+     * @param partLength the number of bytes in the part
+     * @return
+     * @throws IOException if the object changed since the stream was opened, or fewer bytes than requested were returned
+     */
+    private byte[] getPart(GetObjectRequest request, int partLength) throws IOException {
+        final byte[] bytes;
+        try {
+            bytes = s3Client.getObjectAsBytes(request).asByteArray();
+        } catch (S3Exception e) {
+            if (e.statusCode() == HttpStatus.SC_PRECONDITION_FAILED) {
+                throw new IOException("s3://" + bucket + "/" + key + " changed while it was being read", e);
+            }
+            throw e;
+        }
+        if (bytes.length != partLength) {
+            throw new IOException("Got " + bytes.length + " bytes of " + request.range() + " of s3://" + bucket + "/" + key + " instead of " + partLength);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import static io.dockstore.utils.ConcurrencyUtils.putUninterruptibly;
+
+import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitTerraMetrics.TerraMetricsCsvHeaders;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records skipped executions without making the threads that skip them wait for each other.
+ * Only the columns that are written are put in a bounded queue that one writer thread drains to the CSV printer, flushing the printer whenever the queue is
+ * idle for a while. The threads that skip executions only wait for the writer if the queue is full.
+ * The number of executions skipped for each reason is counted per thread and the counts are merged when they're read.
+ */
+class SkippedExecutionsLog implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SkippedExecutionsLog.class);
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int QUEUE_CAPACITY = 10000;
+    // Put in the queue when the log is closed, after every skipped execution that was recorded
+    private static final SkippedExecution END_OF_SKIPPED_EXECUTIONS = new SkippedExecution(List.of());
+
+    // Null if skipped executions aren't written to a file
+    private final CSVPrinter csvPrinter;
+    private final BlockingQueue<SkippedExecution> skippedExecutions = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ExecutorService writerExecutorService;
+    // The counts of each thread that skipped executions, so that they can be merged
+    private final Queue<Map<String, Counter>> threadReasonToCounts = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Map<String, Counter>> reasonToCount = ThreadLocal.withInitial(() -> {
+        Map<String, Counter> counts = new HashMap<>();
+        threadReasonToCounts.add(counts);
+        return counts;
+    });
+
+    /**
+     * @param csvPrinter the CSV printer to write skipped executions to, or null if they should only be counted. The printer is closed when this log is closed
+     */
+    SkippedExecutionsLog(CSVPrinter csvPrinter) {
+        this.csvPrinter = csvPrinter;
+        if (csvPrinter == null) {
+            this.writerExecutorService = null;
+        } else {
+            this.writerExecutorService = Executors.newSingleThreadExecutor();
+            this.writerExecutorService.execute(this::writeSkippedExecutions);
+        }
+    }
+
+    /**
+     * Records a skipped execution. Only waits if the writer has fallen far behind.
+     * @param csvRecord
+     * @param reason
+     */
+    void record(CSVRecord csvRecord, String reason) {
+        reasonToCount.get().computeIfAbsent(reason, key -> new Counter()).count++;
+        if (csvPrinter != null) {
+            putUninterruptibly(skippedExecutions, new SkippedExecution(getCsvColumnValues(csvRecord, reason)));
+        }
+    }
+
+    /**
+     * Returns the number of executions skipped for each reason. The counts of a thread are only complete once it has finished recording skipped executions,
+     * for example when the executor service that it belongs to has terminated.
+     * @return
+     */
+    Map<String, Long> getReasonToCount() {
+        Map<String, Long> mergedReasonToCount = new HashMap<>();
+        threadReasonToCounts.forEach(counts -> counts.forEach((reason, counter) -> mergedReasonToCount.merge(reason, counter.count, Long::sum)));
+        return mergedReasonToCount;
+    }
+
+    /**
+     * Logs the reasons that the most executions were skipped for.
+     * @param maxNumberOfReasons
+     */
+    void logReasonCounts(int maxNumberOfReasons) {
+        List<Map.Entry<String, Long>> reasonCounts = new ArrayList<>(getReasonToCount().entrySet());
+        reasonCounts.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        LOG.info("Executions were skipped for {} different reasons", reasonCounts.size());
+        reasonCounts.stream().limit(maxNumberOfReasons).forEach(reasonCount -> LOG.info("Skipped {} executions: {}", reasonCount.getValue(), reasonCount.getKey()));
+    }
+
+    /**
+     * Writes the skipped executions that were recorded, then closes the CSV printer. Should be called after all skipped executions are recorded.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (csvPrinter == null) {
+            return;
+        }
+        putUninterruptibly(skippedExecutions, END_OF_SKIPPED_EXECUTIONS);
+        writerExecutorService.shutdown();
+        try {
+            writerExecutorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            LOG.info("InterruptedException while waiting for skipped executions to be written");
+            writerExecutorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        csvPrinter.close(true);
+    }
+
+    private void writeSkippedExecutions() {
+        long lastFlushMillis = System.currentTimeMillis();
+        while (true) {
+            final SkippedExecution skippedExecution;
+            try {
+                skippedExecution = skippedExecutions.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                LOG.info("InterruptedException while waiting for skipped executions to write");
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (skippedExecution == END_OF_SKIPPED_EXECUTIONS) {
+                return;
+            }
+            if (skippedExecution != null) {
+                write(skippedExecution);
+            }
+            if (skippedExecution == null || System.currentTimeMillis() - lastFlushMillis >= FLUSH_INTERVAL_MS) {
+                flush();
+                lastFlushMillis = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private static List<String> getCsvColumnValues(CSVRecord csvRecord, String reason) {
+        // Headers: workflow_id, status, workflow_start, workflow_end, workflow_runtime_minutes, source_url, reason_skipped
+        List<String> csvColumnValues = new ArrayList<>();
+        for (TerraMetricsCsvHeaders header: TerraMetricsCsvHeaders.values()) {
+            csvColumnValues.add(csvRecord.get(header));
+        }
+        csvColumnValues.add(reason);
+        return csvColumnValues;
+    }
+
+    private void write(SkippedExecution skippedExecution) {
+        try {
+            csvPrinter.printRecord(skippedExecution.csvColumnValues());
+        } catch (IOException e) {
+            LOG.error("Could not write skipped execution to output file");
+        }
+    }
+
+    private void flush() {
+        try {
+            csvPrinter.flush();
+        } catch (IOException e) {
+            LOG.error("Could not flush skipped executions to output file");
+        }
+    }
+
+    private record SkippedExecution(List<String> csvColumnValues) {
+    }
+
+    /**
+     * A count that is only updated by one thread.
+     */
+    private static final class Counter {
+        private long count;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.MinimalWorkflowInfo;
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.SourceUrlTrsInfo;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches how Terra source URLs resolve to TRS IDs, so that the Dockstore API calls used to resolve a source URL aren't repeated.
+ * The cache can be written to a file and read by a later run. Entries that were read expire after a time to live. Negative entries, for source URLs that couldn't be
+ * resolved and repositories without published workflows, use a shorter time to live so that newly published workflows are found.
+ */
+public class SourceUrlResolutionCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SourceUrlResolutionCache.class);
+    private static final Gson GSON = new Gson();
+
+    private final Duration timeToLive;
+    private final Duration negativeTimeToLive;
+    private final ConcurrentMap<String, CachedSourceUrl> sourceUrlToCachedSourceUrl = new ConcurrentHashMap<>();
+    // Source URLs that were skipped because of an error that may not happen in the next run. They're skipped for the rest of this run, but not written
+    private final ConcurrentMap<String, String> sourceUrlToTransientSkipReason = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CachedWorkflows> workflowPathPrefixToCachedWorkflows = new ConcurrentHashMap<>();
+
+    public SourceUrlResolutionCache(Duration timeToLive, Duration negativeTimeToLive) {
+        this.timeToLive = timeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+
+    /**
+     * Reads the entries of a cache written by write, dropping the entries that expired. If the file doesn't exist, the cache is empty.
+     * @param path
+     * @throws IOException
+     */
+    public void read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            LOG.info("Source URL resolution cache {} doesn't exist, resolving all source URLs", path);
+            return;
+        }
+        final long nowMillis = Instant.now().toEpochMilli();
+        CacheFile cacheFile;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            cacheFile = GSON.fromJson(reader, CacheFile.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid source URL resolution cache " + path, e);
+        }
+        if (cacheFile == null) {
+            return;
+        }
+        if (cacheFile.sourceUrls() != null) {
+            cacheFile.sourceUrls().forEach((sourceUrl, cachedSourceUrl) -> {
+                if (!isExpired(cachedSourceUrl.cachedAtMillis(), cachedSourceUrl.trsInfo() == null, nowMillis)) {
+                    sourceUrlToCachedSourceUrl.put(sourceUrl, cachedSourceUrl);
+                }
+            });
+        }
+        if (cacheFile.workflowPathPrefixes() != null) {
+            cacheFile.workflowPathPrefixes().forEach((workflowPathPrefix, cachedWorkflows) -> {
+                if (!isExpired(cachedWorkflows.cachedAtMillis(), cachedWorkflows.workflows().isEmpty(), nowMillis)) {
+                    // Gson creates the version maps of the workflows as ConcurrentHashMaps, so they can be updated like the maps of workflows fetched in this run
+                    workflowPathPrefixToCachedWorkflows.put(workflowPathPrefix, cachedWorkflows);
+                }
+            });
+        }
+        LOG.info("Read {} source URLs and {} workflow paths from the source URL resolution cache {}", sourceUrlToCachedSourceUrl.size(), workflowPathPrefixToCachedWorkflows.size(), path);
+    }
+
+    /**
+     * Writes the cache, replacing the file atomically so that an interrupted write doesn't lose the previous cache.
+     * Primary descriptor paths that weren't found aren't written, because the time that they were looked up isn't recorded.
+     * @param path
+     * @throws IOException
+     */
+    public void write(Path path) throws IOException {
+        Map<String, CachedWorkflows> workflowPathPrefixes = workflowPathPrefixToCachedWorkflows.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> new CachedWorkflows(entry.getValue().workflows().stream()
+                        .map(workflow -> new MinimalWorkflowInfo(workflow.id(), workflow.fullWorkflowPath(), workflow.descriptorType(),
+                                workflow.versionToPrimaryDescriptorPathMap().entrySet().stream()
+                                        .filter(versionEntry -> !versionEntry.getValue().isEmpty())
+                                        .collect(Collectors.toConcurrentMap(Map.Entry::getKey, Map.Entry::getValue))))
+                        .toList(), entry.getValue().cachedAtMillis())));
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            GSON.toJson(new CacheFile(Map.copyOf(sourceUrlToCachedSourceUrl), workflowPathPrefixes), writer);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Wrote {} source URLs and {} workflow paths to the source URL resolution cache {}", sourceUrlToCachedSourceUrl.size(), workflowPathPrefixes.size(), path);
+    }
+
+    public Optional<SourceUrlTrsInfo> getTrsInfo(String sourceUrl) {
+        return Optional.ofNullable(sourceUrlToCachedSourceUrl.get(sourceUrl)).map(CachedSourceUrl::trsInfo);
+    }
+
+    public void putTrsInfo(SourceUrlTrsInfo sourceUrlTrsInfo) {
+        sourceUrlToCachedSourceUrl.put(sourceUrlTrsInfo.sourceUrl(), new CachedSourceUrl(sourceUrlTrsInfo, null, Instant.now().toEpochMilli()));
+    }
+
+    /**
+     * Returns the reason that the source URL was skipped, if it was skipped before.
+     * @param sourceUrl
+     * @return
+     */
+    public Optional<String> getSkipReason(String sourceUrl) {
+        final CachedSourceUrl cachedSourceUrl = sourceUrlToCachedSourceUrl.get(sourceUrl);
+        if (cachedSourceUrl != null && cachedSourceUrl.skipReason() != null) {
+            return Optional.of(cachedSourceUrl.skipReason());
+        }
+        return Optional.ofNullable(sourceUrlToTransientSkipReason.get(sourceUrl));
+    }
+
+    /**
+     * Records that all executions with the source URL should be skipped. The time that the source URL was first skipped is kept, so that skipping it again doesn't extend its time to live.
+     * @param sourceUrl
+     * @param reason
+     * @param isTransient true if the reason may not apply in the next run, in which case the source URL isn't written
+     */
+    public void putSkipReason(String sourceUrl, String reason, boolean isTransient) {
+        if (isTransient) {
+            sourceUrlToTransientSkipReason.putIfAbsent(sourceUrl, reason);
+        } else {
+            sourceUrlToCachedSourceUrl.putIfAbsent(sourceUrl, new CachedSourceUrl(null, reason, Instant.now().toEpochMilli()));
+        }
+    }
+
+    /**
+     * Returns the published workflows with the workflow path prefix, if they were fetched before.
+     * @param workflowPathPrefix
+     * @return
+     */
+    public Optional<List<MinimalWorkflowInfo>> getWorkflows(String workflowPathPrefix) {
+        return Optional.ofNullable(workflowPathPrefixToCachedWorkflows.get(workflowPathPrefix)).map(CachedWorkflows::workflows);
+    }
+
+    public void putWorkflows(String workflowPathPrefix, List<MinimalWorkflowInfo> workflows) {
+        workflowPathPrefixToCachedWorkflows.put(workflowPathPrefix, new CachedWorkflows(workflows, Instant.now().toEpochMilli()));
+    }
+
+    private boolean isExpired(long cachedAtMillis, boolean isNegative, long nowMillis) {
+        return nowMillis - cachedAtMillis > (isNegative ? negativeTimeToLive : timeToLive).toMillis();
+    }
+
+    /**
+     * A resolved or skipped source URL. Exactly one of trsInfo and skipReason is not null.
+     * @param trsInfo
+     * @param skipReason
+     * @param cachedAtMillis
+     */
+    private record CachedSourceUrl(SourceUrlTrsInfo trsInfo, String skipReason, long cachedAtMillis) {
+    }
+
+    private record CachedWorkflows(List<MinimalWorkflowInfo> workflows, long cachedAtMillis) {
+    }
+
+    private record CacheFile(Map<String, CachedSourceUrl> sourceUrls, Map<String, CachedWorkflows> workflowPathPrefixes) {
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import com.google.gson.Gson;
+import io.dockstore.openapi.client.ApiClient;
+import io.dockstore.openapi.client.ApiException;
+import io.dockstore.openapi.client.Pair;
+import io.dockstore.openapi.client.model.RunExecution;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+
+/**
+ * Posts executions like ExtendedGa4GhApi.executionMetricsPost, but serializes each execution straight to the request body while it's being sent,
+ * instead of building an ExecutionsRequestBody and serializing all of it to a string first, so that only one serialized execution is held in memory at a time.
+ * The caller sizes the requests with getSerializedSize, which counts the bytes of an execution's JSON without keeping it.
+ * The body can optionally be gzip compressed, which the webservice must be configured to accept.
+ * The requests are sent with chunked transfer encoding by an API client of its own, so the requests of the other APIs, which share the default API client, aren't affected.
+ */
+class StreamingExecutionMetricsApi {
+    private static final String EXECUTION_METRICS_PATH = "/ga4gh/trs/v2/extended/{id}/versions/{version_id}/executions";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String GZIP_CONTENT_ENCODING = "gzip";
+    private static final String[] AUTH_NAMES = {"BEARER"};
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final Gson GSON = new Gson();
+    private static final String BODY_START = "{\"runExecutions\":[";
+    private static final String BODY_END = "]}";
+    private static final char EXECUTION_SEPARATOR = ',';
+
+    private final ApiClient apiClient;
+    private final boolean gzipRequests;
+
+    /**
+     * Creates an API client whose requests use chunked transfer encoding, so that request bodies are sent while they're written instead of being buffered to compute their length.
+     * @param serverUrl
+     * @param token
+     * @param gzipRequests
+     */
+    StreamingExecutionMetricsApi(String serverUrl, String token, boolean gzipRequests) {
+        this.apiClient = new ApiClient();
+        this.gzipRequests = gzipRequests;
+        apiClient.setBasePath(serverUrl);
+        apiClient.addDefaultHeader("Authorization", "Bearer " + token);
+        apiClient.getHttpClient().property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+    }
+
+    /**
+     * Returns the size, in bytes, of the JSON that's written to the request body for the execution, without keeping the JSON.
+     * @param execution
+     * @return the size of the JSON encoded in UTF-8
+     */
+    static long getSerializedSize(RunExecution execution) {
+        Utf8ByteCounter utf8ByteCounter = new Utf8ByteCounter();
+        GSON.toJson(execution, utf8ByteCounter);
+        return utf8ByteCounter.numberOfBytes;
+    }
+
+    /**
+     * Submits the executions of the TRS version.
+     * @param executions
+     * @param platform
+     * @param id
+     * @param versionId
+     * @param description
+     * @throws ApiException if the request failed, with the response's status code
+     */
+    void executionMetricsPost(List<RunExecution> executions, String platform, String id, String versionId, String description) throws ApiException {
+        final String path = EXECUTION_METRICS_PATH
+                .replace("{id}", apiClient.escapeString(id))
+                .replace("{version_id}", apiClient.escapeString(versionId));
+        final List<Pair> queryParams = List.of(new Pair("platform", platform), new Pair("description", description));
+        // The header parameters are modified by the client to add the Authorization header
+        final Map<String, String> headerParams = new HashMap<>();
+        if (gzipRequests) {
+            headerParams.put("Content-Encoding", GZIP_CONTENT_ENCODING);
+        }
+        apiClient.invokeAPI(path, "POST", queryParams, new ExecutionsRequestBodyOutput(executions, gzipRequests), headerParams, new HashMap<>(), JSON_CONTENT_TYPE,
+                JSON_CONTENT_TYPE, AUTH_NAMES, null);
+    }
+
+    /**
+     * Writes {"runExecutions":[...]}, serializing each execution as it's written, so that the body isn't built as one string before it's sent.
+     */
+    static final class ExecutionsRequestBodyOutput implements StreamingOutput {
+        private final List<RunExecution> executions;
+        private final boolean gzip;
+
+        ExecutionsRequestBodyOutput(List<RunExecution> executions, boolean gzip) {
+            this.executions = executions;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public void write(OutputStream outputStream) throws IOException {
+            // The output stream is closed by the client, so the streams wrapping it are only flushed or finished
+            final GZIPOutputStream gzipOutputStream = gzip ? new GZIPOutputStream(outputStream, WRITE_BUFFER_SIZE) : null;
+            final Writer bodyWriter = new BufferedWriter(new OutputStreamWriter(gzip ? gzipOutputStream : outputStream, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+            bodyWriter.write(BODY_START);
+            for (int i = 0; i < executions.size(); i++) {
+                if (i > 0) {
+                    bodyWriter.write(EXECUTION_SEPARATOR);
+                }
+                GSON.toJson(executions.get(i), bodyWriter);
+            }
+            bodyWriter.write(BODY_END);
+            bodyWriter.flush();
+            if (gzipOutputStream != null) {
+                gzipOutputStream.finish();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes of the characters written to it when they're encoded in UTF-8. A surrogate is counted as 2 bytes, so a surrogate pair is counted as the 4 bytes
+     * that it's encoded in, and an unpaired surrogate, which is encoded as a 1-byte replacement, is overcounted rather than undercounted.
+     */
+    private static final class Utf8ByteCounter extends Writer {
+        private static final char MAX_ONE_BYTE_CHAR = 0x7F;
+        private static final char MAX_TWO_BYTE_CHAR = 0x7FF;
+        private static final int THREE_BYTES = 3;
+        private long numberOfBytes = 0;
+
+        @Override
+        public void write(int c) {
+            numberOfBytes += getUtf8Length((char)c);
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                numberOfBytes += getUtf8Length(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                numberOfBytes += getUtf8Length(string.charAt(i));
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Nothing is buffered
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+
+        private static int getUtf8Length(char c) {
+            if (c <= MAX_ONE_BYTE_CHAR) {
+                return 1;
+            } else if (c <= MAX_TWO_BYTE_CHAR || Character.isSurrogate(c)) {
+                return 2;
+            }
+            return THREE_BYTES;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Tracks which records of the Terra CSV file were submitted or skipped, so that an interrupted submission can be resumed without submitting executions twice.
+ * Records are completed out of order by the submission pipeline, so the checkpoint is the last record number before which all records were completed,
+ * along with the completed records of the batches that were in progress.
+ */
+class SubmissionCheckpoint {
+    private static final Gson GSON = new Gson();
+
+    private final String dataFilePath;
+    // Batches that have records that weren't completed, by the record number of their first record
+    private final ConcurrentSkipListMap<Long, Batch> firstRecordNumberToBatch = new ConcurrentSkipListMap<>();
+    // The state of the checkpoint that was resumed from, used to skip the records that were completed before
+    private final long resumedLastCompletedRecordNumber;
+    private final long resumedNumberOfExecutionsSubmitted;
+    private final long resumedNumberOfExecutionsSkipped;
+    private final NavigableMap<Long, ResumedBatch> firstRecordNumberToResumedBatch = new TreeMap<>();
+    // Guarded by this
+    private long lastCompletedRecordNumber;
+    private long numberOfExecutionsSubmitted;
+    private long numberOfExecutionsSkipped;
+
+    /**
+     * Creates a checkpoint for a new submission of the data file.
+     * @param dataFilePath
+     */
+    SubmissionCheckpoint(String dataFilePath) {
+        this(dataFilePath, new CheckpointState(dataFilePath, 0, 0, 0, List.of()));
+    }
+
+    private SubmissionCheckpoint(String dataFilePath, CheckpointState resumedState) {
+        this.dataFilePath = dataFilePath;
+        this.resumedLastCompletedRecordNumber = resumedState.lastCompletedRecordNumber();
+        // The counts of the batches that were in progress are included, because their completed records are skipped
+        this.resumedNumberOfExecutionsSubmitted = resumedState.numberOfExecutionsSubmitted()
+                + resumedState.inProgressBatches().stream().mapToLong(BatchState::numberOfExecutionsSubmitted).sum();
+        this.resumedNumberOfExecutionsSkipped = resumedState.numberOfExecutionsSkipped()
+                + resumedState.inProgressBatches().stream().mapToLong(BatchState::numberOfExecutionsSkipped).sum();
+        resumedState.inProgressBatches().forEach(batchState -> firstRecordNumberToResumedBatch.put(batchState.firstRecordNumber(),
+                new ResumedBatch(batchState.lastRecordNumber(), BitSet.valueOf(batchState.completedRecords()))));
+        this.lastCompletedRecordNumber = resumedLastCompletedRecordNumber;
+        this.numberOfExecutionsSubmitted = resumedNumberOfExecutionsSubmitted;
+        this.numberOfExecutionsSkipped = resumedNumberOfExecutionsSkipped;
+    }
+
+    /**
+     * Reads a checkpoint written by write, to resume the submission of the data file.
+     * @param path
+     * @param dataFilePath
+     * @return
+     * @throws IOException if the checkpoint can't be read or is for a different data file
+     */
+    static SubmissionCheckpoint read(Path path, String dataFilePath) throws IOException {
+        CheckpointState state;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            state = GSON.fromJson(reader, CheckpointState.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid checkpoint " + path, e);
+        }
+        if (state == null || !dataFilePath.equals(state.dataFilePath())) {
+            throw new IOException("The checkpoint " + path + " isn't for the data file " + dataFilePath);
+        }
+        return new SubmissionCheckpoint(dataFilePath, state);
+    }
+
+    /**
+     * Writes the checkpoint, replacing the file atomically so that an interrupted write doesn't lose the previous checkpoint.
+     * @param path
+     * @throws IOException
+     */
+    synchronized void write(Path path) throws IOException {
+        List<BatchState> inProgressBatches = new ArrayList<>();
+        // Batches aren't removed while this is locked
+        for (Batch batch: firstRecordNumberToBatch.values()) {
+            synchronized (batch) {
+                inProgressBatches.add(new BatchState(batch.firstRecordNumber, batch.lastRecordNumber, batch.completedRecords.toLongArray(), batch.numberOfExecutionsSubmitted,
+                        batch.numberOfExecutionsSkipped));
+            }
+        }
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+            GSON.toJson(new CheckpointState(dataFilePath, lastCompletedRecordNumber, numberOfExecutionsSubmitted, numberOfExecutionsSkipped, inProgressBatches), writer);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns true if the record was completed before the checkpoint that was resumed from was written.
+     * @param recordNumber
+     * @return
+     */
+    boolean isResumedRecordCompleted(long recordNumber) {
+        if (recordNumber <= resumedLastCompletedRecordNumber) {
+            return true;
+        }
+        final Map.Entry<Long, ResumedBatch> resumedBatchEntry = firstRecordNumberToResumedBatch.floorEntry(recordNumber);
+        if (resumedBatchEntry == null || recordNumber > resumedBatchEntry.getValue().lastRecordNumber()) {
+            return false;
+        }
+        return resumedBatchEntry.getValue().completedRecords().get((int)(recordNumber - resumedBatchEntry.getKey()));
+    }
+
+    /**
+     * Starts tracking the records from firstRecordNumber to lastRecordNumber, inclusive. Must be called before any of the records are completed.
+     * Records that were completed before the checkpoint that was resumed from are already completed.
+     * @param firstRecordNumber
+     * @param lastRecordNumber
+     */
+    void startBatch(long firstRecordNumber, long lastRecordNumber) {
+        Batch batch = new Batch(firstRecordNumber, lastRecordNumber);
+        for (long recordNumber = firstRecordNumber; recordNumber <= lastRecordNumber; recordNumber++) {
+            if (isResumedRecordCompleted(recordNumber)) {
+                batch.complete(recordNumber);
+            }
+        }
+        firstRecordNumberToBatch.put(firstRecordNumber, batch);
+        if (batch.numberOfRemainingRecords == 0) {
+            removeCompletedBatches();
+        }
+    }
+
+    /**
+     * Records that the execution in the record was submitted or skipped.
+     * @param recordNumber
+     * @param submitted true if the execution was submitted, false if it was skipped
+     */
+    void complete(long recordNumber, boolean submitted) {
+        Map.Entry<Long, Batch> batchEntry = firstRecordNumberToBatch.floorEntry(recordNumber);
+        if (batchEntry == null || recordNumber > batchEntry.getValue().lastRecordNumber) {
+            // The record's batch was already completed
+            return;
+        }
+        final Batch batch = batchEntry.getValue();
+        boolean batchCompleted;
+        synchronized (batch) {
+            if (!batch.complete(recordNumber)) {
+                return;
+            }
+            if (submitted) {
+                batch.numberOfExecutionsSubmitted++;
+            } else {
+                batch.numberOfExecutionsSkipped++;
+            }
+            batchCompleted = batch.numberOfRemainingRecords == 0;
+        }
+        if (batchCompleted) {
+            removeCompletedBatches();
+        }
+    }
+
+    synchronized long getLastCompletedRecordNumber() {
+        return lastCompletedRecordNumber;
+    }
+
+    /**
+     * Returns the number of executions submitted by the runs before this one.
+     * @return
+     */
+    long getResumedNumberOfExecutionsSubmitted() {
+        return resumedNumberOfExecutionsSubmitted;
+    }
+
+    /**
+     * Returns the number of executions skipped by the runs before this one.
+     * @return
+     */
+    long getResumedNumberOfExecutionsSkipped() {
+        return resumedNumberOfExecutionsSkipped;
+    }
+
+    /**
+     * Advances the last completed record number past the completed batches at the start of the file.
+     */
+    private synchronized void removeCompletedBatches() {
+        Map.Entry<Long, Batch> firstBatchEntry = firstRecordNumberToBatch.firstEntry();
+        while (firstBatchEntry != null) {
+            final Batch batch = firstBatchEntry.getValue();
+            synchronized (batch) {
+                if (batch.numberOfRemainingRecords > 0) {
+                    return;
+                }
+                lastCompletedRecordNumber = batch.lastRecordNumber;
+                numberOfExecutionsSubmitted += batch.numberOfExecutionsSubmitted;
+                numberOfExecutionsSkipped += batch.numberOfExecutionsSkipped;
+            }
+            firstRecordNumberToBatch.remove(firstBatchEntry.getKey());
+            firstBatchEntry = firstRecordNumberToBatch.firstEntry();
+        }
+    }
+
+    /**
+     * The records of a batch. Guarded by the batch.
+     */
+    private static final class Batch {
+        private final long firstRecordNumber;
+        private final long lastRecordNumber;
+        private final BitSet completedRecords = new BitSet();
+        private long numberOfRemainingRecords;
+        private long numberOfExecutionsSubmitted;
+        private long numberOfExecutionsSkipped;
+
+        private Batch(long firstRecordNumber, long lastRecordNumber) {
+            this.firstRecordNumber = firstRecordNumber;
+            this.lastRecordNumber = lastRecordNumber;
+            this.numberOfRemainingRecords = lastRecordNumber - firstRecordNumber + 1;
+        }
+
+        /**
+         * Marks the record as completed. Returns false if it was already completed.
+         */
+        private boolean complete(long recordNumber) {
+            final int index = (int)(recordNumber - firstRecordNumber);
+            if (completedRecords.get(index)) {
+                return false;
+            }
+            completedRecords.set(index);
+            numberOfRemainingRecords--;
+            return true;
+        }
+    }
+
+    /**
+     * The persisted state of a checkpoint.
+     * @param dataFilePath the data file being submitted
+     * @param lastCompletedRecordNumber all records up to and including this record number were completed
+     * @param numberOfExecutionsSubmitted the number of executions submitted up to lastCompletedRecordNumber
+     * @param numberOfExecutionsSkipped the number of executions skipped up to lastCompletedRecordNumber
+     * @param inProgressBatches the batches after lastCompletedRecordNumber that have completed records
+     */
+    private record CheckpointState(String dataFilePath, long lastCompletedRecordNumber, long numberOfExecutionsSubmitted, long numberOfExecutionsSkipped,
+                                   List<BatchState> inProgressBatches) {
+    }
+
+    private record BatchState(long firstRecordNumber, long lastRecordNumber, long[] completedRecords, long numberOfExecutionsSubmitted, long numberOfExecutionsSkipped) {
+    }
+
+    /**
+     * A batch that was in progress when the checkpoint that was resumed from was written.
+     * @param lastRecordNumber
+     * @param completedRecords the completed records, indexed from the first record of the batch
+     */
+    private record ResumedBatch(long lastRecordNumber, BitSet completedRecords) {
+    }
+}
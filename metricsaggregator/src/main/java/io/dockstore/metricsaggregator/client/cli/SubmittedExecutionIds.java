@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The IDs of the executions submitted for each TRS version, kept across runs so that executions in overlapping Terra exports, or in a file that is submitted again,
+ * aren't submitted twice. The IDs are kept in Bloom filters, so their size doesn't depend on the length of the IDs. The filters can report that an execution was
+ * submitted when it wasn't, with a probability of at most FALSE_POSITIVE_PROBABILITY.
+ *
+ * <p>IDs are put in the newest filter until it holds the number of IDs it was sized for. Then a filter twice as large, with half the false positive probability,
+ * is added for the IDs that follow, so the false positive probabilities of all the filters add up to less than FALSE_POSITIVE_PROBABILITY however many IDs are
+ * put, and the first filter only needs to be sized for the expected number of IDs.</p>
+ */
+class SubmittedExecutionIds {
+    private static final Logger LOG = LoggerFactory.getLogger(SubmittedExecutionIds.class);
+    private static final double FALSE_POSITIVE_PROBABILITY = 1e-6;
+    private static final char KEY_SEPARATOR = '\t';
+
+    // The filters, oldest first, replaced by a new list when a filter is added so that mightContain doesn't lock. The filters are thread-safe
+    private volatile List<SizedBloomFilter> filters;
+
+    private SubmittedExecutionIds(List<SizedBloomFilter> filters) {
+        this.filters = List.copyOf(filters);
+    }
+
+    /**
+     * Reads the IDs written by write, or if the file doesn't exist, creates a filter sized for the expected number of IDs.
+     * @param path
+     * @param expectedNumberOfIds
+     * @return
+     * @throws IOException
+     */
+    static SubmittedExecutionIds readOrCreate(Path path, long expectedNumberOfIds) throws IOException {
+        if (!Files.exists(path)) {
+            LOG.info("Submitted execution IDs {} don't exist, creating a filter for {} IDs", path, expectedNumberOfIds);
+            return create(expectedNumberOfIds);
+        }
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            final int numberOfFilters = inputStream.readInt();
+            List<SizedBloomFilter> filters = new ArrayList<>();
+            for (int i = 0; i < numberOfFilters; i++) {
+                final long filterExpectedNumberOfIds = inputStream.readLong();
+                final double falsePositiveProbability = inputStream.readDouble();
+                filters.add(new SizedBloomFilter(BloomFilter.readFrom(inputStream, Funnels.stringFunnel(StandardCharsets.UTF_8)), filterExpectedNumberOfIds,
+                        falsePositiveProbability));
+            }
+            if (filters.isEmpty()) {
+                throw new IOException("Submitted execution IDs " + path + " don't contain a filter");
+            }
+            SubmittedExecutionIds submittedExecutionIds = new SubmittedExecutionIds(filters);
+            LOG.info("Read about {} submitted execution IDs in {} filters from {}", submittedExecutionIds.getApproximateNumberOfIds(), numberOfFilters, path);
+            return submittedExecutionIds;
+        }
+    }
+
+    static SubmittedExecutionIds create(long expectedNumberOfIds) {
+        // Half of the false positive probability is left for the filters that are added if more IDs are put
+        return new SubmittedExecutionIds(List.of(SizedBloomFilter.create(expectedNumberOfIds, FALSE_POSITIVE_PROBABILITY / 2)));
+    }
+
+    /**
+     * Returns true if the execution was probably submitted for the TRS version, false if it definitely wasn't.
+     * @param trsId
+     * @param version
+     * @param executionId
+     * @return
+     */
+    boolean mightContain(String trsId, String version, String executionId) {
+        final String key = getKey(trsId, version, executionId);
+        return filters.stream().anyMatch(filter -> filter.bloomFilter().mightContain(key));
+    }
+
+    synchronized void put(String trsId, String version, String executionId) {
+        SizedBloomFilter newestFilter = filters.get(filters.size() - 1);
+        if (newestFilter.isFull()) {
+            newestFilter = SizedBloomFilter.create(2 * newestFilter.expectedNumberOfIds(), newestFilter.falsePositiveProbability() / 2);
+            List<SizedBloomFilter> newFilters = new ArrayList<>(filters);
+            newFilters.add(newestFilter);
+            filters = List.copyOf(newFilters);
+            LOG.info("The submitted execution IDs filled their filters, adding a filter for {} more IDs", newestFilter.expectedNumberOfIds());
+        }
+        newestFilter.bloomFilter().put(getKey(trsId, version, executionId));
+    }
+
+    long getApproximateNumberOfIds() {
+        return filters.stream().mapToLong(filter -> filter.bloomFilter().approximateElementCount()).sum();
+    }
+
+    int getNumberOfFilters() {
+        return filters.size();
+    }
+
+    /**
+     * Returns the estimated probability that mightContain returns true for an execution that wasn't submitted.
+     * @return
+     */
+    double getFalsePositiveProbability() {
+        return 1 - filters.stream().mapToDouble(filter -> 1 - filter.bloomFilter().expectedFpp()).reduce(1, (a, b) -> a * b);
+    }
+
+    /**
+     * Writes the IDs, replacing the file atomically so that an interrupted write doesn't lose the IDs that were written before.
+     * @param path
+     * @throws IOException
+     */
+    void write(Path path) throws IOException {
+        final List<SizedBloomFilter> filtersToWrite = filters;
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+            outputStream.writeInt(filtersToWrite.size());
+            for (SizedBloomFilter filter: filtersToWrite) {
+                outputStream.writeLong(filter.expectedNumberOfIds());
+                outputStream.writeDouble(filter.falsePositiveProbability());
+                filter.bloomFilter().writeTo(outputStream);
+            }
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Wrote about {} submitted execution IDs to {}", getApproximateNumberOfIds(), path);
+    }
+
+    private static String getKey(String trsId, String version, String executionId) {
+        return trsId + KEY_SEPARATOR + version + KEY_SEPARATOR + executionId;
+    }
+
+    /**
+     * A Bloom filter, with the number of IDs and the false positive probability that it was created for.
+     */
+    private record SizedBloomFilter(BloomFilter<CharSequence> bloomFilter, long expectedNumberOfIds, double falsePositiveProbability) {
+        static SizedBloomFilter create(long expectedNumberOfIds, double falsePositiveProbability) {
+            return new SizedBloomFilter(BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedNumberOfIds, falsePositiveProbability),
+                    expectedNumberOfIds, falsePositiveProbability);
+        }
+
+        boolean isFull() {
+            return bloomFilter.approximateElementCount() >= expectedNumberOfIds;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import io.dockstore.common.S3ClientHelper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.lang3.StringUtils;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Finds and opens the Terra metrics CSV files given by the --data option of the submit-terra-metrics command.
+ * The option is a local file, a glob of local files in one directory like exports/*.csv.gz, an S3 object like s3://bucket/export.csv.gz,
+ * every object with an S3 prefix like s3://bucket/exports/, or a manifest like @manifest.txt, a file listing one of the others on each line.
+ * Files whose names end with .gz are decompressed while they're read, and S3 objects are read while later parts of them are fetched in parallel.
+ */
+class TerraMetricsInputs implements AutoCloseable {
+    static final String S3_URI_PREFIX = "s3://";
+    private static final String MANIFEST_PREFIX = "@";
+    private static final String MANIFEST_COMMENT_PREFIX = "#";
+    private static final String GLOB_CHARACTERS = "*?[{";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final List<String> ZSTD_EXTENSIONS = List.of(".zst", ".zstd");
+    // S3 objects are fetched in parts of S3_PART_SIZE bytes, with up to S3_PARTS_IN_FLIGHT parts fetched in parallel ahead of the part being read
+    private static final int S3_PART_SIZE = 8 * 1024 * 1024;
+    private static final int S3_PARTS_IN_FLIGHT = 4;
+    // Files are read sequentially and can be gigabytes, so they're read in large chunks
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    private final Supplier<S3Client> s3ClientFactory;
+    // Created when the first S3 location is used, so that local files can be read without AWS credentials
+    private S3Client s3Client;
+
+    TerraMetricsInputs() {
+        this(S3ClientHelper::getS3Client);
+    }
+
+    TerraMetricsInputs(Supplier<S3Client> s3ClientFactory) {
+        this.s3ClientFactory = s3ClientFactory;
+    }
+
+    /**
+     * Returns the locations of the files given by the --data option, in the order that they should be submitted.
+     * @param data
+     * @return
+     * @throws IOException if a manifest or directory can't be read, or no files were found
+     */
+    List<String> getLocations(String data) throws IOException {
+        List<String> locations = new ArrayList<>();
+        if (data.startsWith(MANIFEST_PREFIX)) {
+            final Path manifestPath = Path.of(data.substring(MANIFEST_PREFIX.length()));
+            for (String line: Files.readAllLines(manifestPath, StandardCharsets.UTF_8)) {
+                final String location = line.trim();
+                if (location.isEmpty() || location.startsWith(MANIFEST_COMMENT_PREFIX)) {
+                    continue;
+                }
+                if (location.startsWith(MANIFEST_PREFIX)) {
+                    throw new IOException("The manifest " + manifestPath + " can't include another manifest " + location);
+                }
+                locations.addAll(getLocations(location));
+            }
+        } else if (data.startsWith(S3_URI_PREFIX) && data.endsWith("/")) {
+            final S3Location s3Location = S3Location.parse(data);
+            ListObjectsV2Request request = ListObjectsV2Request.builder().bucket(s3Location.bucket()).prefix(s3Location.key()).build();
+            getS3Client().listObjectsV2Paginator(request).contents().stream()
+                    .map(S3Object::key)
+                    .filter(key -> !key.endsWith("/"))
+                    .forEach(key -> locations.add(S3_URI_PREFIX + s3Location.bucket() + "/" + key));
+        } else if (!data.startsWith(S3_URI_PREFIX) && StringUtils.containsAny(Path.of(data).getFileName().toString(), GLOB_CHARACTERS)) {
+            final Path directory = Path.of(data).toAbsolutePath().getParent();
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, Path.of(data).getFileName().toString())) {
+                paths.forEach(path -> locations.add(path.toString()));
+            }
+            locations.sort(null);
+        } else {
+            locations.add(data);
+        }
+        if (locations.isEmpty()) {
+            throw new IOException("There are no Terra metrics files in " + data);
+        }
+        return locations;
+    }
+
+    /**
+     * Opens a file returned by getLocations, decompressing it if it's compressed.
+     * @param location
+     * @return
+     * @throws IOException
+     */
+    BufferedReader open(String location) throws IOException {
+        if (ZSTD_EXTENSIONS.stream().anyMatch(location::endsWith)) {
+            throw new IOException("Zstandard compressed files aren't supported, compress " + location + " with gzip instead");
+        }
+        InputStream inputStream;
+        if (location.startsWith(S3_URI_PREFIX)) {
+            final S3Location s3Location = S3Location.parse(location);
+            inputStream = new S3RangedInputStream(getS3Client(), s3Location.bucket(), s3Location.key(), S3_PART_SIZE, S3_PARTS_IN_FLIGHT);
+        } else {
+            inputStream = Files.newInputStream(Path.of(location));
+        }
+        if (location.endsWith(GZIP_EXTENSION)) {
+            try {
+                inputStream = new GZIPInputStream(inputStream, READ_BUFFER_SIZE);
+            } catch (IOException e) {
+                inputStream.close();
+                throw e;
+            }
+        }
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Closes the S3 client, if an S3 location was used. The readers returned by open must be closed first.
+     */
+    @Override
+    public synchronized void close() {
+        if (s3Client != null) {
+            s3Client.close();
+            s3Client = null;
+        }
+    }
+
+    /**
+     * Returns the name of the file, without the directories or S3 prefix, so that files derived from it can be written to the working directory.
+     * @param location
+     * @return
+     */
+    static String getFileName(String location) {
+        return location.substring(location.lastIndexOf('/') + 1);
+    }
+
+    private synchronized S3Client getS3Client() {
+        if (s3Client == null) {
+            s3Client = s3ClientFactory.get();
+        }
+        return s3Client;
+    }
+
+    private record S3Location(String bucket, String key) {
+        private static S3Location parse(String s3Uri) {
+            String bucketAndKey = s3Uri.substring(S3_URI_PREFIX.length());
+            int keyIndex = bucketAndKey.indexOf('/');
+            return keyIndex < 0 ? new S3Location(bucketAndKey, "") : new S3Location(bucketAndKey.substring(0, keyIndex), bucketAndKey.substring(keyIndex + 1));
+        }
+    }
+}
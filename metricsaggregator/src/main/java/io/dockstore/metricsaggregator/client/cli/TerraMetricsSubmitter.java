@@ -1,9 +1,11 @@
 package io.dockstore.metricsaggregator.client.cli;
 
+import static io.dockstore.utils.ConcurrencyUtils.putUninterruptibly;
 import static io.dockstore.utils.DockstoreApiClientUtils.setupApiClient;
+import static io.dockstore.utils.ExceptionHandler.CLIENT_ERROR;
 import static io.dockstore.utils.ExceptionHandler.IO_ERROR;
+import static io.dockstore.utils.ExceptionHandler.errorMessage;
 import static io.dockstore.utils.ExceptionHandler.exceptionMessage;
-import static java.util.stream.Collectors.groupingBy;
 
 import com.google.common.collect.Lists;
 import com.google.common.math.IntMath;
@@ -14,18 +16,22 @@ import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitTerraMetr
 import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitTerraMetrics.TerraMetricsCsvHeaders;
 import io.dockstore.openapi.client.ApiClient;
 import io.dockstore.openapi.client.ApiException;
-import io.dockstore.openapi.client.api.ExtendedGa4GhApi;
 import io.dockstore.openapi.client.api.WorkflowsApi;
-import io.dockstore.openapi.client.model.ExecutionsRequestBody;
 import io.dockstore.openapi.client.model.RunExecution;
 import io.dockstore.openapi.client.model.RunExecution.ExecutionStatusEnum;
+import io.dockstore.openapi.client.model.Workflow;
 import io.dockstore.openapi.client.model.Workflow.DescriptorTypeEnum;
+import io.dockstore.openapi.client.model.WorkflowVersion;
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -36,13 +42,25 @@ import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
@@ -63,78 +81,226 @@ public class TerraMetricsSubmitter {
             .appendZoneId()
             .optionalEnd() // End optional time zone pattern
             .toFormatter();
+    // Nearly every workflow_start is this layout, followed by an optional fraction and an optional " UTC", so it's parsed without WORKFLOW_START_FORMAT
+    private static final String WORKFLOW_START_LAYOUT = "yyyy-MM-dd HH:mm:ss";
+    private static final String UTC_SUFFIX = " UTC";
+    private static final int DECIMAL_RADIX = 10;
+    private static final int NANOS_PER_MICRO = 1000;
+    private static final CSVFormat TERRA_METRICS_CSV_FORMAT = CSVFormat.DEFAULT.builder()
+            .setHeader(TerraMetricsCsvHeaders.class)
+            .setSkipHeaderRecord(true)
+            .setTrim(true)
+            .build();
+    private static final String GITHUB_WORKFLOW_PATH_PREFIX = "github.com/";
+    // Includes the versions of a workflow in the response of getPublishedWorkflow
+    private static final String VERSIONS_INCLUDE = "versions";
+    // Estimated size of the request body without any executions, {"runExecutions":[]}, with room for other fields
+    private static final long REQUEST_BODY_OVERHEAD_BYTES = 256;
+    // Number of rows to group by source_url before passing them to the resolution threads
+    private static final int BATCH_SIZE = 100000;
+    private static final int WORK_QUEUE_CAPACITY_PER_THREAD = 2;
+    private static final int MAX_NUMBER_OF_SKIP_REASONS_TO_LOG = 20;
+    private static final int CHECKPOINT_INTERVAL_SECONDS = 60;
+    // Mark the end of the work queues
+    private static final SourceUrlRecords END_OF_RESOLUTION_WORK = new SourceUrlRecords(null, List.of());
+    private static final ExecutionsToSubmit END_OF_SUBMISSION_WORK = new ExecutionsToSubmit(null, List.of(), List.of());
     private final MetricsAggregatorConfig config;
     private final SubmitTerraMetrics submitTerraMetricsCommand;
     private final AtomicInteger numberOfExecutionsProcessed = new AtomicInteger(0);
     private final AtomicInteger numberOfExecutionsSubmitted = new AtomicInteger(0);
     private final AtomicInteger numberOfExecutionsSkipped = new AtomicInteger(0);
+    private final AtomicInteger numberOfSubmissionRequests = new AtomicInteger(0);
+    private final AtomicInteger numberOfRequestsTooLargeAvoided = new AtomicInteger(0);
+    private final AtomicInteger numberOfRequestsTooLargeReceived = new AtomicInteger(0);
+    private final AtomicInteger numberOfDuplicateExecutionsDropped = new AtomicInteger(0);
+    private final AtomicInteger numberOfPossiblySubmittedExecutionsDropped = new AtomicInteger(0);
 
-    // Keep track of sourceUrls that are found to be ambiguous
-    private final ConcurrentMap<String, String> skippedSourceUrlsToReason = new ConcurrentHashMap<>();
-    // Map of source url to TRS info that was previously calculated
-    private final ConcurrentMap<String, SourceUrlTrsInfo> sourceUrlToSourceUrlTrsInfo = new ConcurrentHashMap<>();
-    // Map of workflow path prefixes, like github.com/organization/repo, to published workflows with the same workflow path prefix
-    private final ConcurrentMap<String, List<MinimalWorkflowInfo>> workflowPathPrefixToWorkflows = new ConcurrentHashMap<>();
+    // Keeps track of the TRS info calculated for source urls, the source urls that are skipped, and the published workflows of workflow path prefixes,
+    // like github.com/organization/repo
+    private final SourceUrlResolutionCache resolutionCache;
+    private final TerraMetricsInputs terraMetricsInputs = new TerraMetricsInputs();
+    // Keeps track of the rows of the file being submitted that were submitted or skipped, so that an interrupted submission can be resumed
+    private SubmissionCheckpoint checkpoint;
+    // The IDs of the executions that were submitted by this and previous runs, or null if duplicate executions aren't dropped
+    private SubmittedExecutionIds submittedExecutionIds;
 
     public TerraMetricsSubmitter(MetricsAggregatorConfig config, SubmitTerraMetrics submitTerraMetricsCommand) {
         this.config = config;
         this.submitTerraMetricsCommand = submitTerraMetricsCommand;
+        this.resolutionCache = new SourceUrlResolutionCache(Duration.ofHours(submitTerraMetricsCommand.getResolutionCacheTtlHours()),
+                Duration.ofHours(submitTerraMetricsCommand.getNegativeResolutionCacheTtlHours()));
     }
 
     public void submitTerraMetrics() {
         ApiClient apiClient = setupApiClient(config.getDockstoreConfig().serverUrl(), config.getDockstoreConfig().token());
-        ExtendedGa4GhApi extendedGa4GhApi = new ExtendedGa4GhApi(apiClient);
         WorkflowsApi workflowsApi = new WorkflowsApi(apiClient);
+        StreamingExecutionMetricsApi executionMetricsApi = new StreamingExecutionMetricsApi(config.getDockstoreConfig().serverUrl(), config.getDockstoreConfig().token(),
+                submitTerraMetricsCommand.isGzipRequests());
+
+        String description = "Submitted using the metricsaggregator's submit-terra-metrics command";
+        if (StringUtils.isNotBlank(submitTerraMetricsCommand.getDescription())) {
+            description += ". " + submitTerraMetricsCommand.getDescription();
+        }
+        final String submissionDescription = description;
+
+        final String checkpointPath = submitTerraMetricsCommand.getCheckpointPath();
+        if (submitTerraMetricsCommand.isResume() && checkpointPath == null) {
+            errorMessage("--resume requires --checkpoint", CLIENT_ERROR);
+        }
+
+        final String resolutionCachePath = submitTerraMetricsCommand.getResolutionCachePath();
+        if (resolutionCachePath != null) {
+            try {
+                resolutionCache.read(Path.of(resolutionCachePath));
+            } catch (IOException e) {
+                LOG.error("Could not read source URL resolution cache {}, resolving all source URLs", resolutionCachePath, e);
+            }
+        }
+
+        final String submittedExecutionIdsPath = submitTerraMetricsCommand.getSubmittedExecutionIdsPath();
+        if (submittedExecutionIdsPath != null) {
+            try {
+                submittedExecutionIds = SubmittedExecutionIds.readOrCreate(Path.of(submittedExecutionIdsPath), submitTerraMetricsCommand.getExpectedExecutionIds());
+            } catch (IOException e) {
+                exceptionMessage(e, "Unable to read submitted execution IDs file", IO_ERROR);
+            }
+        }
+
+        List<String> dataFileLocations = List.of();
+        try {
+            dataFileLocations = terraMetricsInputs.getLocations(submitTerraMetricsCommand.getDataFilePath());
+            // With more than one file, the checkpoint is a directory containing a checkpoint for each file
+            if (dataFileLocations.size() > 1 && checkpointPath != null) {
+                Files.createDirectories(Path.of(checkpointPath));
+            }
+        } catch (IOException e) {
+            exceptionMessage(e, "Unable to find input CSV files", IO_ERROR);
+        }
+        if (dataFileLocations.size() > 1) {
+            LOG.info("Submitting {} Terra metrics files", dataFileLocations.size());
+        }
+
+        // Each file is submitted by its own pipeline, one after the other, sharing the resolution cache.
+        // The files aren't submitted concurrently, because each pipeline already keeps threadCount requests to Dockstore in flight,
+        // and the checkpoint and the submitted execution IDs are written between files
+        try {
+            for (String dataFileLocation: dataFileLocations) {
+                final String dataFileCheckpointPath = dataFileLocations.size() > 1 && checkpointPath != null
+                        ? Path.of(checkpointPath).resolve(dataFileLocation.replaceAll("[^A-Za-z0-9._-]", "_") + ".json").toString()
+                        : checkpointPath;
+                submitTerraMetrics(dataFileLocation, dataFileCheckpointPath, dataFileLocations.size() > 1, submissionDescription, executionMetricsApi, workflowsApi);
+                if (submittedExecutionIdsPath != null) {
+                    try {
+                        submittedExecutionIds.write(Path.of(submittedExecutionIdsPath));
+                    } catch (IOException e) {
+                        LOG.error("Could not write submitted execution IDs {}", submittedExecutionIdsPath, e);
+                    }
+                }
+            }
+        } finally {
+            terraMetricsInputs.close();
+        }
+
+        logStats();
+
+        if (resolutionCachePath != null) {
+            try {
+                resolutionCache.write(Path.of(resolutionCachePath));
+            } catch (IOException e) {
+                LOG.error("Could not write source URL resolution cache {}", resolutionCachePath, e);
+            }
+        }
+    }
+
+    /**
+     * Submits the executions in one Terra metrics file.
+     * @param dataFileLocation
+     * @param checkpointPath the checkpoint of the file, or null if the submission isn't checkpointed
+     * @param isCheckpointOptional true if the submission is resumed, but the file may not have been started, in which case it doesn't have a checkpoint
+     * @param submissionDescription
+     * @param executionMetricsApi
+     * @param workflowsApi
+     */
+    private void submitTerraMetrics(String dataFileLocation, String checkpointPath, boolean isCheckpointOptional, String submissionDescription,
+            StreamingExecutionMetricsApi executionMetricsApi, WorkflowsApi workflowsApi) {
+        LOG.info("Submitting Terra metrics file {}", dataFileLocation);
+        checkpoint = new SubmissionCheckpoint(dataFileLocation);
+        if (submitTerraMetricsCommand.isResume() && (!isCheckpointOptional || Files.exists(Path.of(checkpointPath)))) {
+            try {
+                checkpoint = SubmissionCheckpoint.read(Path.of(checkpointPath), dataFileLocation);
+            } catch (IOException e) {
+                exceptionMessage(e, "Unable to read checkpoint file", IO_ERROR);
+            }
+            // Carry over the executions that were submitted and skipped before the submission was interrupted
+            final int resumedNumberOfExecutionsSubmitted = Math.toIntExact(checkpoint.getResumedNumberOfExecutionsSubmitted());
+            final int resumedNumberOfExecutionsSkipped = Math.toIntExact(checkpoint.getResumedNumberOfExecutionsSkipped());
+            numberOfExecutionsSubmitted.addAndGet(resumedNumberOfExecutionsSubmitted);
+            numberOfExecutionsSkipped.addAndGet(resumedNumberOfExecutionsSkipped);
+            numberOfExecutionsProcessed.addAndGet(resumedNumberOfExecutionsSubmitted + resumedNumberOfExecutionsSkipped);
+            LOG.info("Resuming the submission after row {}. {} executions were submitted and {} executions were skipped before", checkpoint.getLastCompletedRecordNumber(),
+                    resumedNumberOfExecutionsSubmitted, resumedNumberOfExecutionsSkipped);
+        }
 
         // Read CSV file
         Iterable<CSVRecord> workflowMetricRecords;
-        final String inputDateFilePath = this.submitTerraMetricsCommand.getDataFilePath();
-        try (BufferedReader metricsBufferedReader = new BufferedReader(new FileReader(inputDateFilePath))) {
-            final CSVFormat csvFormat = CSVFormat.DEFAULT.builder()
-                    .setHeader(TerraMetricsCsvHeaders.class)
-                    .setSkipHeaderRecord(true)
-                    .setTrim(true)
-                    .build();
-            workflowMetricRecords = csvFormat.parse(metricsBufferedReader);
-
-            // This output file is used to record skipped executions
-            final String outputFileName = inputDateFilePath + "_skipped_executions_" + Instant.now().truncatedTo(ChronoUnit.SECONDS).toString().replace("-", "").replace(":", "") + ".csv";
-
-            List<CSVRecord> workflowMetricsToProcess = new ArrayList<>();
-            try (CSVPrinter skippedExecutionsCsvPrinter = submitTerraMetricsCommand.isRecordSkippedExecutions() ? new CSVPrinter(
-                    new FileWriter(outputFileName, StandardCharsets.UTF_8),
-                    CSVFormat.DEFAULT.builder().setHeader(SkippedTerraMetricsCsvHeaders.class).build()) : null) {
-
-                // Process the executions by reading 100,000 rows, then processing the rows in parallel
-                final int batchSize = 100000;
-                for (CSVRecord workflowMetricRecord: workflowMetricRecords) {
-                    if (workflowMetricsToProcess.size() < batchSize && workflowMetricRecords.iterator().hasNext()) {
-                        workflowMetricsToProcess.add(workflowMetricRecord);
-                    } else {
-                        workflowMetricsToProcess.add(workflowMetricRecord);
-                        LOG.info("Processing rows {} to {}", workflowMetricsToProcess.get(0).getRecordNumber(), workflowMetricsToProcess.get(workflowMetricsToProcess.size() - 1).getRecordNumber());
-                        // Collect a map of CSV records with the same source URL
-                        Map<String, List<CSVRecord>> sourceUrlToCsvRecords = workflowMetricsToProcess.stream()
-                                .collect(groupingBy(csvRecord -> csvRecord.get(TerraMetricsCsvHeaders.source_url)));
-
-                        sourceUrlToCsvRecords.entrySet().stream()
-                                .parallel()
-                                .forEach(entry -> {
-                                    final String sourceUrl = entry.getKey();
-                                    final List<CSVRecord> csvRecordsWithSameSourceUrl = entry.getValue();
-                                    submitWorkflowExecutions(sourceUrl, csvRecordsWithSameSourceUrl, workflowsApi, extendedGa4GhApi, skippedExecutionsCsvPrinter);
-                                });
-
-                        workflowMetricsToProcess.clear();
-                        logStats();
+        try (BufferedReader metricsBufferedReader = terraMetricsInputs.open(dataFileLocation)) {
+            workflowMetricRecords = TERRA_METRICS_CSV_FORMAT.parse(metricsBufferedReader);
+
+            // This output file is used to record skipped executions. Files of skipped executions of S3 objects are written to the working directory
+            final String outputFilePrefix = dataFileLocation.startsWith(TerraMetricsInputs.S3_URI_PREFIX) ? TerraMetricsInputs.getFileName(dataFileLocation) : dataFileLocation;
+            final String outputFileName = outputFilePrefix + "_skipped_executions_" + Instant.now().truncatedTo(ChronoUnit.SECONDS).toString().replace("-", "").replace(":", "") + ".csv";
+
+            try (SkippedExecutionsLog skippedExecutionsLog = new SkippedExecutionsLog(submitTerraMetricsCommand.isRecordSkippedExecutions() ? new CSVPrinter(
+                    new BufferedWriter(new FileWriter(outputFileName, StandardCharsets.UTF_8)),
+                    CSVFormat.DEFAULT.builder().setHeader(SkippedTerraMetricsCsvHeaders.class).build()) : null)) {
+
+                // The executions flow through a pipeline: this thread reads the CSV file and groups the rows by source_url, one pool of threads resolves the
+                // TRS ID of each source_url, the executions of each TRS version are coalesced across batches, and another pool of threads submits the executions
+                // to Dockstore. The stages are connected by bounded queues, so a stage blocks when the next one falls behind and the number of rows in memory stays bounded
+                final int threadCount = submitTerraMetricsCommand.getThreadCount();
+                BlockingQueue<SourceUrlRecords> resolutionQueue = new ArrayBlockingQueue<>(threadCount * WORK_QUEUE_CAPACITY_PER_THREAD);
+                BlockingQueue<ExecutionsToSubmit> submissionQueue = new ArrayBlockingQueue<>(threadCount * WORK_QUEUE_CAPACITY_PER_THREAD);
+
+                LOG.info("Submitting executions using {} threads to resolve TRS IDs and {} threads to submit executions in parallel", threadCount, threadCount);
+                ExecutorService resolutionExecutorService = Executors.newFixedThreadPool(threadCount);
+                ExecutorService submissionExecutorService = Executors.newFixedThreadPool(threadCount);
+                // Null if the published workflows are fetched by the resolution threads as they're needed
+                ExecutorService prefetchExecutorService = submitTerraMetricsCommand.isSkipPrefetch() ? null : Executors.newFixedThreadPool(threadCount);
+                ExecutionCoalescer executionCoalescer = new ExecutionCoalescer(submitTerraMetricsCommand.getMaxExecutionsPerVersion(),
+                        Duration.ofSeconds(submitTerraMetricsCommand.getMaxBufferSeconds()), BATCH_SIZE, executionsToSubmit -> putUninterruptibly(submissionQueue, executionsToSubmit));
+                ScheduledExecutorService coalescerExecutorService = Executors.newSingleThreadScheduledExecutor();
+                coalescerExecutorService.scheduleWithFixedDelay(() -> executionCoalescer.flushExpired(Instant.now()), 1, 1, TimeUnit.SECONDS);
+                if (checkpointPath != null) {
+                    coalescerExecutorService.scheduleWithFixedDelay(() -> writeCheckpoint(checkpointPath), CHECKPOINT_INTERVAL_SECONDS, CHECKPOINT_INTERVAL_SECONDS,
+                            TimeUnit.SECONDS);
+                }
+                startWorkers(resolutionExecutorService, threadCount, resolutionQueue, END_OF_RESOLUTION_WORK, sourceUrlRecords ->
+                        resolveWorkflowExecutions(sourceUrlRecords.sourceUrl(), sourceUrlRecords.csvRecords(), workflowsApi, skippedExecutionsLog)
+                                .ifPresent(executionCoalescer::add));
+                startWorkers(submissionExecutorService, threadCount, submissionQueue, END_OF_SUBMISSION_WORK, executionsToSubmit ->
+                        submitExecutions(executionsToSubmit, submissionDescription, executionMetricsApi, skippedExecutionsLog));
+
+                try {
+                    readWorkflowMetricRecords(workflowMetricRecords, sourceUrls -> prefetchPublishedWorkflows(sourceUrls, workflowsApi, prefetchExecutorService),
+                            sourceUrlRecords -> putUninterruptibly(resolutionQueue, sourceUrlRecords));
+                } finally {
+                    if (prefetchExecutorService != null) {
+                        awaitTermination(prefetchExecutorService);
+                    }
+                    // Drain the resolution stage and the coalesced executions before the submission stage, because they put work in the submission queue
+                    stopWorkers(resolutionExecutorService, threadCount, resolutionQueue, END_OF_RESOLUTION_WORK);
+                    awaitTermination(coalescerExecutorService);
+                    executionCoalescer.flushAll();
+                    stopWorkers(submissionExecutorService, threadCount, submissionQueue, END_OF_SUBMISSION_WORK);
+                    if (checkpointPath != null) {
+                        writeCheckpoint(checkpointPath);
                     }
                 }
+                skippedExecutionsLog.logReasonCounts(MAX_NUMBER_OF_SKIP_REASONS_TO_LOG);
             } catch (IOException e) {
                 exceptionMessage(e, "Unable to create new CSV output file", IO_ERROR);
             }
 
-            logStats();
-
             if (submitTerraMetricsCommand.isRecordSkippedExecutions()) {
                 LOG.info("View skipped executions in file {}", outputFileName);
             }
@@ -143,105 +309,383 @@ public class TerraMetricsSubmitter {
         }
     }
 
+    /**
+     * Fetches the published workflows of each repository of the source URLs that isn't in the resolution cache, in parallel.
+     * Afterwards, resolving a source_url is an in-memory lookup unless the version isn't a version of a published workflow in the repository.
+     * @param sourceUrls
+     * @param workflowsApi
+     * @param prefetchExecutorService the threads that fetch the published workflows, or null if they aren't prefetched
+     */
+    private void prefetchPublishedWorkflows(Collection<String> sourceUrls, WorkflowsApi workflowsApi, ExecutorService prefetchExecutorService) {
+        if (prefetchExecutorService == null) {
+            return;
+        }
+        Set<String> workflowPathPrefixes = new HashSet<>();
+        sourceUrls.forEach(sourceUrl -> getWorkflowPathPrefix(getSourceUrlComponents(sourceUrl))
+                .filter(workflowPathPrefix -> resolutionCache.getWorkflows(workflowPathPrefix).isEmpty())
+                .ifPresent(workflowPathPrefixes::add));
+        if (workflowPathPrefixes.isEmpty()) {
+            return;
+        }
+
+        LOG.info("Prefetching the published workflows of {} repositories", workflowPathPrefixes.size());
+        CompletableFuture.allOf(workflowPathPrefixes.stream().map(workflowPathPrefix -> CompletableFuture.runAsync(() -> {
+            try {
+                resolutionCache.putWorkflows(workflowPathPrefix, fetchPublishedWorkflows(workflowPathPrefix, workflowsApi));
+            } catch (ApiException e) {
+                // The source URLs of the repository are resolved, or skipped, when they're submitted
+                LOG.warn("Could not prefetch the published workflows for workflow path {}", workflowPathPrefix, e);
+            }
+        }, prefetchExecutorService)).toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * Fetches the published workflows with the workflow path prefix along with the primary descriptor paths of all of their versions,
+     * using one request per workflow instead of one request per workflow version.
+     * The workflows listed by path don't include their versions, so the versions of each workflow are fetched with the versions include.
+     * @param workflowPathPrefix
+     * @param workflowsApi
+     * @return
+     * @throws ApiException if the published workflows couldn't be fetched
+     */
+    static List<MinimalWorkflowInfo> fetchPublishedWorkflows(String workflowPathPrefix, WorkflowsApi workflowsApi) throws ApiException {
+        List<MinimalWorkflowInfo> publishedWorkflows = new ArrayList<>();
+        for (Workflow workflow: workflowsApi.getAllPublishedWorkflowByPath(workflowPathPrefix)) {
+            ConcurrentMap<String, String> versionToPrimaryDescriptorPathMap = new ConcurrentHashMap<>();
+            try {
+                List<WorkflowVersion> workflowVersions = workflow.getWorkflowVersions();
+                if (workflowVersions == null || workflowVersions.isEmpty()) {
+                    workflowVersions = workflowsApi.getPublishedWorkflow(workflow.getId(), VERSIONS_INCLUDE).getWorkflowVersions();
+                }
+                workflowVersions.stream()
+                        .filter(workflowVersion -> workflowVersion.getWorkflowPath() != null)
+                        .forEach(workflowVersion -> versionToPrimaryDescriptorPathMap.put(workflowVersion.getName(), makePathAbsolute(workflowVersion.getWorkflowPath())));
+            } catch (ApiException e) {
+                // The primary descriptor paths are fetched for each version when they're needed
+                LOG.debug("Could not get the versions of workflow {}", workflow.getFullWorkflowPath(), e);
+            }
+            publishedWorkflows.add(new MinimalWorkflowInfo(workflow.getId(), workflow.getFullWorkflowPath(), workflow.getDescriptorType(), versionToPrimaryDescriptorPathMap));
+        }
+        return publishedWorkflows;
+    }
+
+    /**
+     * Reads the CSV records and passes them, grouped by source_url, to the consumer.
+     * Rows are grouped in batches of BATCH_SIZE rows, so that the executions of a source_url are resolved and submitted together without holding the whole file in memory.
+     * Rows that were completed before the checkpoint that the submission resumed from are counted in their batch, but aren't passed to the consumer.
+     * @param workflowMetricRecords
+     * @param batchSourceUrlsConsumer called with the source URLs of each batch before its rows are passed to sourceUrlRecordsConsumer
+     * @param sourceUrlRecordsConsumer
+     */
+    private void readWorkflowMetricRecords(Iterable<CSVRecord> workflowMetricRecords, Consumer<Set<String>> batchSourceUrlsConsumer,
+            Consumer<SourceUrlRecords> sourceUrlRecordsConsumer) {
+        Map<String, List<CSVRecord>> sourceUrlToCsvRecords = new LinkedHashMap<>();
+        int numberOfRecordsInBatch = 0;
+        long firstRecordNumberInBatch = 0;
+        for (CSVRecord workflowMetricRecord: workflowMetricRecords) {
+            if (numberOfRecordsInBatch == 0) {
+                firstRecordNumberInBatch = workflowMetricRecord.getRecordNumber();
+            }
+            if (!checkpoint.isResumedRecordCompleted(workflowMetricRecord.getRecordNumber())) {
+                sourceUrlToCsvRecords.computeIfAbsent(workflowMetricRecord.get(TerraMetricsCsvHeaders.source_url), sourceUrl -> new ArrayList<>()).add(workflowMetricRecord);
+            }
+            numberOfRecordsInBatch++;
+            if (numberOfRecordsInBatch == BATCH_SIZE) {
+                LOG.info("Processing rows {} to {}", firstRecordNumberInBatch, workflowMetricRecord.getRecordNumber());
+                checkpoint.startBatch(firstRecordNumberInBatch, workflowMetricRecord.getRecordNumber());
+                batchSourceUrlsConsumer.accept(sourceUrlToCsvRecords.keySet());
+                sourceUrlToCsvRecords.forEach((sourceUrl, csvRecords) -> sourceUrlRecordsConsumer.accept(new SourceUrlRecords(sourceUrl, csvRecords)));
+                sourceUrlToCsvRecords.clear();
+                numberOfRecordsInBatch = 0;
+                logStats();
+            }
+        }
+        if (numberOfRecordsInBatch > 0) {
+            LOG.info("Processing the last {} rows starting at row {}", numberOfRecordsInBatch, firstRecordNumberInBatch);
+            checkpoint.startBatch(firstRecordNumberInBatch, firstRecordNumberInBatch + numberOfRecordsInBatch - 1);
+            batchSourceUrlsConsumer.accept(sourceUrlToCsvRecords.keySet());
+            sourceUrlToCsvRecords.forEach((sourceUrl, csvRecords) -> sourceUrlRecordsConsumer.accept(new SourceUrlRecords(sourceUrl, csvRecords)));
+        }
+    }
+
+    /**
+     * Starts threadCount threads that pass each element taken from the work queue to the worker until they take the endOfWork element.
+     * An unexpected exception thrown by the worker is logged so that the thread keeps taking work and the stage feeding the queue doesn't block forever.
+     */
+    private static <T> void startWorkers(ExecutorService executorService, int threadCount, BlockingQueue<T> workQueue, T endOfWork, Consumer<T> worker) {
+        for (int i = 0; i < threadCount; i++) {
+            executorService.execute(() -> {
+                try {
+                    T work = workQueue.take();
+                    while (work != endOfWork) {
+                        try {
+                            worker.accept(work);
+                        } catch (RuntimeException e) {
+                            LOG.error("Unexpected error while processing Terra executions", e);
+                        }
+                        work = workQueue.take();
+                    }
+                } catch (InterruptedException e) {
+                    LOG.info("InterruptedException while waiting for Terra executions to process");
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    /**
+     * Signals each of the threadCount threads started by startWorkers that there's no more work, then waits for them to finish the work in the queue.
+     */
+    private static <T> void stopWorkers(ExecutorService executorService, int threadCount, BlockingQueue<T> workQueue, T endOfWork) {
+        for (int i = 0; i < threadCount; i++) {
+            putUninterruptibly(workQueue, endOfWork);
+        }
+        awaitTermination(executorService);
+    }
+
+    /**
+     * Shuts down the executor service and waits for the tasks that were started to complete. Periodic tasks aren't run again.
+     */
+    private static void awaitTermination(ExecutorService executorService) {
+        executorService.shutdown();
+        try {
+            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            LOG.info("InterruptedException while waiting for threads to complete");
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeCheckpoint(String checkpointPath) {
+        try {
+            checkpoint.write(Path.of(checkpointPath));
+        } catch (IOException e) {
+            LOG.error("Could not write checkpoint {}", checkpointPath, e);
+        }
+    }
+
     private void logStats() {
-        LOG.info("Done processing {} executions from Terra. Submitted {} executions. Skipped {} executions.", numberOfExecutionsProcessed, numberOfExecutionsSubmitted, numberOfExecutionsSkipped);
+        LOG.info("Done processing {} executions from Terra. Submitted {} executions in {} requests. Skipped {} executions.", numberOfExecutionsProcessed, numberOfExecutionsSubmitted,
+                numberOfSubmissionRequests, numberOfExecutionsSkipped);
+        LOG.info("Avoided {} requests that were too large by splitting them. Received {} 413 Request Entity Too Large responses.", numberOfRequestsTooLargeAvoided,
+                numberOfRequestsTooLargeReceived);
+        if (submittedExecutionIds != null) {
+            LOG.info("Skipped {} executions whose ID was repeated, and {} executions that were possibly already submitted. "
+                    + "The probability that an execution that wasn't submitted is skipped is about {}.", numberOfDuplicateExecutionsDropped,
+                    numberOfPossiblySubmittedExecutionsDropped, submittedExecutionIds.getFalsePositiveProbability());
+        }
     }
 
-    private void submitWorkflowExecutions(String sourceUrl, List<CSVRecord> workflowMetricRecords, WorkflowsApi workflowsApi, ExtendedGa4GhApi extendedGa4GhApi, CSVPrinter skippedExecutionsCsvPrinter) {
+    /**
+     * Resolves the TRS ID and version of the source_url and converts the CSV records to the executions to submit.
+     * @param sourceUrl
+     * @param workflowMetricRecords CSV records, all with the same source_url
+     * @param workflowsApi
+     * @param skippedExecutionsLog
+     * @return the executions to submit, or an empty Optional if the source_url couldn't be resolved
+     */
+    private Optional<ExecutionsToSubmit> resolveWorkflowExecutions(String sourceUrl, List<CSVRecord> workflowMetricRecords, WorkflowsApi workflowsApi, SkippedExecutionsLog skippedExecutionsLog) {
         LOG.info("Processing source_url {} for {} executions", sourceUrl, workflowMetricRecords.size());
         numberOfExecutionsProcessed.addAndGet(workflowMetricRecords.size());
 
         if (StringUtils.isBlank(sourceUrl)) {
-            logSkippedExecutions("", workflowMetricRecords, "Can't determine TRS ID because source_url is missing", skippedExecutionsCsvPrinter, false);
+            logSkippedExecutions("", workflowMetricRecords, "Can't determine TRS ID because source_url is missing", skippedExecutionsLog, false);
+            return Optional.empty();
         }
 
         // Check to see if this source_url was skipped before
-        if (skippedSourceUrlsToReason.containsKey(sourceUrl)) {
-            logSkippedExecutions(sourceUrl, workflowMetricRecords, skippedSourceUrlsToReason.get(sourceUrl), skippedExecutionsCsvPrinter, true);
-            return;
+        final Optional<String> skipReason = resolutionCache.getSkipReason(sourceUrl);
+        if (skipReason.isPresent()) {
+            logSkippedExecutions(sourceUrl, workflowMetricRecords, skipReason.get(), skippedExecutionsLog, false);
+            return Optional.empty();
+        }
+
+        Optional<SourceUrlTrsInfo> cachedSourceUrlTrsInfo = resolutionCache.getTrsInfo(sourceUrl);
+        if (cachedSourceUrlTrsInfo.isEmpty()) {
+            cachedSourceUrlTrsInfo = calculateTrsInfoFromSourceUrl(workflowMetricRecords, sourceUrl, workflowsApi, skippedExecutionsLog);
+            if (cachedSourceUrlTrsInfo.isEmpty()) {
+                return Optional.empty();
+            }
+            resolutionCache.putTrsInfo(cachedSourceUrlTrsInfo.get());
         }
 
-        if (!sourceUrlToSourceUrlTrsInfo.containsKey(sourceUrl)) {
-            Optional<SourceUrlTrsInfo> sourceUrlTrsInfo = calculateTrsInfoFromSourceUrl(workflowMetricRecords, sourceUrl, workflowsApi, skippedExecutionsCsvPrinter);
-            if (sourceUrlTrsInfo.isEmpty()) {
-                return;
+        final SourceUrlTrsInfo sourceUrlTrsInfo = cachedSourceUrlTrsInfo.get();
+        // Keep the CSV record of each execution, so that only the records of the executions in a failed request are skipped
+        List<RunExecution> workflowExecutionsToSubmit = new ArrayList<>();
+        List<CSVRecord> workflowMetricRecordsToSubmit = new ArrayList<>();
+        for (CSVRecord workflowMetricRecord: workflowMetricRecords) {
+            getTerraWorkflowExecutionFromCsvRecord(workflowMetricRecord, sourceUrlTrsInfo.sourceUrl(), skippedExecutionsLog).ifPresent(workflowExecution -> {
+                workflowExecutionsToSubmit.add(workflowExecution);
+                workflowMetricRecordsToSubmit.add(workflowMetricRecord);
+            });
+        }
+        return Optional.of(new ExecutionsToSubmit(sourceUrlTrsInfo, workflowExecutionsToSubmit, workflowMetricRecordsToSubmit));
+    }
+
+    /**
+     * Submits the executions in requests whose estimated size is at most the maximum request size, so that the server doesn't reject them as too large.
+     * If submitted execution IDs are kept, the executions that were already submitted are skipped.
+     * @param resolvedExecutions
+     * @param description
+     * @param executionMetricsApi
+     * @param skippedExecutionsLog
+     */
+    private void submitExecutions(ExecutionsToSubmit resolvedExecutions, String description, StreamingExecutionMetricsApi executionMetricsApi,
+            SkippedExecutionsLog skippedExecutionsLog) {
+        final ExecutionsToSubmit executionsToSubmit = submittedExecutionIds == null ? resolvedExecutions : dropSubmittedExecutions(resolvedExecutions, skippedExecutionsLog);
+        // Only the sizes of the executions are computed here. Each execution is serialized again while its request is written, so the JSON of the executions isn't held in memory
+        List<List<RunExecution>> partitions = partitionBySerializedSize(executionsToSubmit.executions(), submitTerraMetricsCommand.getMaxRequestBytes(),
+                TerraMetricsSubmitter::getSerializedSize);
+        if (partitions.size() > 1) {
+            // Submitting the executions in one request would have been rejected with a 413 Request Entity Too Large
+            numberOfRequestsTooLargeAvoided.incrementAndGet();
+            LOG.info("Splitting {} workflow executions for workflow {} into {} requests of at most {} bytes", executionsToSubmit.executions().size(),
+                    executionsToSubmit.sourceUrlTrsInfo(), partitions.size(), submitTerraMetricsCommand.getMaxRequestBytes());
+        }
+        int fromIndex = 0;
+        for (List<RunExecution> partition: partitions) {
+            final int toIndex = fromIndex + partition.size();
+            executionMetricsPost(partition, executionsToSubmit.sourceUrlTrsInfo(), description, executionMetricsApi,
+                    executionsToSubmit.csvRecords().subList(fromIndex, toIndex), skippedExecutionsLog);
+            fromIndex = toIndex;
+        }
+    }
+
+    /**
+     * Skips the executions that were submitted for the TRS version before, and the executions whose ID is repeated, so that they aren't stored twice.
+     * The submitted execution IDs can rarely report that an execution was submitted when it wasn't, so those executions are logged as possibly submitted.
+     * @param executionsToSubmit
+     * @param skippedExecutionsLog
+     * @return the executions that weren't submitted before
+     */
+    private ExecutionsToSubmit dropSubmittedExecutions(ExecutionsToSubmit executionsToSubmit, SkippedExecutionsLog skippedExecutionsLog) {
+        final SourceUrlTrsInfo sourceUrlTrsInfo = executionsToSubmit.sourceUrlTrsInfo();
+        List<RunExecution> executions = new ArrayList<>();
+        List<CSVRecord> csvRecords = new ArrayList<>();
+        Set<String> executionIds = new HashSet<>();
+        for (int i = 0; i < executionsToSubmit.executions().size(); i++) {
+            final RunExecution execution = executionsToSubmit.executions().get(i);
+            final CSVRecord csvRecord = executionsToSubmit.csvRecords().get(i);
+            if (!executionIds.add(execution.getExecutionId())) {
+                numberOfDuplicateExecutionsDropped.incrementAndGet();
+                logSkippedExecution(sourceUrlTrsInfo.sourceUrl(), csvRecord, "The execution ID is repeated for the workflow version", skippedExecutionsLog, false, false);
+            } else if (submittedExecutionIds.mightContain(sourceUrlTrsInfo.trsId(), sourceUrlTrsInfo.version(), execution.getExecutionId())) {
+                numberOfPossiblySubmittedExecutionsDropped.incrementAndGet();
+                logSkippedExecution(sourceUrlTrsInfo.sourceUrl(), csvRecord, "The execution was possibly already submitted for the workflow version", skippedExecutionsLog,
+                        false, false);
             } else {
-                sourceUrlToSourceUrlTrsInfo.put(sourceUrl, sourceUrlTrsInfo.get());
+                executions.add(execution);
+                csvRecords.add(csvRecord);
             }
         }
+        return new ExecutionsToSubmit(sourceUrlTrsInfo, executions, csvRecords);
+    }
 
-        final SourceUrlTrsInfo sourceUrlTrsInfo = sourceUrlToSourceUrlTrsInfo.get(sourceUrl);
-        List<RunExecution> workflowExecutionsToSubmit = workflowMetricRecords.stream()
-                .map(workflowExecution -> getTerraWorkflowExecutionFromCsvRecord(workflowExecution, sourceUrlTrsInfo.sourceUrl(), skippedExecutionsCsvPrinter))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .toList();
-        String description = "Submitted using the metricsaggregator's submit-terra-metrics command";
-        if (StringUtils.isNotBlank(submitTerraMetricsCommand.getDescription())) {
-            description += ". " + submitTerraMetricsCommand.getDescription();
+    /**
+     * Partitions the executions, in order, so that the estimated size of the request body containing each partition is at most maxRequestBytes.
+     * An execution that is larger than maxRequestBytes on its own is put in a partition by itself.
+     * @param executions
+     * @param maxRequestBytes
+     * @param sizeFunction the size, in bytes, of an execution in the request body
+     * @return
+     */
+    static <T> List<List<T>> partitionBySerializedSize(List<T> executions, long maxRequestBytes, ToLongFunction<T> sizeFunction) {
+        List<List<T>> partitions = new ArrayList<>();
+        List<T> partition = new ArrayList<>();
+        long partitionBytes = REQUEST_BODY_OVERHEAD_BYTES;
+        for (T execution: executions) {
+            final long executionBytes = sizeFunction.applyAsLong(execution);
+            if (!partition.isEmpty() && partitionBytes + executionBytes > maxRequestBytes) {
+                partitions.add(partition);
+                partition = new ArrayList<>();
+                partitionBytes = REQUEST_BODY_OVERHEAD_BYTES;
+            }
+            partition.add(execution);
+            partitionBytes += executionBytes;
         }
+        if (!partition.isEmpty()) {
+            partitions.add(partition);
+        }
+        return partitions;
+    }
 
-        executionMetricsPost(workflowExecutionsToSubmit, sourceUrlTrsInfo, description, extendedGa4GhApi, workflowMetricRecords, skippedExecutionsCsvPrinter);
+    /**
+     * Returns the size, in bytes, of the serialized execution in the JSON request body, including the comma that separates it from the next execution.
+     * @param execution
+     * @return
+     */
+    static long getSerializedSize(RunExecution execution) {
+        return StreamingExecutionMetricsApi.getSerializedSize(execution) + 1L;
     }
 
     /**
      * Submit Terra workflow executions to Dockstore.
+     * Requests are sized by submitExecutions to avoid being rejected, so halving is a fallback for when the size is underestimated or the server's limit is lower than configured.
      * If the request fails with a 413 Request Entity Too Large and there are more than one execution to submit, the function halves the number of workflow executions to submit then re-attempts submission
      * until it's successful or a non-413 error occurs.
      * @param workflowExecutionsToSubmit
      * @param sourceUrlTrsInfo
      * @param description
-     * @param extendedGa4GhApi
-     * @param workflowMetricRecords
-     * @param skippedExecutionsCsvPrinter
+     * @param executionMetricsApi
+     * @param workflowMetricRecords the CSV records of the executions, in the same order
+     * @param skippedExecutionsLog
      */
-    private void executionMetricsPost(List<RunExecution> workflowExecutionsToSubmit, SourceUrlTrsInfo sourceUrlTrsInfo, String description, ExtendedGa4GhApi extendedGa4GhApi, List<CSVRecord> workflowMetricRecords, CSVPrinter skippedExecutionsCsvPrinter) {
+    private void executionMetricsPost(List<RunExecution> workflowExecutionsToSubmit, SourceUrlTrsInfo sourceUrlTrsInfo, String description,
+            StreamingExecutionMetricsApi executionMetricsApi, List<CSVRecord> workflowMetricRecords, SkippedExecutionsLog skippedExecutionsLog) {
         try {
-            extendedGa4GhApi.executionMetricsPost(new ExecutionsRequestBody().runExecutions(workflowExecutionsToSubmit), Partner.TERRA.toString(), sourceUrlTrsInfo.trsId(),
-                    sourceUrlTrsInfo.version(), description);
+            executionMetricsApi.executionMetricsPost(workflowExecutionsToSubmit, Partner.TERRA.toString(), sourceUrlTrsInfo.trsId(), sourceUrlTrsInfo.version(), description);
         } catch (ApiException e) {
             if (e.getCode() == HttpStatus.SC_REQUEST_TOO_LONG) {
+                numberOfRequestsTooLargeReceived.incrementAndGet();
                 // One execution is too large, not much that can be done, so log and skip it
                 if (workflowExecutionsToSubmit.size() == 1) {
                     logSkippedExecutions(sourceUrlTrsInfo.sourceUrl(), workflowMetricRecords,
                             String.format("Could not submit execution metric to Dockstore for workflow %s. Single execution is too large: %s", sourceUrlTrsInfo,
-                                    e.getMessage()), skippedExecutionsCsvPrinter, false);
+                                    e.getMessage()), skippedExecutionsLog, false);
                 } else {
                     int partitionSize = IntMath.divide(workflowExecutionsToSubmit.size(), 2, RoundingMode.UP);
                     List<List<RunExecution>> workflowExecutionsToSubmitPartitions = Lists.partition(workflowExecutionsToSubmit,
                             partitionSize);
+                    List<List<CSVRecord>> workflowMetricRecordsPartitions = Lists.partition(workflowMetricRecords, partitionSize);
                     LOG.info(
                             "Request body too large, dividing list of {} workflow executions in half with partition size {} and re-attempting",
                             workflowExecutionsToSubmit.size(), partitionSize);
-                    for (List<RunExecution> partition : workflowExecutionsToSubmitPartitions) {
+                    for (int i = 0; i < workflowExecutionsToSubmitPartitions.size(); i++) {
+                        final List<RunExecution> partition = workflowExecutionsToSubmitPartitions.get(i);
                         LOG.info("Re-attempting with {} workflow executions", partition.size());
-                        executionMetricsPost(partition, sourceUrlTrsInfo, description, extendedGa4GhApi, workflowMetricRecords,
-                                skippedExecutionsCsvPrinter);
+                        executionMetricsPost(partition, sourceUrlTrsInfo, description, executionMetricsApi,
+                                workflowMetricRecordsPartitions.get(i), skippedExecutionsLog);
                     }
                 }
             } else {
                 logSkippedExecutions(sourceUrlTrsInfo.sourceUrl(), workflowMetricRecords,
                         String.format("Could not submit execution metrics to Dockstore for workflow %s: %s", sourceUrlTrsInfo,
-                                e.getMessage()), skippedExecutionsCsvPrinter, false);
+                                e.getMessage()), skippedExecutionsLog, false);
             }
             return;
         }
         // only count if there was no exception
         numberOfExecutionsSubmitted.addAndGet(workflowExecutionsToSubmit.size());
+        numberOfSubmissionRequests.incrementAndGet();
+        if (submittedExecutionIds != null) {
+            workflowExecutionsToSubmit.forEach(execution -> submittedExecutionIds.put(sourceUrlTrsInfo.trsId(), sourceUrlTrsInfo.version(), execution.getExecutionId()));
+        }
+        workflowMetricRecords.forEach(workflowMetricRecord -> checkpoint.complete(workflowMetricRecord.getRecordNumber(), true));
     }
 
     /**
      * Performs logging and writing of the skipped execution to an output file.
-     * If skipFutureExecutionsWithSourceUrl is true, also adds the source_url of the skipped execution to the sourceUrlsToSkipToReason map
+     * If skipFutureExecutionsWithSourceUrl is true, also records the source_url of the skipped execution in the resolution cache
      * so that future executions with the same source_url are skipped.
      * @param sourceUrl source_url of the csvRecordToSkip
      * @param csvRecordToSkip CSVRecord to skip
      * @param reason Reason that this execution is being skipped
-     * @param skippedExecutionsCsvPrinter CSVPrinter that writes to the output file
+     * @param skippedExecutionsLog log that records skipped executions to the output file
      * @param skipFutureExecutionsWithSourceUrl boolean indicating if all executions with the same source_url should be skipped
      * @param logToConsole boolean indicating if the reason skipped should be logged to the console
      */
-    private void logSkippedExecution(String sourceUrl, CSVRecord csvRecordToSkip, String reason, CSVPrinter skippedExecutionsCsvPrinter, boolean skipFutureExecutionsWithSourceUrl, boolean logToConsole) {
+    private void logSkippedExecution(String sourceUrl, CSVRecord csvRecordToSkip, String reason, SkippedExecutionsLog skippedExecutionsLog, boolean skipFutureExecutionsWithSourceUrl, boolean logToConsole) {
         if (logToConsole) {
             LOG.warn("Skipping execution on row {} with source_url {}: {}", csvRecordToSkip.getRecordNumber(), sourceUrl, reason);
         }
@@ -249,22 +693,12 @@ public class TerraMetricsSubmitter {
         // Record to map for future reference. Only want to do this if the skip reason applies for ALL executions with the source_url.
         // Should not add to this map if the skip reason is specific to one execution
         if (skipFutureExecutionsWithSourceUrl) {
-            skippedSourceUrlsToReason.put(sourceUrl, reason);
-        }
-        if (submitTerraMetricsCommand.isRecordSkippedExecutions()) {
-            // Record to output CSV file for later examination
-            // Headers: workflow_id, status, workflow_start, workflow_end, workflow_runtime_minutes, source_url
-            List<String> csvColumnValues = Arrays.stream(TerraMetricsCsvHeaders.values())
-                    .map(csvRecordToSkip::get) // Get the column value for the record
-                    .collect(Collectors.toList());
-            csvColumnValues.add(reason);
-            try {
-                skippedExecutionsCsvPrinter.printRecord(csvColumnValues);
-            } catch (IOException e) {
-                LOG.error("Could not write skipped execution to output file");
-            }
+            resolutionCache.putSkipReason(sourceUrl, reason, false);
         }
+        // Record to output CSV file for later examination, if enabled
+        skippedExecutionsLog.record(csvRecordToSkip, reason);
         numberOfExecutionsSkipped.incrementAndGet();
+        checkpoint.complete(csvRecordToSkip.getRecordNumber(), false);
     }
 
     /**
@@ -273,37 +707,37 @@ public class TerraMetricsSubmitter {
      * @param sourceUrl source_url of the csvRecordToSkip
      * @param csvRecordToSkip CSVRecord to skip
      * @param reason Reason that this execution is being skipped
-     * @param skippedExecutionsCsvPrinter CSVPrinter that writes to the output file
+     * @param skippedExecutionsLog log that records skipped executions to the output file
      */
-    private void logSkippedExecution(String sourceUrl, CSVRecord csvRecordToSkip, String reason, CSVPrinter skippedExecutionsCsvPrinter) {
-        logSkippedExecution(sourceUrl, csvRecordToSkip, reason, skippedExecutionsCsvPrinter, false, true);
+    private void logSkippedExecution(String sourceUrl, CSVRecord csvRecordToSkip, String reason, SkippedExecutionsLog skippedExecutionsLog) {
+        logSkippedExecution(sourceUrl, csvRecordToSkip, reason, skippedExecutionsLog, false, true);
     }
 
     /**
      * Performs logging and writing of the skipped executions with the same sourceUrl to an output file. Assumes that all executions are skipped for the same reason.
-     * If skipFutureExecutionsWithSourceUrl is true, also adds the source_url of the skipped execution to the sourceUrlsToSkipToReason map
+     * If skipFutureExecutionsWithSourceUrl is true, also records the source_url of the skipped execution in the resolution cache
      * so that future executions with the same source_url are skipped.
      * @param sourceUrl sourceUrl of all csvRecordsToSkip
      * @param csvRecordsToSkip the CSVRecords to skip
      * @param reason the reason the CSVRecords are being skipped
-     * @param skippedExecutionsCsvPrinter CSVPrinter that writes the skipped reason and records to an output file
+     * @param skippedExecutionsLog log that records the skipped reason and records to an output file
      * @param skipFutureExecutionsWithSourceUrl boolean indicating if all executions with the same source_url should be skipped
      */
-    private void logSkippedExecutions(String sourceUrl, List<CSVRecord> csvRecordsToSkip, String reason, CSVPrinter skippedExecutionsCsvPrinter, boolean skipFutureExecutionsWithSourceUrl) {
+    private void logSkippedExecutions(String sourceUrl, List<CSVRecord> csvRecordsToSkip, String reason, SkippedExecutionsLog skippedExecutionsLog, boolean skipFutureExecutionsWithSourceUrl) {
         LOG.warn("Skipping {} executions with source_url {}: {}", csvRecordsToSkip.size(), sourceUrl, reason);
-        csvRecordsToSkip.forEach(csvRecordToSkip -> logSkippedExecution(sourceUrl, csvRecordToSkip, reason, skippedExecutionsCsvPrinter, skipFutureExecutionsWithSourceUrl, false));
+        csvRecordsToSkip.forEach(csvRecordToSkip -> logSkippedExecution(sourceUrl, csvRecordToSkip, reason, skippedExecutionsLog, skipFutureExecutionsWithSourceUrl, false));
     }
 
     /**
      * Gets a RunExecution representing a single Terra workflow execution from one row of the CSV file.
-     * If the CSV record is invalid, the function will record the reason why the execution was skipped using skippedExecutionsCsvPrinter.
+     * If the CSV record is invalid, the function will record the reason why the execution was skipped using skippedExecutionsLog.
      * Note: If an execution is skipped in this function, it means that the reason is specific to the execution, not the source_url!
      * @param csvRecord
      * @param sourceUrl
-     * @param skippedExecutionsCsvPrinter
+     * @param skippedExecutionsLog
      * @return
      */
-    public Optional<RunExecution> getTerraWorkflowExecutionFromCsvRecord(CSVRecord csvRecord, String sourceUrl, CSVPrinter skippedExecutionsCsvPrinter) {
+    Optional<RunExecution> getTerraWorkflowExecutionFromCsvRecord(CSVRecord csvRecord, String sourceUrl, SkippedExecutionsLog skippedExecutionsLog) {
         final String executionId = csvRecord.get(TerraMetricsCsvHeaders.workflow_id);
         final String workflowStart = csvRecord.get(TerraMetricsCsvHeaders.workflow_start);
         final String status = csvRecord.get(TerraMetricsCsvHeaders.status);
@@ -311,30 +745,30 @@ public class TerraMetricsSubmitter {
 
         // Check that all required fields are present
         if (StringUtils.isBlank(executionId)) {
-            logSkippedExecution(sourceUrl, csvRecord, "The required field workflow_id is missing", skippedExecutionsCsvPrinter);
+            logSkippedExecution(sourceUrl, csvRecord, "The required field workflow_id is missing", skippedExecutionsLog);
             return Optional.empty();
         }
 
         if (StringUtils.isBlank(workflowStart)) {
-            logSkippedExecution(sourceUrl, csvRecord, "The required field workflow_start is missing", skippedExecutionsCsvPrinter);
+            logSkippedExecution(sourceUrl, csvRecord, "The required field workflow_start is missing", skippedExecutionsLog);
             return Optional.empty();
         }
 
         if (StringUtils.isBlank(status)) {
-            logSkippedExecution(sourceUrl, csvRecord, "The required field status is missing", skippedExecutionsCsvPrinter);
+            logSkippedExecution(sourceUrl, csvRecord, "The required field status is missing", skippedExecutionsLog);
             return Optional.empty();
         }
 
         // Format fields into Dockstore schema
         final Optional<ExecutionStatusEnum> executionStatus = getExecutionStatusEnumFromTerraStatus(status);
         if (executionStatus.isEmpty()) {
-            logSkippedExecution(sourceUrl, csvRecord, "Could not get a valid ExecutionStatusEnum from status '" + status + "'", skippedExecutionsCsvPrinter);
+            logSkippedExecution(sourceUrl, csvRecord, "Could not get a valid ExecutionStatusEnum from status '" + status + "'", skippedExecutionsLog);
             return Optional.empty();
         }
 
         final Optional<String> dateExecuted = formatStringInIso8601Date(workflowStart);
         if (dateExecuted.isEmpty()) {
-            logSkippedExecution(sourceUrl, csvRecord, "Could not get a valid dateExecuted from workflow_start '" + workflowStart + "'", skippedExecutionsCsvPrinter);
+            logSkippedExecution(sourceUrl, csvRecord, "Could not get a valid dateExecuted from workflow_start '" + workflowStart + "'", skippedExecutionsLog);
             return Optional.empty();
         }
 
@@ -347,6 +781,14 @@ public class TerraMetricsSubmitter {
     }
 
     static Optional<String> formatStringInIso8601Date(String workflowStart) {
+        final LocalDateTime localDateTime = parseWorkflowStartInCommonLayout(workflowStart);
+        if (localDateTime == null) {
+            return formatStringInIso8601DateWithFormatter(workflowStart);
+        }
+        return Optional.of(DateTimeFormatter.ISO_INSTANT.format(localDateTime.atOffset(ZoneOffset.UTC)));
+    }
+
+    static Optional<String> formatStringInIso8601DateWithFormatter(String workflowStart) {
         try {
             final LocalDateTime localDateTime = LocalDateTime.parse(workflowStart, WORKFLOW_START_FORMAT);
             return Optional.of(DateTimeFormatter.ISO_INSTANT.format(localDateTime.atOffset(ZoneOffset.UTC)));
@@ -356,6 +798,67 @@ public class TerraMetricsSubmitter {
         }
     }
 
+    /**
+     * Parses a workflow_start in the common layout, yyyy-MM-dd HH:mm:ss[.fraction][ UTC], to the same date and time as WORKFLOW_START_FORMAT, in about a
+     * quarter of the time. The fraction is truncated to microseconds, like WORKFLOW_START_FORMAT does.
+     * @param workflowStart
+     * @return the date and time, or null if the value isn't in the common layout or isn't a valid date and time, such as Feb 29 in a non-leap year,
+     *     in which case WORKFLOW_START_FORMAT parses or resolves it instead
+     */
+    private static LocalDateTime parseWorkflowStartInCommonLayout(String workflowStart) {
+        final int end = workflowStart.endsWith(UTC_SUFFIX) ? workflowStart.length() - UTC_SUFFIX.length() : workflowStart.length();
+        if (end < WORKFLOW_START_LAYOUT.length()) {
+            return null;
+        }
+        for (int i = 0; i < WORKFLOW_START_LAYOUT.length(); i++) {
+            final char layoutCharacter = WORKFLOW_START_LAYOUT.charAt(i);
+            final char character = workflowStart.charAt(i);
+            if (Character.isLetter(layoutCharacter) ? !isAsciiDigit(character) : character != layoutCharacter) {
+                return null;
+            }
+        }
+        int nanoOfSecond = 0;
+        if (end > WORKFLOW_START_LAYOUT.length()) {
+            final int fractionStart = WORKFLOW_START_LAYOUT.length() + 1;
+            final int fractionWidth = end - fractionStart;
+            if (workflowStart.charAt(WORKFLOW_START_LAYOUT.length()) != '.' || fractionWidth < 1 || fractionWidth > MAX_NUMBER_OF_MICRO_SECONDS) {
+                return null;
+            }
+            for (int i = 0; i < MAX_NUMBER_OF_MICRO_SECONDS; i++) {
+                final char character = i < fractionWidth ? workflowStart.charAt(fractionStart + i) : '0';
+                if (!isAsciiDigit(character)) {
+                    return null;
+                }
+                nanoOfSecond = nanoOfSecond * DECIMAL_RADIX + (character - '0');
+            }
+        }
+        final int year = parseLayoutField(workflowStart, 'y');
+        // The formatter parses the year of era, which has no year 0
+        if (year == 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(year, parseLayoutField(workflowStart, 'M'), parseLayoutField(workflowStart, 'd'), parseLayoutField(workflowStart, 'H'),
+                    parseLayoutField(workflowStart, 'm'), parseLayoutField(workflowStart, 's'), nanoOfSecond - nanoOfSecond % NANOS_PER_MICRO);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the digits of workflowStart that are at the positions of the pattern letter in WORKFLOW_START_LAYOUT.
+     * @param workflowStart
+     * @param patternLetter
+     * @return
+     */
+    private static int parseLayoutField(String workflowStart, char patternLetter) {
+        return Integer.parseInt(workflowStart, WORKFLOW_START_LAYOUT.indexOf(patternLetter), WORKFLOW_START_LAYOUT.lastIndexOf(patternLetter) + 1, DECIMAL_RADIX);
+    }
+
+    private static boolean isAsciiDigit(char character) {
+        return character >= '0' && character <= '9';
+    }
+
     static Optional<ExecutionStatusEnum> getExecutionStatusEnumFromTerraStatus(String terraStatus) {
         ExecutionStatusEnum executionStatusEnum = switch (terraStatus) {
         case "Succeeded" -> ExecutionStatusEnum.SUCCESSFUL;
@@ -386,45 +889,42 @@ public class TerraMetricsSubmitter {
      * @param workflowMetricRecords workflow CSV records, all with the same sourceUrl, to calculate the TRS info for
      * @param sourceUrl the sourceUrl of all the workflow CSV records
      * @param workflowsApi workflowsApi used to help calculate the TRS info
-     * @param skippedExecutionsCsvPrinter If the workflow CSV records are skipped, the CSV Printer that writes the reason why it was skipped and the records to an output file
+     * @param skippedExecutionsLog If the workflow CSV records are skipped, the log that records the reason why it was skipped and the records to an output file
      * @return
      */
-    private Optional<SourceUrlTrsInfo> calculateTrsInfoFromSourceUrl(List<CSVRecord> workflowMetricRecords, String sourceUrl, WorkflowsApi workflowsApi, CSVPrinter skippedExecutionsCsvPrinter) {
+    Optional<SourceUrlTrsInfo> calculateTrsInfoFromSourceUrl(List<CSVRecord> workflowMetricRecords, String sourceUrl, WorkflowsApi workflowsApi, SkippedExecutionsLog skippedExecutionsLog) {
         // Need to figure out the TRS ID and version name using the source_url.
         // Example source_url: https://raw.githubusercontent.com/theiagen/public_health_viral_genomics/v2.0.0/workflows/wf_theiacov_fasta.wdl
         // Organization = "theiagen/public_health_viral_genomics", version = "v2.0.0", the rest is the primary descriptor path
         // Note that the TRS ID may also have a workflow name, which we need to figure out
         final List<String> sourceUrlComponents = getSourceUrlComponents(sourceUrl);
 
-
-        final int minNumberOfComponents = 3;
-        if (sourceUrlComponents.size() < minNumberOfComponents) {
-            logSkippedExecutions(sourceUrl, workflowMetricRecords, "Not enough components in the source_url to figure out the TRS ID and version", skippedExecutionsCsvPrinter, true);
+        final Optional<String> optionalWorkflowPathPrefix = getWorkflowPathPrefix(sourceUrlComponents);
+        if (optionalWorkflowPathPrefix.isEmpty()) {
+            logSkippedExecutions(sourceUrl, workflowMetricRecords, "Not enough components in the source_url to figure out the TRS ID and version", skippedExecutionsLog, true);
             return Optional.empty();
         }
 
-        // There should be at least three elements in order for there to be an organization name, foo>/<organization>, and version <version>
-        // in <foo>/<organization>/<version>/<path-to-descriptor>
-        final String organization = sourceUrlComponents.get(0) + "/" + sourceUrlComponents.get(1);
+        final String workflowPathPrefix = optionalWorkflowPathPrefix.get();
         final String version = sourceUrlComponents.get(2);
         final String primaryDescriptorPathFromUrl = "/" + String.join("/", sourceUrlComponents.subList(3, sourceUrlComponents.size()));
 
-        final String workflowPathPrefix = "github.com/" + organization;
-        if (!workflowPathPrefixToWorkflows.containsKey(workflowPathPrefix)) {
+        Optional<List<MinimalWorkflowInfo>> cachedWorkflowsFromSameRepo = resolutionCache.getWorkflows(workflowPathPrefix);
+        if (cachedWorkflowsFromSameRepo.isEmpty()) {
             try {
-                List<MinimalWorkflowInfo> publishedWorkflowsWithSamePathPrefix = workflowsApi.getAllPublishedWorkflowByPath(
-                                workflowPathPrefix).stream()
-                        .map(workflow -> new MinimalWorkflowInfo(workflow.getId(), workflow.getFullWorkflowPath(), workflow.getDescriptorType(), new ConcurrentHashMap<>())).toList();
-                workflowPathPrefixToWorkflows.put(workflowPathPrefix, publishedWorkflowsWithSamePathPrefix);
+                List<MinimalWorkflowInfo> publishedWorkflowsWithSamePathPrefix = fetchPublishedWorkflows(workflowPathPrefix, workflowsApi);
+                resolutionCache.putWorkflows(workflowPathPrefix, publishedWorkflowsWithSamePathPrefix);
+                cachedWorkflowsFromSameRepo = Optional.of(publishedWorkflowsWithSamePathPrefix);
             } catch (ApiException e) {
-                logSkippedExecutions(sourceUrl, workflowMetricRecords,
-                        "Could not get all published workflows for workflow path " + workflowPathPrefix + " to determine TRS ID",
-                        skippedExecutionsCsvPrinter, true);
+                final String reason = "Could not get all published workflows for workflow path " + workflowPathPrefix + " to determine TRS ID";
+                // The request may succeed in the next run, so skip the source_url for the rest of this run only
+                resolutionCache.putSkipReason(sourceUrl, reason, true);
+                logSkippedExecutions(sourceUrl, workflowMetricRecords, reason, skippedExecutionsLog, false);
                 return Optional.empty();
             }
         }
 
-        List<MinimalWorkflowInfo> workflowsFromSameRepo = workflowPathPrefixToWorkflows.get(workflowPathPrefix);
+        List<MinimalWorkflowInfo> workflowsFromSameRepo = cachedWorkflowsFromSameRepo.get();
 
         List<String> foundFullWorkflowPaths = new ArrayList<>();
         // Loop through each workflow to find one that matches the primary descriptor
@@ -443,13 +943,13 @@ public class TerraMetricsSubmitter {
         });
 
         if (foundFullWorkflowPaths.isEmpty()) {
-            logSkippedExecutions(sourceUrl, workflowMetricRecords, "Could not find workflow with primary descriptor " + primaryDescriptorPathFromUrl, skippedExecutionsCsvPrinter, true);
+            logSkippedExecutions(sourceUrl, workflowMetricRecords, "Could not find workflow with primary descriptor " + primaryDescriptorPathFromUrl, skippedExecutionsLog, true);
             return Optional.empty();
         } else if (foundFullWorkflowPaths.size() > 1) {
             // There is already a workflow in the same repository with the same descriptor path that we're looking for.
             // Skip this source_url because it is an ambiguous case and we can't identify which workflow the source url is referring to.
             logSkippedExecutions(sourceUrl, workflowMetricRecords, String.format("There's %s workflows in the repository with the same primary descriptor path '%s': %s",
-                    foundFullWorkflowPaths.size(), primaryDescriptorPathFromUrl, foundFullWorkflowPaths), skippedExecutionsCsvPrinter, true);
+                    foundFullWorkflowPaths.size(), primaryDescriptorPathFromUrl, foundFullWorkflowPaths), skippedExecutionsLog, true);
             return Optional.empty();
         } else {
             final SourceUrlTrsInfo sourceUrlTrsInfo = new SourceUrlTrsInfo(sourceUrl, "#workflow/" + foundFullWorkflowPaths.get(0), version);
@@ -475,6 +975,21 @@ public class TerraMetricsSubmitter {
                 .toList();
     }
 
+    /**
+     * Returns the workflow path prefix, like github.com/organization/repo, of the repository in the source_url, or an empty Optional if the source_url doesn't have enough components.
+     * @param sourceUrlComponents the components returned by getSourceUrlComponents
+     * @return
+     */
+    static Optional<String> getWorkflowPathPrefix(List<String> sourceUrlComponents) {
+        // There should be at least three elements in order for there to be an organization name, <foo>/<organization>, and version <version>
+        // in <foo>/<organization>/<version>/<path-to-descriptor>
+        final int minNumberOfComponents = 3;
+        if (sourceUrlComponents.size() < minNumberOfComponents) {
+            return Optional.empty();
+        }
+        return Optional.of(GITHUB_WORKFLOW_PATH_PREFIX + sourceUrlComponents.get(0) + "/" + sourceUrlComponents.get(1));
+    }
+
     private Optional<String> getPrimaryDescriptorAbsolutePath(WorkflowsApi workflowsApi, MinimalWorkflowInfo workflow, String version) {
         Optional<String> primaryDescriptorPath = Optional.empty();
         try {
@@ -500,4 +1015,21 @@ public class TerraMetricsSubmitter {
 
     public record MinimalWorkflowInfo(long id, String fullWorkflowPath, DescriptorTypeEnum descriptorType, ConcurrentMap<String, String> versionToPrimaryDescriptorPathMap) {
     }
+
+    /**
+     * The CSV records with the same source_url, waiting for the TRS ID of the source_url to be resolved
+     * @param sourceUrl
+     * @param csvRecords
+     */
+    private record SourceUrlRecords(String sourceUrl, List<CSVRecord> csvRecords) {
+    }
+
+    /**
+     * The executions of a resolved source_url, waiting to be submitted to Dockstore
+     * @param sourceUrlTrsInfo
+     * @param executions
+     * @param csvRecords the CSV records that the executions were converted from, in the same order as the executions
+     */
+    record ExecutionsToSubmit(SourceUrlTrsInfo sourceUrlTrsInfo, List<RunExecution> executions, List<CSVRecord> csvRecords) {
+    }
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2026 OICR and UCSC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *           http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.dockstore.metricsaggregator.client.cli;
+
+import static io.dockstore.utils.DockstoreApiClientUtils.setupApiClient;
+
+import io.dockstore.metricsaggregator.MetricsAggregatorConfig;
+import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitValidationData;
+import io.dockstore.openapi.client.ApiClient;
+import io.dockstore.openapi.client.ApiException;
+import io.dockstore.openapi.client.api.ExtendedGa4GhApi;
+import io.dockstore.openapi.client.model.ExecutionsRequestBody;
+import io.dockstore.openapi.client.model.ValidationExecution;
+import jakarta.ws.rs.ProcessingException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Submits the validation executions in the file given to the submit-validation-data command. The lines are grouped by workflow version,
+ * and the executions of each version are submitted in batches by a pool of threads, retrying requests that failed because of a connection error
+ * or because the server or the gateway in front of it was unavailable. A batch that the server rejects is split in half until the rejected executions are found,
+ * so that only they are counted as failed.
+ */
+public class ValidationDataSubmitter {
+    // Constants for the data file's CSV fields
+    public static final int TRS_ID_INDEX = 0;
+    public static final int VERSION_NAME_INDEX = 1;
+    public static final int IS_VALID_INDEX = 2;
+    public static final int DATE_EXECUTED_INDEX = 3;
+    public static final List<String> VALIDATION_FILE_CSV_FIELDS = List.of("trsId", "versionName", "isValid", "dateExecuted");
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationDataSubmitter.class);
+    private static final String DESCRIPTION = "Validation executions submitted using dockstore-support metricsaggregator";
+    private static final int MAX_EXECUTIONS_PER_REQUEST = 1000;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final Duration INITIAL_RETRY_DELAY = Duration.ofSeconds(1);
+    private final MetricsAggregatorConfig config;
+    private final SubmitValidationData submitValidationDataCommand;
+    private final Duration initialRetryDelay;
+    private final AtomicInteger numberOfExecutionsSubmitted = new AtomicInteger(0);
+    private final AtomicInteger numberOfExecutionsFailed = new AtomicInteger(0);
+    private final AtomicInteger numberOfLinesSkipped = new AtomicInteger(0);
+    private final ConcurrentMap<String, SubmissionCounts> trsIdToSubmissionCounts = new ConcurrentHashMap<>();
+
+    public ValidationDataSubmitter(MetricsAggregatorConfig config, SubmitValidationData submitValidationDataCommand) {
+        this(config, submitValidationDataCommand, INITIAL_RETRY_DELAY);
+    }
+
+    ValidationDataSubmitter(MetricsAggregatorConfig config, SubmitValidationData submitValidationDataCommand, Duration initialRetryDelay) {
+        this.config = config;
+        this.submitValidationDataCommand = submitValidationDataCommand;
+        this.initialRetryDelay = initialRetryDelay;
+    }
+
+    public void submitValidationData() throws IOException {
+        ApiClient apiClient = setupApiClient(config.getDockstoreConfig().serverUrl(), config.getDockstoreConfig().token());
+        submitValidationData(new ExtendedGa4GhApi(apiClient));
+    }
+
+    void submitValidationData(ExtendedGa4GhApi extendedGa4GhApi) throws IOException {
+        List<String> csvLines = Files.readAllLines(Path.of(submitValidationDataCommand.getDataFilePath()));
+        // Remove first line containing CSV fields
+        if (!csvLines.isEmpty() && csvLines.get(0).contains(String.join(",", VALIDATION_FILE_CSV_FIELDS))) {
+            csvLines.remove(0);
+        }
+
+        final Map<TrsIdVersion, List<ValidationExecution>> versionToExecutions = groupByVersion(csvLines);
+        List<ValidationExecutionsToSubmit> requests = new ArrayList<>();
+        versionToExecutions.forEach((trsIdVersion, executions) -> partition(executions, MAX_EXECUTIONS_PER_REQUEST)
+                .forEach(partition -> requests.add(new ValidationExecutionsToSubmit(trsIdVersion, partition))));
+        LOG.info("Submitting {} validation executions of {} workflow versions in {} requests using {} threads", versionToExecutions.values().stream().mapToInt(List::size).sum(),
+                versionToExecutions.size(), requests.size(), submitValidationDataCommand.getThreadCount());
+
+        ExecutorService executorService = Executors.newFixedThreadPool(submitValidationDataCommand.getThreadCount());
+        requests.forEach(executionsToSubmit -> executorService.execute(() -> submitExecutions(executionsToSubmit, extendedGa4GhApi)));
+        executorService.shutdown();
+        try {
+            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executorService.shutdownNow();
+        }
+
+        logSummary();
+    }
+
+    /**
+     * Parses the lines of the data file into validation executions, grouped by workflow version in the order that the versions first appear.
+     * Lines that can't be parsed are logged and skipped.
+     * @param csvLines
+     * @return
+     */
+    private Map<TrsIdVersion, List<ValidationExecution>> groupByVersion(List<String> csvLines) {
+        Map<TrsIdVersion, List<ValidationExecution>> versionToExecutions = new LinkedHashMap<>();
+        for (String csvLine : csvLines) {
+            String[] lineComponents = csvLine.split(",");
+            if (lineComponents.length < VALIDATION_FILE_CSV_FIELDS.size()) {
+                LOG.error("Line '{}' does not contain all the required fields, skipping", csvLine);
+                numberOfLinesSkipped.incrementAndGet();
+                continue;
+            }
+
+            String trsId = lineComponents[TRS_ID_INDEX];
+            String versionName = lineComponents[VERSION_NAME_INDEX];
+
+            // Parse boolean value for isValid column
+            String isValidValue = lineComponents[IS_VALID_INDEX];
+            boolean isValid;
+            if ("true".equalsIgnoreCase(isValidValue) || "false".equalsIgnoreCase(isValidValue)) {
+                isValid = Boolean.parseBoolean(isValidValue);
+            } else {
+                LOG.error("isValid column value '{}' is not a boolean value, skipping line '{}'", isValidValue, csvLine);
+                numberOfLinesSkipped.incrementAndGet();
+                continue;
+            }
+            String dateExecuted = lineComponents[DATE_EXECUTED_INDEX];
+            ValidationExecution validationExecution = new ValidationExecution().validatorTool(submitValidationDataCommand.getValidator())
+                    .validatorToolVersion(submitValidationDataCommand.getValidatorVersion()).isValid(isValid);
+            validationExecution.setDateExecuted(dateExecuted);
+            validationExecution.setExecutionId(submitValidationDataCommand.getExecutionId());
+            versionToExecutions.computeIfAbsent(new TrsIdVersion(trsId, versionName), trsIdVersion -> new ArrayList<>()).add(validationExecution);
+        }
+        return versionToExecutions;
+    }
+
+    /**
+     * Partitions the executions of a version, in order, into lists of at most maxExecutionsPerRequest executions.
+     * An execution ID isn't repeated in a list, so that a version listed on more than one line with the same --executionId is submitted in separate requests,
+     * like it would be if the lines were submitted one at a time.
+     * @param executions
+     * @param maxExecutionsPerRequest
+     * @return
+     */
+    static List<List<ValidationExecution>> partition(List<ValidationExecution> executions, int maxExecutionsPerRequest) {
+        List<List<ValidationExecution>> partitions = new ArrayList<>();
+        List<ValidationExecution> partition = new ArrayList<>();
+        Set<String> executionIds = new HashSet<>();
+        for (ValidationExecution execution: executions) {
+            final String executionId = execution.getExecutionId();
+            if (partition.size() == maxExecutionsPerRequest || (executionId != null && executionIds.contains(executionId))) {
+                partitions.add(partition);
+                partition = new ArrayList<>();
+                executionIds.clear();
+            }
+            partition.add(execution);
+            if (executionId != null) {
+                executionIds.add(executionId);
+            }
+        }
+        if (!partition.isEmpty()) {
+            partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    int getNumberOfExecutionsSubmitted() {
+        return numberOfExecutionsSubmitted.get();
+    }
+
+    int getNumberOfExecutionsFailed() {
+        return numberOfExecutionsFailed.get();
+    }
+
+    /**
+     * Submits the executions, retrying with exponential backoff if the request failed because of a connection error or because the server was unavailable.
+     * If the server rejects more than one execution as invalid, each half of them is submitted separately, so that the valid executions in the batch are still submitted.
+     * Executions whose request failed for any other reason, including an unexpected exception, are counted as failed.
+     * @param executionsToSubmit
+     * @param extendedGa4GhApi
+     */
+    private void submitExecutions(ValidationExecutionsToSubmit executionsToSubmit, ExtendedGa4GhApi extendedGa4GhApi) {
+        final TrsIdVersion trsIdVersion = executionsToSubmit.trsIdVersion();
+        final int numberOfExecutions = executionsToSubmit.executions().size();
+        final SubmissionCounts submissionCounts = getSubmissionCounts(trsIdVersion.trsId());
+        Duration retryDelay = initialRetryDelay;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                extendedGa4GhApi.executionMetricsPost(new ExecutionsRequestBody().validationExecutions(executionsToSubmit.executions()),
+                        submitValidationDataCommand.getPlatform().toString(), trsIdVersion.trsId(), trsIdVersion.versionName(), DESCRIPTION);
+                LOG.info("Submitted {} validation executions for tool ID {}, version {}, validated by {} {} on platform {}", numberOfExecutions, trsIdVersion.trsId(),
+                        trsIdVersion.versionName(), submitValidationDataCommand.getValidator(), submitValidationDataCommand.getValidatorVersion(),
+                        submitValidationDataCommand.getPlatform());
+                numberOfExecutionsSubmitted.addAndGet(numberOfExecutions);
+                submissionCounts.submitted().addAndGet(numberOfExecutions);
+                return;
+            } catch (ApiException | ProcessingException e) {
+                if (numberOfExecutions > 1 && isRejected(e)) {
+                    LOG.warn("Dockstore rejected {} validation executions for workflow {} version {}, submitting each half of them separately: {}", numberOfExecutions,
+                            trsIdVersion.trsId(), trsIdVersion.versionName(), e.getMessage());
+                    final List<ValidationExecution> executions = executionsToSubmit.executions();
+                    final int half = numberOfExecutions / 2;
+                    submitExecutions(new ValidationExecutionsToSubmit(trsIdVersion, executions.subList(0, half)), extendedGa4GhApi);
+                    submitExecutions(new ValidationExecutionsToSubmit(trsIdVersion, executions.subList(half, numberOfExecutions)), extendedGa4GhApi);
+                    return;
+                }
+                if (attempt == MAX_ATTEMPTS || !isRetryable(e)) {
+                    // Could end up here if the workflow no longer exists. Log then continue processing
+                    LOG.error("Could not submit {} validation executions to Dockstore for workflow {} version {}", numberOfExecutions, trsIdVersion.trsId(),
+                            trsIdVersion.versionName(), e);
+                    break;
+                }
+                LOG.warn("Could not submit validation executions for workflow {} version {}, retrying in {}: {}", trsIdVersion.trsId(), trsIdVersion.versionName(),
+                        retryDelay, e.getMessage());
+                try {
+                    Thread.sleep(retryDelay.toMillis());
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                retryDelay = retryDelay.multipliedBy(2);
+            } catch (RuntimeException e) {
+                LOG.error("Could not submit {} validation executions to Dockstore for workflow {} version {}", numberOfExecutions, trsIdVersion.trsId(),
+                        trsIdVersion.versionName(), e);
+                break;
+            }
+        }
+        numberOfExecutionsFailed.addAndGet(numberOfExecutions);
+        submissionCounts.failed().addAndGet(numberOfExecutions);
+    }
+
+    /**
+     * Returns true if the request may succeed if it's sent again: there was a connection error, or the server or the gateway in front of it was unavailable.
+     * Other server errors, and 429 Too Many Requests, aren't retried, because the request may have been processed, or sending it again adds to the load.
+     * @param e
+     * @return
+     */
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof ApiException apiException) {
+            final int code = apiException.getCode();
+            return code == 0 || code == HttpStatus.SC_BAD_GATEWAY || code == HttpStatus.SC_SERVICE_UNAVAILABLE || code == HttpStatus.SC_GATEWAY_TIMEOUT;
+        }
+        // A ProcessingException is thrown when the request couldn't be sent or its response couldn't be read
+        return true;
+    }
+
+    /**
+     * Returns true if the server rejected the request because its body was invalid, which may only be because of some of the executions in it.
+     * @param e
+     * @return
+     */
+    private static boolean isRejected(Exception e) {
+        return e instanceof ApiException apiException
+                && (apiException.getCode() == HttpStatus.SC_BAD_REQUEST || apiException.getCode() == HttpStatus.SC_UNPROCESSABLE_ENTITY);
+    }
+
+    private SubmissionCounts getSubmissionCounts(String trsId) {
+        return trsIdToSubmissionCounts.computeIfAbsent(trsId, key -> new SubmissionCounts(new AtomicInteger(0), new AtomicInteger(0)));
+    }
+
+    private void logSummary() {
+        trsIdToSubmissionCounts.keySet().stream().sorted().forEach(trsId -> {
+            final SubmissionCounts submissionCounts = trsIdToSubmissionCounts.get(trsId);
+            LOG.info("{}: submitted {} validation executions, failed to submit {} validation executions", trsId, submissionCounts.submitted(), submissionCounts.failed());
+        });
+        LOG.info("Submitted {} validation executions. Failed to submit {} validation executions. Skipped {} lines that could not be parsed", numberOfExecutionsSubmitted,
+                numberOfExecutionsFailed, numberOfLinesSkipped);
+    }
+
+    record TrsIdVersion(String trsId, String versionName) {
+    }
+
+    record ValidationExecutionsToSubmit(TrsIdVersion trsIdVersion, List<ValidationExecution> executions) {
+    }
+
+    private record SubmissionCounts(AtomicInteger submitted, AtomicInteger failed) {
+    }
+}
@@ -4,6 +4,7 @@ import static io.dockstore.utils.ExceptionHandler.GENERIC_ERROR;
 import static io.dockstore.utils.ExceptionHandler.exceptionMessage;
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.noCondition;
 import static org.jooq.impl.DSL.partitionBy;
 import static org.jooq.impl.DSL.rowNumber;
 import static org.jooq.impl.DSL.select;
@@ -33,6 +34,7 @@ import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.Select;
 import org.jooq.SelectConditionStep;
+import org.jooq.Table;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +58,9 @@ public abstract class AthenaAggregator<M extends Metric> {
     // S3 metadata fields
     protected static final Field<String> FILE_MODIFIED_TIME_FIELD = field("\"$file_modified_time\"", String.class);
     protected static final Field<Integer> FILE_MODIFIED_TIME_ROW_NUM_FIELD = field("filemodifiedtimerownum", Integer.class);
+    // The alias of an execution unnested by createUnnestQueryWithModifiedTime, which can be used in its file condition
+    protected static final String UNNESTED_FIELD_ALIAS = "unnestedexecution";
+    protected static final Field<String> UNNESTED_EXECUTION_ID_FIELD = field(UNNESTED_FIELD_ALIAS + ".executionid", String.class);
 
     private static final Logger LOG = LoggerFactory.getLogger(AthenaAggregator.class);
 
@@ -80,9 +85,19 @@ public abstract class AthenaAggregator<M extends Metric> {
     protected abstract Map<String, M> createMetricByPlatform(List<QueryResultRow> queryResultRows);
 
     public Map<String, M> createMetricByPlatform(AthenaTablePartition partition) {
+        return createMetricByPlatform(partition, createQuery(partition));
+    }
+
+    /**
+     * Same as above, but executes the specified query instead of the query created by createQuery.
+     * @param partition
+     * @param query
+     * @return
+     */
+    protected Map<String, M> createMetricByPlatform(AthenaTablePartition partition, String query) {
         List<QueryResultRow> queryResultRows;
         try {
-            queryResultRows = metricsAggregatorAthenaClient.executeQuery(createQuery(partition));
+            queryResultRows = metricsAggregatorAthenaClient.executeQuery(query);
         } catch (AwsServiceException | SdkClientException | InterruptedException e) {
             LOG.error("Could not execute query for partition {}", partition, e);
             return Map.of();
@@ -237,14 +252,39 @@ public abstract class AthenaAggregator<M extends Metric> {
      * @return
      */
     protected SelectConditionStep<Record> createUnnestQueryWithModifiedTime(AthenaTablePartition partition, Field<?> fieldToUnnest, List<Field<?>> fieldsToSelectInUnnestField) {
-        final String unnestedFieldAlias = "unnestedexecution";
-        final Field<String> unnestedExecutionId = field(unnestedFieldAlias + ".executionid", String.class);
+        return createUnnestQueryWithModifiedTime(partition, fieldToUnnest, fieldsToSelectInUnnestField, noCondition());
+    }
+
+    /**
+     * Same as above, but only considers the S3 files that satisfy the specified file condition, for example, a condition on the file modified time.
+     * Executions are only de-duplicated against other executions in the files that satisfy the condition.
+     * @param partition
+     * @param fieldToUnnest
+     * @param fieldsToSelectInUnnestField
+     * @param fileCondition
+     * @return
+     */
+    protected SelectConditionStep<Record> createUnnestQueryWithModifiedTime(AthenaTablePartition partition, Field<?> fieldToUnnest, List<Field<?>> fieldsToSelectInUnnestField, Condition fileCondition) {
+        return createUnnestQueryWithModifiedTime(partition, fieldToUnnest, fieldsToSelectInUnnestField, fileCondition, table(tableName));
+    }
+
+    /**
+     * Same as above, but reads the executions from the specified source table, for example, a sample of the table.
+     * @param partition
+     * @param fieldToUnnest
+     * @param fieldsToSelectInUnnestField
+     * @param fileCondition
+     * @param sourceTable
+     * @return
+     */
+    protected SelectConditionStep<Record> createUnnestQueryWithModifiedTime(AthenaTablePartition partition, Field<?> fieldToUnnest, List<Field<?>> fieldsToSelectInUnnestField, Condition fileCondition, Table<?> sourceTable) {
+        final String unnestedFieldAlias = UNNESTED_FIELD_ALIAS;
         final Select<?> unnestedExecutionsWithFileModifiedTime = select(FILE_MODIFIED_TIME_FIELD,
-                rowNumber().over(partitionBy(PLATFORM_FIELD, unnestedExecutionId).orderBy(FILE_MODIFIED_TIME_FIELD.desc())).as(FILE_MODIFIED_TIME_ROW_NUM_FIELD),
+                rowNumber().over(partitionBy(PLATFORM_FIELD, UNNESTED_EXECUTION_ID_FIELD).orderBy(FILE_MODIFIED_TIME_FIELD.desc())).as(FILE_MODIFIED_TIME_ROW_NUM_FIELD),
                 PLATFORM_FIELD,
                 field(unnestedFieldAlias, String.class))
-                .from(table(tableName), unnest(fieldToUnnest).as("t", unnestedFieldAlias))
-                .where(createPartitionSelector(partition));
+                .from(sourceTable, unnest(fieldToUnnest).as("t", unnestedFieldAlias))
+                .where(createPartitionSelector(partition).and(fileCondition));
 
         List<? extends Field<?>> unnestedFields = fieldsToSelectInUnnestField.stream()
                 .map(field -> field(unnestedFieldAlias + "." + field.getName(), field.getType()))
@@ -259,7 +299,42 @@ public abstract class AthenaAggregator<M extends Metric> {
                 .where(FILE_MODIFIED_TIME_ROW_NUM_FIELD.eq(inline(1)));
     }
 
-    private Condition createPartitionSelector(AthenaTablePartition partition) {
+    /**
+     * Creates a query that unnests an executions array field and de-duplicates the executions like createUnnestQueryWithModifiedTime, but only selects the specified
+     * expressions of each execution instead of the whole execution, so the other fields of the executions aren't carried through the de-duplication.
+     * @param partition
+     * @param fieldToUnnest
+     * @param unnestedExpressions aliased expressions that refer to the unnested execution by UNNESTED_FIELD_ALIAS
+     * @return the platform and the expressions of each de-duplicated execution
+     */
+    protected SelectConditionStep<Record> createUnnestedExpressionsQuery(AthenaTablePartition partition, Field<?> fieldToUnnest, List<Field<?>> unnestedExpressions) {
+        List<Field<?>> innerFields = new ArrayList<>();
+        innerFields.add(rowNumber().over(partitionBy(PLATFORM_FIELD, UNNESTED_EXECUTION_ID_FIELD).orderBy(FILE_MODIFIED_TIME_FIELD.desc())).as(FILE_MODIFIED_TIME_ROW_NUM_FIELD));
+        innerFields.add(PLATFORM_FIELD);
+        innerFields.addAll(unnestedExpressions);
+        final Select<?> unnestedExpressionsWithRowNumber = select(innerFields)
+                .from(table(tableName), unnest(fieldToUnnest).as("t", UNNESTED_FIELD_ALIAS))
+                .where(createPartitionSelector(partition));
+
+        List<Field<?>> fields = new ArrayList<>();
+        fields.add(PLATFORM_FIELD);
+        unnestedExpressions.forEach(expression -> fields.add(field(expression.getName(), expression.getType())));
+        return select(fields)
+                .from(unnestedExpressionsWithRowNumber)
+                .where(FILE_MODIFIED_TIME_ROW_NUM_FIELD.eq(inline(1)));
+    }
+
+    /**
+     * Create a source table that reads a sample of the table's S3 files instead of every file.
+     * Athena samples whole files, so the executions in a file are either all included or all excluded, and only the sampled files are scanned.
+     * @param samplePercentage the percentage of the table to sample, between 0 and 100
+     * @return
+     */
+    protected Table<?> createSampledTable(double samplePercentage) {
+        return table("{0} tablesample system ({1})", table(tableName), inline(samplePercentage));
+    }
+
+    static Condition createPartitionSelector(AthenaTablePartition partition) {
         return createFieldSelector(ENTITY_FIELD, partition.entity())
             .and(createFieldSelector(REGISTRY_FIELD, partition.registry()))
             .and(createFieldSelector(ORG_FIELD, partition.org()))
@@ -267,7 +342,7 @@ public abstract class AthenaAggregator<M extends Metric> {
             .and(createFieldSelector(VERSION_FIELD, partition.version()));
     }
 
-    private Condition createFieldSelector(Field<String> field, Set<String> values) {
+    private static Condition createFieldSelector(Field<String> field, Set<String> values) {
         // Use the "equals" syntax when there's one value to compare to, just in case
         // there's a performance difference, behind the scenes during the Athena query,
         // between "equals" and an "IN" clause with a single value.
@@ -0,0 +1,439 @@
+package io.dockstore.metricsaggregator.helper;
+
+import static io.dockstore.metricsaggregator.helper.AthenaAggregator.ENTITY_FIELD;
+import static io.dockstore.metricsaggregator.helper.AthenaAggregator.FILE_MODIFIED_TIME_FIELD;
+import static io.dockstore.metricsaggregator.helper.AthenaAggregator.NAME_FIELD;
+import static io.dockstore.metricsaggregator.helper.AthenaAggregator.ORG_FIELD;
+import static io.dockstore.metricsaggregator.helper.AthenaAggregator.PLATFORM_FIELD;
+import static io.dockstore.metricsaggregator.helper.AthenaAggregator.REGISTRY_FIELD;
+import static io.dockstore.metricsaggregator.helper.AthenaAggregator.VERSION_FIELD;
+import static io.dockstore.metricsaggregator.helper.AthenaAggregator.createPartitionSelector;
+import static io.dockstore.metricsaggregator.helper.RunExecutionAthenaAggregator.COST_FIELD;
+import static io.dockstore.metricsaggregator.helper.RunExecutionAthenaAggregator.CPU_REQUIREMENTS_FIELD;
+import static io.dockstore.metricsaggregator.helper.RunExecutionAthenaAggregator.EXECUTION_STATUS_FIELD;
+import static io.dockstore.metricsaggregator.helper.RunExecutionAthenaAggregator.EXECUTION_TIME_SECONDS_FIELD;
+import static io.dockstore.metricsaggregator.helper.RunExecutionAthenaAggregator.MEMORY_REQUIREMENTS_GB_FIELD;
+import static org.jooq.impl.DSL.count;
+import static org.jooq.impl.DSL.field;
+import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.max;
+import static org.jooq.impl.DSL.min;
+import static org.jooq.impl.DSL.noCondition;
+import static org.jooq.impl.DSL.not;
+import static org.jooq.impl.DSL.notExists;
+import static org.jooq.impl.DSL.select;
+import static org.jooq.impl.DSL.selectOne;
+import static org.jooq.impl.DSL.sum;
+import static org.jooq.impl.DSL.table;
+
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient;
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.AthenaTablePartition;
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.QueryResultRow;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.conf.Settings;
+import org.jooq.conf.StatementType;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+/**
+ * A persistent Athena table containing a daily rollup of the run executions of each version and platform.
+ * Each row contains the number of executions, sums, minimums, maximums, and quantile digests for one combination of
+ * execution status, day executed, and execution time histogram bin, so the number of rows depends on the number of days rather than the number of executions.
+ *
+ * <p>The executions in S3 files that were modified before the current day (UTC) are materialized into the rollup table,
+ * and the table records the day that each version was rolled up through. The run execution queries then read the rolled up rows
+ * and only the executions in S3 files that were modified after that day.</p>
+ *
+ * <p>The IDs of the rolled up executions are recorded in a second table, the execution IDs table, along with a row for each version and day that was rolled up,
+ * so that versions without any executions aren't rolled up again. An execution whose ID was rolled up is skipped if its ID is re-submitted on a later day,
+ * so each execution ID is counted once, with the values that it had when it was first rolled up.</p>
+ */
+public class DailyRollupTable {
+    public static final Field<String> ROLLED_UP_THROUGH_FIELD = field("rolledupthrough", String.class);
+    public static final Field<String> EXECUTED_DAY_FIELD = field("executedday", String.class);
+    public static final Field<Integer> EXECUTION_TIME_BIN_FIELD = field("executiontimebin", Integer.class);
+    public static final Field<Long> EXECUTION_COUNT_FIELD = field("executioncount", Long.class);
+    public static final Field<Long> EXECUTION_STATUS_COUNT_FIELD = field("executionstatuscount", Long.class);
+    public static final Field<String> EXECUTION_ID_FIELD = field("executionid", String.class);
+    // The metrics that statistics are rolled up for. These are the same metrics that the StatisticsAthenaAggregators aggregate
+    private static final List<String> STATISTIC_METRIC_COLUMN_NAMES = List.of(EXECUTION_TIME_SECONDS_FIELD.getName(), CPU_REQUIREMENTS_FIELD.getName(),
+            MEMORY_REQUIREMENTS_GB_FIELD.getName(), COST_FIELD.getName() + ".value");
+
+    private static final Logger LOG = LoggerFactory.getLogger(DailyRollupTable.class);
+    private static final String ROLLED_UP_EXECUTION_ALIAS = "rolledupexecution";
+
+    private final MetricsAggregatorAthenaClient metricsAggregatorAthenaClient;
+    private final String tableName;
+    private final String location;
+    private final String executionIdsTableName;
+    private final String executionIdsLocation;
+    private final LocalDate today;
+    // Map of version to the day that the version was rolled up through, or empty if the version hasn't been rolled up.
+    private final ConcurrentMap<AthenaTablePartition, Optional<LocalDate>> versionToRolledUpThrough = new ConcurrentHashMap<>();
+
+    /**
+     * Create a daily rollup table.
+     * @param metricsAggregatorAthenaClient
+     * @param tableName the name of the rollup table. The execution IDs table has the same name with an "_execution_ids" suffix
+     * @param location the S3 location of the rollup table, for example, s3://bucket/prefix/. The execution IDs table is stored next to it, for example, s3://bucket/prefix_execution_ids/
+     * @param now the instant whose day (UTC) is not rolled up
+     */
+    public DailyRollupTable(MetricsAggregatorAthenaClient metricsAggregatorAthenaClient, String tableName, String location, Instant now) {
+        this.metricsAggregatorAthenaClient = metricsAggregatorAthenaClient;
+        this.tableName = tableName;
+        this.location = location;
+        this.executionIdsTableName = tableName + "_execution_ids";
+        this.executionIdsLocation = location.replaceAll("/+$", "") + "_execution_ids/";
+        this.today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+    }
+
+    public static String getCountColumnName(String metricColumnName) {
+        return getStatisticColumnName(metricColumnName, "count");
+    }
+
+    public static String getSumColumnName(String metricColumnName) {
+        return getStatisticColumnName(metricColumnName, "sum");
+    }
+
+    public static String getMinColumnName(String metricColumnName) {
+        return getStatisticColumnName(metricColumnName, "min");
+    }
+
+    public static String getMaxColumnName(String metricColumnName) {
+        return getStatisticColumnName(metricColumnName, "max");
+    }
+
+    public static String getDigestColumnName(String metricColumnName) {
+        return getStatisticColumnName(metricColumnName, "digest");
+    }
+
+    private static String getStatisticColumnName(String metricColumnName, String statistic) {
+        return metricColumnName.replace(".", "_") + "_" + statistic;
+    }
+
+    /**
+     * Creates the rollup table and the execution IDs table if they don't exist. Unlike the raw executions table, these tables are never dropped because they are the materialized state.
+     */
+    public void createTable() throws AwsServiceException, SdkClientException, InterruptedException {
+        LOG.info("Creating daily rollup table: {}", tableName);
+        List<String> columns = new ArrayList<>(List.of(
+                ROLLED_UP_THROUGH_FIELD.getName() + " string",
+                EXECUTION_STATUS_FIELD.getName() + " string",
+                EXECUTED_DAY_FIELD.getName() + " string",
+                EXECUTION_TIME_BIN_FIELD.getName() + " int",
+                EXECUTION_COUNT_FIELD.getName() + " bigint",
+                EXECUTION_STATUS_COUNT_FIELD.getName() + " bigint"));
+        STATISTIC_METRIC_COLUMN_NAMES.forEach(metricColumnName -> {
+            columns.add(getCountColumnName(metricColumnName) + " bigint");
+            columns.add(getSumColumnName(metricColumnName) + " double");
+            columns.add(getMinColumnName(metricColumnName) + " double");
+            columns.add(getMaxColumnName(metricColumnName) + " double");
+            columns.add(getDigestColumnName(metricColumnName) + " binary");
+        });
+        final String query = """
+                CREATE EXTERNAL TABLE IF NOT EXISTS %s (
+                    %s
+                )
+                PARTITIONED BY (
+                    `entity` string,
+                    `registry` string,
+                    `org` string,
+                    `name` string,
+                    `version` string,
+                    `platform` string
+                )
+                STORED AS PARQUET
+                LOCATION "%s"
+                """.formatted(tableName, String.join(",\n    ", columns), location);
+        metricsAggregatorAthenaClient.executeQuery(query);
+
+        LOG.info("Creating daily rollup execution IDs table: {}", executionIdsTableName);
+        final String executionIdsQuery = """
+                CREATE EXTERNAL TABLE IF NOT EXISTS %s (
+                    %s string,
+                    %s string,
+                    %s string
+                )
+                PARTITIONED BY (
+                    `entity` string,
+                    `registry` string,
+                    `org` string,
+                    `name` string,
+                    `version` string
+                )
+                STORED AS PARQUET
+                LOCATION "%s"
+                """.formatted(executionIdsTableName, ROLLED_UP_THROUGH_FIELD.getName(), PLATFORM_FIELD.getName(), EXECUTION_ID_FIELD.getName(), executionIdsLocation);
+        metricsAggregatorAthenaClient.executeQuery(executionIdsQuery);
+    }
+
+    /**
+     * Materializes the run executions of each version in the partition that are in S3 files modified before the current day,
+     * and that have not been rolled up before, into the rollup table. The IDs of the executions are recorded in the execution IDs table, along with a row
+     * for each version, so that the version isn't rolled up again even if it has no executions.
+     * @param partition the partition of the versions to roll up
+     * @param aggregator the aggregator that creates the run executions query
+     */
+    public void materialize(AthenaTablePartition partition, RunExecutionAthenaAggregator<?> aggregator) throws AwsServiceException, SdkClientException, InterruptedException {
+        List<AthenaTablePartition> versionPartitions = getVersionPartitions(partition);
+        if (versionPartitions.stream().allMatch(versionToRolledUpThrough::containsKey)) {
+            return;
+        }
+
+        // Find the days that the versions were rolled up through. The rollup table is also read because the versions that were rolled up before the
+        // execution IDs table existed are only recorded in the rollup table
+        final String rolledUpThroughQuery = createDslContext()
+                .select(ENTITY_FIELD, REGISTRY_FIELD, ORG_FIELD, NAME_FIELD, VERSION_FIELD, max(ROLLED_UP_THROUGH_FIELD).as(ROLLED_UP_THROUGH_FIELD))
+                .from(select(ENTITY_FIELD, REGISTRY_FIELD, ORG_FIELD, NAME_FIELD, VERSION_FIELD, ROLLED_UP_THROUGH_FIELD)
+                        .from(table(tableName))
+                        .where(createPartitionSelector(partition))
+                        .unionAll(select(ENTITY_FIELD, REGISTRY_FIELD, ORG_FIELD, NAME_FIELD, VERSION_FIELD, ROLLED_UP_THROUGH_FIELD)
+                                .from(table(executionIdsTableName))
+                                .where(createPartitionSelector(partition))))
+                .groupBy(ENTITY_FIELD, REGISTRY_FIELD, ORG_FIELD, NAME_FIELD, VERSION_FIELD)
+                .getSQL();
+        Map<AthenaTablePartition, LocalDate> rolledUpThroughByVersion = new HashMap<>();
+        for (QueryResultRow queryResultRow : metricsAggregatorAthenaClient.executeQuery(rolledUpThroughQuery)) {
+            AthenaTablePartition versionPartition = new AthenaTablePartition(Set.of(queryResultRow.getColumnValue(ENTITY_FIELD).orElseThrow()),
+                    Set.of(queryResultRow.getColumnValue(REGISTRY_FIELD).orElseThrow()), Set.of(queryResultRow.getColumnValue(ORG_FIELD).orElseThrow()),
+                    Set.of(queryResultRow.getColumnValue(NAME_FIELD).orElseThrow()), Set.of(queryResultRow.getColumnValue(VERSION_FIELD).orElseThrow()));
+            queryResultRow.getColumnValue(ROLLED_UP_THROUGH_FIELD).map(LocalDate::parse).ifPresent(day -> rolledUpThroughByVersion.put(versionPartition, day));
+        }
+
+        final LocalDate yesterday = today.minusDays(1);
+        for (AthenaTablePartition versionPartition : versionPartitions) {
+            if (versionToRolledUpThrough.containsKey(versionPartition)) {
+                continue;
+            }
+            Optional<LocalDate> rolledUpThrough = Optional.ofNullable(rolledUpThroughByVersion.get(versionPartition));
+            if (rolledUpThrough.isEmpty() || rolledUpThrough.get().isBefore(yesterday)) {
+                // Roll up the executions whose IDs weren't rolled up before, in the files modified after the day that the version was rolled up through,
+                // up to the end of yesterday
+                Condition fileCondition = FILE_MODIFIED_TIME_FIELD.lessThan(startOfDay(today)).and(createNotRolledUpExecutionCondition(aggregator));
+                if (rolledUpThrough.isPresent()) {
+                    fileCondition = fileCondition.and(FILE_MODIFIED_TIME_FIELD.greaterOrEqual(startOfDay(rolledUpThrough.get().plusDays(1))));
+                }
+                LOG.info("Rolling up executions for partition {} through {}", versionPartition, yesterday);
+                metricsAggregatorAthenaClient.executeQuery(createInsertQuery(versionPartition, yesterday, aggregator.createRunExecutionsQuery(versionPartition, fileCondition)));
+                // Record the execution IDs after inserting the rollup rows, because the executions whose IDs are recorded are skipped
+                metricsAggregatorAthenaClient.executeQuery(createExecutionIdsInsertQuery(versionPartition, yesterday, aggregator.createRunExecutionIdsQuery(versionPartition, fileCondition)));
+                metricsAggregatorAthenaClient.executeQuery(createVersionInsertQuery(versionPartition, yesterday));
+                rolledUpThrough = Optional.of(yesterday);
+            }
+            versionToRolledUpThrough.put(versionPartition, rolledUpThrough);
+        }
+    }
+
+    /**
+     * Create a query that returns rollup rows for the partition. The rows for the days that were rolled up are read from the rollup table,
+     * and the rows for newer executions are calculated from the raw executions.
+     * The raw executions of the rolled up versions are skipped if their IDs were rolled up.
+     * Versions that were not materialized during this run are read entirely from the raw executions.
+     * @param partition
+     * @param aggregator the aggregator that creates the run executions query
+     * @return
+     */
+    Select<Record> createRollupSourceQuery(AthenaTablePartition partition, RunExecutionAthenaAggregator<?> aggregator) {
+        Condition rolledUpVersions = DSL.falseCondition();
+        Condition notRolledUpFiles = noCondition();
+        boolean hasRolledUpVersions = false;
+        for (AthenaTablePartition versionPartition : getVersionPartitions(partition)) {
+            Optional<LocalDate> rolledUpThrough = versionToRolledUpThrough.getOrDefault(versionPartition, Optional.empty());
+            if (rolledUpThrough.isPresent()) {
+                hasRolledUpVersions = true;
+                rolledUpVersions = rolledUpVersions.or(createPartitionSelector(versionPartition));
+                notRolledUpFiles = notRolledUpFiles.and(not(createPartitionSelector(versionPartition).and(FILE_MODIFIED_TIME_FIELD.lessThan(startOfDay(rolledUpThrough.get().plusDays(1))))));
+            }
+        }
+
+        if (!hasRolledUpVersions) {
+            return createRollupRowsQuery(aggregator.createRunExecutionsQuery(partition, notRolledUpFiles));
+        }
+        notRolledUpFiles = notRolledUpFiles.and(not(rolledUpVersions).or(createNotRolledUpExecutionCondition(aggregator)));
+        final Select<Record> notRolledUpRows = createRollupRowsQuery(aggregator.createRunExecutionsQuery(partition, notRolledUpFiles));
+        List<Field<?>> rollupFields = new ArrayList<>();
+        rollupFields.add(PLATFORM_FIELD);
+        rollupFields.addAll(getRollupColumnFields());
+        final Select<Record> rolledUpRows = select(rollupFields)
+                .from(table(tableName))
+                .where(createPartitionSelector(partition).and(rolledUpVersions));
+        return rolledUpRows.unionAll(notRolledUpRows);
+    }
+
+    /**
+     * Create a query that rolls up the run executions into one row per platform, execution status, day executed, and execution time histogram bin.
+     * The columns of the rows are the platform followed by the columns returned by getRollupColumnFields().
+     * @param runExecutions
+     * @return
+     */
+    private Select<Record> createRollupRowsQuery(Select<Record> runExecutions) {
+        final Field<String> executedDay = field("date_format(from_iso8601_timestamp({0}) AT TIME ZONE '%s', '%%Y-%%m-%%d')".formatted(ExecutionCountsAthenaAggregator.getZoneId()),
+                String.class, AthenaAggregator.DATE_EXECUTED_FIELD);
+        final Field<Integer> executionTimeBin = HistogramAthenaAggregator.createBinIndexField(EXECUTION_TIME_SECONDS_FIELD.cast(Double.class), Sequences.getFriendlyLogRunTimeSequence());
+
+        List<Field<?>> fields = new ArrayList<>(List.of(
+                PLATFORM_FIELD,
+                EXECUTION_STATUS_FIELD,
+                executedDay.as(EXECUTED_DAY_FIELD),
+                executionTimeBin.as(EXECUTION_TIME_BIN_FIELD),
+                count().as(EXECUTION_COUNT_FIELD),
+                count(EXECUTION_STATUS_FIELD).as(EXECUTION_STATUS_COUNT_FIELD)));
+        STATISTIC_METRIC_COLUMN_NAMES.forEach(metricColumnName -> {
+            Field<Double> metricField = field(metricColumnName).cast(Double.class);
+            fields.add(count(metricField).as(getCountColumnName(metricColumnName)));
+            fields.add(sum(metricField).as(getSumColumnName(metricColumnName)));
+            fields.add(min(metricField).as(getMinColumnName(metricColumnName)));
+            fields.add(max(metricField).as(getMaxColumnName(metricColumnName)));
+            fields.add(field("cast(qdigest_agg({0}) as varbinary)", byte[].class, metricField).as(getDigestColumnName(metricColumnName)));
+        });
+        return select(fields)
+                .from(runExecutions)
+                .groupBy(PLATFORM_FIELD, EXECUTION_STATUS_FIELD, executedDay, executionTimeBin);
+    }
+
+    /**
+     * Create the INSERT query that writes the rollup rows of a single version to the rollup table.
+     * The column order matches the table definition, with the partition columns last.
+     */
+    private String createInsertQuery(AthenaTablePartition versionPartition, LocalDate rolledUpThrough, Select<Record> runExecutions) {
+        List<Field<?>> fields = new ArrayList<>();
+        fields.add(inline(rolledUpThrough.toString()).as(ROLLED_UP_THROUGH_FIELD));
+        fields.addAll(getRollupColumnFields());
+        fields.addAll(getVersionPartitionFields(versionPartition));
+        fields.add(PLATFORM_FIELD);
+        final String selectQuery = createDslContext()
+                .select(fields)
+                .from(createRollupRowsQuery(runExecutions))
+                .getSQL();
+        return "INSERT INTO %s%n%s".formatted(tableName, selectQuery);
+    }
+
+    /**
+     * Create the INSERT query that records the IDs of the rolled up run executions of a single version.
+     * The column order matches the table definition, with the partition columns last.
+     */
+    private String createExecutionIdsInsertQuery(AthenaTablePartition versionPartition, LocalDate rolledUpThrough, Select<Record> runExecutionIds) {
+        List<Field<?>> fields = new ArrayList<>();
+        fields.add(inline(rolledUpThrough.toString()).as(ROLLED_UP_THROUGH_FIELD));
+        fields.add(PLATFORM_FIELD);
+        fields.add(EXECUTION_ID_FIELD);
+        fields.addAll(getVersionPartitionFields(versionPartition));
+        final String selectQuery = createDslContext()
+                .select(fields)
+                .from(runExecutionIds)
+                .getSQL();
+        return "INSERT INTO %s%n%s".formatted(executionIdsTableName, selectQuery);
+    }
+
+    /**
+     * Create the INSERT query that records that a single version was rolled up. The row has no platform or execution ID, so the version is recorded even if it has no executions.
+     */
+    private String createVersionInsertQuery(AthenaTablePartition versionPartition, LocalDate rolledUpThrough) {
+        List<Field<?>> values = new ArrayList<>();
+        values.add(inline(rolledUpThrough.toString()));
+        values.add(inline((String) null));
+        values.add(inline((String) null));
+        values.addAll(getVersionPartitionValues(versionPartition));
+        return createDslContext()
+                .insertInto(table(executionIdsTableName))
+                .values(values)
+                .getSQL();
+    }
+
+    /**
+     * Create a condition on the unnested raw executions that is true if the ID of the execution wasn't rolled up for the same version and platform.
+     */
+    private Condition createNotRolledUpExecutionCondition(RunExecutionAthenaAggregator<?> aggregator) {
+        final Table<?> rolledUpExecutions = table(executionIdsTableName).as(ROLLED_UP_EXECUTION_ALIAS);
+        Condition sameExecution = noCondition();
+        for (Field<String> field : List.of(ENTITY_FIELD, REGISTRY_FIELD, ORG_FIELD, NAME_FIELD, VERSION_FIELD, PLATFORM_FIELD)) {
+            // The raw executions table is named because its columns have the same names
+            sameExecution = sameExecution.and(field(ROLLED_UP_EXECUTION_ALIAS + "." + field.getName()).eq(field(aggregator.tableName + "." + field.getName())));
+        }
+        sameExecution = sameExecution.and(field(ROLLED_UP_EXECUTION_ALIAS + "." + EXECUTION_ID_FIELD.getName()).eq(AthenaAggregator.UNNESTED_EXECUTION_ID_FIELD));
+        return notExists(selectOne().from(rolledUpExecutions).where(sameExecution));
+    }
+
+    /**
+     * Returns the values of the partition columns of a single version, in table order.
+     */
+    private static List<Field<String>> getVersionPartitionValues(AthenaTablePartition versionPartition) {
+        return List.of(inline(versionPartition.entity().iterator().next()), inline(versionPartition.registry().iterator().next()),
+                inline(versionPartition.org().iterator().next()), inline(versionPartition.name().iterator().next()), inline(versionPartition.version().iterator().next()));
+    }
+
+    /**
+     * Returns the values of the partition columns of a single version, named after the columns, in table order.
+     */
+    private static List<Field<?>> getVersionPartitionFields(AthenaTablePartition versionPartition) {
+        final List<Field<String>> columns = List.of(ENTITY_FIELD, REGISTRY_FIELD, ORG_FIELD, NAME_FIELD, VERSION_FIELD);
+        final List<Field<String>> values = getVersionPartitionValues(versionPartition);
+        List<Field<?>> fields = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            fields.add(values.get(i).as(columns.get(i)));
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the non-partition columns of the rollup table, excluding the rolledupthrough column, in table order.
+     */
+    private static List<Field<?>> getRollupColumnFields() {
+        List<Field<?>> fields = new ArrayList<>(List.of(EXECUTION_STATUS_FIELD, EXECUTED_DAY_FIELD, EXECUTION_TIME_BIN_FIELD, EXECUTION_COUNT_FIELD, EXECUTION_STATUS_COUNT_FIELD));
+        STATISTIC_METRIC_COLUMN_NAMES.forEach(metricColumnName -> {
+            fields.add(field(getCountColumnName(metricColumnName)));
+            fields.add(field(getSumColumnName(metricColumnName)));
+            fields.add(field(getMinColumnName(metricColumnName)));
+            fields.add(field(getMaxColumnName(metricColumnName)));
+            fields.add(field(getDigestColumnName(metricColumnName)));
+        });
+        return fields;
+    }
+
+    /**
+     * Split a partition into one partition per version.
+     */
+    private static List<AthenaTablePartition> getVersionPartitions(AthenaTablePartition partition) {
+        List<AthenaTablePartition> versionPartitions = new ArrayList<>();
+        for (String entity : partition.entity()) {
+            for (String registry : partition.registry()) {
+                for (String org : partition.org()) {
+                    for (String name : partition.name()) {
+                        for (String version : partition.version()) {
+                            versionPartitions.add(new AthenaTablePartition(Set.of(entity), Set.of(registry), Set.of(org), Set.of(name), Set.of(version)));
+                        }
+                    }
+                }
+            }
+        }
+        return versionPartitions;
+    }
+
+    private static Field<String> startOfDay(LocalDate day) {
+        return field("from_iso8601_timestamp('%s')".formatted(day.atStartOfDay(ZoneOffset.UTC).toInstant()), String.class);
+    }
+
+    private static DSLContext createDslContext() {
+        return DSL.using(SQLDialect.DEFAULT, new Settings().withRenderFormatted(true).withStatementType(StatementType.STATIC_STATEMENT));
+    }
+}
@@ -3,12 +3,16 @@ package io.dockstore.metricsaggregator.helper;
 import static org.jooq.impl.DSL.and;
 import static org.jooq.impl.DSL.case_;
 import static org.jooq.impl.DSL.cast;
+import static org.jooq.impl.DSL.coalesce;
 import static org.jooq.impl.DSL.count;
 import static org.jooq.impl.DSL.function;
+import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.sum;
 
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient;
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.QueryResultRow;
 import io.dockstore.openapi.client.model.TimeSeriesMetric;
+import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -57,6 +61,15 @@ public abstract class ExecutionCountsAthenaAggregator extends RunExecutionAthena
         return getBinAges().stream().map(this::getSelectField).collect(Collectors.toSet());
     }
 
+    /**
+     * Get the SELECT fields that sum the execution counts of the daily rollup table rows whose execution day falls within each bin.
+     * All bin boundaries are midnight in the aggregation time zone, so they can be compared with the execution day.
+     */
+    @Override
+    public Set<SelectField<?>> getRollupSelectFields() {
+        return getBinAges().stream().map(this::getRollupSelectField).collect(Collectors.toSet());
+    }
+
     private SelectField<?> getSelectField(int binAge) {
         Field<Timestamp> start = utcTimestamp(getBinStart(binAge));
         Field<Timestamp> end = utcTimestamp(getBinEnd(binAge));
@@ -66,6 +79,21 @@ public abstract class ExecutionCountsAthenaAggregator extends RunExecutionAthena
         return count(case_().when(withinBin, 1)).as(aggregateColumnName);
     }
 
+    private SelectField<?> getRollupSelectField(int binAge) {
+        Field<String> start = inline(getBinStart(binAge).toLocalDate().toString());
+        Field<String> end = inline(getBinEnd(binAge).toLocalDate().toString());
+        Condition withinBin = and(DailyRollupTable.EXECUTED_DAY_FIELD.greaterOrEqual(start), DailyRollupTable.EXECUTED_DAY_FIELD.lessThan(end));
+        String aggregateColumnName = getAggregateColumnName(binAge);
+        return coalesce(sum(case_().when(withinBin, DailyRollupTable.EXECUTION_COUNT_FIELD)), inline(BigDecimal.ZERO)).as(aggregateColumnName);
+    }
+
+    /**
+     * Get the time zone that all bin boundaries are aligned to.
+     */
+    static ZoneId getZoneId() {
+        return ZONE_ID;
+    }
+
     /**
      * Get the time series interval.
      */
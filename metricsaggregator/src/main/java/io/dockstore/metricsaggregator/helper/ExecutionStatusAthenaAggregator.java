@@ -5,9 +5,12 @@ import static org.jooq.impl.DSL.coalesce;
 import static org.jooq.impl.DSL.count;
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.sum;
 
+import io.dockstore.common.Partner;
 import io.dockstore.common.metrics.ExecutionStatus;
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient;
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.AthenaTablePartition;
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.QueryResultRow;
 import io.dockstore.openapi.client.model.ExecutionStatusMetric;
 import io.dockstore.openapi.client.model.MetricsByStatus;
@@ -19,9 +22,15 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Select;
 import org.jooq.SelectField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class ExecutionStatusAthenaAggregator extends RunExecutionAthenaAggregator<ExecutionStatusMetric> {
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionStatusAthenaAggregator.class);
+
     // Aggregators used to calculate metrics by execution status
     private final ExecutionTimeAthenaAggregator executionTimeAggregator = new ExecutionTimeAthenaAggregator(metricsAggregatorAthenaClient, tableName);
     private final CpuAthenaAggregator cpuAggregator = new CpuAthenaAggregator(metricsAggregatorAthenaClient, tableName);
@@ -47,6 +56,20 @@ public class ExecutionStatusAthenaAggregator extends RunExecutionAthenaAggregato
         selectFields.addAll(monthlyExecutionCountsAggregator.getSelectFields());
         selectFields.addAll(executionTimeHistogramAggregator.getSelectFields());
         this.addSelectFields(selectFields);
+
+        // The same metrics, calculated from the daily rollup table
+        Set<SelectField<?>> rollupSelectFields = new HashSet<>();
+        rollupSelectFields.add(coalesce(executionStatusField, inline(ExecutionStatus.ALL.name())).as(getMetricColumnName()));
+        rollupSelectFields.add(sum(DailyRollupTable.EXECUTION_STATUS_COUNT_FIELD).as(getCountColumnName()));
+        rollupSelectFields.addAll(executionTimeAggregator.getRollupSelectFields());
+        rollupSelectFields.addAll(cpuAggregator.getRollupSelectFields());
+        rollupSelectFields.addAll(memoryAggregator.getRollupSelectFields());
+        rollupSelectFields.addAll(costAggregator.getRollupSelectFields());
+        rollupSelectFields.addAll(dailyExecutionCountsAggregator.getRollupSelectFields());
+        rollupSelectFields.addAll(weeklyExecutionCountsAggregator.getRollupSelectFields());
+        rollupSelectFields.addAll(monthlyExecutionCountsAggregator.getRollupSelectFields());
+        rollupSelectFields.addAll(executionTimeHistogramAggregator.getRollupSelectFields(DailyRollupTable.EXECUTION_TIME_BIN_FIELD, DailyRollupTable.EXECUTION_COUNT_FIELD));
+        this.addRollupSelectFields(rollupSelectFields);
         this.addGroupFields(Set.of(executionStatusField)); // Group by status
     }
 
@@ -55,6 +78,111 @@ public class ExecutionStatusAthenaAggregator extends RunExecutionAthenaAggregato
         return EXECUTION_STATUS_FIELD.getName();
     }
 
+    /**
+     * Calculate approximate metrics from a sample of the raw executions.
+     * The execution status counts are exact, calculated by a lightweight query over every execution.
+     * The other metrics are calculated from the sample, and their counts are scaled by the ratio of the exact status count to the sampled status count.
+     * @param partition
+     * @param samplePercentage the percentage of the table to sample, between 0 and 100
+     * @param name the name of the partition, used for logging
+     * @return
+     */
+    public Map<String, ExecutionStatusMetric> createApproximateMetricByPlatform(AthenaTablePartition partition, double samplePercentage, String name) {
+        // The status count rows don't contain the columns of the other metrics, so the metrics only contain the status counts
+        Map<String, ExecutionStatusMetric> exactMetricByPlatform = createMetricByPlatform(partition, createStatusCountsQuery(partition));
+        Map<String, ExecutionStatusMetric> sampledMetricByPlatform = createSampledMetricByPlatform(partition, samplePercentage);
+
+        exactMetricByPlatform.forEach((platform, exactMetric) -> {
+            ExecutionStatusMetric sampledMetric = sampledMetricByPlatform.get(platform);
+            if (sampledMetric == null) {
+                LOG.warn("No executions were sampled for {}, platform {}. Only the execution status counts were aggregated", name, platform);
+                return;
+            }
+            exactMetric.getCount().replaceAll((status, exactMetricsByStatus) -> {
+                MetricsByStatus sampledMetricsByStatus = sampledMetric.getCount().get(status);
+                if (sampledMetricsByStatus == null) {
+                    return exactMetricsByStatus;
+                }
+                int exactCount = exactMetricsByStatus.getExecutionStatusCount();
+                int sampledCount = sampledMetricsByStatus.getExecutionStatusCount();
+                scaleSampledMetrics(sampledMetricsByStatus, (double)exactCount / sampledCount);
+                sampledMetricsByStatus.setExecutionStatusCount(exactCount);
+                if (Partner.ALL.name().equals(platform) && ExecutionStatus.ALL.name().equals(status)) {
+                    double relativeStandardError = getRelativeStandardError(sampledCount, exactCount);
+                    LOG.info("Approximated metrics for {} from {} of {} executions. Relative standard error of the scaled counts is {}", name, sampledCount, exactCount, relativeStandardError);
+                }
+                return sampledMetricsByStatus;
+            });
+        });
+        return exactMetricByPlatform;
+    }
+
+    /**
+     * Create a query that counts the executions of each status. Only the platforms, IDs, and statuses of the executions are selected, so unlike the
+     * run executions query, the other fields of the executions aren't carried through the de-duplication.
+     * @param partition
+     * @return
+     */
+    String createStatusCountsQuery(AthenaTablePartition partition) {
+        Field<?> executionStatusField = field(getMetricColumnName());
+        Set<SelectField<?>> statusCountFields = Set.of(
+                coalesce(PLATFORM_FIELD, inline(Partner.ALL.name())).as(PLATFORM_FIELD.getName()),
+                coalesce(executionStatusField, inline(ExecutionStatus.ALL.name())).as(getMetricColumnName()),
+                count(executionStatusField).as(getCountColumnName()));
+        final Select<Record> runExecutionStatuses = createUnnestedExpressionsQuery(partition, field("runexecutions", String[].class),
+                List.of(field(UNNESTED_FIELD_ALIAS + "." + EXECUTION_STATUS_FIELD.getName(), String.class).as(EXECUTION_STATUS_FIELD)));
+        // If all tasks are successful, the workflow execution created from the tasks is successful. Otherwise, assume failed, like createRunExecutionsQuery
+        final Select<Record> taskExecutionStatuses = createUnnestedExpressionsQuery(partition, TASK_EXECUTIONS_FIELD,
+                List.of(field("case when all_match(transform(%s.taskexecutions, t -> t.executionstatus), t -> t = 'SUCCESSFUL') then 'SUCCESSFUL' else 'FAILED' end"
+                        .formatted(UNNESTED_FIELD_ALIAS), String.class).as(EXECUTION_STATUS_FIELD)));
+        return createGroupedQuery(statusCountFields, runExecutionStatuses.unionAll(taskExecutionStatuses));
+    }
+
+    /**
+     * The relative standard error of a count that's estimated by scaling the count of a simple random sample of executions by exactCount / sampledCount.
+     * @param sampledCount the number of sampled executions
+     * @param exactCount the number of executions
+     * @return
+     */
+    static double getRelativeStandardError(int sampledCount, int exactCount) {
+        return Math.sqrt((1.0 - (double)sampledCount / exactCount) / sampledCount);
+    }
+
+    private static void scaleSampledMetrics(MetricsByStatus metricsByStatus, double scale) {
+        if (metricsByStatus.getExecutionTime() != null) {
+            metricsByStatus.getExecutionTime().setNumberOfDataPointsForAverage(scale(metricsByStatus.getExecutionTime().getNumberOfDataPointsForAverage(), scale));
+        }
+        if (metricsByStatus.getCpu() != null) {
+            metricsByStatus.getCpu().setNumberOfDataPointsForAverage(scale(metricsByStatus.getCpu().getNumberOfDataPointsForAverage(), scale));
+        }
+        if (metricsByStatus.getMemory() != null) {
+            metricsByStatus.getMemory().setNumberOfDataPointsForAverage(scale(metricsByStatus.getMemory().getNumberOfDataPointsForAverage(), scale));
+        }
+        if (metricsByStatus.getCost() != null) {
+            metricsByStatus.getCost().setNumberOfDataPointsForAverage(scale(metricsByStatus.getCost().getNumberOfDataPointsForAverage(), scale));
+        }
+        if (metricsByStatus.getDailyExecutionCounts() != null) {
+            metricsByStatus.getDailyExecutionCounts().setValues(scale(metricsByStatus.getDailyExecutionCounts().getValues(), scale));
+        }
+        if (metricsByStatus.getWeeklyExecutionCounts() != null) {
+            metricsByStatus.getWeeklyExecutionCounts().setValues(scale(metricsByStatus.getWeeklyExecutionCounts().getValues(), scale));
+        }
+        if (metricsByStatus.getMonthlyExecutionCounts() != null) {
+            metricsByStatus.getMonthlyExecutionCounts().setValues(scale(metricsByStatus.getMonthlyExecutionCounts().getValues(), scale));
+        }
+        if (metricsByStatus.getExecutionTimeHistogram() != null) {
+            metricsByStatus.getExecutionTimeHistogram().setFrequencies(scale(metricsByStatus.getExecutionTimeHistogram().getFrequencies(), scale));
+        }
+    }
+
+    private static Integer scale(Integer count, double scale) {
+        return count == null ? null : (int)Math.round(count * scale);
+    }
+
+    private static List<Double> scale(List<Double> counts, double scale) {
+        return counts.stream().map(count -> (double)Math.round(count * scale)).toList();
+    }
+
     @Override
     Optional<ExecutionStatusMetric> createMetricFromQueryResultRow(QueryResultRow queryResultRow) {
         Optional<String> executionStatus = queryResultRow.getColumnValue(getMetricColumnName());
@@ -2,12 +2,15 @@ package io.dockstore.metricsaggregator.helper;
 
 import static org.jooq.impl.DSL.and;
 import static org.jooq.impl.DSL.case_;
+import static org.jooq.impl.DSL.coalesce;
 import static org.jooq.impl.DSL.count;
 import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.sum;
 
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient;
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.QueryResultRow;
 import io.dockstore.openapi.client.model.HistogramMetric;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -15,6 +18,7 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import org.jooq.CaseConditionStep;
 import org.jooq.Condition;
 import org.jooq.Field;
 import org.jooq.SelectField;
@@ -55,6 +59,34 @@ public class HistogramAthenaAggregator extends RunExecutionAthenaAggregator<Hist
         return count(case_().when(withinBin, 1)).as(aggregateColumnName);
     }
 
+    /**
+     * Get the SELECT fields that calculate each bin's frequency from the daily rollup table,
+     * where each rollup row contains the index of the bin that its executions fall in and the number of executions.
+     * @param binIndexField the rollup field containing the bin index
+     * @param countField the rollup field containing the number of executions
+     */
+    public Set<SelectField<?>> getRollupSelectFields(Field<Integer> binIndexField, Field<Long> countField) {
+        return getBinIndexes().stream()
+                .map(binIndex -> coalesce(sum(case_().when(binIndexField.eq(inline(binIndex)), countField)), inline(BigDecimal.ZERO)).as(getAggregateColumnName(binIndex)))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Create a field that calculates the index of the histogram bin that the field value falls in,
+     * where the value falls in bin[i] if it's between edges[i] inclusive and edges[i + 1] exclusive.
+     * The field is null if the value doesn't fall in any bin.
+     * @param field the database field to calculate the bin index for
+     * @param edges the edge values of the histogram
+     */
+    static Field<Integer> createBinIndexField(Field<Double> field, List<Double> edges) {
+        CaseConditionStep<Integer> binIndexField = null;
+        for (int binIndex = 0; binIndex < edges.size() - 1; binIndex++) {
+            Condition withinBin = and(field.greaterOrEqual(inline(edges.get(binIndex))), field.lessThan(inline(edges.get(binIndex + 1))));
+            binIndexField = binIndexField == null ? case_().when(withinBin, inline(binIndex)) : binIndexField.when(withinBin, inline(binIndex));
+        }
+        return binIndexField;
+    }
+
     private List<Integer> getBinIndexes() {
         return IntStream.range(0, edges.size() - 1).boxed().toList();
     }
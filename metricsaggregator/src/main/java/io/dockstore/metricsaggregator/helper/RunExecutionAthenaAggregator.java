@@ -4,7 +4,9 @@ import static org.jooq.impl.DSL.coalesce;
 import static org.jooq.impl.DSL.cube;
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.inline;
+import static org.jooq.impl.DSL.noCondition;
 import static org.jooq.impl.DSL.select;
+import static org.jooq.impl.DSL.table;
 
 import io.dockstore.common.Partner;
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient;
@@ -17,11 +19,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import org.jooq.Condition;
 import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.SQLDialect;
 import org.jooq.Select;
 import org.jooq.SelectField;
+import org.jooq.Table;
 import org.jooq.conf.Settings;
 import org.jooq.conf.StatementType;
 import org.jooq.impl.DSL;
@@ -37,13 +41,18 @@ public abstract class RunExecutionAthenaAggregator<M extends Metric> extends Ath
 
     // Fields for the SELECT clause
     private final Set<SelectField<?>> selectFields = new HashSet<>();
+    // Fields for the SELECT clause when the query reads from the daily rollup table
+    private final Set<SelectField<?>> rollupSelectFields = new HashSet<>();
     // Fields for the GROUP BY clause
     private final Set<Field<?>> groupFields = new HashSet<>();
+    // The daily rollup table to read from. If null, the query reads every raw execution
+    private DailyRollupTable dailyRollupTable;
 
     protected RunExecutionAthenaAggregator(MetricsAggregatorAthenaClient metricsAggregatorAthenaClient, String tableName) {
         super(metricsAggregatorAthenaClient, tableName);
         // All queries will be grouped by platform at a minimum
         selectFields.add(coalesce(PLATFORM_FIELD, inline(Partner.ALL.name())).as(PLATFORM_FIELD.getName())); // Coalesce null platform values to "ALL"
+        rollupSelectFields.add(coalesce(PLATFORM_FIELD, inline(Partner.ALL.name())).as(PLATFORM_FIELD.getName()));
         groupFields.add(PLATFORM_FIELD);
     }
 
@@ -81,6 +90,19 @@ public abstract class RunExecutionAthenaAggregator<M extends Metric> extends Ath
         this.selectFields.addAll(newSelectFields);
     }
 
+    /**
+     * Get the SELECT fields that calculate the metric from the rows of the daily rollup table instead of from the raw executions.
+     * The fields have the same aliases as the fields returned by getSelectFields() so that the query result rows can be read the same way.
+     * @return
+     */
+    public Set<SelectField<?>> getRollupSelectFields() {
+        return this.rollupSelectFields;
+    }
+
+    public void addRollupSelectFields(Set<SelectField<?>> newRollupSelectFields) {
+        this.rollupSelectFields.addAll(newRollupSelectFields);
+    }
+
     public Set<Field<?>> getGroupFields() {
         return this.groupFields;
     }
@@ -89,17 +111,88 @@ public abstract class RunExecutionAthenaAggregator<M extends Metric> extends Ath
         this.groupFields.addAll(newGroupFields);
     }
 
+    /**
+     * Read the aggregated days from the specified daily rollup table instead of from the raw executions.
+     * @param dailyRollupTable
+     */
+    public void setDailyRollupTable(DailyRollupTable dailyRollupTable) {
+        this.dailyRollupTable = dailyRollupTable;
+    }
+
     /**
      * Create the runexecutions query string using the SELECT and GROUP BY fields.
      * De-duplicates executions with the same execution ID by taking the newest execution according to the S3 file modified time.
+     * If a daily rollup table is set, the days that were rolled up are read from the rollup table and only the newer executions are read from the raw executions.
      *
      * @return
      */
     @Override
     protected String createQuery(AthenaTablePartition partition) {
+        final Select<Record> executions;
+        final Set<SelectField<?>> fields;
+        if (dailyRollupTable == null) {
+            executions = createRunExecutionsQuery(partition, noCondition());
+            fields = this.selectFields;
+        } else {
+            executions = dailyRollupTable.createRollupSourceQuery(partition, this);
+            fields = this.rollupSelectFields;
+        }
+
+        return createGroupedQuery(fields, executions);
+    }
+
+    /**
+     * Create the runexecutions query string using the SELECT and GROUP BY fields, reading only a sample of the raw executions.
+     * Counts calculated by the query are not scaled, so they only reflect the sampled executions.
+     * @param partition
+     * @param samplePercentage the percentage of the table to sample, between 0 and 100
+     * @return
+     */
+    protected String createSampledQuery(AthenaTablePartition partition, double samplePercentage) {
+        return createGroupedQuery(this.selectFields, createRunExecutionsQuery(partition, noCondition(), createSampledTable(samplePercentage)));
+    }
+
+    /**
+     * Calculate the metrics from a sample of the raw executions.
+     * @param partition
+     * @param samplePercentage the percentage of the table to sample, between 0 and 100
+     * @return
+     */
+    public Map<String, M> createSampledMetricByPlatform(AthenaTablePartition partition, double samplePercentage) {
+        return createMetricByPlatform(partition, createSampledQuery(partition, samplePercentage));
+    }
+
+    protected String createGroupedQuery(Set<SelectField<?>> fields, Select<Record> executions) {
+        return DSL.using(SQLDialect.DEFAULT, new Settings().withRenderFormatted(true).withStatementType(StatementType.STATIC_STATEMENT))
+                // Main query that uses the results of the subquery
+                .select(fields)
+                .from(executions)
+                .groupBy(cube(this.groupFields.toArray(Field[]::new))) // CUBE generates sub-totals for all combinations of the GROUP BY columns.
+                .getSQL();
+    }
+
+    /**
+     * Create a query that returns the de-duplicated run executions of the partition, including the workflow executions created from arrays of tasks.
+     * Only the S3 files that satisfy the file condition are considered.
+     * @param partition
+     * @param fileCondition
+     * @return
+     */
+    Select<Record> createRunExecutionsQuery(AthenaTablePartition partition, Condition fileCondition) {
+        return createRunExecutionsQuery(partition, fileCondition, table(tableName));
+    }
+
+    /**
+     * Same as above, but reads the executions from the specified source table.
+     * @param partition
+     * @param fileCondition
+     * @param sourceTable
+     * @return
+     */
+    Select<Record> createRunExecutionsQuery(AthenaTablePartition partition, Condition fileCondition, Table<?> sourceTable) {
         // Sub-query that flattens the runexecutions array for the partition
         List<Field<?>> runExecutionFields = List.of(DATE_EXECUTED_FIELD, EXECUTION_STATUS_FIELD, EXECUTION_TIME_SECONDS_FIELD, MEMORY_REQUIREMENTS_GB_FIELD, CPU_REQUIREMENTS_FIELD, COST_FIELD);
-        final Select<Record> dedupedRunExecutions = createUnnestQueryWithModifiedTime(partition, field("runexecutions", String[].class), runExecutionFields);
+        final Select<Record> dedupedRunExecutions = createUnnestQueryWithModifiedTime(partition, field("runexecutions", String[].class), runExecutionFields, fileCondition, sourceTable);
 
         // This query creates a workflow execution from each array of tasks. This will be unioned with the actual workflow executions submitted.
         // We turn each array of tasks into a workflow execution and union it with the workflow executions submitted because this is how we currently aggregate tasks.
@@ -113,18 +206,24 @@ public abstract class RunExecutionAthenaAggregator<M extends Metric> extends Ath
                 field("array_max(transform(taskexecutions, t -> t.cpurequirements))", Integer.class).as(CPU_REQUIREMENTS_FIELD),
                 field("array_max(transform(taskexecutions, t -> t.cost))", String.class).as(COST_FIELD)
         );
-        final Select<Record> dedupedTaskExecutions = createUnnestQueryWithModifiedTime(partition, field("taskexecutions", String[].class), List.of(field("taskexecutions")));
+        final Select<Record> dedupedTaskExecutions = createUnnestQueryWithModifiedTime(partition, field("taskexecutions", String[].class), List.of(field("taskexecutions")), fileCondition, sourceTable);
         final Select<Record> runExecutionsFromTasks = select(taskExecutionFields)
                 .from(dedupedTaskExecutions);
 
-        return DSL.using(SQLDialect.DEFAULT, new Settings().withRenderFormatted(true).withStatementType(StatementType.STATIC_STATEMENT))
-                // Main query that uses the results of the subquery
-                .select(this.selectFields)
-                .from(dedupedRunExecutions
-                        .unionAll(runExecutionsFromTasks)
-                )
-                .groupBy(cube(this.groupFields.toArray(Field[]::new))) // CUBE generates sub-totals for all combinations of the GROUP BY columns.
-                .getSQL();
+        return dedupedRunExecutions.unionAll(runExecutionsFromTasks);
+    }
+
+    /**
+     * Create a query that returns the platforms and IDs of the de-duplicated run executions of the partition, including the workflow executions created from arrays of tasks.
+     * Only the S3 files that satisfy the file condition are considered.
+     * @param partition
+     * @param fileCondition
+     * @return
+     */
+    Select<Record> createRunExecutionIdsQuery(AthenaTablePartition partition, Condition fileCondition) {
+        final List<Field<?>> executionIdFields = List.of(field("executionid", String.class));
+        return createUnnestQueryWithModifiedTime(partition, field("runexecutions", String[].class), executionIdFields, fileCondition)
+                .union(createUnnestQueryWithModifiedTime(partition, field("taskexecutions", String[].class), executionIdFields, fileCondition));
     }
 
     /**
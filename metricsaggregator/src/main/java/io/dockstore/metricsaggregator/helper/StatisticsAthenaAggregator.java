@@ -6,6 +6,7 @@ import static org.jooq.impl.DSL.count;
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.max;
 import static org.jooq.impl.DSL.min;
+import static org.jooq.impl.DSL.sum;
 import static org.jooq.impl.DSL.val;
 
 import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient;
@@ -13,6 +14,7 @@ import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.QueryResultR
 import io.dockstore.openapi.client.model.Metric;
 import java.util.Optional;
 import java.util.Set;
+import org.jooq.Field;
 import org.jooq.SelectField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +30,7 @@ public abstract class StatisticsAthenaAggregator<M extends Metric> extends RunEx
     protected StatisticsAthenaAggregator(MetricsAggregatorAthenaClient metricsAggregatorAthenaClient, String tableName) {
         super(metricsAggregatorAthenaClient, tableName);
         this.addSelectFields(getStatisticSelectFields());
+        this.addRollupSelectFields(getStatisticRollupSelectFields());
     }
 
     /**
@@ -46,6 +49,25 @@ public abstract class StatisticsAthenaAggregator<M extends Metric> extends RunEx
         );
     }
 
+    /**
+     * Returns the set of statistical SELECT fields calculated from the daily rollup table.
+     * The min, max, and count are combined directly, the average is calculated from the sums and counts,
+     * and the percentiles are calculated from the merged quantile digests.
+     */
+    protected Set<SelectField<?>> getStatisticRollupSelectFields() {
+        final String metricColumnName = getMetricColumnName();
+        final Field<Double> digestField = field(DailyRollupTable.getDigestColumnName(metricColumnName), Double.class);
+        final String valueAtQuantile = "value_at_quantile(merge(cast({0} as qdigest(double))), {1})";
+        return Set.of(min(field(DailyRollupTable.getMinColumnName(metricColumnName), Double.class)).as(getMinColumnName()),
+                field("sum({0}) / nullif(sum({1}), 0)", Double.class, field(DailyRollupTable.getSumColumnName(metricColumnName)), field(DailyRollupTable.getCountColumnName(metricColumnName))).as(getAvgColumnName()),
+                max(field(DailyRollupTable.getMaxColumnName(metricColumnName), Double.class)).as(getMaxColumnName()),
+                sum(field(DailyRollupTable.getCountColumnName(metricColumnName), Long.class)).as(getCountColumnName()),
+                field(valueAtQuantile, Double.class, digestField, val(PERCENTILE_05)).as(getPercentile05thColumnName()),
+                field(valueAtQuantile, Double.class, digestField, val(PERCENTILE_MEDIAN)).as(getMedianColumnName()),
+                field(valueAtQuantile, Double.class, digestField, val(PERCENTILE_95)).as(getPercentile95thColumnName())
+        );
+    }
+
     protected String getMinColumnName() {
         return "min_" + substitutePeriodsForUnderscores(getMetricColumnName());
     }
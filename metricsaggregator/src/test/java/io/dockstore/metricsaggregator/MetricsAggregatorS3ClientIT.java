@@ -50,10 +50,14 @@ import io.dockstore.openapi.client.model.WorkflowVersion;
 import io.dockstore.webservice.DockstoreWebserviceApplication;
 import io.dockstore.webservice.DockstoreWebserviceConfiguration;
 import io.dropwizard.testing.DropwizardTestSupport;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -101,7 +105,7 @@ class MetricsAggregatorS3ClientIT {
     }
 
     @Test
-    void testGetDirectories() {
+    void testGetDirectories() throws Exception {
         final ApiClient apiClient = CommonTestUtilities.getOpenAPIWebClient(true, ADMIN_USERNAME, testingPostgres);
         final ExtendedGa4GhApi extendedGa4GhApi = new ExtendedGa4GhApi(apiClient);
         final WorkflowsApi workflowsApi = new WorkflowsApi(apiClient);
@@ -153,7 +157,8 @@ class MetricsAggregatorS3ClientIT {
         assertTrue(s3DirectoryInfo.platforms().contains(platform1));
 
         // Confirm that we're properly calculating entry directories from version directories.
-        // Before calculating the entry directories, add execution data for another platform, so that we can confirm that we're re-reading the version directories for each entry.
+        // Before calculating the entry directories, add execution data for another platform, so that we can confirm that the entry directories are calculated
+        // from the listing that the client already made instead of re-reading the version directories for each entry.
         extendedGa4GhApi.executionMetricsPost(executionsRequestBody, platform3, workflowId, workflowVersionId, "");
 
         List<MetricsAggregatorS3Client.EntryS3DirectoryInfo> entryDirectories = metricsAggregatorS3Client.getEntryDirectories(s3DirectoryInfos);
@@ -166,7 +171,7 @@ class MetricsAggregatorS3ClientIT {
         assertNotNull(entryDirectory);
         assertEquals(workflowId, entryDirectory.toolId());
         assertEquals(List.of(workflowVersionId), entryDirectory.versionIds());
-        assertEquals(new HashSet<>(entryDirectory.platforms()), Set.of(platform1, platform2, platform3));
+        assertEquals(new HashSet<>(entryDirectory.platforms()), Set.of(platform1, platform2));
 
         entryDirectory = entryDirectories.stream()
                 .filter(directory -> Objects.equals(directory.entryS3KeyPrefix(), S3ClientHelper.convertToolIdToPartialKey(toolId) + "/"))
@@ -176,5 +181,29 @@ class MetricsAggregatorS3ClientIT {
         assertEquals(toolId, entryDirectory.toolId());
         assertEquals(List.of(toolVersionId), entryDirectory.versionIds());
         assertEquals(new HashSet<>(entryDirectory.platforms()), Set.of(platform1));
+
+        // Confirm that walking the bucket lists it again and streams each entry along with its version directories
+        List<MetricsAggregatorS3Client.EntryS3Directories> walkedEntries = new ArrayList<>();
+        metricsAggregatorS3Client.walkEntryDirectories(walkedEntries::add);
+        assertEquals(2, walkedEntries.size());
+        assertEquals(Set.of(workflowId, toolId), walkedEntries.stream().map(entry -> entry.entryDirectory().toolId()).collect(Collectors.toSet()));
+        assertTrue(walkedEntries.stream().allMatch(entry -> entry.versionDirectories().size() == 1));
+
+        MetricsAggregatorS3Client.EntryS3Directories entryS3Directories = metricsAggregatorS3Client.getEntryS3DirectoriesForTrsId(workflowId).orElse(null);
+        assertNotNull(entryS3Directories);
+        assertEquals(new HashSet<>(entryS3Directories.entryDirectory().platforms()), Set.of(platform1, platform2, platform3));
+        assertEquals(workflowVersionId, entryS3Directories.versionDirectories().get(0).versionId());
+        assertTrue(metricsAggregatorS3Client.getEntryS3DirectoriesForTrsIdVersions(workflowId, List.of("nonexistentVersion")).isEmpty());
+
+        // Confirm that a saved listing can be loaded by another client, which lists the requested versions again
+        Path prefixTriePath = Files.createTempFile("prefixTrie", ".tsv");
+        metricsAggregatorS3Client.savePrefixTrie(prefixTriePath);
+        MetricsAggregatorS3Client loadedS3Client = new MetricsAggregatorS3Client(BUCKET_NAME, ENDPOINT_OVERRIDE);
+        loadedS3Client.loadPrefixTrie(prefixTriePath);
+        entryS3Directories = loadedS3Client.getEntryS3DirectoriesForTrsIdVersions(workflowId, List.of(workflowVersionId)).orElse(null);
+        assertNotNull(entryS3Directories);
+        assertEquals(new HashSet<>(entryS3Directories.entryDirectory().platforms()), Set.of(platform1, platform2, platform3));
+        assertEquals(metricsAggregatorS3Client.getDirectorySizeBytes(""), loadedS3Client.getDirectorySizeBytes(""));
+        loadedS3Client.close();
     }
 }
@@ -0,0 +1,171 @@
+package io.dockstore.metricsaggregator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.EntryS3Directories;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+class MetricsAggregatorS3ClientTest {
+    private static final String BUCKET_NAME = "local-dockstore-metrics-data";
+    // More entries than fit in the queue of listed entries, so that the listing blocks while the consumer is busy
+    private static final int NUMBER_OF_ENTRIES = 500;
+    private static final int VERSIONS_PER_ENTRY = 2;
+    private static final long OBJECT_SIZE_BYTES = 10;
+
+    private FakeS3AsyncClient s3AsyncClient;
+    private MetricsAggregatorS3Client metricsAggregatorS3Client;
+    private ExecutorService worker;
+
+    @BeforeEach
+    void setup() {
+        s3AsyncClient = new FakeS3AsyncClient();
+        for (int entry = 0; entry < NUMBER_OF_ENTRIES; entry++) {
+            for (int version = 0; version < VERSIONS_PER_ENTRY; version++) {
+                s3AsyncClient.keys.add(getEntryPrefix(entry) + "version" + version + "/TERRA/1673972062578.json");
+            }
+        }
+        metricsAggregatorS3Client = new MetricsAggregatorS3Client(new FakeS3Client(), s3AsyncClient, BUCKET_NAME);
+        worker = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.shutdownNow();
+        metricsAggregatorS3Client.close();
+    }
+
+    @Test
+    void testWalkEntryDirectories() {
+        List<EntryS3Directories> entries = new ArrayList<>();
+        metricsAggregatorS3Client.walkEntryDirectories(entries::add);
+        assertEquals(NUMBER_OF_ENTRIES, entries.size());
+        entries.forEach(entry -> assertEquals(VERSIONS_PER_ENTRY, entry.versionDirectories().size()));
+
+        // Every object was listed once
+        assertEquals(NUMBER_OF_ENTRIES * VERSIONS_PER_ENTRY * OBJECT_SIZE_BYTES, metricsAggregatorS3Client.getDirectorySizeBytes(""));
+        final int numberOfRequests = s3AsyncClient.numberOfRequests.get();
+        assertEquals(VERSIONS_PER_ENTRY * OBJECT_SIZE_BYTES, metricsAggregatorS3Client.getDirectorySizeBytes(getEntryPrefix(0)));
+        assertEquals(numberOfRequests, s3AsyncClient.numberOfRequests.get(), "The walked directories were listed again");
+    }
+
+    @Test
+    void testConsumerWaitsForDirectoryQueriesFromOtherThreads() throws Exception {
+        // Like the aggregation workers, the consumer waits for another thread that queries directories that don't overlap the listing.
+        // If the listing lock was held while calling the consumer, the other thread would wait for the lock forever
+        List<String> trsIds = List.of("#workflow/github.com/org/name0", "#workflow/github.com/org/name1");
+        AtomicInteger numberOfEntries = new AtomicInteger(0);
+        metricsAggregatorS3Client.listEntryDirectoriesForTrsIds(trsIds, entry -> {
+            Future<Long> sizeBytes = worker.submit(() -> metricsAggregatorS3Client.getDirectorySizeBytes(getEntryPrefix(2)));
+            try {
+                assertEquals(VERSIONS_PER_ENTRY * OBJECT_SIZE_BYTES, sizeBytes.get(10, TimeUnit.SECONDS));
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            numberOfEntries.incrementAndGet();
+        });
+        assertEquals(trsIds.size(), numberOfEntries.get());
+    }
+
+    @Test
+    void testWalkDoesntGetAheadOfConsumer() {
+        AtomicInteger maxQueuedEntries = new AtomicInteger(0);
+        AtomicInteger numberOfEntries = new AtomicInteger(0);
+        metricsAggregatorS3Client.walkEntryDirectories(entry -> {
+            // The entries that were listed but not yet passed to the consumer are bounded by the high-water mark of the queue of listed entries, and by the listings in flight
+            maxQueuedEntries.accumulateAndGet(s3AsyncClient.numberOfListedEntries.get() - numberOfEntries.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertEquals(NUMBER_OF_ENTRIES, numberOfEntries.get());
+        assertTrue(maxQueuedEntries.get() < NUMBER_OF_ENTRIES / 2, "The walk got ahead of the consumer by " + maxQueuedEntries.get() + " entries");
+    }
+
+    private static String getEntryPrefix(int entry) {
+        return "workflow/github.com/org/name" + entry + "/";
+    }
+
+    /**
+     * An in-process stand-in for S3 that answers delimited and non-delimited listings of a set of object keys, completing them from another thread.
+     */
+    private static class FakeS3AsyncClient implements S3AsyncClient {
+        private final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+        private final AtomicInteger numberOfRequests = new AtomicInteger(0);
+        private final AtomicInteger numberOfListedEntries = new AtomicInteger(0);
+
+        @Override
+        public CompletableFuture<ListObjectsV2Response> listObjectsV2(ListObjectsV2Request request) {
+            numberOfRequests.incrementAndGet();
+            final String prefix = request.prefix();
+            List<S3Object> contents = new ArrayList<>();
+            List<String> subdirectories = new ArrayList<>();
+            for (String key: keys.tailSet(prefix)) {
+                if (!key.startsWith(prefix)) {
+                    break;
+                }
+                final int delimiterIndex = key.indexOf('/', prefix.length());
+                if (request.delimiter() != null && delimiterIndex >= 0) {
+                    final String subdirectory = key.substring(0, delimiterIndex + 1);
+                    if (!subdirectories.contains(subdirectory)) {
+                        subdirectories.add(subdirectory);
+                    }
+                } else {
+                    contents.add(S3Object.builder().key(key).size(OBJECT_SIZE_BYTES).lastModified(Instant.EPOCH).build());
+                }
+            }
+            if (request.delimiter() == null) {
+                numberOfListedEntries.incrementAndGet();
+            }
+            ListObjectsV2Response response = ListObjectsV2Response.builder()
+                    .contents(contents)
+                    .commonPrefixes(subdirectories.stream().map(subdirectory -> CommonPrefix.builder().prefix(subdirectory).build()).toList())
+                    .isTruncated(false)
+                    .build();
+            return CompletableFuture.supplyAsync(() -> response, CompletableFuture.delayedExecutor(1, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+
+    private static class FakeS3Client implements S3Client {
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package io.dockstore.metricsaggregator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.metricsaggregator.S3DirectoryWalker.Throttle;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+
+class S3DirectoryWalkerTest {
+    private static final Logger LOG = LoggerFactory.getLogger(S3DirectoryWalkerTest.class);
+    private static final String BUCKET_NAME = "local-dockstore-metrics-data";
+    private static final int VERSION_PREFIX_DEPTH = 5;
+
+    @Test
+    void testWalk() throws Exception {
+        FakeS3AsyncClient s3AsyncClient = new FakeS3AsyncClient(createBucket(1000), 7, 1);
+        S3DirectoryWalker walker = new S3DirectoryWalker(s3AsyncClient, BUCKET_NAME, 8);
+
+        Map<String, List<String>> versionToPlatforms = walk(walker);
+        assertEquals(1000, versionToPlatforms.size());
+        versionToPlatforms.forEach((version, platforms) -> assertEquals(List.of(version + "TERRA/"), platforms));
+        assertTrue(s3AsyncClient.maxInFlightRequests.get() <= 8, "Exceeded the maximum number of concurrent requests");
+
+        // Walking from multiple root prefixes only walks beneath those prefixes
+        Queue<String> versions = new ConcurrentLinkedQueue<>();
+        walker.walk(List.of("workflow/github.com/org0/name0/", "workflow/github.com/org1/name0/"), S3DirectoryWalkerTest::isVersionDirectory, (prefix, subdirectories) -> versions.add(prefix)).get();
+        assertEquals(20, versions.size());
+
+        // Walking an empty list of root prefixes completes immediately
+        assertTrue(walker.walk(List.of(), S3DirectoryWalkerTest::isVersionDirectory, (prefix, subdirectories) -> versions.add(prefix)).isDone());
+    }
+
+    @Test
+    void testPausedWalkDoesntStartListings() throws Exception {
+        FakeS3AsyncClient s3AsyncClient = new FakeS3AsyncClient(createBucket(100), 1000, 1);
+        S3DirectoryWalker walker = new S3DirectoryWalker(s3AsyncClient, BUCKET_NAME, 8);
+        Throttle throttle = new Throttle();
+        Queue<String> versions = new ConcurrentLinkedQueue<>();
+        // Pauses the walk as soon as the first version is found, from the thread that completes the S3 request
+        CompletableFuture<Void> walk = walker.walk(List.of(""), S3DirectoryWalkerTest::isVersionDirectory, (prefix, subdirectories) -> {
+            versions.add(prefix);
+            throttle.pause();
+        }, throttle);
+
+        // Once the listings that were in flight complete, no more listings are started
+        Thread.sleep(200);
+        final int numberOfRequests = s3AsyncClient.numberOfRequests.get();
+        Thread.sleep(200);
+        assertEquals(numberOfRequests, s3AsyncClient.numberOfRequests.get());
+        assertFalse(walk.isDone());
+        assertTrue(versions.size() <= 8, "Found " + versions.size() + " versions while paused");
+
+        // Resuming restarts the walk, which is paused again by each version it finds until the walk is done
+        while (!walk.isDone()) {
+            throttle.resume();
+            Thread.sleep(5);
+        }
+        walk.get();
+        assertEquals(100, versions.size());
+    }
+
+    @Test
+    void testWalkFailure() {
+        S3DirectoryWalker walker = new S3DirectoryWalker(new FakeS3AsyncClient(Map.of(), 1, 1) {
+            @Override
+            public CompletableFuture<ListObjectsV2Response> listObjectsV2(ListObjectsV2Request request) {
+                return CompletableFuture.failedFuture(NoSuchBucketException.builder().message("No such bucket").build());
+            }
+        }, BUCKET_NAME, 8);
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> walk(walker));
+        assertTrue(exception.getCause() instanceof NoSuchBucketException);
+    }
+
+    /**
+     * Measures the listing throughput with a simulated S3 round-trip time. Run with -Dbenchmark=true
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkWalk() throws Exception {
+        final long latencyMs = 5;
+        for (int numberOfVersions: List.of(10_000, 100_000)) {
+            Map<String, List<String>> bucket = createBucket(numberOfVersions);
+            for (int maxConcurrentRequests: List.of(1, 8, 32, 128)) {
+                if (maxConcurrentRequests == 1 && numberOfVersions > 10_000) {
+                    continue; // Takes too long
+                }
+                FakeS3AsyncClient s3AsyncClient = new FakeS3AsyncClient(bucket, 1000, latencyMs);
+                Instant start = Instant.now();
+                assertEquals(numberOfVersions, walk(new S3DirectoryWalker(s3AsyncClient, BUCKET_NAME, maxConcurrentRequests)).size());
+                Duration duration = Duration.between(start, Instant.now());
+                LOG.info("Walked {} version directories ({} list requests) with {} concurrent requests in {}: {} directories per second",
+                        numberOfVersions, s3AsyncClient.numberOfRequests.get(), maxConcurrentRequests, duration, numberOfVersions * 1000L / Math.max(1, duration.toMillis()));
+            }
+        }
+    }
+
+    private static Map<String, List<String>> walk(S3DirectoryWalker walker) throws InterruptedException, ExecutionException {
+        Map<String, List<String>> versionToPlatforms = new HashMap<>();
+        walker.walk(List.of(""), S3DirectoryWalkerTest::isVersionDirectory, (prefix, subdirectories) -> {
+            synchronized (versionToPlatforms) {
+                versionToPlatforms.put(prefix, subdirectories);
+            }
+        }).get(1, TimeUnit.HOURS);
+        return versionToPlatforms;
+    }
+
+    private static boolean isVersionDirectory(String prefix) {
+        return prefix.chars().filter(c -> c == '/').count() == VERSION_PREFIX_DEPTH;
+    }
+
+    /**
+     * Creates a map of prefixes to subdirectories that looks like a metrics bucket with the specified number of version directories,
+     * where each org has 10 names and each name has 10 versions with executions from one platform.
+     */
+    private static Map<String, List<String>> createBucket(int numberOfVersions) {
+        Map<String, List<String>> prefixToSubdirectories = new HashMap<>();
+        for (int i = 0; i < numberOfVersions; i++) {
+            String org = "org" + i / 100;
+            String name = "name" + i / 10 % 10;
+            String version = "version" + i % 10;
+            List<String> elements = List.of("workflow", "github.com", org, name, version, "TERRA");
+            String prefix = "";
+            for (String element: elements) {
+                String subdirectory = prefix + element + "/";
+                List<String> subdirectories = prefixToSubdirectories.computeIfAbsent(prefix, key -> new ArrayList<>());
+                if (!subdirectories.contains(subdirectory)) {
+                    subdirectories.add(subdirectory);
+                }
+                prefix = subdirectory;
+            }
+        }
+        return prefixToSubdirectories;
+    }
+
+    /**
+     * An in-process stand-in for S3 that answers delimiter listings from a map of prefixes to subdirectories after a simulated round-trip time.
+     */
+    private static class FakeS3AsyncClient implements S3AsyncClient {
+        private final Map<String, List<String>> prefixToSubdirectories;
+        private final int pageSize;
+        private final long latencyMs;
+        private final AtomicInteger numberOfRequests = new AtomicInteger(0);
+        private final AtomicInteger inFlightRequests = new AtomicInteger(0);
+        private final AtomicInteger maxInFlightRequests = new AtomicInteger(0);
+
+        FakeS3AsyncClient(Map<String, List<String>> prefixToSubdirectories, int pageSize, long latencyMs) {
+            this.prefixToSubdirectories = prefixToSubdirectories;
+            this.pageSize = pageSize;
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public CompletableFuture<ListObjectsV2Response> listObjectsV2(ListObjectsV2Request request) {
+            numberOfRequests.incrementAndGet();
+            maxInFlightRequests.accumulateAndGet(inFlightRequests.incrementAndGet(), Math::max);
+            List<String> subdirectories = prefixToSubdirectories.getOrDefault(request.prefix(), List.of());
+            int start = request.continuationToken() == null ? 0 : Integer.parseInt(request.continuationToken());
+            int end = Math.min(start + pageSize, subdirectories.size());
+            ListObjectsV2Response.Builder response = ListObjectsV2Response.builder()
+                    .commonPrefixes(subdirectories.subList(start, end).stream().map(prefix -> CommonPrefix.builder().prefix(prefix).build()).toList())
+                    .isTruncated(end < subdirectories.size());
+            if (end < subdirectories.size()) {
+                response.nextContinuationToken(String.valueOf(end));
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                inFlightRequests.decrementAndGet();
+                return response.build();
+            }, CompletableFuture.delayedExecutor(latencyMs, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.dockstore.metricsaggregator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.dockstore.metricsaggregator.S3InventoryReader.Manifest;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+class S3InventoryReaderTest {
+    private static final String SCHEMA = "Bucket, Key, VersionId, IsLatest, IsDeleteMarker, Size, LastModifiedDate";
+
+    @TempDir
+    Path inventoryDirectory;
+
+    @Test
+    void testReadObjects() throws IOException {
+        writeReport("2026-10-18T01-00Z", Instant.parse("2026-10-18T01:00:00Z"), "CSV", List.of("\"metrics\",\"workflow/github.com/org/name/version1/TERRA/1.json\",\"old\",\"false\",\"false\",\"10\",\"2026-10-17T00:00:00.000Z\""));
+        writeReport("2026-10-19T01-00Z", Instant.parse("2026-10-19T01:00:00Z"), "CSV", List.of(
+                "\"metrics\",\"workflow/github.com/org/name/version1/TERRA/1.json\",\"v1\",\"true\",\"false\",\"20\",\"2026-10-18T00:00:00.000Z\"",
+                "\"metrics\",\"workflow/github.com/org/name/version%201/AGC/2.json\",\"v2\",\"true\",\"false\",\"30\",\"2026-10-18T12:00:00.000Z\"",
+                "\"metrics\",\"workflow/github.com/org/name/version2/AGC/3.json\",\"v3\",\"true\",\"true\",\"\",\"2026-10-18T12:00:00.000Z\""));
+
+        // The latest report is read when the location is the inventory configuration directory
+        List<S3Object> objects = new ArrayList<>();
+        Manifest manifest = new S3InventoryReader(null).readObjects(inventoryDirectory.toString(), objects::add);
+        assertEquals(Instant.parse("2026-10-19T01:00:00Z"), manifest.getCreationTime());
+        // Delete markers are skipped and URL-encoded keys are decoded
+        assertEquals(List.of(
+                S3Object.builder().key("workflow/github.com/org/name/version1/TERRA/1.json").size(20L).lastModified(Instant.parse("2026-10-18T00:00:00.000Z")).build(),
+                S3Object.builder().key("workflow/github.com/org/name/version 1/AGC/2.json").size(30L).lastModified(Instant.parse("2026-10-18T12:00:00.000Z")).build()),
+                objects);
+
+        // A specific manifest can be read
+        objects.clear();
+        new S3InventoryReader(null).readObjects(inventoryDirectory.resolve("2026-10-18T01-00Z").resolve("manifest.json").toString(), objects::add);
+        assertEquals(List.of(), objects);
+    }
+
+    @Test
+    void testUnsupportedFormat() throws IOException {
+        writeReport("2026-10-19T01-00Z", Instant.parse("2026-10-19T01:00:00Z"), "Parquet", List.of());
+        assertThrows(IOException.class, () -> new S3InventoryReader(null).readObjects(inventoryDirectory.toString(), object -> { }));
+    }
+
+    private void writeReport(String reportName, Instant creationTime, String fileFormat, List<String> lines) throws IOException {
+        Path reportDirectory = Files.createDirectories(inventoryDirectory.resolve(reportName));
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(reportDirectory.resolve("data.csv.gz")));
+                Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)) {
+            for (String line: lines) {
+                writer.write(line + "\n");
+            }
+        }
+        Files.writeString(reportDirectory.resolve("manifest.json"), """
+                {
+                  "sourceBucket": "metrics",
+                  "destinationBucket": "arn:aws:s3:::inventory",
+                  "version": "2016-11-30",
+                  "creationTimestamp": "%d",
+                  "fileFormat": "%s",
+                  "fileSchema": "%s",
+                  "files": [{"key": "metrics/config/data/data.csv.gz", "size": 100, "MD5checksum": "abc"}]
+                }
+                """.formatted(creationTime.toEpochMilli(), fileFormat, SCHEMA));
+    }
+}
@@ -0,0 +1,82 @@
+package io.dockstore.metricsaggregator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.metricsaggregator.S3PrefixTrie.DirectoryStatistics;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class S3PrefixTrieTest {
+    private static final String ENTRY_PREFIX = "workflow/github.com/org/name/";
+
+    @Test
+    void testDirectories() {
+        S3PrefixTrie trie = createTrie();
+        assertEquals(List.of(ENTRY_PREFIX), trie.getDirectoriesAtDepth("", 4));
+        assertEquals(List.of(ENTRY_PREFIX + "version1/", ENTRY_PREFIX + "version2/"), trie.getDirectoriesAtDepth("", 5));
+        assertEquals(List.of(ENTRY_PREFIX + "version1/"), trie.getDirectoriesAtDepth(ENTRY_PREFIX + "version1/", 5));
+        assertEquals(List.of(ENTRY_PREFIX + "version1/AGC/", ENTRY_PREFIX + "version1/TERRA/"), trie.getSubdirectories(ENTRY_PREFIX + "version1/"));
+        assertEquals(List.of(), trie.getSubdirectories("tool/"));
+
+        assertEquals(Optional.of(new DirectoryStatistics(3, 60, Instant.ofEpochMilli(3000))), trie.getStatistics(ENTRY_PREFIX));
+        assertEquals(Optional.of(new DirectoryStatistics(1, 30, Instant.ofEpochMilli(3000))), trie.getStatistics(ENTRY_PREFIX + "version2/"));
+        assertEquals(Optional.empty(), trie.getStatistics("tool/"));
+
+        trie.removeDirectory(ENTRY_PREFIX + "version2/");
+        assertFalse(trie.containsDirectory(ENTRY_PREFIX + "version2/"));
+        assertEquals(30, trie.getStatistics(ENTRY_PREFIX).orElseThrow().sizeBytes());
+
+        trie.removeDirectory("");
+        assertEquals(List.of(), trie.getSubdirectories(""));
+    }
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        S3PrefixTrie trie = createTrie();
+        StringWriter stringWriter = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(stringWriter)) {
+            trie.write(writer);
+        }
+
+        S3PrefixTrie readTrie = new S3PrefixTrie();
+        readTrie.read(new BufferedReader(new StringReader(stringWriter.toString())));
+        assertTrue(readTrie.containsDirectory(ENTRY_PREFIX + "version1/TERRA/"));
+        assertEquals(trie.getDirectoriesAtDepth("", 6), readTrie.getDirectoriesAtDepth("", 6));
+        assertEquals(trie.getStatistics(""), readTrie.getStatistics(""));
+    }
+
+    @Test
+    void testWriteAndReadWithoutLastModified() throws IOException {
+        S3PrefixTrie trie = createTrie();
+        // The version directory has no objects of its own, and its only object has no last modified time
+        trie.addObject(ENTRY_PREFIX + "version3/TERRA/execution4.json", 40, null);
+        StringWriter stringWriter = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(stringWriter)) {
+            trie.write(writer);
+        }
+
+        S3PrefixTrie readTrie = new S3PrefixTrie();
+        readTrie.read(new BufferedReader(new StringReader(stringWriter.toString())));
+        // The missing last modified time is read back as missing, not as the epoch
+        assertEquals(Optional.of(new DirectoryStatistics(1, 40, null)), readTrie.getStatistics(ENTRY_PREFIX + "version3/"));
+        assertEquals(trie.getStatistics(ENTRY_PREFIX + "version3/"), readTrie.getStatistics(ENTRY_PREFIX + "version3/"));
+        assertEquals(trie.getStatistics(""), readTrie.getStatistics(""));
+    }
+
+    private static S3PrefixTrie createTrie() {
+        S3PrefixTrie trie = new S3PrefixTrie();
+        trie.addObject(ENTRY_PREFIX + "version1/TERRA/execution1.json", 10, Instant.ofEpochMilli(1000));
+        trie.addObject(ENTRY_PREFIX + "version1/AGC/execution2.json", 20, Instant.ofEpochMilli(2000));
+        trie.addObject(ENTRY_PREFIX + "version2/TERRA/execution3.json", 30, Instant.ofEpochMilli(3000));
+        return trie;
+    }
+}
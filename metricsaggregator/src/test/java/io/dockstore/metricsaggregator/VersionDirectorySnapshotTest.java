@@ -0,0 +1,59 @@
+package io.dockstore.metricsaggregator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.EntryS3Directories;
+import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.EntryS3DirectoryInfo;
+import io.dockstore.metricsaggregator.MetricsAggregatorS3Client.VersionS3DirectoryInfo;
+import io.dockstore.metricsaggregator.S3PrefixTrie.DirectoryStatistics;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VersionDirectorySnapshotTest {
+    private static final String ENTRY_PREFIX = "workflow/github.com/org/name/";
+    private static final String VERSION1_PREFIX = ENTRY_PREFIX + "version1/";
+    private static final String VERSION2_PREFIX = ENTRY_PREFIX + "version2/";
+
+    @TempDir
+    Path snapshotDirectory;
+
+    @Test
+    void testGetChangedVersionDirectories() throws IOException {
+        DirectoryStatistics version1Statistics = new DirectoryStatistics(1, 10, Instant.ofEpochMilli(1000));
+        DirectoryStatistics version2Statistics = new DirectoryStatistics(2, 20, null);
+        VersionDirectorySnapshot snapshot = new VersionDirectorySnapshot();
+        snapshot.put(VERSION1_PREFIX, version1Statistics);
+        snapshot.put(VERSION2_PREFIX, version2Statistics);
+
+        // The snapshot is unchanged after it's written and read
+        Path snapshotPath = snapshotDirectory.resolve("snapshot.tsv");
+        snapshot.write(snapshotPath);
+        snapshot = VersionDirectorySnapshot.read(snapshotPath);
+        assertEquals(2, snapshot.size());
+
+        EntryS3Directories entryS3Directories = new EntryS3Directories(new EntryS3DirectoryInfo("#workflow/github.com/org/name", List.of("version1", "version2"), List.of("TERRA"), ENTRY_PREFIX, null),
+                List.of(createVersionDirectory("version1", VERSION1_PREFIX), createVersionDirectory("version2", VERSION2_PREFIX)));
+        Map<String, DirectoryStatistics> unchangedStatistics = Map.of(VERSION1_PREFIX, version1Statistics, VERSION2_PREFIX, version2Statistics);
+        assertTrue(snapshot.getChangedVersionDirectories(entryS3Directories, prefix -> Optional.ofNullable(unchangedStatistics.get(prefix))).isEmpty());
+
+        // Only the version directory with a new object is returned, along with the whole entry directory
+        Map<String, DirectoryStatistics> currentStatistics = Map.of(VERSION1_PREFIX, version1Statistics, VERSION2_PREFIX, new DirectoryStatistics(3, 30, Instant.ofEpochMilli(2000)));
+        Optional<EntryS3Directories> changedEntryS3Directories = snapshot.getChangedVersionDirectories(entryS3Directories, prefix -> Optional.ofNullable(currentStatistics.get(prefix)));
+        assertEquals(entryS3Directories.entryDirectory(), changedEntryS3Directories.orElseThrow().entryDirectory());
+        assertEquals(List.of(VERSION2_PREFIX), changedEntryS3Directories.orElseThrow().versionDirectories().stream().map(VersionS3DirectoryInfo::versionS3KeyPrefix).toList());
+
+        // A version directory that isn't in the snapshot is changed
+        assertTrue(new VersionDirectorySnapshot().getChangedVersionDirectories(entryS3Directories, prefix -> Optional.ofNullable(currentStatistics.get(prefix))).isPresent());
+    }
+
+    private static VersionS3DirectoryInfo createVersionDirectory(String versionId, String versionPrefix) {
+        return new VersionS3DirectoryInfo("#workflow/github.com/org/name", versionId, List.of("TERRA"), versionPrefix, null);
+    }
+}
@@ -0,0 +1,59 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.ExecutionsToSubmit;
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.SourceUrlTrsInfo;
+import io.dockstore.openapi.client.model.RunExecution;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class ExecutionCoalescerTest {
+    private static final SourceUrlTrsInfo VERSION1 = new SourceUrlTrsInfo("https://raw.githubusercontent.com/org/repo/v1/main.wdl", "#workflow/github.com/org/repo", "v1");
+    private static final SourceUrlTrsInfo VERSION2 = new SourceUrlTrsInfo("https://raw.githubusercontent.com/org/repo/v2/main.wdl", "#workflow/github.com/org/repo", "v2");
+
+    @Test
+    void testFlushBySize() {
+        List<ExecutionsToSubmit> flushedExecutions = new ArrayList<>();
+        ExecutionCoalescer coalescer = new ExecutionCoalescer(3, Duration.ofHours(1), 100, flushedExecutions::add);
+        coalescer.add(createExecutionsToSubmit(VERSION1, 2));
+        coalescer.add(createExecutionsToSubmit(VERSION2, 1));
+        assertTrue(flushedExecutions.isEmpty());
+
+        // The executions of version 1 from two batches are submitted together
+        coalescer.add(createExecutionsToSubmit(VERSION1, 2));
+        assertEquals(1, flushedExecutions.size());
+        assertEquals(VERSION1, flushedExecutions.get(0).sourceUrlTrsInfo());
+        assertEquals(4, flushedExecutions.get(0).executions().size());
+
+        coalescer.flushAll();
+        assertEquals(2, flushedExecutions.size());
+        assertEquals(VERSION2, flushedExecutions.get(1).sourceUrlTrsInfo());
+    }
+
+    @Test
+    void testFlushByAgeAndTotal() {
+        List<ExecutionsToSubmit> flushedExecutions = new ArrayList<>();
+        ExecutionCoalescer coalescer = new ExecutionCoalescer(100, Duration.ofSeconds(10), 5, flushedExecutions::add);
+        coalescer.add(createExecutionsToSubmit(VERSION1, 1));
+        coalescer.flushExpired(Instant.now());
+        assertTrue(flushedExecutions.isEmpty());
+        coalescer.flushExpired(Instant.now().plusSeconds(10));
+        assertEquals(1, flushedExecutions.size());
+
+        // When too many executions are buffered, the oldest version is flushed
+        coalescer.add(createExecutionsToSubmit(VERSION1, 3));
+        coalescer.add(createExecutionsToSubmit(VERSION2, 3));
+        assertEquals(2, flushedExecutions.size());
+        assertEquals(VERSION1, flushedExecutions.get(1).sourceUrlTrsInfo());
+    }
+
+    private static ExecutionsToSubmit createExecutionsToSubmit(SourceUrlTrsInfo sourceUrlTrsInfo, int numberOfExecutions) {
+        return new ExecutionsToSubmit(sourceUrlTrsInfo, IntStream.range(0, numberOfExecutions).mapToObj(i -> new RunExecution().executionId(String.valueOf(i))).toList(), List.of());
+    }
+}
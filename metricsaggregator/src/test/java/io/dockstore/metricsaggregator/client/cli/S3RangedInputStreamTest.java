@@ -0,0 +1,165 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+class S3RangedInputStreamTest {
+    private static final String BUCKET = "bucket";
+    private static final String KEY = "terra/export.csv.gz";
+    private static final int OBJECT_SIZE = 100;
+    private static final int PART_SIZE = 16;
+    private static final int PARTS_IN_FLIGHT = 3;
+    private static final String ETAG = "\"d41d8cd98f00b204e9800998ecf8427e\"";
+    private static final String VERSION_ID = "3HL4kqtJlcpXroDTDmJ+rmSpXd3dIbrHY";
+
+    private final byte[] object = createObject();
+    private final FakeS3Client s3Client = new FakeS3Client(object);
+
+    @Test
+    void testRead() throws IOException {
+        assertArrayEquals(object, readObject());
+        // One request for each part, each of which only gets the part if the object still has the ETag it had when the stream was opened
+        assertEquals(7, s3Client.requests.size());
+        s3Client.requests.forEach(request -> {
+            assertEquals(ETAG, request.ifMatch());
+            assertNull(request.versionId());
+        });
+    }
+
+    @Test
+    void testVersionIsRead() throws IOException {
+        s3Client.versionId = VERSION_ID;
+        assertArrayEquals(object, readObject());
+        s3Client.requests.forEach(request -> assertEquals(VERSION_ID, request.versionId()));
+    }
+
+    @Test
+    void testChangedObjectFails() {
+        // The object is overwritten after the first part is fetched
+        s3Client.failNextRequest("bytes=0-15", bytes -> {
+            s3Client.eTag = "\"9e107d9d372bb6826bd81d3542a419d6\"";
+            return bytes;
+        });
+        IOException exception = assertThrows(IOException.class, this::readObject);
+        assertTrue(exception.getMessage().contains("changed while it was being read"), exception.getMessage());
+    }
+
+    @Test
+    void testFailedPartFails() {
+        // The S3 client retries the requests that may succeed if they're sent again, so a part whose request failed isn't fetched again
+        final S3Exception failure = createS3Exception(503, "SlowDown");
+        s3Client.failNextRequest("bytes=32-47", bytes -> {
+            throw failure;
+        });
+        assertSame(failure, assertThrows(IOException.class, this::readObject).getCause());
+        assertEquals(1, s3Client.numberOfRequests("bytes=32-47"));
+    }
+
+    @Test
+    void testShortPartFails() {
+        s3Client.failNextRequest("bytes=48-63", bytes -> Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, this::readObject);
+    }
+
+    private byte[] readObject() throws IOException {
+        try (InputStream inputStream = new S3RangedInputStream(s3Client, BUCKET, KEY, PART_SIZE, PARTS_IN_FLIGHT)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private static byte[] createObject() {
+        byte[] bytes = new byte[OBJECT_SIZE];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)i;
+        }
+        return bytes;
+    }
+
+    private static S3Exception createS3Exception(int statusCode, String errorCode) {
+        return (S3Exception)S3Exception.builder()
+                .statusCode(statusCode)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).build())
+                .build();
+    }
+
+    /**
+     * An in-process stand-in for S3 that serves ranged GET requests of one object, rejecting the requests whose If-Match header doesn't match its ETag.
+     * The next requests for a range can be made to fail, by throwing an exception or by returning only some of the bytes.
+     */
+    private static class FakeS3Client implements S3Client {
+        private final byte[] object;
+        private final List<GetObjectRequest> requests = new CopyOnWriteArrayList<>();
+        private volatile String eTag = ETAG;
+        private volatile String versionId;
+        private final Map<String, AtomicInteger> rangeToNumberOfRequests = new ConcurrentHashMap<>();
+        private final Map<String, Queue<Function<byte[], byte[]>>> rangeToFailures = new ConcurrentHashMap<>();
+
+        FakeS3Client(byte[] object) {
+            this.object = object;
+        }
+
+        void failNextRequest(String range, Function<byte[], byte[]> failure) {
+            rangeToFailures.computeIfAbsent(range, key -> new ConcurrentLinkedQueue<>()).add(failure);
+        }
+
+        int numberOfRequests(String range) {
+            return rangeToNumberOfRequests.getOrDefault(range, new AtomicInteger(0)).get();
+        }
+
+        @Override
+        public HeadObjectResponse headObject(HeadObjectRequest request) {
+            return HeadObjectResponse.builder().contentLength((long)object.length).eTag(eTag).versionId(versionId).build();
+        }
+
+        @Override
+        public ResponseBytes<GetObjectResponse> getObjectAsBytes(GetObjectRequest request) {
+            requests.add(request);
+            rangeToNumberOfRequests.computeIfAbsent(request.range(), key -> new AtomicInteger(0)).incrementAndGet();
+            if (request.ifMatch() != null && !request.ifMatch().equals(eTag)) {
+                throw createS3Exception(412, "PreconditionFailed");
+            }
+            final String[] firstAndLastByte = request.range().substring("bytes=".length()).split("-");
+            byte[] bytes = Arrays.copyOfRange(object, Integer.parseInt(firstAndLastByte[0]), Integer.parseInt(firstAndLastByte[1]) + 1);
+            final Function<byte[], byte[]> failure = rangeToFailures.getOrDefault(request.range(), new ConcurrentLinkedQueue<>()).poll();
+            if (failure != null) {
+                bytes = failure.apply(bytes);
+            }
+            return ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), bytes);
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
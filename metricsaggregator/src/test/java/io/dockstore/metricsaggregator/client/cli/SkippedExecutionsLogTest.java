@@ -0,0 +1,58 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitTerraMetrics.TerraMetricsCsvHeaders;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+
+class SkippedExecutionsLogTest {
+
+    @Test
+    void testRecord() throws IOException, InterruptedException {
+        List<CSVRecord> csvRecords = CSVFormat.DEFAULT.builder().setHeader(TerraMetricsCsvHeaders.class).build()
+                .parse(new StringReader("id1,Succeeded,2022-07-15 15:37:06.450000 UTC,,10,https://raw.githubusercontent.com/org/repo/v1/main.wdl\n")).getRecords();
+        StringWriter output = new StringWriter();
+        SkippedExecutionsLog skippedExecutionsLog = new SkippedExecutionsLog(new CSVPrinter(output, CSVFormat.DEFAULT));
+
+        // Record skipped executions from several threads
+        final int numberOfThreads = 4;
+        final int numberOfExecutionsPerThread = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
+        for (int i = 0; i < numberOfThreads; i++) {
+            final String reason = i % 2 == 0 ? "reason1" : "reason2";
+            executorService.execute(() -> {
+                for (int j = 0; j < numberOfExecutionsPerThread; j++) {
+                    skippedExecutionsLog.record(csvRecords.get(0), reason);
+                }
+            });
+        }
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.MINUTES);
+        skippedExecutionsLog.close();
+
+        assertEquals(Map.of("reason1", 200L, "reason2", 200L), skippedExecutionsLog.getReasonToCount());
+        List<String> lines = output.toString().lines().toList();
+        assertEquals(numberOfThreads * numberOfExecutionsPerThread, lines.size());
+        assertEquals(List.of("id1", "Succeeded", "2022-07-15 15:37:06.450000 UTC", "", "10", "https://raw.githubusercontent.com/org/repo/v1/main.wdl"),
+                List.of(lines.get(0).split(",", -1)).subList(0, TerraMetricsCsvHeaders.values().length));
+    }
+
+    @Test
+    void testCountOnly() throws IOException {
+        try (SkippedExecutionsLog skippedExecutionsLog = new SkippedExecutionsLog(null)) {
+            skippedExecutionsLog.record(null, "reason");
+            assertEquals(Map.of("reason", 1L), skippedExecutionsLog.getReasonToCount());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.MinimalWorkflowInfo;
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.SourceUrlTrsInfo;
+import io.dockstore.openapi.client.model.Workflow.DescriptorTypeEnum;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SourceUrlResolutionCacheTest {
+    private static final String SOURCE_URL = "https://raw.githubusercontent.com/org/repo/v1.0/main.wdl";
+    private static final String SKIPPED_SOURCE_URL = "https://raw.githubusercontent.com/org/repo/v1.0/other.wdl";
+    private static final String TRANSIENT_SKIPPED_SOURCE_URL = "https://raw.githubusercontent.com/org/other-repo/v1.0/main.wdl";
+
+    @TempDir
+    Path cacheDirectory;
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        SourceUrlResolutionCache cache = new SourceUrlResolutionCache(Duration.ofDays(1), Duration.ofDays(1));
+        SourceUrlTrsInfo sourceUrlTrsInfo = new SourceUrlTrsInfo(SOURCE_URL, "#workflow/github.com/org/repo", "v1.0");
+        cache.putTrsInfo(sourceUrlTrsInfo);
+        cache.putSkipReason(SKIPPED_SOURCE_URL, "Could not find workflow", false);
+        cache.putSkipReason(TRANSIENT_SKIPPED_SOURCE_URL, "Could not get all published workflows", true);
+        ConcurrentHashMap<String, String> versionToPrimaryDescriptorPathMap = new ConcurrentHashMap<>(Map.of("v1.0", "/main.wdl", "v2.0", ""));
+        cache.putWorkflows("github.com/org/repo", List.of(new MinimalWorkflowInfo(1, "github.com/org/repo", DescriptorTypeEnum.WDL, versionToPrimaryDescriptorPathMap)));
+        assertEquals(Optional.of("Could not get all published workflows"), cache.getSkipReason(TRANSIENT_SKIPPED_SOURCE_URL));
+
+        Path cachePath = cacheDirectory.resolve("cache.json");
+        cache.write(cachePath);
+        SourceUrlResolutionCache readCache = new SourceUrlResolutionCache(Duration.ofDays(1), Duration.ofDays(1));
+        readCache.read(cachePath);
+        assertEquals(Optional.of(sourceUrlTrsInfo), readCache.getTrsInfo(SOURCE_URL));
+        assertEquals(Optional.of("Could not find workflow"), readCache.getSkipReason(SKIPPED_SOURCE_URL));
+        // Transient skip reasons and primary descriptor paths that weren't found aren't written
+        assertTrue(readCache.getSkipReason(TRANSIENT_SKIPPED_SOURCE_URL).isEmpty());
+        MinimalWorkflowInfo workflow = readCache.getWorkflows("github.com/org/repo").orElseThrow().get(0);
+        assertEquals(DescriptorTypeEnum.WDL, workflow.descriptorType());
+        assertEquals(Map.of("v1.0", "/main.wdl"), workflow.versionToPrimaryDescriptorPathMap());
+
+        // Expired negative entries are dropped
+        SourceUrlResolutionCache expiredCache = new SourceUrlResolutionCache(Duration.ofDays(1), Duration.ofMillis(-1));
+        expiredCache.read(cachePath);
+        assertTrue(expiredCache.getTrsInfo(SOURCE_URL).isPresent());
+        assertTrue(expiredCache.getSkipReason(SKIPPED_SOURCE_URL).isEmpty());
+    }
+
+    @Test
+    void testReadMissingFile() throws IOException {
+        SourceUrlResolutionCache cache = new SourceUrlResolutionCache(Duration.ofDays(1), Duration.ofDays(1));
+        cache.read(cacheDirectory.resolve("missing.json"));
+        assertTrue(cache.getTrsInfo(SOURCE_URL).isEmpty());
+    }
+}
@@ -0,0 +1,131 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dockstore.metricsaggregator.client.cli.StreamingExecutionMetricsApi.ExecutionsRequestBodyOutput;
+import io.dockstore.openapi.client.ApiException;
+import io.dockstore.openapi.client.Configuration;
+import io.dockstore.openapi.client.model.ExecutionsRequestBody;
+import io.dockstore.openapi.client.model.RunExecution;
+import io.dockstore.openapi.client.model.RunExecution.ExecutionStatusEnum;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
+import org.glassfish.jersey.client.ClientProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StreamingExecutionMetricsApiTest {
+    private static final Gson GSON = new Gson();
+    private static final List<RunExecution> EXECUTIONS = List.of(
+            new RunExecution().executionId("1").executionStatus(ExecutionStatusEnum.SUCCESSFUL).dateExecuted("2022-07-15T15:37:06.123456Z"),
+            new RunExecution().executionId("2").executionStatus(ExecutionStatusEnum.FAILED).dateExecuted("2022-07-15T15:38:06Z"));
+    private static final String TRS_ID = "#workflow/github.com/org/repo";
+
+    private final Queue<ReceivedRequest> receivedRequests = new ConcurrentLinkedQueue<>();
+    private HttpServer server;
+    private String serverUrl;
+    private int responseStatus = 204;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handleRequest);
+        server.start();
+        serverUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testWrite() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ExecutionsRequestBodyOutput(EXECUTIONS, false).write(outputStream);
+        ExecutionsRequestBody requestBody = GSON.fromJson(outputStream.toString(StandardCharsets.UTF_8), ExecutionsRequestBody.class);
+        assertEquals(EXECUTIONS, requestBody.getRunExecutions());
+    }
+
+    @Test
+    void testGetSerializedSize() {
+        // Characters that are encoded in 1, 2, 3 and 4 bytes
+        for (String executionId: List.of("1", "\u00e9", "\u20ac", "\ud83d\ude00", "caf\u00e9 \u20ac \ud83d\ude00")) {
+            RunExecution execution = new RunExecution().executionId(executionId).executionStatus(ExecutionStatusEnum.SUCCESSFUL);
+            assertEquals(GSON.toJson(execution).getBytes(StandardCharsets.UTF_8).length, StreamingExecutionMetricsApi.getSerializedSize(execution));
+        }
+    }
+
+    @Test
+    void testWriteGzip() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ExecutionsRequestBodyOutput(EXECUTIONS, true).write(outputStream);
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ExecutionsRequestBody requestBody = GSON.fromJson(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8), ExecutionsRequestBody.class);
+            assertEquals(EXECUTIONS, requestBody.getRunExecutions());
+        }
+    }
+
+    @Test
+    void testExecutionMetricsPost() throws Exception {
+        new StreamingExecutionMetricsApi(serverUrl, "token", false).executionMetricsPost(EXECUTIONS, "TERRA", TRS_ID, "v1", "description");
+
+        ReceivedRequest request = receivedRequests.remove();
+        assertEquals("POST", request.method());
+        assertEquals("/ga4gh/trs/v2/extended/%23workflow%2Fgithub.com%2Forg%2Frepo/versions/v1/executions", request.rawPath());
+        assertEquals("platform=TERRA&description=description", request.rawQuery());
+        assertEquals("Bearer token", request.authorization());
+        // The body was streamed instead of buffered to compute its length
+        assertEquals("chunked", request.transferEncoding());
+        assertNull(request.contentEncoding());
+        assertEquals(EXECUTIONS, GSON.fromJson(new String(request.body(), StandardCharsets.UTF_8), ExecutionsRequestBody.class).getRunExecutions());
+
+        // The default API client, which the other APIs use, still computes the length of request bodies
+        assertNull(Configuration.getDefaultApiClient().getHttpClient().getConfiguration().getProperty(ClientProperties.REQUEST_ENTITY_PROCESSING));
+    }
+
+    @Test
+    void testExecutionMetricsPostGzip() throws Exception {
+        new StreamingExecutionMetricsApi(serverUrl, "token", true).executionMetricsPost(EXECUTIONS, "TERRA", TRS_ID, "v1", "description");
+
+        ReceivedRequest request = receivedRequests.remove();
+        assertEquals("gzip", request.contentEncoding());
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(request.body()))) {
+            ExecutionsRequestBody requestBody = GSON.fromJson(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8), ExecutionsRequestBody.class);
+            assertEquals(EXECUTIONS, requestBody.getRunExecutions());
+        }
+    }
+
+    @Test
+    void testExecutionMetricsPostFailure() {
+        responseStatus = 413;
+        StreamingExecutionMetricsApi executionMetricsApi = new StreamingExecutionMetricsApi(serverUrl, "token", false);
+        ApiException exception = assertThrows(ApiException.class, () -> executionMetricsApi.executionMetricsPost(EXECUTIONS, "TERRA", TRS_ID, "v1", "description"));
+        assertEquals(413, exception.getCode());
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        receivedRequests.add(new ReceivedRequest(exchange.getRequestMethod(), exchange.getRequestURI().getRawPath(), exchange.getRequestURI().getRawQuery(),
+                exchange.getRequestHeaders().getFirst("Authorization"), exchange.getRequestHeaders().getFirst("Transfer-Encoding"),
+                exchange.getRequestHeaders().getFirst("Content-Encoding"), exchange.getRequestBody().readAllBytes()));
+        exchange.sendResponseHeaders(responseStatus, -1);
+        exchange.close();
+    }
+
+    private record ReceivedRequest(String method, String rawPath, String rawQuery, String authorization, String transferEncoding, String contentEncoding, byte[] body) {
+    }
+}
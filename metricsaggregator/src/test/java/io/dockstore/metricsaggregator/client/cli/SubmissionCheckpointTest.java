@@ -0,0 +1,76 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SubmissionCheckpointTest {
+    private static final String DATA_FILE_PATH = "terra-metrics.csv";
+
+    @TempDir
+    Path checkpointDirectory;
+
+    @Test
+    void testCompleteOutOfOrder() {
+        SubmissionCheckpoint checkpoint = new SubmissionCheckpoint(DATA_FILE_PATH);
+        checkpoint.startBatch(1, 3);
+        checkpoint.startBatch(4, 5);
+        checkpoint.complete(4, true);
+        checkpoint.complete(5, false);
+        // The second batch is complete, but the first batch isn't
+        assertEquals(0, checkpoint.getLastCompletedRecordNumber());
+        checkpoint.complete(2, true);
+        checkpoint.complete(1, true);
+        checkpoint.complete(3, false);
+        assertEquals(5, checkpoint.getLastCompletedRecordNumber());
+        // Completing a record again is ignored
+        checkpoint.complete(3, true);
+        assertEquals(5, checkpoint.getLastCompletedRecordNumber());
+    }
+
+    @Test
+    void testWriteAndResume() throws IOException {
+        SubmissionCheckpoint checkpoint = new SubmissionCheckpoint(DATA_FILE_PATH);
+        checkpoint.startBatch(1, 2);
+        checkpoint.startBatch(3, 5);
+        checkpoint.complete(1, true);
+        checkpoint.complete(2, false);
+        checkpoint.complete(4, true);
+        Path checkpointPath = checkpointDirectory.resolve("checkpoint.json");
+        checkpoint.write(checkpointPath);
+
+        SubmissionCheckpoint resumedCheckpoint = SubmissionCheckpoint.read(checkpointPath, DATA_FILE_PATH);
+        assertEquals(2, resumedCheckpoint.getLastCompletedRecordNumber());
+        assertEquals(2, resumedCheckpoint.getResumedNumberOfExecutionsSubmitted());
+        assertEquals(1, resumedCheckpoint.getResumedNumberOfExecutionsSkipped());
+        assertTrue(resumedCheckpoint.isResumedRecordCompleted(1));
+        assertTrue(resumedCheckpoint.isResumedRecordCompleted(4));
+        assertFalse(resumedCheckpoint.isResumedRecordCompleted(3));
+        assertFalse(resumedCheckpoint.isResumedRecordCompleted(5));
+        assertFalse(resumedCheckpoint.isResumedRecordCompleted(6));
+
+        // Only the records that weren't completed before need to be completed
+        resumedCheckpoint.startBatch(1, 2);
+        resumedCheckpoint.startBatch(3, 5);
+        resumedCheckpoint.complete(3, true);
+        resumedCheckpoint.complete(5, false);
+        assertEquals(5, resumedCheckpoint.getLastCompletedRecordNumber());
+        resumedCheckpoint.write(checkpointPath);
+        SubmissionCheckpoint completedCheckpoint = SubmissionCheckpoint.read(checkpointPath, DATA_FILE_PATH);
+        assertEquals(3, completedCheckpoint.getResumedNumberOfExecutionsSubmitted());
+        assertEquals(2, completedCheckpoint.getResumedNumberOfExecutionsSkipped());
+    }
+
+    @Test
+    void testReadCheckpointForDifferentDataFile() throws IOException {
+        Path checkpointPath = checkpointDirectory.resolve("checkpoint.json");
+        new SubmissionCheckpoint(DATA_FILE_PATH).write(checkpointPath);
+        assertThrows(IOException.class, () -> SubmissionCheckpoint.read(checkpointPath, "other-terra-metrics.csv"));
+    }
+}
@@ -0,0 +1,56 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SubmittedExecutionIdsTest {
+    private static final String TRS_ID = "#workflow/github.com/org/repo";
+
+    @TempDir
+    Path idsDirectory;
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        final Path idsPath = idsDirectory.resolve("submitted-execution-ids");
+        SubmittedExecutionIds submittedExecutionIds = SubmittedExecutionIds.readOrCreate(idsPath, 1000);
+        assertEquals(0, submittedExecutionIds.getApproximateNumberOfIds());
+        submittedExecutionIds.put(TRS_ID, "v1.0", "execution-1");
+        assertTrue(submittedExecutionIds.mightContain(TRS_ID, "v1.0", "execution-1"));
+        // The same execution ID can be submitted for another version
+        assertFalse(submittedExecutionIds.mightContain(TRS_ID, "v2.0", "execution-1"));
+        assertFalse(submittedExecutionIds.mightContain(TRS_ID, "v1.0", "execution-2"));
+
+        submittedExecutionIds.write(idsPath);
+        SubmittedExecutionIds readSubmittedExecutionIds = SubmittedExecutionIds.readOrCreate(idsPath, 1000);
+        assertEquals(1, readSubmittedExecutionIds.getApproximateNumberOfIds());
+        assertTrue(readSubmittedExecutionIds.mightContain(TRS_ID, "v1.0", "execution-1"));
+        assertFalse(readSubmittedExecutionIds.mightContain(TRS_ID, "v1.0", "execution-2"));
+    }
+
+    @Test
+    void testFiltersAreAddedWhenFull() throws IOException {
+        final Path idsPath = idsDirectory.resolve("submitted-execution-ids");
+        SubmittedExecutionIds submittedExecutionIds = SubmittedExecutionIds.create(10);
+        final int numberOfIds = 1000;
+        for (int i = 0; i < numberOfIds; i++) {
+            submittedExecutionIds.put(TRS_ID, "v1.0", "execution-" + i);
+        }
+        // Filters for 10, 20, 40, ... IDs were added instead of overfilling the first one, so the false positive probability stays low
+        assertTrue(submittedExecutionIds.getNumberOfFilters() > 1);
+        assertTrue(submittedExecutionIds.getFalsePositiveProbability() <= 1e-6);
+        assertFalse(submittedExecutionIds.mightContain(TRS_ID, "v1.0", "execution-" + numberOfIds));
+
+        submittedExecutionIds.write(idsPath);
+        SubmittedExecutionIds readSubmittedExecutionIds = SubmittedExecutionIds.readOrCreate(idsPath, 10);
+        assertEquals(submittedExecutionIds.getNumberOfFilters(), readSubmittedExecutionIds.getNumberOfFilters());
+        for (int i = 0; i < numberOfIds; i++) {
+            assertTrue(readSubmittedExecutionIds.mightContain(TRS_ID, "v1.0", "execution-" + i));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TerraMetricsInputsTest {
+    private static final String CSV_CONTENTS = "workflow_id,status,workflow_start,workflow_end,workflow_runtime_minutes,source_url\n";
+
+    @TempDir
+    Path inputDirectory;
+
+    @Test
+    void testGetLocations() throws IOException {
+        // The S3 client isn't used for local files
+        TerraMetricsInputs terraMetricsInputs = new TerraMetricsInputs(() -> {
+            throw new IllegalStateException();
+        });
+        final Path firstFile = Files.writeString(inputDirectory.resolve("export-1.csv"), CSV_CONTENTS);
+        final Path secondFile = Files.writeString(inputDirectory.resolve("export-2.csv"), CSV_CONTENTS);
+        Files.writeString(inputDirectory.resolve("other.csv"), CSV_CONTENTS);
+
+        assertEquals(List.of(firstFile.toString()), terraMetricsInputs.getLocations(firstFile.toString()));
+        assertEquals(List.of(firstFile.toString(), secondFile.toString()), terraMetricsInputs.getLocations(inputDirectory.resolve("export-*.csv").toString()));
+
+        final Path manifest = Files.writeString(inputDirectory.resolve("manifest.txt"), "# Terra exports\n" + secondFile + "\n\n" + firstFile + "\n");
+        assertEquals(List.of(secondFile.toString(), firstFile.toString()), terraMetricsInputs.getLocations("@" + manifest));
+
+        assertThrows(IOException.class, () -> terraMetricsInputs.getLocations(inputDirectory.resolve("missing-*.csv").toString()));
+    }
+
+    @Test
+    void testOpenGzip() throws IOException {
+        final Path gzipFile = inputDirectory.resolve("export.csv.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+            outputStream.write(CSV_CONTENTS.getBytes(StandardCharsets.UTF_8));
+        }
+        try (BufferedReader reader = new TerraMetricsInputs().open(gzipFile.toString())) {
+            assertEquals(CSV_CONTENTS.trim(), reader.readLine());
+        }
+        assertThrows(IOException.class, () -> new TerraMetricsInputs().open(inputDirectory.resolve("export.csv.zst").toString()));
+    }
+
+    @Test
+    void testGetFileName() {
+        assertEquals("export.csv.gz", TerraMetricsInputs.getFileName("s3://bucket/terra/export.csv.gz"));
+        assertEquals("export.csv", TerraMetricsInputs.getFileName("export.csv"));
+    }
+}
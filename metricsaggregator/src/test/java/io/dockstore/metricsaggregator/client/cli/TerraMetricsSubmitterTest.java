@@ -1,17 +1,50 @@
 package io.dockstore.metricsaggregator.client.cli;
 
+import static io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.fetchPublishedWorkflows;
 import static io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.formatStringInIso8601Date;
+import static io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.formatStringInIso8601DateWithFormatter;
 import static io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.getExecutionTime;
 import static io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.getSourceUrlComponents;
+import static io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.getWorkflowPathPrefix;
 import static io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.makePathAbsolute;
+import static io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.partitionBySerializedSize;
+import static io.dockstore.utils.DockstoreApiClientUtils.setupApiClient;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitTerraMetrics;
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.MinimalWorkflowInfo;
+import io.dockstore.metricsaggregator.client.cli.TerraMetricsSubmitter.SourceUrlTrsInfo;
+import io.dockstore.metricsaggregator.common.TestUtilities;
+import io.dockstore.openapi.client.api.WorkflowsApi;
+import io.dockstore.openapi.client.model.RunExecution;
 import io.dockstore.openapi.client.model.RunExecution.ExecutionStatusEnum;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.junit.jupiter.api.Test;
 
 class TerraMetricsSubmitterTest {
+    // The workflows listed by path don't include their versions, like the webservice
+    private static final String WORKFLOWS_BY_PATH_JSON = """
+            [{"id": 1, "fullWorkflowPath": "github.com/org/repo/main", "descriptorType": "WDL", "workflowVersions": []},
+             {"id": 2, "fullWorkflowPath": "github.com/org/repo/other", "descriptorType": "WDL", "workflowVersions": []}]""";
+    private static final String WORKFLOW_1_WITH_VERSIONS_JSON = """
+            {"id": 1, "fullWorkflowPath": "github.com/org/repo/main", "descriptorType": "WDL",
+             "workflowVersions": [{"name": "v1", "workflowPath": "/main.wdl"}, {"name": "v2", "workflowPath": "workflows/main.wdl"}]}""";
+    private static final String WORKFLOW_2_WITH_VERSIONS_JSON = """
+            {"id": 2, "fullWorkflowPath": "github.com/org/repo/other", "descriptorType": "WDL",
+             "workflowVersions": [{"name": "v1", "workflowPath": "/other.wdl"}]}""";
 
     @Test
     void testFormatStringInIso8601Date() {
@@ -21,6 +54,44 @@ class TerraMetricsSubmitterTest {
         assertEquals("2022-09-06T13:46:53Z", formatStringInIso8601Date("2022-09-06 13:46:53").get());
         assertEquals("2022-05-25T13:13:08.510Z", formatStringInIso8601Date("2022-05-25 13:13:08.51 UTC").get());
         assertEquals("2022-12-01T01:52:05.700Z", formatStringInIso8601Date("2022-12-01 01:52:05.7 UTC").get());
+        assertEquals("2022-12-01T01:52:05Z", formatStringInIso8601Date("2022-12-01 01:52:05.000 UTC").get());
+        assertEquals("2024-02-29T01:52:05.000100Z", formatStringInIso8601Date("2024-02-29 01:52:05.0001").get());
+        // Only microseconds are kept
+        assertEquals("2022-12-01T01:52:05.123456Z", formatStringInIso8601Date("2022-12-01 01:52:05.123456789 UTC").get());
+        // Time zones other than UTC, and dates that need to be resolved
+        assertEquals("2022-12-01T01:52:05.450Z", formatStringInIso8601Date("2022-12-01 01:52:05.45 America/Toronto").get());
+        assertEquals("2023-02-28T01:52:05Z", formatStringInIso8601Date("2023-02-29 01:52:05").get());
+        assertTrue(formatStringInIso8601Date("2022-13-01 01:52:05").isEmpty());
+        assertTrue(formatStringInIso8601Date("2022-12-01T01:52:05Z").isEmpty());
+    }
+
+    @Test
+    void testFormatStringInIso8601DateMatchesFormatter() {
+        // Values that the common layout is checked for, and values that are left to the formatter
+        List<String> workflowStarts = new ArrayList<>(List.of("2023-02-29 01:52:05", "2023-04-31 01:52:05", "2022-12-01 24:00:00", "2022-12-01 23:59:60",
+                "0000-01-01 00:00:00", "2022-12-01 01:52:05.", "2022-12-01 01:52:05.1234567890", "2022-12-01 01:52:05 utc", "2022-12-01 01:52:05 +05:00",
+                "2022-12-01 01:52:05 GMT", "2022-12-01 01:52:05UTC", "2022-12-01 01:52:05 UTC ", "2022-12-01 1:52:05", "2022-12-01 01:52:05.-1",
+                "9999-12-31 23:59:59.999999999 UTC", "", "2022-12-01"));
+        // Every fraction width, with and without UTC, including fields that are out of range
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            StringBuilder workflowStart = new StringBuilder(String.format("%04d-%02d-%02d %02d:%02d:%02d", random.nextInt(3000), random.nextInt(14),
+                    random.nextInt(33), random.nextInt(26), random.nextInt(62), random.nextInt(62)));
+            final int fractionWidth = random.nextInt(11);
+            if (fractionWidth > 0 || random.nextBoolean()) {
+                workflowStart.append('.');
+            }
+            for (int digit = 0; digit < fractionWidth; digit++) {
+                workflowStart.append(random.nextInt(10));
+            }
+            if (random.nextBoolean()) {
+                workflowStart.append(" UTC");
+            }
+            workflowStarts.add(workflowStart.toString());
+        }
+        for (String workflowStart : workflowStarts) {
+            assertEquals(formatStringInIso8601DateWithFormatter(workflowStart), formatStringInIso8601Date(workflowStart), workflowStart);
+        }
     }
 
     @Test
@@ -49,9 +120,82 @@ class TerraMetricsSubmitterTest {
         assertEquals(List.of(), getSourceUrlComponents("https://nottherawgithuburlprefix/theiagen/public_health_viral_genomics/v2.0.0//workflows/wf_theiacov_fasta.wdl"));
     }
 
+    @Test
+    void testGetWorkflowPathPrefix() {
+        assertEquals(Optional.of("github.com/theiagen/public_health_viral_genomics"), getWorkflowPathPrefix(getSourceUrlComponents("https://raw.githubusercontent.com/theiagen/public_health_viral_genomics/v2.0.0/workflows/wf_theiacov_fasta.wdl")));
+        assertTrue(getWorkflowPathPrefix(getSourceUrlComponents("https://raw.githubusercontent.com/theiagen/public_health_viral_genomics")).isEmpty());
+    }
+
+    @Test
+    void testPartitionBySerializedSize() {
+        RunExecution execution = new RunExecution().executionId("1").executionStatus(ExecutionStatusEnum.SUCCESSFUL).dateExecuted("2022-07-15T15:37:06.123456Z");
+        long executionBytes = TerraMetricsSubmitter.getSerializedSize(execution);
+        assertEquals(new Gson().toJson(execution).getBytes(StandardCharsets.UTF_8).length + 1, executionBytes);
+
+        // Each partition has as many executions as fit in the maximum request size
+        final long overheadBytes = 256;
+        List<RunExecution> executions = List.of(execution, execution, execution, execution, execution);
+        assertEquals(List.of(5), partitionBySerializedSize(executions, overheadBytes + 5 * executionBytes, TerraMetricsSubmitter::getSerializedSize).stream().map(List::size).toList());
+        assertEquals(List.of(2, 2, 1), partitionBySerializedSize(executions, overheadBytes + 2 * executionBytes, TerraMetricsSubmitter::getSerializedSize).stream().map(List::size).toList());
+        // An execution that is too large on its own is in a partition by itself
+        assertEquals(List.of(1, 1, 1, 1, 1), partitionBySerializedSize(executions, 1, TerraMetricsSubmitter::getSerializedSize).stream().map(List::size).toList());
+        assertTrue(partitionBySerializedSize(List.<RunExecution>of(), 1, TerraMetricsSubmitter::getSerializedSize).isEmpty());
+    }
+
     @Test
     void testMakePathAbsolute() {
         assertEquals("/foo.wdl", makePathAbsolute("foo.wdl"));
         assertEquals("/foo.wdl", makePathAbsolute("/foo.wdl"));
     }
+
+    @Test
+    void testPublishedWorkflowIndex() throws Exception {
+        // A stand-in for the webservice that only returns the versions of a workflow when they're included
+        List<String> requests = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final String request = exchange.getRequestURI().getPath() + (exchange.getRequestURI().getQuery() == null ? "" : "?" + exchange.getRequestURI().getQuery());
+            requests.add(request);
+            final boolean includeVersions = request.contains("include=versions");
+            switch (exchange.getRequestURI().getPath()) {
+            case "/workflows/path/entry/github.com/org/repo/published" -> respond(exchange, 200, WORKFLOWS_BY_PATH_JSON);
+            case "/workflows/published/1" -> respond(exchange, 200, includeVersions ? WORKFLOW_1_WITH_VERSIONS_JSON : "{\"id\": 1, \"workflowVersions\": []}");
+            case "/workflows/published/2" -> respond(exchange, 200, includeVersions ? WORKFLOW_2_WITH_VERSIONS_JSON : "{\"id\": 2, \"workflowVersions\": []}");
+            default -> respond(exchange, 404, "{}");
+            }
+        });
+        server.start();
+        try {
+            WorkflowsApi workflowsApi = new WorkflowsApi(setupApiClient("http://localhost:" + server.getAddress().getPort(), null));
+
+            // The index has the primary descriptor path of every version
+            List<MinimalWorkflowInfo> workflows = fetchPublishedWorkflows("github.com/org/repo", workflowsApi);
+            assertEquals(2, workflows.size());
+            assertEquals(Map.of("v1", "/main.wdl", "v2", "/workflows/main.wdl"), workflows.get(0).versionToPrimaryDescriptorPathMap());
+            assertEquals(Map.of("v1", "/other.wdl"), workflows.get(1).versionToPrimaryDescriptorPathMap());
+            assertTrue(requests.contains("/workflows/published/1?include=versions"), requests.toString());
+
+            // Source URLs are resolved from the index, without requesting the primary descriptor of each version
+            requests.clear();
+            TerraMetricsSubmitter submitter = new TerraMetricsSubmitter(TestUtilities.getMetricsConfig(), new SubmitTerraMetrics());
+            try (SkippedExecutionsLog skippedExecutionsLog = new SkippedExecutionsLog(null)) {
+                Optional<SourceUrlTrsInfo> trsInfo = submitter.calculateTrsInfoFromSourceUrl(List.of(), "https://raw.githubusercontent.com/org/repo/v2/workflows/main.wdl",
+                        workflowsApi, skippedExecutionsLog);
+                assertEquals(Optional.of(new SourceUrlTrsInfo("https://raw.githubusercontent.com/org/repo/v2/workflows/main.wdl", "#workflow/github.com/org/repo/main", "v2")),
+                        trsInfo);
+            }
+            assertTrue(requests.stream().noneMatch(request -> request.contains("primaryDescriptor")), requests.toString());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
 }
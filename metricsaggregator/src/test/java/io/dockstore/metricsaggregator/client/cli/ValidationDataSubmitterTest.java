@@ -0,0 +1,156 @@
+package io.dockstore.metricsaggregator.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.beust.jcommander.JCommander;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dockstore.metricsaggregator.client.cli.CommandLineArgs.SubmitValidationData;
+import io.dockstore.metricsaggregator.common.TestUtilities;
+import io.dockstore.openapi.client.ApiClient;
+import io.dockstore.openapi.client.api.ExtendedGa4GhApi;
+import io.dockstore.openapi.client.model.ValidationExecution;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ValidationDataSubmitterTest {
+    private static final String TRS_ID = "#workflow/github.com/org/repo";
+    // The stand-in for the webservice closes the connection instead of responding
+    private static final int CLOSE_CONNECTION = 0;
+    // The stand-in for the webservice rejects a request with 400 if it contains an execution with this date
+    private static final String INVALID_DATE = "invalid-date";
+
+    // The statuses that the stand-in for the webservice responds with to the next requests for each version, after which it responds with 204
+    private final Map<String, Queue<Integer>> versionToStatuses = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> versionToNumberOfRequests = new ConcurrentHashMap<>();
+    private HttpServer server;
+
+    @TempDir
+    Path dataDirectory;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handleRequest);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testSubmitValidationData() throws IOException {
+        respondWith("succeeded");
+        // Connection failures and unavailable servers are retried
+        respondWith("retried", CLOSE_CONNECTION, 502, 503, 504);
+        // Other errors aren't retried
+        respondWith("not-found", 404);
+        respondWith("too-many-requests", 429);
+        respondWith("server-error", 500);
+        // Requests are retried at most 4 times
+        respondWith("unavailable", 503, 503, 503, 503, 503);
+
+        final List<String> versions = List.copyOf(versionToStatuses.keySet());
+        StringBuilder data = new StringBuilder("trsId,versionName,isValid,dateExecuted\n");
+        versions.forEach(version -> data.append(TRS_ID).append(',').append(version).append(",true,2023-01-01T00:00:00Z\n"));
+        ValidationDataSubmitter validationDataSubmitter = submitValidationData(data.toString());
+
+        assertEquals(2, validationDataSubmitter.getNumberOfExecutionsSubmitted());
+        assertEquals(4, validationDataSubmitter.getNumberOfExecutionsFailed());
+        assertEquals(Map.of("succeeded", 1, "retried", 5, "not-found", 1, "too-many-requests", 1, "server-error", 1, "unavailable", 4),
+                versions.stream().collect(Collectors.toMap(version -> version, version -> versionToNumberOfRequests.get(version).get())));
+    }
+
+    @Test
+    void testOnlyTheRejectedExecutionsOfABatchFail() throws IOException {
+        respondWith("batch");
+        StringBuilder data = new StringBuilder("trsId,versionName,isValid,dateExecuted\n");
+        for (int i = 0; i < 8; i++) {
+            data.append(TRS_ID).append(",batch,true,").append(i == 5 ? INVALID_DATE : "2023-01-01T00:00:00Z").append('\n');
+        }
+        ValidationDataSubmitter validationDataSubmitter = submitValidationData(data.toString());
+
+        // The rejected batch of 8 is split into halves of 4, then 2, then 1, until only the invalid execution fails
+        assertEquals(7, validationDataSubmitter.getNumberOfExecutionsSubmitted());
+        assertEquals(1, validationDataSubmitter.getNumberOfExecutionsFailed());
+        assertEquals(7, versionToNumberOfRequests.get("batch").get());
+    }
+
+    @Test
+    void testPartition() {
+        List<ValidationExecution> executions = createExecutions(5, null);
+        assertEquals(List.of(2, 2, 1), getPartitionSizes(ValidationDataSubmitter.partition(executions, 2)));
+        assertEquals(List.of(5), getPartitionSizes(ValidationDataSubmitter.partition(executions, 10)));
+        assertEquals(List.of(), ValidationDataSubmitter.partition(List.of(), 10));
+
+        // An execution ID isn't repeated in a request
+        List<ValidationExecution> executionsWithSameId = createExecutions(3, "foobar");
+        assertEquals(List.of(1, 1, 1), getPartitionSizes(ValidationDataSubmitter.partition(executionsWithSameId, 10)));
+    }
+
+    private ValidationDataSubmitter submitValidationData(String data) throws IOException {
+        final Path dataFile = Files.writeString(dataDirectory.resolve("validation-data.csv"), data);
+        SubmitValidationData submitValidationDataCommand = new SubmitValidationData();
+        JCommander.newBuilder().addObject(submitValidationDataCommand).build()
+                .parse("--validator", "MINIWDL", "--validatorVersion", "1.0", "--platform", "TERRA", "--data", dataFile.toString());
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath("http://localhost:" + server.getAddress().getPort());
+        ValidationDataSubmitter validationDataSubmitter = new ValidationDataSubmitter(TestUtilities.getMetricsConfig(), submitValidationDataCommand, Duration.ofMillis(1));
+        validationDataSubmitter.submitValidationData(new ExtendedGa4GhApi(apiClient));
+        return validationDataSubmitter;
+    }
+
+    private static List<ValidationExecution> createExecutions(int numberOfExecutions, String executionId) {
+        return IntStream.range(0, numberOfExecutions).mapToObj(i -> {
+            ValidationExecution execution = new ValidationExecution().isValid(true);
+            execution.setExecutionId(executionId);
+            return execution;
+        }).toList();
+    }
+
+    private static List<Integer> getPartitionSizes(List<List<ValidationExecution>> partitions) {
+        return partitions.stream().map(List::size).toList();
+    }
+
+    private void respondWith(String version, Integer... statuses) {
+        versionToStatuses.put(version, new ConcurrentLinkedQueue<>(List.of(statuses)));
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        // The path ends with /versions/{version_id}/executions
+        final String[] pathComponents = exchange.getRequestURI().getPath().split("/");
+        final String version = pathComponents[pathComponents.length - 2];
+        versionToNumberOfRequests.computeIfAbsent(version, key -> new AtomicInteger(0)).incrementAndGet();
+        final String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        if (body.contains(INVALID_DATE)) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        final Integer status = versionToStatuses.get(version).poll();
+        if (status != null && status == CLOSE_CONNECTION) {
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status == null ? 204 : status, -1);
+        exchange.close();
+    }
+}
@@ -0,0 +1,79 @@
+package io.dockstore.metricsaggregator.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.AthenaTablePartition;
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.QueryResultRow;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class DailyRollupTableTest {
+    private static final String TABLE_NAME = "local_dockstore_metrics_data_table";
+    private static final String ROLLUP_TABLE_NAME = "local_dockstore_metrics_data_daily_rollup_table";
+    private static final String EXECUTION_IDS_TABLE_NAME = ROLLUP_TABLE_NAME + "_execution_ids";
+    private static final Instant NOW = Instant.parse("2026-03-10T12:00:00Z");
+    private static final AthenaTablePartition VERSION = new AthenaTablePartition(Set.of("workflow"), Set.of("github.com"), Set.of("org"), Set.of("repo"), Set.of("v1"));
+
+    @Test
+    void testVersionWithoutExecutionsIsOnlyRolledUpOnce() throws Exception {
+        // The first run finds no rolled up days, and the rollup of the version produces no rows
+        RecordingAthenaClient firstRunClient = new RecordingAthenaClient(query -> List.of());
+        new DailyRollupTable(firstRunClient, ROLLUP_TABLE_NAME, "s3://bucket/rollup/", NOW).materialize(VERSION, new ExecutionStatusAthenaAggregator(firstRunClient, TABLE_NAME));
+        List<String> versionInserts = firstRunClient.getQueriesStartingWith("insert into " + EXECUTION_IDS_TABLE_NAME + " values");
+        assertEquals(1, versionInserts.size());
+        assertTrue(versionInserts.get(0).contains("'2026-03-09'"), versionInserts.get(0));
+        assertTrue(versionInserts.get(0).contains("'v1'"), versionInserts.get(0));
+
+        // The next run finds the day that the version was rolled up through in the execution IDs table, so it doesn't roll up the version again
+        RecordingAthenaClient nextRunClient = new RecordingAthenaClient(query -> query.contains(EXECUTION_IDS_TABLE_NAME) ? List.of(createRolledUpThroughRow("2026-03-09")) : List.of());
+        new DailyRollupTable(nextRunClient, ROLLUP_TABLE_NAME, "s3://bucket/rollup/", NOW.plusSeconds(60)).materialize(VERSION, new ExecutionStatusAthenaAggregator(nextRunClient, TABLE_NAME));
+        assertEquals(1, nextRunClient.getQueries().size());
+        assertEquals(List.of(), nextRunClient.getQueriesStartingWith("insert"));
+    }
+
+    @Test
+    void testRolledUpExecutionIdsAreSkipped() throws Exception {
+        RecordingAthenaClient client = new RecordingAthenaClient(query -> query.contains(EXECUTION_IDS_TABLE_NAME) ? List.of(createRolledUpThroughRow("2026-03-08")) : List.of());
+        final ExecutionStatusAthenaAggregator aggregator = new ExecutionStatusAthenaAggregator(client, TABLE_NAME);
+        DailyRollupTable dailyRollupTable = new DailyRollupTable(client, ROLLUP_TABLE_NAME, "s3://bucket/rollup/", NOW);
+        dailyRollupTable.materialize(VERSION, aggregator);
+
+        // The rollup of the new day skips the executions whose IDs were rolled up on earlier days, then the IDs of the new day are recorded
+        List<String> inserts = client.getQueriesStartingWith("insert");
+        assertEquals(3, inserts.size());
+        assertTrue(inserts.get(0).startsWith("INSERT INTO " + ROLLUP_TABLE_NAME + " select"), inserts.get(0));
+        assertSkipsRolledUpExecutionIds(inserts.get(0));
+        assertTrue(inserts.get(1).startsWith("INSERT INTO " + EXECUTION_IDS_TABLE_NAME + " select"), inserts.get(1));
+        assertSkipsRolledUpExecutionIds(inserts.get(1));
+
+        // The raw executions of the current day are also skipped if their IDs were rolled up
+        assertSkipsRolledUpExecutionIds(dailyRollupTable.createRollupSourceQuery(VERSION, aggregator).getSQL());
+    }
+
+    @Test
+    void testExecutionIdsTableIsCreatedNextToRollupTable() throws Exception {
+        RecordingAthenaClient client = new RecordingAthenaClient(query -> List.of());
+        new DailyRollupTable(client, ROLLUP_TABLE_NAME, "s3://bucket/rollup/", NOW).createTable();
+        List<String> creates = client.getQueriesStartingWith("create external table if not exists " + EXECUTION_IDS_TABLE_NAME);
+        assertEquals(1, creates.size());
+        assertTrue(creates.get(0).contains("LOCATION \"s3://bucket/rollup_execution_ids/\""), creates.get(0));
+    }
+
+    private static void assertSkipsRolledUpExecutionIds(String query) {
+        final String normalizedQuery = query.replaceAll("\\s+", " ");
+        assertTrue(normalizedQuery.contains("not exists ("), query);
+        assertTrue(normalizedQuery.contains("from " + EXECUTION_IDS_TABLE_NAME + " as"), query);
+        assertTrue(normalizedQuery.contains("rolledupexecution.version = " + TABLE_NAME + ".version"), query);
+        assertTrue(normalizedQuery.contains("rolledupexecution.platform = " + TABLE_NAME + ".platform"), query);
+        assertTrue(normalizedQuery.contains("rolledupexecution.executionid = unnestedexecution.executionid"), query);
+    }
+
+    private static QueryResultRow createRolledUpThroughRow(String rolledUpThrough) {
+        return new QueryResultRow(Map.of("entity", 0, "registry", 1, "org", 2, "name", 3, "version", 4, "rolledupthrough", 5),
+                List.of("workflow", "github.com", "org", "repo", "v1", rolledUpThrough));
+    }
+}
@@ -0,0 +1,61 @@
+package io.dockstore.metricsaggregator.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.AthenaTablePartition;
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient.QueryResultRow;
+import io.dockstore.openapi.client.model.ExecutionStatusMetric;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class ExecutionStatusAthenaAggregatorTest {
+    private static final String TABLE_NAME = "local_dockstore_metrics_data_table";
+    private static final AthenaTablePartition VERSION = new AthenaTablePartition(Set.of("workflow"), Set.of("github.com"), Set.of("org"), Set.of("repo"), Set.of("v1"));
+
+    @Test
+    void testStatusCountsQueryOnlySelectsStatuses() {
+        ExecutionStatusAthenaAggregator aggregator = new ExecutionStatusAthenaAggregator(new RecordingAthenaClient(query -> List.of()), TABLE_NAME);
+        final String query = aggregator.createStatusCountsQuery(VERSION).replaceAll("\\s+", " ");
+        // The executions are de-duplicated, for both the run executions and the executions created from tasks
+        assertTrue(query.contains("unnest(runexecutions)"), query);
+        assertTrue(query.contains("unnest(taskexecutions)"), query);
+        assertTrue(query.contains("row_number() over"), query);
+        assertTrue(query.contains("unnestedexecution.executionstatus"), query);
+        // Every execution is read, not a sample
+        assertFalse(query.contains("tablesample"), query);
+        // Neither the other fields of the executions nor the whole executions are selected
+        for (String metricColumnName : List.of("dateexecuted", "executiontimeseconds", "memoryrequirementsgb", "cpurequirements", "cost")) {
+            assertFalse(query.contains(metricColumnName), query);
+        }
+        assertFalse(query.matches(".*[ ,]unnestedexecution[ ,].*"), query);
+    }
+
+    @Test
+    void testApproximateMetricsHaveExactStatusCounts() {
+        // The status counts query counts 100 executions, and the sample contains 10 of them
+        RecordingAthenaClient client = new RecordingAthenaClient(query -> List.of(createStatusCountRow(query.contains("tablesample") ? 10 : 100)));
+        ExecutionStatusAthenaAggregator aggregator = new ExecutionStatusAthenaAggregator(client, TABLE_NAME);
+        Map<String, ExecutionStatusMetric> metricByPlatform = aggregator.createApproximateMetricByPlatform(VERSION, 10.0, "test");
+        assertEquals(100, metricByPlatform.get("ALL").getCount().get("ALL").getExecutionStatusCount());
+        assertEquals(2, client.getQueries().size());
+    }
+
+    @Test
+    void testRelativeStandardError() {
+        // Every execution was sampled
+        assertEquals(0.0, ExecutionStatusAthenaAggregator.getRelativeStandardError(100, 100));
+        // sqrt((1 - 100 / 10000) / 100)
+        assertEquals(0.0995, ExecutionStatusAthenaAggregator.getRelativeStandardError(100, 10000), 0.0001);
+        // The error shrinks as more executions are sampled
+        assertTrue(ExecutionStatusAthenaAggregator.getRelativeStandardError(1000, 10000) < ExecutionStatusAthenaAggregator.getRelativeStandardError(100, 10000));
+        assertEquals(Math.sqrt(0.5), ExecutionStatusAthenaAggregator.getRelativeStandardError(1, 2), 0.0001);
+    }
+
+    private static QueryResultRow createStatusCountRow(int count) {
+        return new QueryResultRow(Map.of("platform", 0, "executionstatus", 1, "count_executionstatus", 2), List.of("ALL", "ALL", String.valueOf(count)));
+    }
+}
@@ -0,0 +1,41 @@
+package io.dockstore.metricsaggregator.helper;
+
+import io.dockstore.metricsaggregator.MetricsAggregatorAthenaClient;
+import io.dockstore.metricsaggregator.common.TestUtilities;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * An Athena client that records the queries instead of executing them, and answers them with the rows returned by a function of the query.
+ */
+class RecordingAthenaClient extends MetricsAggregatorAthenaClient {
+    private final List<String> queries = new CopyOnWriteArrayList<>();
+    private final Function<String, List<QueryResultRow>> queryResults;
+
+    RecordingAthenaClient(Function<String, List<QueryResultRow>> queryResults) {
+        super(TestUtilities.getMetricsConfig());
+        this.queryResults = queryResults;
+    }
+
+    @Override
+    public List<QueryResultRow> executeQuery(String query) {
+        queries.add(query);
+        return queryResults.apply(query);
+    }
+
+    List<String> getQueries() {
+        return queries;
+    }
+
+    /**
+     * Returns the recorded queries that start with the prefix, ignoring case, with each run of whitespace replaced by a single space.
+     */
+    List<String> getQueriesStartingWith(String prefix) {
+        return queries.stream()
+                .map(query -> query.replaceAll("\\s+", " "))
+                .filter(query -> query.toLowerCase(Locale.ROOT).startsWith(prefix.toLowerCase(Locale.ROOT)))
+                .toList();
+    }
+}
@@ -25,6 +25,7 @@ import static io.dockstore.tooltester.runWorkflow.WorkflowRunner.printLine;
 import static io.dockstore.tooltester.runWorkflow.WorkflowRunner.uploadRunInfo;
 import static io.dockstore.utils.ExceptionHandler.COMMAND_ERROR;
 import static io.dockstore.utils.ExceptionHandler.DEBUG;
+import static io.dockstore.utils.ExceptionHandler.errorMessage;
 import static io.dockstore.utils.ExceptionHandler.exceptionMessage;
 
 import com.beust.jcommander.JCommander;
@@ -38,15 +39,16 @@ import io.dockstore.openapi.client.api.Ga4Ghv20Api;
 import io.dockstore.openapi.client.api.WorkflowsApi;
 import io.dockstore.openapi.client.model.ExecutionsRequestBody;
 import io.dockstore.tooltester.runWorkflow.WorkflowList;
+import io.dockstore.tooltester.runWorkflow.WorkflowPipeline;
 import io.dockstore.tooltester.runWorkflow.WorkflowRunner;
 import io.dockstore.tooltester.runWorkflow.WorkflowRunnerConfig;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -205,39 +207,17 @@ public class Client {
         setUpWorkflowApi();
         WorkflowList workflowsToRun = new WorkflowList(getGa4Ghv20Api(), getExtendedGa4GhApi(), getWorkflowsApi(), this.workflowRunnerConfig, resultDirectory);
 
-        for (WorkflowRunner workflow : workflowsToRun.getWorkflowsToRun()) {
-            workflow.runWorkflow();
-        }
-
-        List<WorkflowRunner> workflowsStillRunning = new ArrayList<>(workflowsToRun.getWorkflowsToRun());
-
-        while (!workflowsStillRunning.isEmpty()) {
-            // Using sleep here as workflows take a while to run, and there is no point in continuously checking if they are finished
-            TimeUnit.SECONDS.sleep(WAIT_TIME);
-            List<WorkflowRunner> workflowsToCheck = new ArrayList<>(workflowsStillRunning);
-            for (WorkflowRunner workflow : workflowsToCheck) {
-                if (workflow.isWorkflowFinished()) {
-                    workflowsStillRunning.remove(workflow);
-                }
-            }
-        }
-
-        TimeUnit.MINUTES.sleep(WAIT_TIME);
-
-        for (WorkflowRunner workflow : workflowsToRun.getWorkflowsToRun()) {
-            workflow.uploadAndSaveRunInfo();
-        }
-        for (WorkflowRunner workflow : workflowsToRun.getWorkflowsToRun()) {
-            workflow.deregisterTasks();
-        }
-
         printLine();
 
-        for (WorkflowRunner workflow : workflowsToRun.getWorkflowsToRun()) {
+        // Each workflow is launched, polled, measured, uploaded and deregistered independently, and its statistics are printed as soon as it completes
+        WorkflowPipeline workflowPipeline = new WorkflowPipeline(workflowsToRun.getWorkflowsToRun(), Duration.ofSeconds(WAIT_TIME), workflow -> {
             workflow.printRunStatistics();
             printLine();
+        });
+        final int numberOfWorkflowsFailed = workflowPipeline.run();
+        if (numberOfWorkflowsFailed > 0) {
+            errorMessage(numberOfWorkflowsFailed + " of " + workflowsToRun.getWorkflowsToRun().size() + " workflows failed", COMMAND_ERROR);
         }
-
     }
 
     private ExtendedGa4GhApi getExtendedGa4GhApi() {
@@ -270,7 +250,7 @@ public class Client {
         private boolean help = false;
     }
 
-    @Parameters(separators = "=", commandDescription = "Runs workflows through the Dockstore CLI and AGC, then both prints and uploads to Dockstore the execution statistics.")
+    @Parameters(separators = "=", commandDescription = "Runs workflows through WES on AGC, then both prints and uploads to Dockstore the execution statistics.")
     private static class CommandRunWorkflows {
 
         @Parameter(names = "--help", description = "Prints help for run-workflows-through-wes", help = true)
@@ -0,0 +1,227 @@
+/*
+ *    Copyright 2026
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.tooltester.runWorkflow;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.Metric;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataQuery;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.cloudwatch.model.MetricStat;
+import software.amazon.awssdk.services.cloudwatch.model.ScanBy;
+
+/**
+ * Gets the Container Insights metrics of every run with one CloudWatch client. The requests for metrics that are made within a short time of each other are
+ * batched into GetMetricData requests of up to 500 metric queries each, and the datapoints of each query are given back to the run that requested them.
+ */
+public class MetricDataBatcher implements AutoCloseable {
+    static final int MAX_QUERIES_PER_REQUEST = 500;
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricDataBatcher.class);
+    private static final String NAMESPACE = "ECS/ContainerInsights";
+    private static final int PERIOD_SECONDS = 60;
+    private static final String AVERAGE_STATISTIC = "Average";
+    // How long requests are collected before they're sent, so that the runs whose metrics are checked at about the same time share a request
+    private static final Duration BATCH_DELAY = Duration.ofSeconds(2);
+
+    private final CloudWatchClient cloudWatchClient;
+    private final ScheduledExecutorService scheduler;
+    private final Duration batchDelay;
+    private List<MetricsRequest> pendingRequests = new ArrayList<>();
+
+    /**
+     * @param cloudWatchClient
+     * @param scheduler used to send the batched requests
+     */
+    public MetricDataBatcher(CloudWatchClient cloudWatchClient, ScheduledExecutorService scheduler) {
+        this(cloudWatchClient, scheduler, BATCH_DELAY);
+    }
+
+    MetricDataBatcher(CloudWatchClient cloudWatchClient, ScheduledExecutorService scheduler, Duration batchDelay) {
+        this.cloudWatchClient = cloudWatchClient;
+        this.scheduler = scheduler;
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Gets the per-minute averages of the metrics of an ECS task definition family.
+     * @param clusterName
+     * @param taskDefinitionFamily
+     * @param startTime
+     * @param endTime
+     * @param metricNames
+     * @return the datapoints of each metric, in ascending order of time
+     */
+    public synchronized CompletableFuture<Map<String, List<MetricDatapoint>>> getMetricData(String clusterName, String taskDefinitionFamily, Instant startTime,
+            Instant endTime, List<String> metricNames) {
+        MetricsRequest metricsRequest = new MetricsRequest(clusterName, taskDefinitionFamily, startTime, endTime, metricNames, new CompletableFuture<>());
+        pendingRequests.add(metricsRequest);
+        if (pendingRequests.size() == 1) {
+            scheduler.schedule(this::sendPendingRequests, batchDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        return metricsRequest.datapointsForEachMetric();
+    }
+
+    /**
+     * Closes the CloudWatch client.
+     */
+    @Override
+    public void close() {
+        cloudWatchClient.close();
+    }
+
+    private void sendPendingRequests() {
+        final List<MetricsRequest> metricsRequests;
+        synchronized (this) {
+            metricsRequests = pendingRequests;
+            pendingRequests = new ArrayList<>();
+        }
+        for (List<MetricsRequest> batch : partition(metricsRequests, MAX_QUERIES_PER_REQUEST)) {
+            try {
+                sendBatch(batch);
+            } catch (RuntimeException e) {
+                // Fail the runs instead of leaving them waiting for metrics forever
+                LOGGER.error("Unable to get the metrics of {} runs from CloudWatch", batch.size(), e);
+                batch.forEach(metricsRequest -> metricsRequest.datapointsForEachMetric().completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * Splits the requests into batches with at most maxQueriesPerBatch metric queries each. The queries of a request are always in the same batch.
+     * @param metricsRequests
+     * @param maxQueriesPerBatch
+     * @return
+     */
+    static List<List<MetricsRequest>> partition(List<MetricsRequest> metricsRequests, int maxQueriesPerBatch) {
+        List<List<MetricsRequest>> batches = new ArrayList<>();
+        List<MetricsRequest> batch = new ArrayList<>();
+        int numberOfQueriesInBatch = 0;
+        for (MetricsRequest metricsRequest : metricsRequests) {
+            final int numberOfQueries = metricsRequest.metricNames().size();
+            if (!batch.isEmpty() && numberOfQueriesInBatch + numberOfQueries > maxQueriesPerBatch) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                numberOfQueriesInBatch = 0;
+            }
+            batch.add(metricsRequest);
+            numberOfQueriesInBatch += numberOfQueries;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Sends one GetMetricData request for the batch, covering the time ranges of all of its requests, then gives each request the datapoints of its queries
+     * that are within its own time range.
+     * @param batch
+     */
+    private void sendBatch(List<MetricsRequest> batch) {
+        List<MetricDataQuery> queries = new ArrayList<>();
+        for (MetricsRequest metricsRequest : batch) {
+            for (String metricName : metricsRequest.metricNames()) {
+                queries.add(createQuery(queryId(queries.size()), metricsRequest, metricName));
+            }
+        }
+        final Instant startTime = batch.stream().map(MetricsRequest::startTime).min(Comparator.naturalOrder()).orElseThrow();
+        final Instant endTime = batch.stream().map(MetricsRequest::endTime).max(Comparator.naturalOrder()).orElseThrow();
+
+        Map<String, List<MetricDatapoint>> datapointsForEachQuery = new HashMap<>();
+        String nextToken = null;
+        do {
+            GetMetricDataResponse response = cloudWatchClient.getMetricData(GetMetricDataRequest.builder()
+                    .metricDataQueries(queries)
+                    .startTime(startTime.truncatedTo(ChronoUnit.MINUTES))
+                    .endTime(endTime)
+                    .scanBy(ScanBy.TIMESTAMP_ASCENDING)
+                    .nextToken(nextToken)
+                    .build());
+            for (MetricDataResult result : response.metricDataResults()) {
+                List<MetricDatapoint> datapoints = datapointsForEachQuery.computeIfAbsent(result.id(), id -> new ArrayList<>());
+                for (int i = 0; i < result.timestamps().size(); i++) {
+                    datapoints.add(new MetricDatapoint(result.timestamps().get(i), result.values().get(i)));
+                }
+            }
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+
+        int queryIndex = 0;
+        for (MetricsRequest metricsRequest : batch) {
+            Map<String, List<MetricDatapoint>> datapointsForEachMetric = new HashMap<>();
+            for (String metricName : metricsRequest.metricNames()) {
+                final List<MetricDatapoint> datapoints = datapointsForEachQuery.getOrDefault(queryId(queryIndex), List.of()).stream()
+                        .filter(datapoint -> !datapoint.timestamp().isBefore(metricsRequest.startTime().truncatedTo(ChronoUnit.MINUTES))
+                                && datapoint.timestamp().isBefore(metricsRequest.endTime()))
+                        .toList();
+                datapointsForEachMetric.put(metricName, datapoints);
+                queryIndex++;
+            }
+            metricsRequest.datapointsForEachMetric().complete(datapointsForEachMetric);
+        }
+    }
+
+    private static MetricDataQuery createQuery(String id, MetricsRequest metricsRequest, String metricName) {
+        final Metric metric = Metric.builder()
+                .namespace(NAMESPACE)
+                .metricName(metricName)
+                .dimensions(Dimension.builder().name("ClusterName").value(metricsRequest.clusterName()).build(),
+                        Dimension.builder().name("TaskDefinitionFamily").value(metricsRequest.taskDefinitionFamily()).build())
+                .build();
+        return MetricDataQuery.builder()
+                .id(id)
+                .metricStat(MetricStat.builder().metric(metric).period(PERIOD_SECONDS).stat(AVERAGE_STATISTIC).build())
+                .returnData(true)
+                .build();
+    }
+
+    /**
+     * Query IDs must start with a lowercase letter.
+     * @param queryIndex
+     * @return
+     */
+    private static String queryId(int queryIndex) {
+        return "q" + queryIndex;
+    }
+
+    /**
+     * The average of a metric over the minute starting at the timestamp.
+     * @param timestamp
+     * @param value
+     */
+    public record MetricDatapoint(Instant timestamp, double value) {
+    }
+
+    record MetricsRequest(String clusterName, String taskDefinitionFamily, Instant startTime, Instant endTime, List<String> metricNames,
+                          CompletableFuture<Map<String, List<MetricDatapoint>>> datapointsForEachMetric) {
+    }
+}
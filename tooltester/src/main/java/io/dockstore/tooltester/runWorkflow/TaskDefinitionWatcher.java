@@ -0,0 +1,197 @@
+/*
+ *    Copyright 2026
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.tooltester.runWorkflow;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.DeregisterTaskDefinitionRequest;
+import software.amazon.awssdk.services.ecs.model.DescribeTaskDefinitionRequest;
+import software.amazon.awssdk.services.ecs.model.ListTaskDefinitionsRequest;
+import software.amazon.awssdk.services.ecs.model.ListTaskDefinitionsResponse;
+import software.amazon.awssdk.services.ecs.model.SortOrder;
+import software.amazon.awssdk.services.ecs.model.TaskDefinition;
+
+/**
+ * Watches for the ECS task definitions that are registered when workflows are launched, on behalf of every run.
+ * The active task definitions are listed newest first, page by page, until reaching one that was seen before, and each new one is given to the run that
+ * has waited longest for one, like each run used to do by diffing the task definitions from before and after it was launched.
+ * The task definitions are only listed while a run is waiting, checking more often right after a run starts waiting and less often the longer it waits.
+ */
+public class TaskDefinitionWatcher implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskDefinitionWatcher.class);
+    private static final Duration MIN_POLL_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration MAX_POLL_INTERVAL = Duration.ofSeconds(40);
+    // How long a run waits for its task definition, which is about as long as it used to retry for
+    private static final Duration WAIT_LIMIT = Duration.ofMinutes(5);
+
+    private final EcsClient ecsClient;
+    private final ScheduledExecutorService scheduler;
+    private final Duration minPollInterval;
+    private final Duration maxPollInterval;
+    private final Duration waitLimit;
+    private final Set<String> seenTaskDefinitionArns = new HashSet<>();
+    private final Queue<CompletableFuture<TaskDefinition>> waitingRuns = new ArrayDeque<>();
+    private Duration pollInterval;
+    private boolean pollScheduled = false;
+
+    /**
+     * @param ecsClient
+     * @param scheduler used to schedule the listing of task definitions
+     */
+    public TaskDefinitionWatcher(EcsClient ecsClient, ScheduledExecutorService scheduler) {
+        this(ecsClient, scheduler, MIN_POLL_INTERVAL, MAX_POLL_INTERVAL, WAIT_LIMIT);
+    }
+
+    TaskDefinitionWatcher(EcsClient ecsClient, ScheduledExecutorService scheduler, Duration minPollInterval, Duration maxPollInterval, Duration waitLimit) {
+        this.ecsClient = ecsClient;
+        this.scheduler = scheduler;
+        this.minPollInterval = minPollInterval;
+        this.maxPollInterval = maxPollInterval;
+        this.waitLimit = waitLimit;
+        this.pollInterval = minPollInterval;
+    }
+
+    /**
+     * Starts waiting for a task definition that wasn't registered yet. Call this right before launching the workflow that registers it, and launch the next
+     * workflow once the returned future is completed, so that the task definitions are given to the runs in the order that the workflows were launched.
+     * Cancel the returned future if the workflow couldn't be launched, so that it stops waiting.
+     * @return the next new task definition, or null if none was found within the wait limit
+     */
+    public CompletableFuture<TaskDefinition> watchForNewTaskDefinition() {
+        // Every task definition registered before this call is seen, so it isn't mistaken for the new one. The ones that are new go to the runs already waiting
+        listNewTaskDefinitions().forEach(this::giveToWaitingRun);
+        CompletableFuture<TaskDefinition> newTaskDefinition = new CompletableFuture<>();
+        synchronized (this) {
+            waitingRuns.add(newTaskDefinition);
+            newTaskDefinition.completeOnTimeout(null, waitLimit.toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((taskDefinition, exception) -> stopWaiting(newTaskDefinition));
+            pollInterval = minPollInterval;
+            if (!pollScheduled) {
+                pollScheduled = true;
+                scheduler.schedule(this::poll, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        return newTaskDefinition;
+    }
+
+    /**
+     * Deregisters a task definition that was given to a run, once the run is done with it.
+     * @param taskDefinitionArn
+     */
+    public void deregisterTaskDefinition(String taskDefinitionArn) {
+        ecsClient.deregisterTaskDefinition(DeregisterTaskDefinitionRequest.builder().taskDefinition(taskDefinitionArn).build());
+    }
+
+    /**
+     * Closes the ECS client.
+     */
+    @Override
+    public void close() {
+        ecsClient.close();
+    }
+
+    private synchronized void stopWaiting(CompletableFuture<TaskDefinition> newTaskDefinition) {
+        waitingRuns.remove(newTaskDefinition);
+    }
+
+    private void poll() {
+        boolean foundNewTaskDefinition = false;
+        try {
+            final List<String> newTaskDefinitionArns = listNewTaskDefinitions();
+            foundNewTaskDefinition = !newTaskDefinitionArns.isEmpty();
+            newTaskDefinitionArns.forEach(this::giveToWaitingRun);
+        } catch (SdkException e) {
+            LOGGER.warn("Unable to list the ECS task definitions, trying again later", e);
+        }
+        scheduleNextPoll(foundNewTaskDefinition);
+    }
+
+    private synchronized void scheduleNextPoll(boolean foundNewTaskDefinition) {
+        if (waitingRuns.isEmpty()) {
+            pollScheduled = false;
+            return;
+        }
+        if (!foundNewTaskDefinition) {
+            pollInterval = pollInterval.multipliedBy(2).compareTo(maxPollInterval) > 0 ? maxPollInterval : pollInterval.multipliedBy(2);
+        }
+        scheduler.schedule(this::poll, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lists the active task definitions newest first, one page at a time, until reaching one that was seen before, and marks the new ones as seen.
+     * ECS sorts the task definitions by family name and then by revision, so stopping early relies on the new task definitions sorting ahead of the first one
+     * that was seen before, which holds for the new revisions of its family and for the families whose names sort after it.
+     * @return the new task definitions that can be given to the runs that are waiting, oldest first
+     */
+    private synchronized List<String> listNewTaskDefinitions() {
+        List<String> newTaskDefinitionArns = new ArrayList<>();
+        boolean reachedSeenTaskDefinition = false;
+        String nextToken = null;
+        do {
+            ListTaskDefinitionsResponse response = ecsClient.listTaskDefinitions(ListTaskDefinitionsRequest.builder().sort(SortOrder.DESC).nextToken(nextToken).build());
+            for (String taskDefinitionArn : response.taskDefinitionArns()) {
+                if (!seenTaskDefinitionArns.add(taskDefinitionArn)) {
+                    // The rest were listed before
+                    reachedSeenTaskDefinition = true;
+                    break;
+                }
+                newTaskDefinitionArns.add(taskDefinitionArn);
+            }
+            nextToken = response.nextToken();
+        } while (!reachedSeenTaskDefinition && nextToken != null);
+        Collections.reverse(newTaskDefinitionArns);
+        // The task definitions that no run is waiting for aren't described
+        return List.copyOf(newTaskDefinitionArns.subList(0, Math.min(newTaskDefinitionArns.size(), waitingRuns.size())));
+    }
+
+    /**
+     * Describes the task definition, without holding the lock, then gives it to the run that has waited longest.
+     * @param taskDefinitionArn
+     */
+    private void giveToWaitingRun(String taskDefinitionArn) {
+        TaskDefinition taskDefinition = null;
+        try {
+            taskDefinition = ecsClient.describeTaskDefinition(DescribeTaskDefinitionRequest.builder().taskDefinition(taskDefinitionArn).build()).taskDefinition();
+        } catch (SdkException e) {
+            LOGGER.error("Unable to describe the ECS task definition {}", taskDefinitionArn, e);
+        }
+        // A run that was cancelled while the task definition was described is skipped, so the task definition goes to the next run
+        CompletableFuture<TaskDefinition> newTaskDefinition;
+        do {
+            synchronized (this) {
+                if (waitingRuns.size() > 1) {
+                    LOGGER.warn("More than one run is waiting for a new ECS task definition, assuming {} is the task definition of the run that has waited longest",
+                            taskDefinitionArn);
+                }
+                newTaskDefinition = waitingRuns.poll();
+            }
+        } while (newTaskDefinition != null && !newTaskDefinition.complete(taskDefinition));
+    }
+}
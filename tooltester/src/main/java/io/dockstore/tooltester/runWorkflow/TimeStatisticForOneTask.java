@@ -17,6 +17,8 @@
 package io.dockstore.tooltester.runWorkflow;
 
 import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Used for holding and giving information about the time it took a single task in a workflow to run.
@@ -25,6 +27,7 @@ public class TimeStatisticForOneTask {
     private final Date startTime;
     private final Date endTime;
     private final String taskName;
+    private final Map<String, Double> metricAverages = new TreeMap<>();
 
     TimeStatisticForOneTask(Date startTime, Date endTime, String taskName) {
         this.startTime = startTime;
@@ -42,6 +45,17 @@ public class TimeStatisticForOneTask {
         return taskName;
     }
 
+    /**
+     * @return the average of each metric while the task ran, by metric name
+     */
+    public Map<String, Double> getMetricAverages() {
+        return metricAverages;
+    }
+
+    void putMetricAverage(String metricName, Double average) {
+        metricAverages.put(metricName, average);
+    }
+
     public Long getTimeTakenInMilliseconds() {
         if (startTime == null || endTime == null) {
             return 0L;
@@ -0,0 +1,284 @@
+/*
+ *    Copyright 2026
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.tooltester.runWorkflow;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
+import software.amazon.awssdk.auth.signer.Aws4Signer;
+import software.amazon.awssdk.auth.signer.params.Aws4SignerParams;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.regions.providers.DefaultAwsRegionProviderChain;
+
+/**
+ * A client for the GA4GH Workflow Execution Service API, used to submit runs, get their status and logs, and cancel them without the Dockstore CLI.
+ * The client's connections are reused by every request, so one client should be shared by the runs that use the same WES endpoint.
+ * Requests to an AGC WES endpoint are signed with the credentials of an AWS profile, like the Dockstore CLI does for a WES config of type aws.
+ */
+public class WesClient {
+    private static final Gson GSON = new Gson();
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
+    private static final String EXECUTE_API_SERVICE_NAME = "execute-api";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    // Headers that are set by the HTTP client and can't be copied from the signed request
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("host", "content-length", "connection", "expect", "upgrade");
+    private static final int HTTP_SUCCESS_STATUS_MIN = 200;
+    private static final int HTTP_SUCCESS_STATUS_MAX = 299;
+    private static final int HTTP_CLIENT_ERROR_STATUS_MIN = 400;
+    private static final int HTTP_CLIENT_ERROR_STATUS_MAX = 499;
+    // Client errors that may not happen again if the request is sent later
+    private static final Set<Integer> TRANSIENT_CLIENT_ERROR_STATUSES = Set.of(408, 429);
+
+    private final URI wesUrl;
+    private final AwsCredentialsProvider credentialsProvider;
+    private final Region region;
+    private final HttpClient httpClient;
+
+    /**
+     * @param wesUrl the base URL of the WES API, ending with ga4gh/wes/v1
+     * @param credentialsProvider the credentials used to sign requests, or null if requests aren't signed
+     * @param region the region of the WES endpoint, or null if requests aren't signed
+     */
+    public WesClient(URI wesUrl, AwsCredentialsProvider credentialsProvider, Region region) {
+        this.wesUrl = URI.create(StringUtils.removeEnd(wesUrl.toString(), "/"));
+        this.credentialsProvider = credentialsProvider;
+        this.region = region;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+    }
+
+    /**
+     * Creates a client for an AGC WES endpoint, signing requests with the credentials of the AWS profile.
+     * The region is taken from the endpoint's host name, like example.execute-api.us-east-1.amazonaws.com.
+     * @param wesUrl
+     * @param awsProfile the AWS profile name, or blank if requests aren't signed
+     * @return
+     */
+    public static WesClient create(String wesUrl, String awsProfile) {
+        final URI uri = URI.create(wesUrl);
+        if (StringUtils.isBlank(awsProfile)) {
+            return new WesClient(uri, null, null);
+        }
+        return new WesClient(uri, ProfileCredentialsProvider.create(awsProfile), getRegion(uri));
+    }
+
+    /**
+     * Submits a run.
+     * @param runRequest
+     * @return the ID of the run
+     * @throws IOException if the request failed, which is a WesRequestException if the endpoint responded with an error status
+     * @throws InterruptedException
+     */
+    public String runWorkflow(WesRunRequest runRequest) throws IOException, InterruptedException {
+        final String boundary = "----tooltester" + System.nanoTime();
+        final byte[] body = runRequest.toMultipartBody(boundary);
+        return GSON.fromJson(send(SdkHttpMethod.POST, "/runs", "multipart/form-data; boundary=" + boundary, body), WesRunId.class).runId();
+    }
+
+    /**
+     * Returns the state of the run, like RUNNING or COMPLETE.
+     * @param runId
+     * @return
+     * @throws IOException if the request failed
+     * @throws InterruptedException
+     */
+    public String getRunStatus(String runId) throws IOException, InterruptedException {
+        return GSON.fromJson(send(SdkHttpMethod.GET, "/runs/" + encode(runId) + "/status", null, null), WesRunStatus.class).state();
+    }
+
+    /**
+     * Returns the log of the run, containing its state and the times of the run and its tasks.
+     * @param runId
+     * @return
+     * @throws IOException if the request failed
+     * @throws InterruptedException
+     */
+    public WesRunLog getRunLog(String runId) throws IOException, InterruptedException {
+        return GSON.fromJson(send(SdkHttpMethod.GET, "/runs/" + encode(runId), null, null), WesRunLog.class);
+    }
+
+    /**
+     * Cancels the run.
+     * @param runId
+     * @throws IOException if the request failed
+     * @throws InterruptedException
+     */
+    public void cancelRun(String runId) throws IOException, InterruptedException {
+        send(SdkHttpMethod.POST, "/runs/" + encode(runId) + "/cancel", null, null);
+    }
+
+    private String send(SdkHttpMethod method, String path, String contentType, byte[] body) throws IOException, InterruptedException {
+        final URI uri = URI.create(wesUrl + path);
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", JSON_CONTENT_TYPE)
+                .method(method.name(), body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        if (contentType != null) {
+            requestBuilder.header("Content-Type", contentType);
+        }
+        if (credentialsProvider != null) {
+            sign(method, uri, contentType, body).headers().forEach((name, values) -> {
+                if (!RESTRICTED_HEADERS.contains(name.toLowerCase()) && !"content-type".equalsIgnoreCase(name) && !"accept".equalsIgnoreCase(name)) {
+                    values.forEach(value -> requestBuilder.header(name, value));
+                }
+            });
+        }
+        HttpResponse<String> response = httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() < HTTP_SUCCESS_STATUS_MIN || response.statusCode() > HTTP_SUCCESS_STATUS_MAX) {
+            throw new WesRequestException(method + " " + uri + " failed with status " + response.statusCode() + ": " + response.body(), response.statusCode());
+        }
+        return response.body();
+    }
+
+    private SdkHttpFullRequest sign(SdkHttpMethod method, URI uri, String contentType, byte[] body) {
+        SdkHttpFullRequest.Builder requestBuilder = SdkHttpFullRequest.builder()
+                .method(method)
+                .uri(uri)
+                .putHeader("Accept", JSON_CONTENT_TYPE);
+        if (contentType != null) {
+            requestBuilder.putHeader("Content-Type", contentType);
+        }
+        if (body != null) {
+            requestBuilder.contentStreamProvider(() -> new ByteArrayInputStream(body));
+        }
+        Aws4SignerParams signerParams = Aws4SignerParams.builder()
+                .awsCredentials(credentialsProvider.resolveCredentials())
+                .signingName(EXECUTE_API_SERVICE_NAME)
+                .signingRegion(region)
+                .build();
+        return Aws4Signer.create().sign(requestBuilder.build(), signerParams);
+    }
+
+    private static Region getRegion(URI uri) {
+        final String[] hostComponents = uri.getHost().split("\\.");
+        for (int i = 0; i < hostComponents.length - 1; i++) {
+            if (EXECUTE_API_SERVICE_NAME.equals(hostComponents[i])) {
+                return Region.of(hostComponents[i + 1]);
+            }
+        }
+        return new DefaultAwsRegionProviderChain().getRegion();
+    }
+
+    private static String encode(String pathComponent) {
+        return URLEncoder.encode(pathComponent, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * Thrown when the WES endpoint responds to a request with a status that isn't a success.
+     */
+    public static final class WesRequestException extends IOException {
+        private final int statusCode;
+
+        WesRequestException(String message, int statusCode) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Returns true if the request was rejected because of the request itself, like with 401 Unauthorized, 403 Forbidden, or 404 Not Found,
+         * so sending it again would fail the same way.
+         * @return
+         */
+        public boolean isClientError() {
+            return statusCode >= HTTP_CLIENT_ERROR_STATUS_MIN && statusCode <= HTTP_CLIENT_ERROR_STATUS_MAX && !TRANSIENT_CLIENT_ERROR_STATUSES.contains(statusCode);
+        }
+    }
+
+    /**
+     * A file attached to a run, such as a test parameter file or a descriptor.
+     * @param fileName the name that the run refers to the file by
+     * @param content
+     */
+    public record WesAttachment(String fileName, byte[] content) {
+    }
+
+    /**
+     * The fields of a run request.
+     * @param workflowUrl the URL of the workflow, or the path of an attached descriptor
+     * @param workflowType WDL or CWL
+     * @param workflowTypeVersion
+     * @param workflowParams the JSON inputs of the workflow
+     * @param attachments
+     */
+    public record WesRunRequest(String workflowUrl, String workflowType, String workflowTypeVersion, JsonObject workflowParams, List<WesAttachment> attachments) {
+
+        byte[] toMultipartBody(String boundary) throws IOException {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            writePart(outputStream, boundary, "workflow_params", null, JSON_CONTENT_TYPE, GSON.toJson(workflowParams).getBytes(StandardCharsets.UTF_8));
+            writePart(outputStream, boundary, "workflow_type", null, null, workflowType.getBytes(StandardCharsets.UTF_8));
+            writePart(outputStream, boundary, "workflow_type_version", null, null, workflowTypeVersion.getBytes(StandardCharsets.UTF_8));
+            writePart(outputStream, boundary, "workflow_url", null, null, workflowUrl.getBytes(StandardCharsets.UTF_8));
+            for (WesAttachment attachment : attachments) {
+                writePart(outputStream, boundary, "workflow_attachment", attachment.fileName(), "application/octet-stream", attachment.content());
+            }
+            outputStream.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+            return outputStream.toByteArray();
+        }
+
+        private static void writePart(ByteArrayOutputStream outputStream, String boundary, String name, String fileName, String contentType, byte[] content) throws IOException {
+            StringBuilder headers = new StringBuilder("--").append(boundary).append("\r\n")
+                    .append("Content-Disposition: form-data; name=\"").append(name).append('"');
+            if (fileName != null) {
+                headers.append("; filename=\"").append(fileName).append('"');
+            }
+            headers.append("\r\n");
+            if (contentType != null) {
+                headers.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            headers.append("\r\n");
+            outputStream.write(headers.toString().getBytes(StandardCharsets.UTF_8));
+            outputStream.write(content);
+            outputStream.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * The log of a run or of one of its tasks. The times are ISO 8601 date-times.
+     */
+    public record WesLog(String name, @SerializedName("start_time") String startTime, @SerializedName("end_time") String endTime, @SerializedName("exit_code") Integer exitCode) {
+    }
+
+    public record WesRunLog(@SerializedName("run_id") String runId, String state, @SerializedName("run_log") WesLog runLog, @SerializedName("task_logs") List<WesLog> taskLogs) {
+    }
+
+    private record WesRunId(@SerializedName("run_id") String runId) {
+    }
+
+    private record WesRunStatus(@SerializedName("run_id") String runId, String state) {
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2026
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package io.dockstore.tooltester.runWorkflow;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.ecs.EcsClient;
+
+/**
+ * Moves each workflow through its stages on a shared scheduler: launch, poll until it's finished, check its metrics until they're complete,
+ * upload its results, then deregister its tasks. A workflow moves to its next stage as soon as its current one is done, without waiting for the
+ * other workflows, so a slow workflow only delays itself and the suite takes about as long as its slowest workflow.
+ */
+public class WorkflowPipeline {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkflowPipeline.class);
+    // The stages don't wait between checks, they're scheduled again instead, so a few threads are enough for many workflows
+    private static final int NUMBER_OF_THREADS = 4;
+
+    private final List<WorkflowRunner> workflowRunners;
+    private final Duration pollInterval;
+    private final Consumer<WorkflowRunner> onWorkflowCompleted;
+    private final ScheduledExecutorService scheduler;
+    private final TaskDefinitionWatcher taskDefinitionWatcher;
+    private final MetricDataBatcher metricDataBatcher;
+    private final CountDownLatch workflowsRemaining;
+    private final AtomicInteger numberOfWorkflowsFailed = new AtomicInteger();
+
+    /**
+     * @param workflowRunners
+     * @param pollInterval how long to wait between checks of whether a workflow is finished
+     * @param onWorkflowCompleted called with each workflow whose results were uploaded, one workflow at a time, in the order that they completed
+     */
+    public WorkflowPipeline(List<WorkflowRunner> workflowRunners, Duration pollInterval, Consumer<WorkflowRunner> onWorkflowCompleted) {
+        this(workflowRunners, pollInterval, onWorkflowCompleted, Executors.newScheduledThreadPool(NUMBER_OF_THREADS));
+    }
+
+    private WorkflowPipeline(List<WorkflowRunner> workflowRunners, Duration pollInterval, Consumer<WorkflowRunner> onWorkflowCompleted, ScheduledExecutorService scheduler) {
+        this(workflowRunners, pollInterval, onWorkflowCompleted, scheduler, new TaskDefinitionWatcher(EcsClient.builder().build(), scheduler),
+                new MetricDataBatcher(CloudWatchClient.builder().build(), scheduler));
+    }
+
+    /**
+     * @param workflowRunners
+     * @param pollInterval
+     * @param onWorkflowCompleted
+     * @param scheduler runs the stages, and is shut down once every workflow has completed or failed
+     * @param taskDefinitionWatcher uses the scheduler, and is closed with it
+     * @param metricDataBatcher uses the scheduler, and is closed with it
+     */
+    WorkflowPipeline(List<WorkflowRunner> workflowRunners, Duration pollInterval, Consumer<WorkflowRunner> onWorkflowCompleted, ScheduledExecutorService scheduler,
+            TaskDefinitionWatcher taskDefinitionWatcher, MetricDataBatcher metricDataBatcher) {
+        this.workflowRunners = workflowRunners;
+        this.pollInterval = pollInterval;
+        this.onWorkflowCompleted = onWorkflowCompleted;
+        this.scheduler = scheduler;
+        this.taskDefinitionWatcher = taskDefinitionWatcher;
+        this.metricDataBatcher = metricDataBatcher;
+        this.workflowsRemaining = new CountDownLatch(workflowRunners.size());
+    }
+
+    /**
+     * Runs every workflow through the pipeline, returning once all of them have completed or failed.
+     * @return the number of workflows that failed
+     * @throws InterruptedException
+     */
+    public int run() throws InterruptedException {
+        try {
+            scheduler.execute(() -> launch(0));
+            workflowsRemaining.await();
+        } finally {
+            scheduler.shutdownNow();
+            taskDefinitionWatcher.close();
+            metricDataBatcher.close();
+        }
+        LOGGER.info("{} of {} workflows completed", workflowRunners.size() - numberOfWorkflowsFailed.get(), workflowRunners.size());
+        return numberOfWorkflowsFailed.get();
+    }
+
+    /**
+     * Launches the workflows one after another. The next workflow is launched once the ECS task definition of this one was found, so that the task
+     * definition isn't mistaken for the next workflow's, and this workflow starts being polled at the same time.
+     * @param index the index of the workflow to launch
+     */
+    private void launch(int index) {
+        if (index >= workflowRunners.size()) {
+            return;
+        }
+        final WorkflowRunner workflowRunner = workflowRunners.get(index);
+        final CompletableFuture<Void> taskDefinitionFound;
+        try {
+            taskDefinitionFound = workflowRunner.runWorkflow(taskDefinitionWatcher);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to launch {}", workflowRunner.getCompleteEntryName(), e);
+            fail(workflowRunner);
+            scheduler.execute(() -> launch(index + 1));
+            return;
+        }
+        taskDefinitionFound.whenComplete((result, exception) -> {
+            schedule(workflowRunner, "poll", () -> poll(workflowRunner), pollInterval);
+            scheduler.execute(() -> launch(index + 1));
+        });
+    }
+
+    private void poll(WorkflowRunner workflowRunner) {
+        if (workflowRunner.isWorkflowFinished()) {
+            checkMetrics(workflowRunner);
+        } else {
+            schedule(workflowRunner, "poll", () -> poll(workflowRunner), pollInterval);
+        }
+    }
+
+    private void checkMetrics(WorkflowRunner workflowRunner) {
+        workflowRunner.checkMetrics(metricDataBatcher).whenCompleteAsync((timeUntilNextCheck, exception) -> runStage(workflowRunner, "get the metrics of", () -> {
+            if (exception != null) {
+                throw new CompletionException(exception);
+            }
+            if (timeUntilNextCheck.isPresent()) {
+                schedule(workflowRunner, "get the metrics of", () -> checkMetrics(workflowRunner), timeUntilNextCheck.get());
+            } else {
+                workflowRunner.uploadAndSaveRunInfo();
+                workflowRunner.deregisterTasks(taskDefinitionWatcher);
+                complete(workflowRunner);
+            }
+        }), scheduler);
+    }
+
+    private synchronized void complete(WorkflowRunner workflowRunner) {
+        try {
+            onWorkflowCompleted.accept(workflowRunner);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to report the results of {}", workflowRunner.getCompleteEntryName(), e);
+        } finally {
+            workflowsRemaining.countDown();
+        }
+    }
+
+    private void fail(WorkflowRunner workflowRunner) {
+        numberOfWorkflowsFailed.incrementAndGet();
+        try {
+            workflowRunner.deregisterTasks(taskDefinitionWatcher);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to deregister the tasks of {}", workflowRunner.getCompleteEntryName(), e);
+        } finally {
+            workflowsRemaining.countDown();
+        }
+    }
+
+    private void schedule(WorkflowRunner workflowRunner, String stageName, Runnable stage, Duration delay) {
+        scheduler.schedule(() -> runStage(workflowRunner, stageName, stage), delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a stage of the workflow. A workflow whose stage throws an exception is failed, without affecting the other workflows.
+     * @param workflowRunner
+     * @param stageName
+     * @param stage
+     */
+    private void runStage(WorkflowRunner workflowRunner, String stageName, Runnable stage) {
+        try {
+            stage.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to {} {}", stageName, workflowRunner.getCompleteEntryName(), e);
+            fail(workflowRunner);
+        }
+    }
+}
@@ -19,7 +19,6 @@ package io.dockstore.tooltester.runWorkflow;
 import static io.dockstore.common.S3ClientHelper.createFileName;
 import static io.dockstore.common.metrics.MetricsDataS3Client.generateKey;
 import static io.dockstore.tooltester.client.cli.JCommanderUtility.out;
-import static io.dockstore.utils.ExceptionHandler.API_ERROR;
 import static io.dockstore.utils.ExceptionHandler.COMMAND_ERROR;
 import static io.dockstore.utils.ExceptionHandler.GENERIC_ERROR;
 import static io.dockstore.utils.ExceptionHandler.errorMessage;
@@ -31,46 +30,50 @@ import static org.apache.commons.lang3.time.DurationFormatUtils.formatDuration;
 import static software.amazon.awssdk.utils.DateUtils.parseIso8601Date;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import io.dockstore.common.Partner;
-import io.dockstore.common.Utilities;
 import io.dockstore.openapi.client.api.ExtendedGa4GhApi;
 import io.dockstore.openapi.client.api.Ga4Ghv20Api;
 import io.dockstore.openapi.client.api.WorkflowsApi;
 import io.dockstore.openapi.client.model.ExecutionsRequestBody;
 import io.dockstore.openapi.client.model.FileWrapper;
 import io.dockstore.openapi.client.model.RunExecution;
+import io.dockstore.openapi.client.model.ToolFile;
+import io.dockstore.openapi.client.model.ToolFile.FileTypeEnum;
 import io.dockstore.openapi.client.model.Workflow;
+import io.dockstore.openapi.client.model.Workflow.DescriptorTypeEnum;
 import io.dockstore.openapi.client.model.WorkflowSubClass;
+import io.dockstore.tooltester.runWorkflow.MetricDataBatcher.MetricDatapoint;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesAttachment;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesLog;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesRequestException;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesRunLog;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesRunRequest;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
-import software.amazon.awssdk.services.cloudwatch.model.Datapoint;
-import software.amazon.awssdk.services.cloudwatch.model.Dimension;
-import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsRequest;
-import software.amazon.awssdk.services.cloudwatch.model.GetMetricStatisticsResponse;
-import software.amazon.awssdk.services.cloudwatch.model.Statistic;
-import software.amazon.awssdk.services.ecs.EcsClient;
-import software.amazon.awssdk.services.ecs.model.DeregisterTaskDefinitionRequest;
-import software.amazon.awssdk.services.ecs.model.DescribeTaskDefinitionRequest;
-import software.amazon.awssdk.services.ecs.model.DescribeTaskDefinitionResponse;
-import software.amazon.awssdk.services.ecs.model.ListTaskDefinitionsRequest;
-import software.amazon.awssdk.services.ecs.model.ListTaskDefinitionsResponse;
+import software.amazon.awssdk.services.ecs.model.TaskDefinition;
 
 /**
  * A class to run workflows and get their metrics
@@ -80,30 +83,45 @@ public class WorkflowRunner {
     public static final Gson GSON = new Gson();
     private static final Logger LOGGER = LoggerFactory.getLogger(WorkflowRunner.class);
     private static final String COMPLETE = "COMPLETE";
-    private static final int MAX_NUMBER_OF_TRIES = 15;
+    // Used when the descriptor type versions of a workflow version aren't known
+    private static final String DEFAULT_WDL_VERSION = "1.0";
+    private static final String DEFAULT_CWL_VERSION = "v1.0";
+    private static final List<String> METRIC_NAMES = List.of("CpuUtilized", "MemoryUtilized");
+    private static final int METRIC_PERIOD_SECONDS = 60;
+    // Container Insights usually publishes a run's metrics within a few minutes of it finishing, so the metrics are checked with backoff until they cover the run
+    private static final Duration MAX_METRICS_WAIT = Duration.ofMinutes(15);
+    private static final Duration INITIAL_METRICS_POLL_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration MAX_METRICS_POLL_INTERVAL = Duration.ofMinutes(2);
+    // If there are no datapoints at all this long after the run ended, Container Insights isn't publishing the metrics, so they aren't waited for
+    private static final Duration CONTAINER_INSIGHTS_LAG = Duration.ofMinutes(5);
+    // How many times in a row the status of a run can't be got, because of connection or server errors, before the run is given up on
+    private static final int MAX_CONSECUTIVE_STATUS_FAILURES = 10;
     private String entry;
     private String version;
     private String runID = null;
     private String pathOfTestParameter;
-    private String agcWrapperPath = "agcWrapper.json";
-    private JsonObject log = null;
+    private WesRunLog log = null;
     private Boolean finished = false;
     private String state;
     private Workflow.DescriptorTypeEnum descriptorType;
+    private String descriptorTypeVersion;
+    private WesClient wesClient;
     private ExtendedGa4GhApi extendedGa4GhApi;
     private WorkflowsApi workflowsApi;
-    private String configFilePath;
     private Date workflowStartTime = null;
     private Date workflowEndTime = null;
+    private Instant timeFinishedWasDetected = null;
+    private int consecutiveStatusFailures = 0;
+    private final Map<String, List<MetricDatapoint>> datapointsForEachMetric = new HashMap<>();
+    private Duration metricsPollInterval = INITIAL_METRICS_POLL_INTERVAL;
     private RunExecution runMetrics;
-    private EcsClient ecsClient;
     private String taskDefinitionFamily = null;
     private String taskDefinitionArn = null;
     private String clusterName;
     private String resultDirectory;
     private ExecutionsRequestBody runMetricsExecutionRequestBody = null;
 
-    private final List<String> inProgressStates = Arrays.asList("RUNNING", "INITIALIZING");
+    private final List<String> inProgressStates = Arrays.asList("QUEUED", "INITIALIZING", "RUNNING");
 
     private List<TimeStatisticForOneTask> timesForEachTask = null;
 
@@ -118,15 +136,21 @@ public class WorkflowRunner {
     @SuppressWarnings("checkstyle:parameternumber")
     public WorkflowRunner(String entry, String version, String pathOfTestParameter, ExtendedGa4GhApi extendedGa4GhApi, WorkflowsApi workflowsApi, WorkflowRunnerConfig workflowRunnerConfig,
         String resultDirectory) {
+        this(entry, version, pathOfTestParameter, workflowsApi.getPublishedWorkflowByPath(entry, WorkflowSubClass.BIOWORKFLOW, null, version), extendedGa4GhApi,
+            workflowsApi, workflowRunnerConfig, resultDirectory);
+    }
+
+    @SuppressWarnings("checkstyle:parameternumber")
+    WorkflowRunner(String entry, String version, String pathOfTestParameter, Workflow workflow, ExtendedGa4GhApi extendedGa4GhApi, WorkflowsApi workflowsApi,
+        WorkflowRunnerConfig workflowRunnerConfig, String resultDirectory) {
         this.entry = entry;
         this.version = version;
         this.pathOfTestParameter = pathOfTestParameter;
         this.extendedGa4GhApi = extendedGa4GhApi;
         this.workflowsApi = workflowsApi;
         this.runMetrics = new RunExecution();
-        this.ecsClient = EcsClient.builder().build();
         this.resultDirectory = resultDirectory;
-        setDescriptorLanguage(workflowRunnerConfig);
+        setDescriptorLanguage(workflow, workflowRunnerConfig);
     }
 
     /**
@@ -164,19 +188,30 @@ public class WorkflowRunner {
         }
     }
 
-    private void setDescriptorLanguage(WorkflowRunnerConfig workflowRunnerConfig) {
-        // Get the workflow object associated with the provided entry path
-        final Workflow workflow = workflowsApi.getPublishedWorkflowByPath(entry, WorkflowSubClass.BIOWORKFLOW, null, version);
+    private void setDescriptorLanguage(Workflow workflow, WorkflowRunnerConfig workflowRunnerConfig) {
         descriptorType = workflow.getDescriptorType();
+        // The descriptor type version, like 1.0 for WDL 1.0, is sent with the run
+        descriptorTypeVersion = Optional.ofNullable(workflow.getWorkflowVersions()).orElse(List.of()).stream()
+            .filter(workflowVersion -> version.equals(workflowVersion.getName()) && workflowVersion.getVersionMetadata() != null
+                && workflowVersion.getVersionMetadata().getDescriptorTypeVersions() != null)
+            .flatMap(workflowVersion -> workflowVersion.getVersionMetadata().getDescriptorTypeVersions().stream())
+            .findFirst()
+            .orElse(null);
         switch (descriptorType) {
         case WDL:
-            configFilePath = workflowRunnerConfig.getPathToWdlConfigFIle();
+            wesClient = workflowRunnerConfig.getWdlWesClient();
             clusterName = workflowRunnerConfig.getWdlEcsCluster();
+            if (descriptorTypeVersion == null) {
+                descriptorTypeVersion = DEFAULT_WDL_VERSION;
+            }
             break;
 
         case CWL:
-            configFilePath = workflowRunnerConfig.getPathToCwlConfigFile();
+            wesClient = workflowRunnerConfig.getCwlWesClient();
             clusterName = workflowRunnerConfig.getCwlEcsCluster();
+            if (descriptorTypeVersion == null) {
+                descriptorTypeVersion = DEFAULT_CWL_VERSION;
+            }
             break;
 
         default:
@@ -185,66 +220,141 @@ public class WorkflowRunner {
     }
 
 
-    private void createAgcWrapper() {
-
-        String commandToWrite = "{\"workflowInputs\": \"" + pathOfTestParameter + "\"}";
-
-        try (
-            BufferedWriter writer = new BufferedWriter(new FileWriter(agcWrapperPath))
-        ) {
-            writer.write(commandToWrite);
-        } catch (IOException e) {
-            exceptionMessage(e, "There as an error writing to " + agcWrapperPath, COMMAND_ERROR);
-        }
-    }
-
     private String getEntryNameForApi() {
         return "#workflow/" + entry;
     }
 
-    private String getCompleteEntryName() {
+    public String getCompleteEntryName() {
         return entry + ":" + version;
     }
 
-    public void runWorkflow() {
-        ImmutablePair<String, String> result = null;
+    /**
+     * Launches the workflow through WES.
+     * @param taskDefinitionWatcher watches for the ECS task definition that's registered for the run
+     * @return completed once the run's task definition was found, or once the watcher stopped waiting for it
+     * @throws UncheckedIOException if the run couldn't be launched
+     */
+    public CompletableFuture<Void> runWorkflow(TaskDefinitionWatcher taskDefinitionWatcher) {
+        final CompletableFuture<TaskDefinition> newTaskDefinition = taskDefinitionWatcher.watchForNewTaskDefinition();
 
-        final List<String> ecsTasksBeforeWorkflowWasRun = getListOfEcsTasks();
+        boolean launched = false;
+        try {
+            runID = wesClient.runWorkflow(createRunRequest());
+            launched = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to launch " + getCompleteEntryName() + " through WES", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while launching " + getCompleteEntryName() + " through WES", e);
+        } finally {
+            if (!launched) {
+                // No task definition will be registered for this run, so stop waiting for one, otherwise the next run's would be given to this run
+                newTaskDefinition.cancel(false);
+            }
+        }
+        return newTaskDefinition.thenAccept(taskDefinition -> {
+            if (taskDefinition == null) {
+                LOGGER.warn("No ECS task definition was found for {}, so its metrics won't be collected", getCompleteEntryName());
+            } else {
+                taskDefinitionFamily = taskDefinition.family();
+                taskDefinitionArn = taskDefinition.taskDefinitionArn();
+            }
+        });
+    }
 
+    private WesRunRequest createRunRequest() throws IOException {
+        final Path testParameterFile = Path.of(pathOfTestParameter);
+        final byte[] testParameterFileContent = Files.readAllBytes(testParameterFile);
         switch (descriptorType) {
         case WDL:
-            createAgcWrapper();
-            result = Utilities.executeCommand("dockstore workflow wes launch --entry "
-                + getCompleteEntryName() + " --json " + agcWrapperPath + " --attach " + pathOfTestParameter
-                + " --config " + configFilePath + " --script");
-            break;
+            return createWdlRunRequest(testParameterFile.getFileName().toString(), testParameterFileContent);
         case CWL:
-            result = Utilities.executeCommand("dockstore workflow wes launch --entry "
-                + getCompleteEntryName() + " --json " + pathOfTestParameter + " --inline-workflow "
-                + " --config " + configFilePath + " --script");
-            break;
+            return createCwlRunRequest(testParameterFileContent);
         default:
-            errorMessage("The descriptor type of this workflow is not supported", GENERIC_ERROR);
+            throw new IllegalStateException("The descriptor type of " + getCompleteEntryName() + " is not supported");
         }
-        runID = StringUtils.deleteWhitespace(result.getLeft());
-        setTaskFamily(ecsTasksBeforeWorkflowWasRun);
     }
 
+    /**
+     * AGC runs a WDL workflow from its TRS URL, reading the inputs from the attached file named by workflowInputs.
+     * @param testParameterFileName
+     * @param testParameterFileContent
+     * @return
+     */
+    private WesRunRequest createWdlRunRequest(String testParameterFileName, byte[] testParameterFileContent) {
+        final String trsDescriptorUrl = workflowsApi.getApiClient().getBasePath() + "/ga4gh/trs/v2/tools/" + URLEncoder.encode(getEntryNameForApi(), StandardCharsets.UTF_8)
+            + "/versions/" + URLEncoder.encode(version, StandardCharsets.UTF_8) + "/PLAIN_WDL/descriptor";
+        JsonObject workflowParams = new JsonObject();
+        workflowParams.addProperty("workflowInputs", testParameterFileName);
+        return new WesRunRequest(trsDescriptorUrl, DescriptorTypeEnum.WDL.toString(), descriptorTypeVersion, workflowParams,
+            List.of(new WesAttachment(testParameterFileName, testParameterFileContent)));
+    }
+
+    /**
+     * A CWL workflow is run from its descriptors, which are attached to the run, with the test parameter file as its inputs.
+     * @param testParameterFileContent
+     * @return
+     */
+    private WesRunRequest createCwlRunRequest(byte[] testParameterFileContent) {
+        final Ga4Ghv20Api ga4Ghv20Api = new Ga4Ghv20Api(workflowsApi.getApiClient());
+        final String type = DescriptorTypeEnum.CWL.toString();
+        List<WesAttachment> attachments = new ArrayList<>();
+        String primaryDescriptorPath = null;
+        for (ToolFile toolFile : ga4Ghv20Api.toolsIdVersionsVersionIdTypeFilesGet(getEntryNameForApi(), type, version, null)) {
+            if (toolFile.getFileType() != FileTypeEnum.PRIMARY_DESCRIPTOR && toolFile.getFileType() != FileTypeEnum.SECONDARY_DESCRIPTOR) {
+                continue;
+            }
+            final String path = StringUtils.removeStart(toolFile.getPath(), "/");
+            final FileWrapper descriptor = ga4Ghv20Api.toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(getEntryNameForApi(), type, version, "/" + path);
+            attachments.add(new WesAttachment(path, descriptor.getContent().getBytes(StandardCharsets.UTF_8)));
+            if (toolFile.getFileType() == FileTypeEnum.PRIMARY_DESCRIPTOR) {
+                primaryDescriptorPath = path;
+            }
+        }
+        if (primaryDescriptorPath == null) {
+            throw new IllegalStateException("The primary descriptor of " + getCompleteEntryName() + " was not found");
+        }
+        return new WesRunRequest(primaryDescriptorPath, type, descriptorTypeVersion,
+            GSON.fromJson(new String(testParameterFileContent, StandardCharsets.UTF_8), JsonObject.class), attachments);
+    }
+
+    /**
+     * Checks whether the run has finished, getting its log if it has.
+     * @return
+     * @throws UncheckedIOException if the WES endpoint rejected the request for the run's status, like with 401 Unauthorized or 404 Not Found,
+     *     or the status couldn't be got MAX_CONSECUTIVE_STATUS_FAILURES times in a row
+     */
     public Boolean isWorkflowFinished() {
         if (finished) {
             return true;
         }
-        ImmutablePair<String, String> result = Utilities.executeCommand("dockstore workflow wes logs --id " + runID
-            + " --config " + configFilePath + " --script");
-        String logJson = result.getLeft();
-        log = GSON.fromJson(logJson, JsonObject.class);
-        state = log.get("state").getAsString();
-        if (inProgressStates.contains(state)) {
+        try {
+            state = wesClient.getRunStatus(runID);
+            if (inProgressStates.contains(state)) {
+                consecutiveStatusFailures = 0;
+                return false;
+            }
+            log = wesClient.getRunLog(runID);
+        } catch (IOException e) {
+            if (e instanceof WesRequestException wesRequestException && wesRequestException.isClientError()) {
+                throw new UncheckedIOException("Unable to get the status of run " + runID + " of " + getCompleteEntryName(), e);
+            }
+            consecutiveStatusFailures++;
+            if (consecutiveStatusFailures >= MAX_CONSECUTIVE_STATUS_FAILURES) {
+                throw new UncheckedIOException("Unable to get the status of run " + runID + " of " + getCompleteEntryName() + " " + consecutiveStatusFailures
+                    + " times in a row", e);
+            }
+            // The run may still be running, so check again later
+            LOGGER.warn("Unable to get the status of run {} of {}", runID, getCompleteEntryName(), e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
-        } else {
-            finished = true;
-            return true;
         }
+        state = log.state();
+        finished = true;
+        timeFinishedWasDetected = Instant.now();
+        return true;
     }
 
 
@@ -252,20 +362,16 @@ public class WorkflowRunner {
         List<TimeStatisticForOneTask> times = new ArrayList<>();
         switch (descriptorType) {
         case WDL:
-            JsonArray arr = log.getAsJsonArray("task_logs");
-            for (JsonElement element : arr) {
-                String startTime = element.getAsJsonObject().get("start_time").getAsString();
-                String endTime = element.getAsJsonObject().get("end_time").getAsString();
-                Date startTimeDate = Date.from(parseIso8601Date(startTime));
-                Date endTimeDate = Date.from(parseIso8601Date(endTime));
-                times.add(new TimeStatisticForOneTask(startTimeDate, endTimeDate, element.getAsJsonObject().get("name").getAsString()));
+            for (WesLog taskLog : log.taskLogs()) {
+                Date startTimeDate = Date.from(parseIso8601Date(taskLog.startTime()));
+                Date endTimeDate = Date.from(parseIso8601Date(taskLog.endTime()));
+                times.add(new TimeStatisticForOneTask(startTimeDate, endTimeDate, taskLog.name()));
             }
             break;
 
         case CWL:
-            JsonElement runLog = log.getAsJsonObject().get("run_log");
-            String startTime = runLog.getAsJsonObject().get("start_time").getAsString();
-            String endTime = runLog.getAsJsonObject().get("end_time").getAsString();
+            String startTime = log.runLog().startTime();
+            String endTime = log.runLog().endTime();
             Date startTimeDate = null;
             Date endTimeDate = null;
             try {
@@ -274,14 +380,14 @@ public class WorkflowRunner {
                 // The TOIL (which is what runs CWL) endpoint gives times that look like this: 2023-03-20T16:49:23.664
                 // the issue is, that the time given is in the UTC time zone, but that is not specified in the time
                 // string. The ` + "Z"` specifies to the parser that the time is in the UTC time zone.
-            } catch (Exception ex) {
-                exceptionMessage(ex, "Unable to pass date for a CWL workflow", API_ERROR);
+            } catch (RuntimeException ex) {
+                throw new IllegalStateException("Unable to parse the start and end times of " + getCompleteEntryName(), ex);
             }
             times.add(new TimeStatisticForOneTask(startTimeDate, endTimeDate, getCompleteEntryName()));
             break;
 
         default:
-            errorMessage("Workflow is not finished, statistics are not available yet", COMMAND_ERROR);
+            throw new IllegalStateException("The descriptor type of " + getCompleteEntryName() + " is not supported");
         }
         this.timesForEachTask = times;
     }
@@ -363,6 +469,7 @@ public class WorkflowRunner {
             if (time.getEndTime() != null) {
                 out("END TIME: " + time.getEndTime().toString());
                 out("DURATION: " + formatDuration(time.getTimeTakenInMilliseconds(), "m' minutes 's' seconds 'S' milliseconds'"));
+                time.getMetricAverages().forEach((metricName, average) -> out(metricName + " AVERAGE: " + average));
             } else {
                 out("The end time for this task was null");
             }
@@ -393,7 +500,7 @@ public class WorkflowRunner {
             printStatisticsInRunMetrics();
 
         } else {
-            errorMessage("Workflow is not finished, statistics are not available yet", COMMAND_ERROR);
+            throw new IllegalStateException("The run of " + getCompleteEntryName() + " is not finished, statistics are not available yet");
         }
     }
 
@@ -414,44 +521,6 @@ public class WorkflowRunner {
         }
     }
 
-    private List<String> getListOfEcsTasks() {
-        ListTaskDefinitionsRequest request = ListTaskDefinitionsRequest.builder().build();
-        ListTaskDefinitionsResponse response = ecsClient.listTaskDefinitions(request);
-        return response.taskDefinitionArns();
-    }
-
-
-    private void setTaskFamily(final List<String> listOfEcsTasksBeforeNewOneWasAdded) {
-        int numberOfAttempts = 0;
-        while (numberOfAttempts < MAX_NUMBER_OF_TRIES) {
-            numberOfAttempts++;
-            List<String> ecsTasks = new ArrayList<>();
-            ecsTasks.addAll(getListOfEcsTasks());
-            ecsTasks.removeAll(listOfEcsTasksBeforeNewOneWasAdded);
-
-            if (!ecsTasks.isEmpty()) {
-                String ecsTaskArn = ecsTasks.get(0);
-                if (ecsTasks.size() != 1) {
-                    LOGGER.warn("More than one ECS task has been created, assuming the first one is the ECS task"
-                        + " for this workflow, the following were discovered: " + System.lineSeparator()
-                        + ecsTasks);
-                }
-                DescribeTaskDefinitionRequest request = DescribeTaskDefinitionRequest.builder().taskDefinition(ecsTaskArn).build();
-                DescribeTaskDefinitionResponse response = ecsClient.describeTaskDefinition(request);
-                taskDefinitionFamily = response.taskDefinition().family();
-                taskDefinitionArn = response.taskDefinition().taskDefinitionArn();
-                break;
-            }
-
-            try {
-                final Long waitTime = 20L;
-                TimeUnit.SECONDS.sleep(waitTime);
-            } catch (Exception ex) {
-                exceptionMessage(ex, "time error", COMMAND_ERROR);
-            }
-        }
-    }
-
     public static void uploadRunInfo(ExtendedGa4GhApi extendedGa4GhApi, ExecutionsRequestBody executionsRequestBody, String partnerName,
         String entryNameForApi, String version, String message) {
         try {
@@ -483,14 +552,19 @@ public class WorkflowRunner {
     }
 
 
+    /**
+     * Uploads and saves the run's information, with the metrics that were last got by checkMetrics.
+     */
     public void uploadAndSaveRunInfo() {
         runMetrics.setExecutionStatus(getExecutionStatus());
         if (getTotalWallClockTimeInISO861Standard() != null) {
             runMetrics.setExecutionTime(getTotalWallClockTimeInISO861Standard());
             runMetrics.setDateExecuted(workflowStartTime.toInstant().toString());
         }
-        addDataFromSingleMetric("CpuUtilized");
-        addDataFromSingleMetric("MemoryUtilized");
+        for (Map.Entry<String, List<MetricDatapoint>> datapointsForMetric : datapointsForEachMetric.entrySet()) {
+            addDataFromSingleMetric(datapointsForMetric.getKey(), datapointsForMetric.getValue());
+        }
+        addMetricsToEachTask();
 
         runMetricsExecutionRequestBody = new ExecutionsRequestBody().addRunExecutionsItem(runMetrics);
 
@@ -498,39 +572,95 @@ public class WorkflowRunner {
         saveRunInfo();
     }
 
-    private void addDataFromSingleMetric(String metricName) {
+    /**
+     * Gets the run's metrics from CloudWatch, in a request that's batched with the requests of other runs. They're complete once the datapoints of every
+     * metric cover the run, and they're used as they are once MAX_METRICS_WAIT has passed since the run was found to be finished.
+     * @param metricDataBatcher
+     * @return empty if the metrics don't need to be checked again, otherwise how long to wait before checking them again, which grows with each check
+     */
+    public CompletableFuture<Optional<Duration>> checkMetrics(MetricDataBatcher metricDataBatcher) {
         if (taskDefinitionArn == null || taskDefinitionFamily == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        setStartAndEndTime();
+        if (workflowStartTime == null || workflowEndTime == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return metricDataBatcher.getMetricData(clusterName, taskDefinitionFamily, workflowStartTime.toInstant(), workflowEndTime.toInstant(), METRIC_NAMES)
+            .thenApply(datapoints -> {
+                datapointsForEachMetric.putAll(datapoints);
+                return getTimeUntilNextMetricsCheck();
+            });
+    }
+
+    private Optional<Duration> getTimeUntilNextMetricsCheck() {
+        final Instant deadline = Optional.ofNullable(timeFinishedWasDetected).orElseGet(Instant::now).plus(MAX_METRICS_WAIT);
+        final Optional<Duration> timeUntilNextCheck = getTimeUntilNextMetricsCheck(getCompleteEntryName(), datapointsForEachMetric, workflowEndTime.toInstant(), deadline,
+            metricsPollInterval, Instant.now());
+        if (timeUntilNextCheck.isPresent()) {
+            metricsPollInterval = metricsPollInterval.multipliedBy(2).compareTo(MAX_METRICS_POLL_INTERVAL) > 0 ? MAX_METRICS_POLL_INTERVAL : metricsPollInterval.multipliedBy(2);
+        }
+        return timeUntilNextCheck;
+    }
+
+    /**
+     * Returns how long to wait before checking the metrics of a run again, or empty if the datapoints of every metric cover the run, if there are no datapoints at all
+     * although the run ended longer than CONTAINER_INSIGHTS_LAG ago, or if the deadline has passed.
+     * @param completeEntryName
+     * @param datapointsForEachMetric
+     * @param endTime the end time of the run
+     * @param deadline when to stop waiting for the metrics to be complete
+     * @param pollInterval how long to wait, unless the deadline comes first
+     * @param now
+     * @return
+     */
+    static Optional<Duration> getTimeUntilNextMetricsCheck(String completeEntryName, Map<String, List<MetricDatapoint>> datapointsForEachMetric, Instant endTime,
+        Instant deadline, Duration pollInterval, Instant now) {
+        if (datapointsForEachMetric.values().stream().allMatch(datapoints -> doDatapointsCoverRun(datapoints, endTime))) {
+            return Optional.empty();
+        }
+        if (datapointsForEachMetric.values().stream().allMatch(List::isEmpty) && now.isAfter(endTime.plus(CONTAINER_INSIGHTS_LAG))) {
+            LOGGER.warn("There are no metrics for {} {} minutes after it ended, so Container Insights isn't publishing them, not waiting for them", completeEntryName,
+                CONTAINER_INSIGHTS_LAG.toMinutes());
+            return Optional.empty();
+        }
+        final Duration timeUntilDeadline = Duration.between(now, deadline);
+        if (timeUntilDeadline.isNegative() || timeUntilDeadline.isZero()) {
+            LOGGER.warn("The metrics of {} were not complete after waiting {} minutes, using the datapoints that are available", completeEntryName,
+                MAX_METRICS_WAIT.toMinutes());
+            return Optional.empty();
+        }
+        return Optional.of(pollInterval.compareTo(timeUntilDeadline) < 0 ? pollInterval : timeUntilDeadline);
+    }
+
+    /**
+     * The datapoints cover the run once there's one for the last full minute of the run. The run's last partial minute may never get a datapoint.
+     * @param datapoints
+     * @param endTime the end time of the run
+     * @return
+     */
+    static boolean doDatapointsCoverRun(List<MetricDatapoint> datapoints, Instant endTime) {
+        return datapoints.stream()
+            .map(MetricDatapoint::timestamp)
+            .max(Comparator.naturalOrder())
+            .map(lastTimestamp -> !lastTimestamp.plusSeconds(2 * METRIC_PERIOD_SECONDS).isBefore(endTime))
+            .orElse(false);
+    }
+
+    private void addDataFromSingleMetric(String metricName, List<MetricDatapoint> datapoints) {
+        if (datapoints.isEmpty()) {
+            LOGGER.warn("There are no {} datapoints for {}", metricName, getCompleteEntryName());
             return;
         }
-        CloudWatchClient cloudWatchClient = CloudWatchClient.builder().build();
-        Dimension clusterNameDimension = Dimension.builder()
-            .name("ClusterName")
-            .value(clusterName)
-            .build();
-        Dimension clusterTaskDefinitionFamily = Dimension.builder()
-            .name("TaskDefinitionFamily")
-            .value(taskDefinitionFamily)
-            .build();
-        final int period = 60;
-        GetMetricStatisticsRequest request = GetMetricStatisticsRequest.builder()
-            .namespace("ECS/ContainerInsights")
-            .metricName(metricName)
-            .dimensions(clusterNameDimension, clusterTaskDefinitionFamily)
-            .period(period)
-            .statistics(Statistic.AVERAGE)
-            .startTime(workflowStartTime.toInstant())
-            .endTime(workflowEndTime.toInstant())
-            .build();
-        GetMetricStatisticsResponse response = cloudWatchClient.getMetricStatistics(request);
         Double sumOfDataPoints = 0D;
-        Double maxDataPoint = response.datapoints().get(0).average();
-        Double minDataPoint = response.datapoints().get(0).average();
-        final int numberOfDataPoints = response.datapoints().size();
-        for (Datapoint datapoint : response.datapoints()) {
-            sumOfDataPoints += datapoint.average();
-            maxDataPoint = max(maxDataPoint, datapoint.average());
-            minDataPoint = min(minDataPoint, datapoint.average());
-            // datapoint.average() is not actually obtaining the average. This is because the ECS container is only
+        Double maxDataPoint = datapoints.get(0).value();
+        Double minDataPoint = datapoints.get(0).value();
+        final int numberOfDataPoints = datapoints.size();
+        for (MetricDatapoint datapoint : datapoints) {
+            sumOfDataPoints += datapoint.value();
+            maxDataPoint = max(maxDataPoint, datapoint.value());
+            minDataPoint = min(minDataPoint, datapoint.value());
+            // datapoint.value() is not actually obtaining the average. This is because the ECS container is only
             // collecting metrics every minute, and we have asked for a minute by minute metric breakdown.
             // So, we are getting the only statistic collected for each minute.
         }
@@ -543,10 +673,36 @@ public class WorkflowRunner {
 
     }
 
-    public void deregisterTasks() {
+    /**
+     * The metrics are of the task definition family, which covers every task of the run, so each task gets the average of the datapoints from while it ran.
+     */
+    private void addMetricsToEachTask() {
+        if (timesForEachTask == null) {
+            setTimeForEachTask();
+        }
+        for (TimeStatisticForOneTask time : timesForEachTask) {
+            if (time.getStartTime() == null || time.getEndTime() == null) {
+                continue;
+            }
+            final Instant taskStartMinute = time.getStartTime().toInstant().truncatedTo(ChronoUnit.MINUTES);
+            final Instant taskEndTime = time.getEndTime().toInstant();
+            for (Map.Entry<String, List<MetricDatapoint>> datapointsForMetric : datapointsForEachMetric.entrySet()) {
+                datapointsForMetric.getValue().stream()
+                    .filter(datapoint -> !datapoint.timestamp().isBefore(taskStartMinute) && datapoint.timestamp().isBefore(taskEndTime))
+                    .mapToDouble(MetricDatapoint::value)
+                    .average()
+                    .ifPresent(average -> time.putMetricAverage(datapointsForMetric.getKey(), average));
+            }
+        }
+    }
+
+    /**
+     * Deregisters the ECS task definition of the run.
+     * @param taskDefinitionWatcher found the task definition, and deregisters it with the ECS client that's shared by the runs
+     */
+    public void deregisterTasks(TaskDefinitionWatcher taskDefinitionWatcher) {
         if (Workflow.DescriptorTypeEnum.WDL == descriptorType && taskDefinitionArn != null) {
-            DeregisterTaskDefinitionRequest request = DeregisterTaskDefinitionRequest.builder().taskDefinition(taskDefinitionArn).build();
-            ecsClient.deregisterTaskDefinition(request);
+            taskDefinitionWatcher.deregisterTaskDefinition(taskDefinitionArn);
         }
     }
 
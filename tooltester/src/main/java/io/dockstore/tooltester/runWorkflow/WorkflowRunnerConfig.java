@@ -1,13 +1,8 @@
 package io.dockstore.tooltester.runWorkflow;
 
-import static io.dockstore.utils.ExceptionHandler.COMMAND_ERROR;
 import static io.dockstore.utils.ExceptionHandler.IO_ERROR;
 import static io.dockstore.utils.ExceptionHandler.exceptionMessage;
-import static java.util.UUID.randomUUID;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -27,8 +22,9 @@ public class WorkflowRunnerConfig {
     private String wdlEcsCluster;
     private String cwlEcsCluster;
 
-    private String pathToWdlConfigFIle;
-    private String pathToCwlConfigFile;
+    // Created when they're first used, so that commands that don't run workflows don't need the WES URLs
+    private WesClient wdlWesClient;
+    private WesClient cwlWesClient;
 
     public WorkflowRunnerConfig(String configFilePathString)  {
         Path configFilePath = Paths.get(configFilePathString);
@@ -48,45 +44,6 @@ public class WorkflowRunnerConfig {
         this.cwlWesUrl = yamlMap.get("CWL-WES-URL");
         this.wdlEcsCluster = yamlMap.get("WDL-ECS-CLUSTER");
         this.cwlEcsCluster = yamlMap.get("CWL-ECS-CLUSTER");
-
-        createDockstoreCliConfigFiles();
-    }
-
-    private String getContentOfCliConfigFile(String wesUrl) {
-        String content = "token = " + getDockstoreToken() + System.lineSeparator()
-                + "server-url = " + getServerUrl() + System.lineSeparator()
-                + "[WES]" + System.lineSeparator()
-                + "url: " + wesUrl + System.lineSeparator()
-                + "authorization: " + getAwsAuthorization() + System.lineSeparator()
-                + "type: aws" + System.lineSeparator();
-        return content;
-    }
-
-    private void createDockstoreCliConfigFiles()  {
-        File wdlCliConfigFile = new File("wdlCliConfigFile-" + randomUUID());
-        wdlCliConfigFile.deleteOnExit();
-
-        try (
-                BufferedWriter writer = new BufferedWriter(new FileWriter(wdlCliConfigFile.getPath()))
-        ) {
-            writer.write(getContentOfCliConfigFile(getWdlWesUrl()));
-            this.pathToWdlConfigFIle = wdlCliConfigFile.getPath();
-        } catch (IOException e) {
-            exceptionMessage(e, "Error writing to WDL CLI config file", COMMAND_ERROR);
-        }
-
-        File cwlCliConfigFile = new File("cwlCliConfigFile-" + randomUUID());
-        cwlCliConfigFile.deleteOnExit();
-
-        try (
-                BufferedWriter writer = new BufferedWriter(new FileWriter(cwlCliConfigFile.getPath()))
-        ) {
-            writer.write(getContentOfCliConfigFile(getCwlWesUrl()));
-            this.pathToCwlConfigFile = cwlCliConfigFile.getPath();
-        } catch (IOException e) {
-            exceptionMessage(e, "Error writing to CWL CLI config file", COMMAND_ERROR);
-        }
-
     }
 
     public String getDockstoreToken() {
@@ -117,12 +74,26 @@ public class WorkflowRunnerConfig {
         return cwlEcsCluster;
     }
 
-    public String getPathToWdlConfigFIle() {
-        return pathToWdlConfigFIle;
+    /**
+     * Returns the client of the WES endpoint that runs WDL workflows, shared by every run so that its connections are reused.
+     * @return
+     */
+    public synchronized WesClient getWdlWesClient() {
+        if (wdlWesClient == null) {
+            wdlWesClient = WesClient.create(getWdlWesUrl(), getAwsAuthorization());
+        }
+        return wdlWesClient;
     }
 
-    public String getPathToCwlConfigFile() {
-        return pathToCwlConfigFile;
+    /**
+     * Returns the client of the WES endpoint that runs CWL workflows, shared by every run so that its connections are reused.
+     * @return
+     */
+    public synchronized WesClient getCwlWesClient() {
+        if (cwlWesClient == null) {
+            cwlWesClient = WesClient.create(getCwlWesUrl(), getAwsAuthorization());
+        }
+        return cwlWesClient;
     }
 
 }
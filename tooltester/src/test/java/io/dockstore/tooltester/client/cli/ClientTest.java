@@ -62,7 +62,7 @@ public class ClientTest {
     public void runWorkflowHelp() throws InterruptedException {
         String[] argv = {"run-workflows-through-wes", "--help"};
         main(argv);
-        assertTrue(systemOut.getText().contains("Runs workflows through the Dockstore CLI and AGC, then both prints and uploads to Dockstore the execution statistics."));
+        assertTrue(systemOut.getText().contains("Runs workflows through WES on AGC, then both prints and uploads to Dockstore the execution statistics."));
     }
 
     /**
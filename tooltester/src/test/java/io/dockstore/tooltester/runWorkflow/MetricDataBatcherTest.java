@@ -0,0 +1,191 @@
+package io.dockstore.tooltester.runWorkflow;
+
+import static io.dockstore.tooltester.runWorkflow.MetricDataBatcher.MAX_QUERIES_PER_REQUEST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.dockstore.tooltester.runWorkflow.MetricDataBatcher.MetricDatapoint;
+import io.dockstore.tooltester.runWorkflow.MetricDataBatcher.MetricsRequest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.CloudWatchException;
+import software.amazon.awssdk.services.cloudwatch.model.Dimension;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataQuery;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.cloudwatch.model.ScanBy;
+
+class MetricDataBatcherTest {
+    private static final List<String> METRIC_NAMES = List.of("CpuUtilized", "MemoryUtilized");
+    private static final Instant START_TIME = Instant.parse("2023-03-20T10:00:00Z");
+    // The stand-in for CloudWatch gives each query the same value at every minute, so the datapoints show which query they came from
+    private static final Map<String, Double> VALUE_FOR_EACH_QUERY = Map.of("run-a/CpuUtilized", 11.0, "run-a/MemoryUtilized", 12.0,
+            "run-b/CpuUtilized", 21.0, "run-b/MemoryUtilized", 22.0);
+    // The stand-in for CloudWatch gives each query at most this many datapoints per response
+    private static final int PAGE_SIZE = 4;
+
+    private final FakeCloudWatchClient cloudWatchClient = new FakeCloudWatchClient();
+    private ScheduledExecutorService scheduler;
+    private MetricDataBatcher metricDataBatcher;
+
+    @BeforeEach
+    void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        metricDataBatcher = new MetricDataBatcher(cloudWatchClient, scheduler, Duration.ofMillis(50));
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        metricDataBatcher.close();
+    }
+
+    @Test
+    void testPartition() {
+        List<MetricsRequest> metricsRequests = new ArrayList<>();
+        final int numberOfRequests = 251;
+        for (int i = 0; i < numberOfRequests; i++) {
+            metricsRequests.add(new MetricsRequest("cluster", "family-" + i, Instant.EPOCH, Instant.EPOCH.plusSeconds(3600), METRIC_NAMES, new CompletableFuture<>()));
+        }
+        List<List<MetricsRequest>> batches = MetricDataBatcher.partition(metricsRequests, MAX_QUERIES_PER_REQUEST);
+        // 250 requests with 2 queries each fill the first batch
+        assertEquals(2, batches.size());
+        assertEquals(250, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+        assertEquals("family-250", batches.get(1).get(0).taskDefinitionFamily());
+
+        // The queries of a request are never split across batches
+        batches = MetricDataBatcher.partition(metricsRequests.subList(0, 3), 3);
+        assertEquals(3, batches.size());
+        assertEquals(List.of(), MetricDataBatcher.partition(List.of(), MAX_QUERIES_PER_REQUEST));
+    }
+
+    @Test
+    void testDatapointsAreGivenToTheirRuns() throws Exception {
+        final CompletableFuture<Map<String, List<MetricDatapoint>>> runA = metricDataBatcher.getMetricData("cluster", "run-a", START_TIME.plusSeconds(30),
+                START_TIME.plusSeconds(300), METRIC_NAMES);
+        final CompletableFuture<Map<String, List<MetricDatapoint>>> runB = metricDataBatcher.getMetricData("cluster", "run-b", START_TIME.plusSeconds(180),
+                START_TIME.plusSeconds(600), METRIC_NAMES);
+
+        // Each run gets the datapoints of its own queries, from the start of its first minute until its end time
+        final Map<String, List<MetricDatapoint>> datapointsOfRunA = runA.get(10, TimeUnit.SECONDS);
+        assertEquals(createDatapoints(0, 5, 11.0), datapointsOfRunA.get("CpuUtilized"));
+        assertEquals(createDatapoints(0, 5, 12.0), datapointsOfRunA.get("MemoryUtilized"));
+        final Map<String, List<MetricDatapoint>> datapointsOfRunB = runB.get(10, TimeUnit.SECONDS);
+        assertEquals(createDatapoints(3, 7, 21.0), datapointsOfRunB.get("CpuUtilized"));
+        assertEquals(createDatapoints(3, 7, 22.0), datapointsOfRunB.get("MemoryUtilized"));
+
+        // Both runs were batched into requests that cover both of their time ranges
+        final GetMetricDataRequest firstRequest = cloudWatchClient.requests.get(0);
+        assertEquals(4, firstRequest.metricDataQueries().size());
+        assertEquals(START_TIME, firstRequest.startTime());
+        assertEquals(START_TIME.plusSeconds(600), firstRequest.endTime());
+        assertEquals(ScanBy.TIMESTAMP_ASCENDING, firstRequest.scanBy());
+        assertEquals(3, cloudWatchClient.requests.size());
+    }
+
+    @Test
+    void testPagesAreCombined() throws Exception {
+        final Map<String, List<MetricDatapoint>> datapoints = metricDataBatcher.getMetricData("cluster", "run-a", START_TIME, START_TIME.plusSeconds(600),
+                METRIC_NAMES).get(10, TimeUnit.SECONDS);
+        assertEquals(createDatapoints(0, 10, 11.0), datapoints.get("CpuUtilized"));
+        assertEquals(createDatapoints(0, 10, 12.0), datapoints.get("MemoryUtilized"));
+
+        // Each page was requested with the token from the previous page
+        assertEquals(3, cloudWatchClient.requests.size());
+        assertNull(cloudWatchClient.requests.get(0).nextToken());
+        assertEquals("1", cloudWatchClient.requests.get(1).nextToken());
+        assertEquals("2", cloudWatchClient.requests.get(2).nextToken());
+    }
+
+    @Test
+    void testFailedRequestFailsEveryRunInTheBatch() {
+        final CloudWatchException failure = (CloudWatchException)CloudWatchException.builder().statusCode(500).message("Internal failure").build();
+        cloudWatchClient.failure = failure;
+        final CompletableFuture<Map<String, List<MetricDatapoint>>> runA = metricDataBatcher.getMetricData("cluster", "run-a", START_TIME,
+                START_TIME.plusSeconds(300), METRIC_NAMES);
+        final CompletableFuture<Map<String, List<MetricDatapoint>>> runB = metricDataBatcher.getMetricData("cluster", "run-b", START_TIME,
+                START_TIME.plusSeconds(300), METRIC_NAMES);
+
+        // The runs are failed instead of waiting for their metrics forever
+        assertSame(failure, assertThrows(ExecutionException.class, () -> runA.get(10, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> runB.get(10, TimeUnit.SECONDS)).getCause());
+        assertEquals(1, cloudWatchClient.requests.size());
+    }
+
+    private static List<MetricDatapoint> createDatapoints(int firstMinute, int numberOfMinutes, double value) {
+        List<MetricDatapoint> datapoints = new ArrayList<>();
+        for (int minute = firstMinute; minute < firstMinute + numberOfMinutes; minute++) {
+            datapoints.add(new MetricDatapoint(START_TIME.plusSeconds(60L * minute), value));
+        }
+        return datapoints;
+    }
+
+    /**
+     * An in-process stand-in for CloudWatch that answers each query with a datapoint for every minute of the requested time range, PAGE_SIZE minutes
+     * per response. The value of the datapoints depends on the task definition family and the metric of the query, not on the query ID.
+     */
+    private static class FakeCloudWatchClient implements CloudWatchClient {
+        private final List<GetMetricDataRequest> requests = new CopyOnWriteArrayList<>();
+        private volatile RuntimeException failure;
+
+        @Override
+        public GetMetricDataResponse getMetricData(GetMetricDataRequest request) {
+            requests.add(request);
+            if (failure != null) {
+                throw failure;
+            }
+            List<Instant> timestamps = new ArrayList<>();
+            for (Instant timestamp = request.startTime(); timestamp.isBefore(request.endTime()); timestamp = timestamp.plusSeconds(60)) {
+                timestamps.add(timestamp);
+            }
+            final int page = request.nextToken() == null ? 0 : Integer.parseInt(request.nextToken());
+            final int end = Math.min((page + 1) * PAGE_SIZE, timestamps.size());
+            final List<Instant> timestampsOnPage = timestamps.subList(page * PAGE_SIZE, end);
+            List<MetricDataResult> results = new ArrayList<>();
+            for (MetricDataQuery query : request.metricDataQueries()) {
+                final String family = query.metricStat().metric().dimensions().stream()
+                        .filter(dimension -> "TaskDefinitionFamily".equals(dimension.name()))
+                        .map(Dimension::value)
+                        .findFirst()
+                        .orElseThrow();
+                final double value = VALUE_FOR_EACH_QUERY.get(family + "/" + query.metricStat().metric().metricName());
+                results.add(MetricDataResult.builder()
+                        .id(query.id())
+                        .timestamps(timestampsOnPage)
+                        .values(timestampsOnPage.stream().map(timestamp -> value).toList())
+                        .build());
+            }
+            return GetMetricDataResponse.builder()
+                    .metricDataResults(results)
+                    .nextToken(end < timestamps.size() ? String.valueOf(page + 1) : null)
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.dockstore.tooltester.runWorkflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.TaskDefinition;
+
+class TaskDefinitionWatcherTest {
+    private static final Gson GSON = new Gson();
+    private static final String ARN_PREFIX = "arn:aws:ecs:us-east-1:123456789012:task-definition/";
+    // The stand-in for the ECS endpoint lists two task definitions per page, sorted by ARN, which sorts by family like ECS when the families have one revision each
+    private static final int PAGE_SIZE = 2;
+
+    private final List<String> taskDefinitionArns = new CopyOnWriteArrayList<>(List.of(ARN_PREFIX + "existing-a:1", ARN_PREFIX + "existing-b:1",
+            ARN_PREFIX + "existing-c:1"));
+    private final AtomicInteger numberOfDescribeRequests = new AtomicInteger();
+    private final AtomicInteger numberOfNextPageRequests = new AtomicInteger();
+    private HttpServer server;
+    private EcsClient ecsClient;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handleEcsRequest);
+        server.start();
+        ecsClient = EcsClient.builder()
+                .endpointOverride(URI.create("http://localhost:" + server.getAddress().getPort()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("accessKeyId", "secretAccessKey")))
+                .build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void stopServer() {
+        scheduler.shutdownNow();
+        ecsClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    void testNewTaskDefinitionIsFound() throws Exception {
+        TaskDefinitionWatcher taskDefinitionWatcher = new TaskDefinitionWatcher(ecsClient, scheduler, Duration.ofMillis(50), Duration.ofMillis(200), Duration.ofSeconds(30));
+        final CompletableFuture<TaskDefinition> newTaskDefinition = taskDefinitionWatcher.watchForNewTaskDefinition();
+        // Registered after the watch started, on the first page when the task definitions are listed newest first
+        taskDefinitionArns.add(ARN_PREFIX + "new-workflow:1");
+        TaskDefinition taskDefinition = newTaskDefinition.get(10, TimeUnit.SECONDS);
+        assertEquals("new-workflow", taskDefinition.family());
+        assertEquals(ARN_PREFIX + "new-workflow:1", taskDefinition.taskDefinitionArn());
+        // The task definitions that existed before the watch started aren't described
+        assertEquals(1, numberOfDescribeRequests.get());
+        // Only the first listing, which saw every task definition, got past the first page. The new task definition sorted ahead of the ones seen before
+        assertEquals(1, numberOfNextPageRequests.get());
+    }
+
+    @Test
+    void testWaitLimit() throws Exception {
+        TaskDefinitionWatcher taskDefinitionWatcher = new TaskDefinitionWatcher(ecsClient, scheduler, Duration.ofMillis(50), Duration.ofMillis(200), Duration.ofMillis(500));
+        assertNull(taskDefinitionWatcher.watchForNewTaskDefinition().get(10, TimeUnit.SECONDS));
+        assertEquals(0, numberOfDescribeRequests.get());
+    }
+
+    private void handleEcsRequest(HttpExchange exchange) throws IOException {
+        final String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+        final JsonObject request = GSON.fromJson(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), JsonObject.class);
+        JsonObject response = new JsonObject();
+        if (target.endsWith(".ListTaskDefinitions")) {
+            if (request.has("nextToken")) {
+                numberOfNextPageRequests.incrementAndGet();
+            }
+            final int start = request.has("nextToken") ? Integer.parseInt(request.get("nextToken").getAsString()) : 0;
+            List<String> sortedTaskDefinitionArns = new ArrayList<>(taskDefinitionArns);
+            sortedTaskDefinitionArns.sort(request.has("sort") && "DESC".equals(request.get("sort").getAsString()) ? Comparator.reverseOrder() : Comparator.naturalOrder());
+            final int end = Math.min(start + PAGE_SIZE, sortedTaskDefinitionArns.size());
+            JsonArray page = new JsonArray();
+            sortedTaskDefinitionArns.subList(start, end).forEach(page::add);
+            response.add("taskDefinitionArns", page);
+            if (end < sortedTaskDefinitionArns.size()) {
+                response.addProperty("nextToken", String.valueOf(end));
+            }
+        } else if (target.endsWith(".DescribeTaskDefinition")) {
+            numberOfDescribeRequests.incrementAndGet();
+            final String arn = request.get("taskDefinition").getAsString();
+            JsonObject taskDefinition = new JsonObject();
+            taskDefinition.addProperty("taskDefinitionArn", arn);
+            taskDefinition.addProperty("family", arn.substring(ARN_PREFIX.length(), arn.lastIndexOf(':')));
+            response.add("taskDefinition", taskDefinition);
+        }
+        final byte[] bytes = GSON.toJson(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.1");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package io.dockstore.tooltester.runWorkflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesAttachment;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesRequestException;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesRunLog;
+import io.dockstore.tooltester.runWorkflow.WesClient.WesRunRequest;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WesClientTest {
+    private static final String RUN_ID = "run-1";
+
+    private final AtomicReference<String> runRequestBody = new AtomicReference<>();
+    private HttpServer server;
+    private WesClient wesClient;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ga4gh/wes/v1/runs", exchange -> {
+            final String path = exchange.getRequestURI().getPath();
+            final String method = exchange.getRequestMethod();
+            if ("POST".equals(method) && path.endsWith("/runs")) {
+                runRequestBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+                respond(exchange, 200, "{\"run_id\": \"" + RUN_ID + "\"}");
+            } else if ("GET".equals(method) && path.endsWith("/runs/" + RUN_ID + "/status")) {
+                respond(exchange, 200, "{\"run_id\": \"" + RUN_ID + "\", \"state\": \"COMPLETE\"}");
+            } else if ("GET".equals(method) && path.endsWith("/runs/" + RUN_ID)) {
+                respond(exchange, 200, "{\"run_id\": \"" + RUN_ID + "\", \"state\": \"COMPLETE\", "
+                        + "\"run_log\": {\"name\": \"hello\", \"start_time\": \"2023-03-20T16:49:23.664Z\", \"end_time\": \"2023-03-20T16:59:23.664Z\"}, "
+                        + "\"task_logs\": [{\"name\": \"hello.task\", \"start_time\": \"2023-03-20T16:50:00Z\", \"end_time\": \"2023-03-20T16:58:00Z\", \"exit_code\": 0}]}");
+            } else if ("POST".equals(method) && path.endsWith("/runs/" + RUN_ID + "/cancel")) {
+                respond(exchange, 200, "{\"run_id\": \"" + RUN_ID + "\"}");
+            } else {
+                respond(exchange, 404, "{\"msg\": \"Not found\", \"status_code\": 404}");
+            }
+        });
+        server.start();
+        wesClient = new WesClient(URI.create("http://localhost:" + server.getAddress().getPort() + "/ga4gh/wes/v1/"), null, null);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testRunWorkflow() throws IOException, InterruptedException {
+        JsonObject workflowParams = new JsonObject();
+        workflowParams.addProperty("workflowInputs", "inputs.json");
+        WesRunRequest runRequest = new WesRunRequest("https://dockstore.org/api/ga4gh/trs/v2/tools/%23workflow%2Fhello/versions/1.0/PLAIN_WDL/descriptor", "WDL", "1.0",
+                workflowParams, List.of(new WesAttachment("inputs.json", "{\"hello.name\": \"world\"}".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(RUN_ID, wesClient.runWorkflow(runRequest));
+        final String body = runRequestBody.get();
+        assertTrue(body.contains("name=\"workflow_type\"\r\n\r\nWDL\r\n"));
+        assertTrue(body.contains("name=\"workflow_url\"\r\n\r\nhttps://dockstore.org/api/ga4gh/trs/v2/tools/%23workflow%2Fhello/versions/1.0/PLAIN_WDL/descriptor\r\n"));
+        assertTrue(body.contains("name=\"workflow_attachment\"; filename=\"inputs.json\""));
+        assertTrue(body.contains("{\"hello.name\": \"world\"}"));
+    }
+
+    @Test
+    void testGetRunStatusAndLog() throws IOException, InterruptedException {
+        assertEquals("COMPLETE", wesClient.getRunStatus(RUN_ID));
+        WesRunLog runLog = wesClient.getRunLog(RUN_ID);
+        assertEquals("COMPLETE", runLog.state());
+        assertEquals("2023-03-20T16:49:23.664Z", runLog.runLog().startTime());
+        assertEquals(1, runLog.taskLogs().size());
+        assertEquals("hello.task", runLog.taskLogs().get(0).name());
+        assertEquals(0, runLog.taskLogs().get(0).exitCode());
+        wesClient.cancelRun(RUN_ID);
+        WesRequestException exception = assertThrows(WesRequestException.class, () -> wesClient.getRunStatus("missing-run"));
+        assertEquals(404, exception.getStatusCode());
+        assertTrue(exception.isClientError());
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package io.dockstore.tooltester.runWorkflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dockstore.openapi.client.ApiClient;
+import io.dockstore.openapi.client.api.ExtendedGa4GhApi;
+import io.dockstore.openapi.client.api.WorkflowsApi;
+import io.dockstore.openapi.client.model.Workflow;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.cloudwatch.CloudWatchClient;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataRequest;
+import software.amazon.awssdk.services.cloudwatch.model.GetMetricDataResponse;
+import software.amazon.awssdk.services.cloudwatch.model.MetricDataResult;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.DeregisterTaskDefinitionRequest;
+import software.amazon.awssdk.services.ecs.model.DeregisterTaskDefinitionResponse;
+import software.amazon.awssdk.services.ecs.model.DescribeTaskDefinitionRequest;
+import software.amazon.awssdk.services.ecs.model.DescribeTaskDefinitionResponse;
+import software.amazon.awssdk.services.ecs.model.ListTaskDefinitionsRequest;
+import software.amazon.awssdk.services.ecs.model.ListTaskDefinitionsResponse;
+import software.amazon.awssdk.services.ecs.model.TaskDefinition;
+
+class WorkflowPipelineTest {
+    private static final String VERSION = "1.0";
+    // The stand-in for the WES endpoint fails to launch this workflow
+    private static final String UNLAUNCHABLE_ENTRY = "github.com/dockstore/unlaunchable";
+    // The stand-in for the WES endpoint launches this workflow, then doesn't know its run
+    private static final String DELETED_ENTRY = "github.com/dockstore/deleted";
+    private static final String HELLO_ENTRY = "github.com/dockstore/hello";
+    // Registered by the stand-in for the WES endpoint when it launches the hello workflow
+    private static final String HELLO_TASK_DEFINITION_ARN = "arn:aws:ecs:us-east-1:123456789012:task-definition/hello:1";
+
+    @TempDir
+    Path tempDirectory;
+
+    private HttpServer server;
+    private String serverUrl;
+    private final FakeEcsClient ecsClient = new FakeEcsClient();
+    private WorkflowRunnerConfig workflowRunnerConfig;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handleRequest);
+        server.start();
+        serverUrl = "http://localhost:" + server.getAddress().getPort();
+        final Path configFile = tempDirectory.resolve("config.yaml");
+        Files.writeString(configFile, "WDL-WES-URL: " + serverUrl + "/ga4gh/wes/v1\nWDL-ECS-CLUSTER: cluster\n");
+        workflowRunnerConfig = new WorkflowRunnerConfig(configFile.toString());
+        scheduler = Executors.newScheduledThreadPool(2);
+    }
+
+    @AfterEach
+    void stopServer() {
+        scheduler.shutdownNow();
+        server.stop(0);
+    }
+
+    @Test
+    void testFailedWorkflowsAreCounted() {
+        final List<WorkflowRunner> workflowRunners = List.of(createWorkflowRunner(UNLAUNCHABLE_ENTRY), createWorkflowRunner(DELETED_ENTRY),
+                createWorkflowRunner(HELLO_ENTRY));
+        List<String> completedWorkflows = new CopyOnWriteArrayList<>();
+        WorkflowPipeline workflowPipeline = createWorkflowPipeline(workflowRunners, workflowRunner -> completedWorkflows.add(workflowRunner.getCompleteEntryName()));
+
+        // The workflows that couldn't be launched or polled are failed, instead of exiting, and the other workflows still complete
+        assertEquals(2, assertTimeoutPreemptively(Duration.ofSeconds(30), workflowPipeline::run));
+        assertEquals(List.of(HELLO_ENTRY + ":" + VERSION), completedWorkflows);
+    }
+
+    @Test
+    void testTaskDefinitionIsGivenToTheRunAfterAnUnlaunchedOne() {
+        final List<WorkflowRunner> workflowRunners = List.of(createWorkflowRunner(UNLAUNCHABLE_ENTRY), createWorkflowRunner(HELLO_ENTRY));
+        WorkflowPipeline workflowPipeline = createWorkflowPipeline(workflowRunners, workflowRunner -> { });
+
+        assertEquals(1, assertTimeoutPreemptively(Duration.ofSeconds(30), workflowPipeline::run));
+        // The unlaunched workflow stopped waiting for a task definition, so the hello workflow got its own, and deregistered it once it completed
+        assertEquals(List.of(HELLO_TASK_DEFINITION_ARN), ecsClient.deregisteredTaskDefinitionArns);
+    }
+
+    private WorkflowPipeline createWorkflowPipeline(List<WorkflowRunner> workflowRunners, Consumer<WorkflowRunner> onWorkflowCompleted) {
+        return new WorkflowPipeline(workflowRunners, Duration.ofMillis(50), onWorkflowCompleted, scheduler,
+                new TaskDefinitionWatcher(ecsClient, scheduler, Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofSeconds(2)),
+                new MetricDataBatcher(new FakeCloudWatchClient(), scheduler, Duration.ofMillis(50)));
+    }
+
+    private WorkflowRunner createWorkflowRunner(String entry) {
+        final Path testParameterFile = tempDirectory.resolve(entry.substring(entry.lastIndexOf('/') + 1) + ".json");
+        try {
+            Files.writeString(testParameterFile, "{\"hello.name\": \"world\"}");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ApiClient apiClient = new ApiClient();
+        apiClient.setBasePath(serverUrl + "/api");
+        return new WorkflowRunner(entry, VERSION, testParameterFile.toString(), new Workflow().descriptorType(Workflow.DescriptorTypeEnum.WDL),
+                new ExtendedGa4GhApi(apiClient), new WorkflowsApi(apiClient), workflowRunnerConfig, tempDirectory.resolve("results").toString());
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        final String method = exchange.getRequestMethod();
+        if ("POST".equals(method) && path.endsWith("/ga4gh/wes/v1/runs")) {
+            final String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (body.contains("unlaunchable")) {
+                respond(exchange, 500, "{\"msg\": \"Internal server error\", \"status_code\": 500}");
+            } else if (body.contains("deleted")) {
+                respond(exchange, 200, "{\"run_id\": \"deleted\"}");
+            } else {
+                ecsClient.taskDefinitionArns.add(HELLO_TASK_DEFINITION_ARN);
+                respond(exchange, 200, "{\"run_id\": \"hello\"}");
+            }
+        } else if ("GET".equals(method) && path.endsWith("/ga4gh/wes/v1/runs/hello/status")) {
+            respond(exchange, 200, "{\"run_id\": \"hello\", \"state\": \"COMPLETE\"}");
+        } else if ("GET".equals(method) && path.endsWith("/ga4gh/wes/v1/runs/hello")) {
+            respond(exchange, 200, "{\"run_id\": \"hello\", \"state\": \"COMPLETE\", "
+                    + "\"run_log\": {\"name\": \"hello\", \"start_time\": \"2023-03-20T16:49:23.664Z\", \"end_time\": \"2023-03-20T16:59:23.664Z\"}, "
+                    + "\"task_logs\": [{\"name\": \"hello.task\", \"start_time\": \"2023-03-20T16:50:00Z\", \"end_time\": \"2023-03-20T16:58:00Z\", \"exit_code\": 0}]}");
+        } else {
+            // Including the upload of the execution metrics, which the workflow logs and carries on from
+            respond(exchange, 404, "{\"msg\": \"Not found\", \"status_code\": 404}");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * An in-process stand-in for ECS that lists its task definitions on one page, and keeps the ARNs of the task definitions that were deregistered.
+     */
+    private static class FakeEcsClient implements EcsClient {
+        private final List<String> taskDefinitionArns = new CopyOnWriteArrayList<>();
+        private final List<String> deregisteredTaskDefinitionArns = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ListTaskDefinitionsResponse listTaskDefinitions(ListTaskDefinitionsRequest request) {
+            return ListTaskDefinitionsResponse.builder().taskDefinitionArns(taskDefinitionArns).build();
+        }
+
+        @Override
+        public DescribeTaskDefinitionResponse describeTaskDefinition(DescribeTaskDefinitionRequest request) {
+            final String arn = request.taskDefinition();
+            return DescribeTaskDefinitionResponse.builder()
+                    .taskDefinition(TaskDefinition.builder().taskDefinitionArn(arn).family(arn.substring(arn.lastIndexOf('/') + 1, arn.lastIndexOf(':'))).build())
+                    .build();
+        }
+
+        @Override
+        public DeregisterTaskDefinitionResponse deregisterTaskDefinition(DeregisterTaskDefinitionRequest request) {
+            deregisteredTaskDefinitionArns.add(request.taskDefinition());
+            return DeregisterTaskDefinitionResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+
+    /**
+     * An in-process stand-in for CloudWatch that gives each metric a datapoint for the last minute before the end time, which covers the run.
+     */
+    private static class FakeCloudWatchClient implements CloudWatchClient {
+        @Override
+        public GetMetricDataResponse getMetricData(GetMetricDataRequest request) {
+            final Instant lastMinute = request.endTime().minus(Duration.ofMinutes(1));
+            return GetMetricDataResponse.builder()
+                    .metricDataResults(request.metricDataQueries().stream()
+                            .map(query -> MetricDataResult.builder().id(query.id()).timestamps(lastMinute).values(1.0).build())
+                            .toList())
+                    .build();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
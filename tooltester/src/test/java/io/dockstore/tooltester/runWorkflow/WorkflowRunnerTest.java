@@ -0,0 +1,82 @@
+package io.dockstore.tooltester.runWorkflow;
+
+import static io.dockstore.tooltester.runWorkflow.WorkflowRunner.doDatapointsCoverRun;
+import static io.dockstore.tooltester.runWorkflow.WorkflowRunner.getTimeUntilNextMetricsCheck;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.dockstore.tooltester.runWorkflow.MetricDataBatcher.MetricDatapoint;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class WorkflowRunnerTest {
+    private static final String ENTRY_NAME = "github.com/dockstore/hello:1.0";
+    private static final Instant START_TIME = Instant.parse("2023-03-20T10:00:00Z");
+    // The run ended partway through its tenth minute
+    private static final Instant END_TIME = START_TIME.plusSeconds(9 * 60 + 30);
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(30);
+    // The deadline is 15 minutes after the run was found to be finished
+    private static final Instant DEADLINE = END_TIME.plus(Duration.ofMinutes(15));
+
+    @Test
+    void testDoDatapointsCoverRun() {
+        // The last full minute of the run starts 8 minutes after the start time. The last partial minute may never get a datapoint
+        assertTrue(doDatapointsCoverRun(createDatapoints(9), END_TIME));
+        assertTrue(doDatapointsCoverRun(createDatapoints(10), END_TIME));
+        assertFalse(doDatapointsCoverRun(createDatapoints(8), END_TIME));
+        assertFalse(doDatapointsCoverRun(List.of(), END_TIME));
+    }
+
+    @Test
+    void testMetricsAreNotCheckedAgainOnceTheyCoverTheRun() {
+        Map<String, List<MetricDatapoint>> datapointsForEachMetric = Map.of("CpuUtilized", createDatapoints(9), "MemoryUtilized", createDatapoints(10));
+        assertEquals(Optional.empty(), getTimeUntilNextMetricsCheck(ENTRY_NAME, datapointsForEachMetric, END_TIME, DEADLINE, POLL_INTERVAL, END_TIME.plusSeconds(60)));
+    }
+
+    @Test
+    void testPartialMetricsAreCheckedAgain() {
+        // Every metric must cover the run
+        Map<String, List<MetricDatapoint>> datapointsForEachMetric = Map.of("CpuUtilized", createDatapoints(9), "MemoryUtilized", createDatapoints(5));
+        assertEquals(Optional.of(POLL_INTERVAL), getTimeUntilNextMetricsCheck(ENTRY_NAME, datapointsForEachMetric, END_TIME, DEADLINE, POLL_INTERVAL,
+                END_TIME.plusSeconds(60)));
+        // The next check isn't after the deadline
+        assertEquals(Optional.of(Duration.ofSeconds(10)), getTimeUntilNextMetricsCheck(ENTRY_NAME, datapointsForEachMetric, END_TIME, DEADLINE, POLL_INTERVAL,
+                DEADLINE.minusSeconds(10)));
+    }
+
+    @Test
+    void testMissingMetricsAreOnlyWaitedForUntilContainerInsightsWouldHavePublishedThem() {
+        Map<String, List<MetricDatapoint>> datapointsForEachMetric = Map.of("CpuUtilized", List.of(), "MemoryUtilized", List.of());
+        assertEquals(Optional.of(POLL_INTERVAL), getTimeUntilNextMetricsCheck(ENTRY_NAME, datapointsForEachMetric, END_TIME, DEADLINE, POLL_INTERVAL,
+                END_TIME.plusSeconds(60)));
+        assertEquals(Optional.empty(), getTimeUntilNextMetricsCheck(ENTRY_NAME, datapointsForEachMetric, END_TIME, DEADLINE, POLL_INTERVAL,
+                END_TIME.plus(Duration.ofMinutes(6))));
+
+        // A metric with some datapoints is still waited for until the deadline
+        datapointsForEachMetric = Map.of("CpuUtilized", createDatapoints(5), "MemoryUtilized", List.of());
+        assertEquals(Optional.of(POLL_INTERVAL), getTimeUntilNextMetricsCheck(ENTRY_NAME, datapointsForEachMetric, END_TIME, DEADLINE, POLL_INTERVAL,
+                END_TIME.plus(Duration.ofMinutes(6))));
+    }
+
+    @Test
+    void testMetricsAreNotCheckedAgainAfterTheDeadline() {
+        Map<String, List<MetricDatapoint>> datapointsForEachMetric = Map.of("CpuUtilized", createDatapoints(5), "MemoryUtilized", createDatapoints(5));
+        assertEquals(Optional.empty(), getTimeUntilNextMetricsCheck(ENTRY_NAME, datapointsForEachMetric, END_TIME, DEADLINE, POLL_INTERVAL, DEADLINE));
+        assertEquals(Optional.empty(), getTimeUntilNextMetricsCheck(ENTRY_NAME, datapointsForEachMetric, END_TIME, DEADLINE, POLL_INTERVAL, DEADLINE.plusSeconds(1)));
+    }
+
+    // Creates a datapoint for each of the first minutes of the run
+    private static List<MetricDatapoint> createDatapoints(int numberOfMinutes) {
+        List<MetricDatapoint> datapoints = new ArrayList<>();
+        for (int minute = 0; minute < numberOfMinutes; minute++) {
+            datapoints.add(new MetricDatapoint(START_TIME.plusSeconds(60L * minute), 1.0));
+        }
+        return datapoints;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tests of the classes used to run workflows through WES
+ */
+package io.dockstore.tooltester.runWorkflow;
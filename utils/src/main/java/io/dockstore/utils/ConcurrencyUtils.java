@@ -0,0 +1,33 @@
+package io.dockstore.utils;
+
+import java.util.concurrent.BlockingQueue;
+
+public final class ConcurrencyUtils {
+
+    private ConcurrencyUtils() {
+    }
+
+    /**
+     * Puts the element in the queue, waiting for space to become available. If the thread is interrupted while waiting, the interrupt status is restored after the element is put.
+     * @param queue
+     * @param element
+     * @param <T>
+     */
+    public static <T> void putUninterruptibly(BlockingQueue<T> queue, T element) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    queue.put(element);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}